@@ -311,6 +311,12 @@ public interface IExceptionMessage {
   /** Batch realize fixed asset lines */
   static final String BATCH_REALIZED_FIXED_ASSET_LINE = /*$$(*/ "Realized fixed asset lines" /*)*/;
 
+  /** Batch auto reconcile */
+  static final String BATCH_AUTO_RECONCILE = /*$$(*/ "Reconciled account and partner groups" /*)*/;
+
+  static final String BATCH_AUTO_RECONCILE_LINES = /*$$(*/
+      "%s move lines fully reconciled, %s move lines not fully reconciled" /*)*/;
+
   /** Cfonb export service */
   static final String CFONB_EXPORT_1 = /*$$(*/
       "You must configure a RIB for the reimbursement" /*)*/;
@@ -0,0 +1,43 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.job;
+
+import com.axelor.apps.account.service.PartnerBalanceService;
+import com.axelor.apps.base.job.ThreadedJob;
+import com.axelor.apps.base.job.UncheckedJobExecutionException;
+import com.axelor.inject.Beans;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+
+/**
+ * Check the partner balances against the move lines and fix the wrong ones, unless the job is
+ * configured with a {@code checkOnly} parameter set to true.
+ */
+public class PartnerBalanceJob extends ThreadedJob {
+  @Override
+  public void executeInThread(JobExecutionContext context) {
+    JobDataMap data = context.getMergedJobDataMap();
+    boolean checkOnly = data != null && Boolean.parseBoolean(String.valueOf(data.get("checkOnly")));
+
+    try {
+      Beans.get(PartnerBalanceService.class).checkAllBalances(!checkOnly);
+    } catch (Exception e) {
+      throw new UncheckedJobExecutionException(e);
+    }
+  }
+}
@@ -52,16 +52,19 @@ public class AccountCustomerService {
   protected AccountingSituationService accountingSituationService;
   protected AccountingSituationRepository accSituationRepo;
   protected AppBaseService appBaseService;
+  protected PartnerBalanceService partnerBalanceService;
 
   @Inject
   public AccountCustomerService(
       AccountingSituationService accountingSituationService,
       AccountingSituationRepository accSituationRepo,
-      AppBaseService appBaseService) {
+      AppBaseService appBaseService,
+      PartnerBalanceService partnerBalanceService) {
 
     this.accountingSituationService = accountingSituationService;
     this.accSituationRepo = accSituationRepo;
     this.appBaseService = appBaseService;
+    this.partnerBalanceService = partnerBalanceService;
   }
 
   public AccountingSituationService getAccountingSituationService() {
@@ -78,34 +81,7 @@ public class AccountCustomerService {
   public BigDecimal getBalance(Partner partner, Company company) {
     log.debug("Compute balance (Partner : {}, Company : {})", partner.getName(), company.getName());
 
-    Query query =
-        JPA.em()
-            .createNativeQuery(
-                "SELECT SUM(COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
-                    + "FROM public.account_move_line AS ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0  GROUP BY moveline.id, moveline.amount_remaining) AS m1 ON (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0  GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
-                    + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
-                    + "WHERE ml.partner = ?1 AND move.company = ?2 AND move.ignore_in_accounting_ok IN ('false', null)"
-                    + "AND account.use_for_partner_balance = 'true'"
-                    + "AND (move.status_select = ?3 or move.status_select = ?4) AND ml.amount_remaining > 0 ")
-            .setParameter(1, partner)
-            .setParameter(2, company)
-            .setParameter(3, MoveRepository.STATUS_VALIDATED)
-            .setParameter(4, MoveRepository.STATUS_DAYBOOK);
-
-    BigDecimal balance = (BigDecimal) query.getSingleResult();
-
-    if (balance == null) {
-      balance = BigDecimal.ZERO;
-    }
+    BigDecimal balance = partnerBalanceService.getBalance(partner, company);
 
     log.debug("Balance : {}", balance);
 
@@ -129,19 +105,12 @@ public class AccountCustomerService {
     Query query =
         JPA.em()
             .createNativeQuery(
-                "SELECT SUM( COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
+                "SELECT SUM( "
+                    + "CASE WHEN ml.debit > 0 "
+                    + "AND ((ml.due_date IS NULL AND ml.date_val <= ?1) OR (ml.due_date IS NOT NULL AND ml.due_date <= ?1)) "
+                    + "THEN ml.amount_remaining ELSE 0 END "
+                    + "- CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END ) "
                     + "FROM public.account_move_line AS ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0 "
-                    + "AND ((moveline.due_date IS NULL AND moveline.date_val <= ?1) OR (moveline.due_date IS NOT NULL AND moveline.due_date <= ?1)) "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m1 on (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0 "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
                     + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
                     + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
                     + "WHERE ml.partner = ?2 AND move.company = ?3 AND move.ignore_in_debt_recovery_ok IN ('false', null) "
@@ -203,20 +172,13 @@ public class AccountCustomerService {
     Query query =
         JPA.em()
             .createNativeQuery(
-                "SELECT SUM( COALESCE(m1.sum_remaining,0) - COALESCE(m2.sum_remaining,0) ) "
+                "SELECT SUM( "
+                    + "CASE WHEN ml.debit > 0 AND (( ml.date_val = ml.due_date AND (ml.due_date + ?1 ) < ?2 ) "
+                    + "OR (ml.due_date IS NOT NULL AND ml.date_val != ml.due_date AND ml.due_date < ?2)"
+                    + "OR (ml.due_date IS NULL AND ml.date_val < ?2)) "
+                    + "THEN ml.amount_remaining ELSE 0 END "
+                    + "- CASE WHEN ml.credit > 0 THEN ml.amount_remaining ELSE 0 END ) "
                     + "FROM public.account_move_line as ml  "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.debit > 0 AND (( moveline.date_val = moveline.due_date AND (moveline.due_date + ?1 ) < ?2 ) "
-                    + "OR (moveline.due_date IS NOT NULL AND moveline.date_val != moveline.due_date AND moveline.due_date < ?2)"
-                    + "OR (moveline.due_date IS NULL AND moveline.date_val < ?2)) "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m1 ON (m1.moveline_id = ml.id) "
-                    + "LEFT OUTER JOIN ( "
-                    + "SELECT moveline.amount_remaining AS sum_remaining, moveline.id AS moveline_id "
-                    + "FROM public.account_move_line AS moveline "
-                    + "WHERE moveline.credit > 0 "
-                    + "GROUP BY moveline.id, moveline.amount_remaining) AS m2 ON (m2.moveline_id = ml.id) "
                     + "LEFT OUTER JOIN public.account_account AS account ON (ml.account = account.id) "
                     + "LEFT OUTER JOIN public.account_move AS move ON (ml.move = move.id) "
                     + "LEFT JOIN public.account_invoice AS invoice ON (move.invoice = invoice.id) "
@@ -20,7 +20,6 @@ package com.axelor.apps.account.service;
 import com.axelor.apps.account.db.AccountingReport;
 import com.axelor.apps.account.db.AnalyticMoveLine;
 import com.axelor.apps.account.db.Journal;
-import com.axelor.apps.account.db.JournalType;
 import com.axelor.apps.account.db.Move;
 import com.axelor.apps.account.db.MoveLine;
 import com.axelor.apps.account.db.ReconcileGroup;
@@ -49,6 +48,7 @@ import com.axelor.meta.MetaFiles;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.opencsv.CSVWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -60,8 +60,14 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.Query;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +90,7 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
 
   protected static final String DATE_FORMAT_YYYYMMDD = "YYYYMMdd";
   protected static final String DATE_FORMAT_YYYYMMDDHHMMSS = "YYYYMMddHHmmss";
+  protected static final int EXPORT_FETCH_SIZE = 100;
 
   @Inject
   public MoveLineExportServiceImpl(
@@ -117,14 +124,28 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       LocalDate localDate,
       String exportToAgressoNumber) {
 
+    List<Long> moveIdList = new ArrayList<>();
+    for (Move move : moveList) {
+      moveIdList.add(move.getId());
+    }
+
+    this.updateMoveIdList(moveIdList, accountingReport, localDate, exportToAgressoNumber);
+  }
+
+  public void updateMoveIdList(
+      List<Long> moveIdList,
+      AccountingReport accountingReport,
+      LocalDate localDate,
+      String exportToAgressoNumber) {
+
     int i = 0;
 
-    int moveListSize = moveList.size();
+    int moveListSize = moveIdList.size();
 
-    for (Move move : moveList) {
+    for (Long moveId : moveIdList) {
 
       this.updateMove(
-          moveRepo.find(move.getId()),
+          moveRepo.find(moveId),
           accountingReportRepo.find(accountingReport.getId()),
           localDate,
           exportToAgressoNumber);
@@ -310,161 +331,18 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void exportMoveLineTypeSelect1006FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
 
     log.info("In export service Type 1006 FILE 1 :");
 
-    Company company = accountingReport.getCompany();
-
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = dateQuery.getResultList();
-
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (company != null) {
-      companyCode = company.getCode();
-      moveQueryStr += String.format(" AND self.company = %s", company.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
-    }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
-    LocalDate interfaceDate = accountingReport.getDate();
-
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
-      }
-
-      for (Journal journal : journalList) {
-
-        List<? extends Move> moveList =
-            moveRepo
-                .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
-
-        String journalCode = journal.getExportCode();
-
-        if (moveList.size() > 0) {
-
-          BigDecimal sumDebit =
-              this.getSumDebit(
-                  "self.account.useForPartnerBalance = true AND self.debit != 0.00 AND self.move in ?1 "
-                      + moveLineQueryStr,
-                  moveList);
-
-          if (sumDebit.compareTo(BigDecimal.ZERO) == 1) {
-
-            String exportNumber = this.getSaleExportNumber(company);
-
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
-
-            this.updateMoveList(
-                (List<Move>) moveList, accountingReport, interfaceDate, exportNumber);
-
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = sumDebit.toString();
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
-          }
-        }
-      }
-    }
-
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "ventes.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
+    this.exportMoveLineTypeSelectFILE1(
+        accountingReport,
+        replay,
+        "self.account.useForPartnerBalance = true AND self.debit != 0.00",
+        "SUM(self.debit)",
+        "ventes.dat");
   }
 
   /**
@@ -498,162 +376,18 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void exportMoveLineTypeSelect1007FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
 
     log.info("In export service 1007 FILE 1:");
 
-    Company company = accountingReport.getCompany();
-
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = new ArrayList<LocalDate>();
-    allDates = dateQuery.getResultList();
-
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (accountingReport.getCompany() != null) {
-      companyCode = accountingReport.getCompany().getCode();
-      moveQueryStr +=
-          String.format(" AND self.company = %s", accountingReport.getCompany().getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
-    }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
-    LocalDate interfaceDate = accountingReport.getDate();
-
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
-      }
-
-      for (Journal journal : journalList) {
-
-        List<Move> moveList =
-            moveRepo
-                .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
-
-        String journalCode = journal.getExportCode();
-
-        if (moveList.size() > 0) {
-
-          BigDecimal sumCredit =
-              this.getSumCredit(
-                  "self.account.useForPartnerBalance = true AND self.credit != 0.00 AND self.move in ?1 "
-                      + moveLineQueryStr,
-                  moveList);
-
-          if (sumCredit.compareTo(BigDecimal.ZERO) == 1) {
-
-            String exportNumber = this.getRefundExportNumber(company);
-
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
-
-            this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
-
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = sumCredit.toString();
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
-          }
-        }
-      }
-    }
-
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "avoirs.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
+    this.exportMoveLineTypeSelectFILE1(
+        accountingReport,
+        replay,
+        "self.account.useForPartnerBalance = true AND self.credit != 0.00",
+        "SUM(self.credit)",
+        "avoirs.dat");
   }
 
   /**
@@ -687,163 +421,18 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void exportMoveLineTypeSelect1008FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
 
     log.info("In export service 1008 FILE 1:");
 
-    Company company = accountingReport.getCompany();
-
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = new ArrayList<LocalDate>();
-    allDates = dateQuery.getResultList();
-
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (company != null) {
-      companyCode = accountingReport.getCompany().getCode();
-      moveQueryStr += String.format(" AND self.company = %s", company.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
-    }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
-    LocalDate interfaceDate = accountingReport.getDate();
-
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
-      }
-
-      for (Journal journal : journalList) {
-
-        List<Move> moveList =
-            moveRepo
-                .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
-
-        String journalCode = journal.getExportCode();
-
-        if (moveList.size() > 0) {
-
-          long moveLineListSize =
-              moveLineRepo
-                  .all()
-                  .filter(
-                      "self.move in ?1 AND (self.debit > 0 OR self.credit > 0) " + moveLineQueryStr,
-                      moveList)
-                  .count();
-
-          if (moveLineListSize > 0) {
-
-            String exportNumber = this.getTreasuryExportNumber(company);
-
-            Move firstMove = moveList.get(0);
-            String periodCode =
-                firstMove.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
-
-            this.updateMoveList(moveList, accountingReport, interfaceDate, exportNumber);
-
-            String items[] = new String[8];
-            items[0] = companyCode;
-            items[1] = journalCode;
-            items[2] = exportNumber;
-            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[4] = "0";
-            items[5] = reference;
-            items[6] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            items[7] = periodCode;
-            allMoveData.add(items);
-          }
-        }
-      }
-    }
-
-    String fileName =
-        "entete"
-            + appAccountService
-                .getTodayDateTime()
-                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "tresorerie.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
+    this.exportMoveLineTypeSelectFILE1(
+        accountingReport,
+        replay,
+        "(self.debit > 0 OR self.credit > 0)",
+        "COUNT(self)",
+        "tresorerie.dat");
   }
 
   /**
@@ -876,7 +465,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void exportMoveLineTypeSelect1009FILE1(AccountingReport accountingReport, boolean replay)
       throws AxelorException, IOException {
@@ -884,142 +472,56 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
     log.info("In export service 1009 FILE 1:");
 
     Company company = accountingReport.getCompany();
-    String dateQueryStr = String.format(" WHERE self.company = %s", company.getId());
-    JournalType journalType = accountingReportService.getJournalType(accountingReport);
-    if (accountingReport.getJournal() != null) {
-      dateQueryStr +=
-          String.format(" AND self.journal = %s", accountingReport.getJournal().getId());
-    } else {
-      dateQueryStr += String.format(" AND self.journal.journalType = %s", journalType.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      dateQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (replay) {
-      dateQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      dateQueryStr += " AND self.accountingOk = false ";
-    }
-    dateQueryStr += " AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false ";
-    dateQueryStr +=
-        String.format(
-            " AND (self.statusSelect = %s OR self.statusSelect = %s) ",
-            MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
-    Query dateQuery =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from Move self"
-                    + dateQueryStr
-                    + "group by self.date order by self.date");
-
-    List<LocalDate> allDates = new ArrayList<LocalDate>();
-    allDates = dateQuery.getResultList();
-
-    log.debug("allDates : {}", allDates);
-
-    List<String[]> allMoveData = new ArrayList<String[]>();
-    String companyCode = "";
-
-    String reference = "";
-    String moveQueryStr = "";
-    String moveLineQueryStr = "";
-    if (accountingReport.getRef() != null) {
-      reference = accountingReport.getRef();
-    }
-    if (company != null) {
-      companyCode = company.getCode();
-      moveQueryStr += String.format(" AND self.company = %s", company.getId());
-    }
-    if (accountingReport.getPeriod() != null) {
-      moveQueryStr += String.format(" AND self.period = %s", accountingReport.getPeriod().getId());
-    }
-    if (accountingReport.getDateFrom() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
-    }
-    if (accountingReport.getDateTo() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
-    }
-    if (accountingReport.getDate() != null) {
-      moveLineQueryStr +=
-          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
-    }
-    if (replay) {
-      moveQueryStr +=
-          String.format(
-              " AND self.accountingOk = true AND self.accountingReport = %s",
-              accountingReport.getId());
-    } else {
-      moveQueryStr += " AND self.accountingOk = false ";
-    }
-    moveQueryStr += String.format(" AND self.statusSelect = %s ", MoveRepository.STATUS_VALIDATED);
-
+    String companyCode = company.getCode();
+    String reference = accountingReport.getRef() != null ? accountingReport.getRef() : "";
     LocalDate interfaceDate = accountingReport.getDate();
 
-    for (LocalDate dt : allDates) {
-
-      List<Journal> journalList =
-          journalRepo
-              .all()
-              .filter("self.journalType = ?1 AND self.notExportOk = false", journalType)
-              .fetch();
-
-      if (accountingReport.getJournal() != null) {
-        journalList = new ArrayList<Journal>();
-        journalList.add(accountingReport.getJournal());
-      }
-
-      for (Journal journal : journalList) {
-
-        List<Move> moveList =
-            moveRepo
-                .all()
-                .filter(
-                    "self.date = ?1 AND self.ignoreInAccountingOk = false AND self.journal.notExportOk = false AND self.journal = ?2"
-                        + moveQueryStr,
-                    dt,
-                    journal)
-                .fetch();
-
-        String journalCode = journal.getExportCode();
-
-        int moveListSize = moveList.size();
+    // total credit and first line of each date and journal
+    Map<Pair<LocalDate, Long>, Object[]> creditMap =
+        this.getFile1MoveLineAggregateMap(
+            accountingReport,
+            replay,
+            "self.account.useForPartnerBalance = true AND self.credit != 0.00",
+            "SUM(self.credit), MIN(self.id)");
 
-        if (moveListSize > 0) {
-
-          int i = 0;
-
-          for (Move move : moveList) {
-
-            List<MoveLine> moveLineList =
-                moveLineRepo
-                    .all()
-                    .filter(
-                        "self.account.useForPartnerBalance = true AND self.credit != 0.00 AND self.move in ?1"
-                            + moveLineQueryStr,
-                        moveList)
-                    .fetch();
+    String fileName =
+        "entete"
+            + appAccountService
+                .getTodayDateTime()
+                .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
+            + "achats.dat";
+    Path path = this.getExportFilePath(company, fileName);
+    CSVWriter csvWriter =
+        CsvTool.setCsvFile(path.getParent().toString(), path.getFileName().toString(), '|');
+
+    try {
+      this.forEachFile1MoveGroup(
+          accountingReport,
+          replay,
+          (date, journalId, moveRowList) -> {
+            Object[] credit = creditMap.get(Pair.of(date, journalId));
+            if (credit == null) {
+              return;
+            }
 
-            if (moveLineList.size() > 0) {
+            String journalCode = journalRepo.find(journalId).getExportCode();
+            String accountCode = moveLineRepo.find((Long) credit[1]).getAccount().getCode();
+            BigDecimal totalCredit = (BigDecimal) credit[0];
+            int i = 0;
 
+            for (Object[] moveRow : moveRowList) {
               String exportNumber = this.getPurchaseExportNumber(company);
 
               String periodCode =
-                  move.getPeriod().getFromDate().format(DateTimeFormatter.ofPattern("yyyyMM"));
+                  ((LocalDate) moveRow[3]).format(DateTimeFormatter.ofPattern("yyyyMM"));
 
-              BigDecimal totalCredit = this.getSumCredit(moveLineList);
               String invoiceId = "";
               String dueDate = "";
-              if (move.getInvoice() != null) {
-                invoiceId = move.getInvoice().getInvoiceId();
-                dueDate = move.getInvoice().getDueDate().toString();
+              if (moveRow[4] != null) {
+                invoiceId = (String) moveRow[5];
+                dueDate = moveRow[6].toString();
               }
 
-              MoveLine firstMoveLine = moveLineList.get(0);
               String items[] = new String[11];
               items[0] = companyCode;
               items[1] = journalCode;
@@ -1027,37 +529,284 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
               items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
               items[4] = invoiceId;
               items[5] = dueDate;
-              items[6] = firstMoveLine.getAccount().getCode();
+              items[6] = accountCode;
               items[7] = totalCredit.toString();
               items[8] = reference;
-              items[9] = dt.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+              items[9] = date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
               items[10] = periodCode;
-              allMoveData.add(items);
+              csvWriter.writeNext(items);
 
-              this.updateMove(move, accountingReport, interfaceDate, exportNumber);
+              this.updateMove(
+                  moveRepo.find((Long) moveRow[0]),
+                  accountingReportRepo.find(accountingReport.getId()),
+                  interfaceDate,
+                  exportNumber);
 
               if (i % 10 == 0) {
                 JPA.clear();
               }
               if (i++ % 100 == 0) {
-                log.debug("Process : {} / {}", i, moveListSize);
+                log.debug("Process : {} / {}", i, moveRowList.size());
               }
             }
-          }
-        }
-      }
+          });
+    } finally {
+      csvWriter.close();
     }
 
+    this.attachExportFile(path, accountingReport);
+  }
+
+  /**
+   * Export the headers of the sale, refund or treasury moves, with one line for each date and
+   * journal which has move lines matching the given filter. The moves are read with a single
+   * ordered query and the file is written as they are read.
+   *
+   * @param accountingReport
+   * @param replay
+   * @param moveLineFilter the move lines to take into account
+   * @param aggregate the aggregate of these move lines, a line is exported if it is positive
+   * @param fileNameSuffix
+   * @throws AxelorException
+   * @throws IOException
+   */
+  protected void exportMoveLineTypeSelectFILE1(
+      AccountingReport accountingReport,
+      boolean replay,
+      String moveLineFilter,
+      String aggregate,
+      String fileNameSuffix)
+      throws AxelorException, IOException {
+
+    Company company = accountingReport.getCompany();
+    String companyCode = company.getCode();
+    String reference = accountingReport.getRef() != null ? accountingReport.getRef() : "";
+    LocalDate interfaceDate = accountingReport.getDate();
+    int typeSelect = accountingReport.getTypeSelect();
+
+    Map<Pair<LocalDate, Long>, Object[]> aggregateMap =
+        this.getFile1MoveLineAggregateMap(accountingReport, replay, moveLineFilter, aggregate);
+
     String fileName =
         "entete"
             + appAccountService
                 .getTodayDateTime()
                 .format(DateTimeFormatter.ofPattern(DATE_FORMAT_YYYYMMDDHHMMSS))
-            + "achats.dat";
-    writeMoveLineToCsvFile(company, fileName, allMoveData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',
-    // this.createHeaderForHeaderFile(mlr.getTypeSelect()), allMoveData);
+            + fileNameSuffix;
+    Path path = this.getExportFilePath(company, fileName);
+    CSVWriter csvWriter =
+        CsvTool.setCsvFile(path.getParent().toString(), path.getFileName().toString(), '|');
+
+    try {
+      this.forEachFile1MoveGroup(
+          accountingReport,
+          replay,
+          (date, journalId, moveRowList) -> {
+            Object[] result = aggregateMap.get(Pair.of(date, journalId));
+            if (result == null || new BigDecimal(result[0].toString()).signum() <= 0) {
+              return;
+            }
+
+            String exportNumber = this.getExportNumber(typeSelect, company);
+
+            String periodCode =
+                ((LocalDate) moveRowList.get(0)[3]).format(DateTimeFormatter.ofPattern("yyyyMM"));
+
+            List<Long> moveIdList = new ArrayList<>();
+            for (Object[] moveRow : moveRowList) {
+              moveIdList.add((Long) moveRow[0]);
+            }
+            this.updateMoveIdList(moveIdList, accountingReport, interfaceDate, exportNumber);
+
+            String items[] = new String[8];
+            items[0] = companyCode;
+            items[1] = journalRepo.find(journalId).getExportCode();
+            items[2] = exportNumber;
+            items[3] = interfaceDate.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+            items[4] =
+                typeSelect == AccountingReportRepository.EXPORT_TREASURY
+                    ? "0"
+                    : result[0].toString();
+            items[5] = reference;
+            items[6] = date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+            items[7] = periodCode;
+            csvWriter.writeNext(items);
+          });
+    } finally {
+      csvWriter.close();
+    }
+
+    this.attachExportFile(path, accountingReport);
+  }
+
+  protected String getExportNumber(int typeSelect, Company company) throws AxelorException {
+    switch (typeSelect) {
+      case AccountingReportRepository.EXPORT_SALES:
+        return this.getSaleExportNumber(company);
+      case AccountingReportRepository.EXPORT_REFUNDS:
+        return this.getRefundExportNumber(company);
+      case AccountingReportRepository.EXPORT_TREASURY:
+        return this.getTreasuryExportNumber(company);
+      default:
+        return this.getPurchaseExportNumber(company);
+    }
+  }
+
+  /**
+   * Get the filter of the moves to export in the headers file.
+   *
+   * @param accountingReport
+   * @param replay
+   * @param alias the alias of the move in the query
+   * @return the filter, to use after a WHERE
+   */
+  protected String getFile1MoveFilter(
+      AccountingReport accountingReport, boolean replay, String alias) {
+    String moveQueryStr =
+        String.format(
+            "%1$s.company = %2$s AND %1$s.ignoreInAccountingOk = false "
+                + "AND %1$s.journal.notExportOk = false",
+            alias, accountingReport.getCompany().getId());
+
+    if (accountingReport.getJournal() != null) {
+      moveQueryStr +=
+          String.format(" AND %s.journal = %s", alias, accountingReport.getJournal().getId());
+    } else {
+      moveQueryStr +=
+          String.format(
+              " AND %s.journal.journalType = %s",
+              alias, accountingReportService.getJournalType(accountingReport).getId());
+    }
+    if (accountingReport.getPeriod() != null) {
+      moveQueryStr +=
+          String.format(" AND %s.period = %s", alias, accountingReport.getPeriod().getId());
+    }
+    if (replay) {
+      moveQueryStr +=
+          String.format(
+              " AND %1$s.accountingOk = true AND %1$s.accountingReport = %2$s",
+              alias, accountingReport.getId());
+    } else {
+      moveQueryStr += String.format(" AND %s.accountingOk = false", alias);
+    }
+    moveQueryStr +=
+        String.format(" AND %s.statusSelect = %s", alias, MoveRepository.STATUS_VALIDATED);
+
+    return moveQueryStr;
+  }
+
+  /**
+   * Compute an aggregate of the move lines of the moves to export in the headers file, for each
+   * date and journal.
+   *
+   * @return the aggregate values by date and journal id
+   */
+  @SuppressWarnings("unchecked")
+  protected Map<Pair<LocalDate, Long>, Object[]> getFile1MoveLineAggregateMap(
+      AccountingReport accountingReport, boolean replay, String moveLineFilter, String aggregate) {
+
+    String moveLineQueryStr = "";
+    if (accountingReport.getDateFrom() != null) {
+      moveLineQueryStr +=
+          String.format(" AND self.date >= '%s'", accountingReport.getDateFrom().toString());
+    }
+    if (accountingReport.getDateTo() != null) {
+      moveLineQueryStr +=
+          String.format(" AND self.date <= '%s'", accountingReport.getDateTo().toString());
+    }
+    if (accountingReport.getDate() != null) {
+      moveLineQueryStr +=
+          String.format(" AND self.date <= '%s'", accountingReport.getDate().toString());
+    }
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT move.date, move.journal.id, "
+                    + aggregate
+                    + " FROM MoveLine self JOIN self.move move WHERE "
+                    + moveLineFilter
+                    + " AND "
+                    + this.getFile1MoveFilter(accountingReport, replay, "move")
+                    + moveLineQueryStr
+                    + " GROUP BY move.date, move.journal.id")
+            .getResultList();
+
+    Map<Pair<LocalDate, Long>, Object[]> aggregateMap = new HashMap<>();
+    for (Object[] result : resultList) {
+      aggregateMap.put(
+          Pair.of((LocalDate) result[0], (Long) result[1]),
+          Arrays.copyOfRange(result, 2, result.length));
+    }
+
+    return aggregateMap;
+  }
+
+  @FunctionalInterface
+  protected interface MoveGroupProcessor {
+
+    /**
+     * Process the moves of a date and a journal.
+     *
+     * @param date
+     * @param journalId
+     * @param moveRowList rows of move id, date, journal id, period start date, invoice id, invoice
+     *     number and invoice due date
+     */
+    void process(LocalDate date, Long journalId, List<Object[]> moveRowList)
+        throws AxelorException, IOException;
+  }
+
+  /**
+   * Read the moves to export in the headers file with a single query ordered by date and journal,
+   * and process them by date and journal.
+   */
+  protected void forEachFile1MoveGroup(
+      AccountingReport accountingReport, boolean replay, MoveGroupProcessor processor)
+      throws AxelorException, IOException {
+
+    ScrollableResults moveResults =
+        this.scroll(
+            "SELECT self.id, self.date, self.journal.id, period.fromDate, "
+                + "invoice.id, invoice.invoiceId, invoice.dueDate "
+                + "FROM Move self LEFT JOIN self.period period LEFT JOIN self.invoice invoice "
+                + "WHERE "
+                + this.getFile1MoveFilter(accountingReport, replay, "self")
+                + " ORDER BY self.date, self.journal.id, self.id");
+
+    try {
+      List<Object[]> moveRowList = new ArrayList<>();
+
+      while (moveResults.next()) {
+        Object[] moveRow = moveResults.get();
+
+        if (!moveRowList.isEmpty()
+            && (!moveRow[1].equals(moveRowList.get(0)[1])
+                || !moveRow[2].equals(moveRowList.get(0)[2]))) {
+          processor.process(
+              (LocalDate) moveRowList.get(0)[1], (Long) moveRowList.get(0)[2], moveRowList);
+          moveRowList = new ArrayList<>();
+        }
+
+        moveRowList.add(moveRow);
+      }
+
+      if (!moveRowList.isEmpty()) {
+        processor.process(
+            (LocalDate) moveRowList.get(0)[1], (Long) moveRowList.get(0)[2], moveRowList);
+      }
+    } finally {
+      moveResults.close();
+    }
+  }
+
+  /** Run a query whose results are read as they are fetched instead of being loaded at once. */
+  protected ScrollableResults scroll(String queryStr) {
+    return JPA.em()
+        .createQuery(queryStr)
+        .unwrap(org.hibernate.query.Query.class)
+        .setFetchSize(EXPORT_FETCH_SIZE)
+        .scroll(ScrollMode.FORWARD_ONLY);
   }
 
   @Override
@@ -1255,7 +1004,6 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
    * @throws AxelorException
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   public void exportMoveLineAllTypeSelectFILE2(AccountingReport accountingReport, String fileName)
       throws AxelorException, IOException {
 
@@ -1311,146 +1059,139 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
             " AND (self.move.statusSelect = %s OR self.move.statusSelect = %s) ",
             MoveRepository.STATUS_VALIDATED, MoveRepository.STATUS_DAYBOOK);
 
-    Query queryDate =
-        JPA.em()
-            .createQuery(
-                "SELECT self.date from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
-                    + moveLineQueryStr
-                    + " group by self.date ORDER BY self.date");
-
-    List<LocalDate> dates = new ArrayList<LocalDate>();
-    dates = queryDate.getResultList();
-
-    log.debug("dates : {}", dates);
-
-    List<String[]> allMoveLineData = new ArrayList<String[]>();
-
-    for (LocalDate localDate : dates) {
-
-      Query queryExportAgressoRef =
-          JPA.em()
-              .createQuery(
-                  "SELECT DISTINCT self.move.exportNumber from MoveLine self where self.account != null "
-                      + "AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                      + localDate.toString()
-                      + "'"
-                      + moveLineQueryStr);
-      List<String> exportAgressoRefs = new ArrayList<String>();
-      exportAgressoRefs = queryExportAgressoRef.getResultList();
-      for (String exportAgressoRef : exportAgressoRefs) {
-
-        if (exportAgressoRef != null && !exportAgressoRef.isEmpty()) {
-
-          int sequence = 1;
-
-          Query query =
-              JPA.em()
-                  .createQuery(
-                      "SELECT self.account.id from MoveLine self where self.account != null AND (self.debit > 0 OR self.credit > 0) "
-                          + "AND self.date = '"
-                          + localDate.toString()
-                          + "' AND self.move.exportNumber = '"
-                          + exportAgressoRef
-                          + "'"
-                          + moveLineQueryStr
-                          + " group by self.account.id");
-
-          List<Long> accountIds = new ArrayList<Long>();
-          accountIds = query.getResultList();
-
-          log.debug("accountIds : {}", accountIds);
-
-          for (Long accountId : accountIds) {
-            if (accountId != null) {
-              String accountCode = accountRepo.find(accountId).getCode();
-              List<MoveLine> moveLines =
-                  moveLineRepo
-                      .all()
-                      .filter(
-                          "self.account.id = ?1 AND (self.debit > 0 OR self.credit > 0) AND self.date = '"
-                              + localDate.toString()
-                              + "' AND self.move.exportNumber = '"
-                              + exportAgressoRef
-                              + "'"
-                              + moveLineQueryStr,
-                          accountId)
-                      .fetch();
-
-              log.debug("movelines  : {} ", moveLines);
-
-              if (moveLines.size() > 0) {
-
-                List<MoveLine> moveLineList = moveLineService.consolidateMoveLines(moveLines);
-
-                List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
-
-                for (MoveLine moveLine3 : sortMoveLineList) {
-
-                  Journal journal = moveLine3.getMove().getJournal();
-                  LocalDate date = moveLine3.getDate();
-                  String items[] = null;
-
-                  if (typeSelect == 9) {
-                    items = new String[13];
-                  } else {
-                    items = new String[12];
-                  }
-
-                  items[0] = companyCode;
-                  items[1] = journal.getExportCode();
-                  items[2] = moveLine3.getMove().getExportNumber();
-                  items[3] = String.format("%s", sequence);
-                  sequence++;
-                  items[4] = accountCode;
-
-                  BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
-                  String moveLineSign = "C";
-                  if (totAmt.compareTo(BigDecimal.ZERO) == -1) {
-                    moveLineSign = "D";
-                    totAmt = totAmt.negate();
-                  }
-                  items[5] = moveLineSign;
-                  items[6] = totAmt.toString();
-
-                  String analyticAccounts = "";
-                  for (AnalyticMoveLine analyticDistributionLine :
-                      moveLine3.getAnalyticMoveLineList()) {
-                    analyticAccounts =
-                        analyticAccounts
-                            + analyticDistributionLine.getAnalyticAccount().getCode()
-                            + "/";
-                  }
-
-                  if (typeSelect == 9) {
-                    items[7] = "";
-                    items[8] = analyticAccounts;
-                    items[9] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  } else {
-                    items[7] = analyticAccounts;
-                    items[8] =
-                        String.format(
-                            "%s DU %s",
-                            journal.getCode(),
-                            date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                  }
-
-                  allMoveLineData.add(items);
-                }
-              }
-            }
+    // the lines come grouped by date, then export number, then account
+    ScrollableResults moveLineResults =
+        this.scroll(
+            "SELECT self FROM MoveLine self "
+                + "WHERE self.account != null AND (self.debit > 0 OR self.credit > 0) "
+                + "AND self.move.exportNumber != null AND self.move.exportNumber != '' "
+                + moveLineQueryStr
+                + " ORDER BY self.date, self.move.exportNumber, self.account.id, self.id");
+
+    Path path = this.getExportFilePath(company, fileName);
+    CSVWriter csvWriter =
+        CsvTool.setCsvFile(path.getParent().toString(), path.getFileName().toString(), '|');
+
+    try {
+      List<MoveLine> moveLines = new ArrayList<>();
+      LocalDate localDate = null;
+      String exportAgressoRef = null;
+      Long accountId = null;
+      int sequence = 1;
+
+      while (moveLineResults.next()) {
+        MoveLine moveLine = (MoveLine) moveLineResults.get(0);
+
+        if (!moveLine.getDate().equals(localDate)
+            || !moveLine.getMove().getExportNumber().equals(exportAgressoRef)
+            || !moveLine.getAccount().getId().equals(accountId)) {
+
+          sequence =
+              this.writeFile2MoveLines(csvWriter, moveLines, companyCode, typeSelect, sequence);
+          moveLines.clear();
+
+          if (!moveLine.getDate().equals(localDate)
+              || !moveLine.getMove().getExportNumber().equals(exportAgressoRef)) {
+            sequence = 1;
+            JPA.clear();
+            moveLine = moveLineRepo.find(moveLine.getId());
           }
+
+          localDate = moveLine.getDate();
+          exportAgressoRef = moveLine.getMove().getExportNumber();
+          accountId = moveLine.getAccount().getId();
         }
+
+        moveLines.add(moveLine);
       }
+
+      this.writeFile2MoveLines(csvWriter, moveLines, companyCode, typeSelect, sequence);
+    } finally {
+      moveLineResults.close();
+      csvWriter.close();
     }
 
-    writeMoveLineToCsvFile(company, fileName, allMoveLineData, accountingReport);
-    // Utilisé pour le debuggage
-    //			CsvTool.csvWriter(filePath, fileName, '|',  this.createHeaderForDetailFile(typeSelect),
-    // allMoveLineData);
+    this.attachExportFile(path, accountingReport);
+  }
+
+  /**
+   * Write the consolidated lines of an account for an export number and a date in the details
+   * file.
+   *
+   * @return the next sequence of the export number
+   */
+  protected int writeFile2MoveLines(
+      CSVWriter csvWriter,
+      List<MoveLine> moveLines,
+      String companyCode,
+      int typeSelect,
+      int sequence) {
+
+    if (moveLines.isEmpty()) {
+      return sequence;
+    }
+
+    log.debug("movelines  : {} ", moveLines);
+
+    String accountCode = moveLines.get(0).getAccount().getCode();
+
+    List<MoveLine> moveLineList = moveLineService.consolidateMoveLines(moveLines);
+
+    List<MoveLine> sortMoveLineList = this.sortMoveLineByDebitCredit(moveLineList);
+
+    for (MoveLine moveLine3 : sortMoveLineList) {
+
+      Journal journal = moveLine3.getMove().getJournal();
+      LocalDate date = moveLine3.getDate();
+      String items[] = null;
+
+      if (typeSelect == 9) {
+        items = new String[13];
+      } else {
+        items = new String[12];
+      }
+
+      items[0] = companyCode;
+      items[1] = journal.getExportCode();
+      items[2] = moveLine3.getMove().getExportNumber();
+      items[3] = String.format("%s", sequence);
+      sequence++;
+      items[4] = accountCode;
+
+      BigDecimal totAmt = moveLine3.getCredit().subtract(moveLine3.getDebit());
+      String moveLineSign = "C";
+      if (totAmt.compareTo(BigDecimal.ZERO) == -1) {
+        moveLineSign = "D";
+        totAmt = totAmt.negate();
+      }
+      items[5] = moveLineSign;
+      items[6] = totAmt.toString();
+
+      String analyticAccounts = "";
+      for (AnalyticMoveLine analyticDistributionLine : moveLine3.getAnalyticMoveLineList()) {
+        analyticAccounts =
+            analyticAccounts + analyticDistributionLine.getAnalyticAccount().getCode() + "/";
+      }
+
+      if (typeSelect == 9) {
+        items[7] = "";
+        items[8] = analyticAccounts;
+        items[9] =
+            String.format(
+                "%s DU %s",
+                journal.getCode(), date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+      } else {
+        items[7] = analyticAccounts;
+        items[8] =
+            String.format(
+                "%s DU %s",
+                journal.getCode(), date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+      }
+
+      csvWriter.writeNext(items);
+    }
+
+    return sequence;
   }
 
   private void writeMoveLineToCsvFile(
@@ -1459,6 +1200,13 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       List<String[]> allMoveData,
       AccountingReport accountingReport)
       throws AxelorException, IOException {
+    Path path = this.getExportFilePath(company, fileName);
+    CsvTool.csvWriter(
+        path.getParent().toString(), path.getFileName().toString(), '|', null, allMoveData);
+    this.attachExportFile(path, accountingReport);
+  }
+
+  protected Path getExportFilePath(Company company, String fileName) throws AxelorException {
     String filePath = accountConfigService.getAccountConfig(company).getExportPath();
     if (filePath == null) {
       filePath = Files.createTempDir().getAbsolutePath();
@@ -1466,10 +1214,13 @@ public class MoveLineExportServiceImpl implements MoveLineExportService {
       new File(filePath).mkdirs();
     }
     log.debug("Full path to export : {}{}", filePath, fileName);
-    CsvTool.csvWriter(filePath, fileName, '|', null, allMoveData);
-    Path path = Paths.get(filePath, fileName);
+    return Paths.get(filePath, fileName);
+  }
+
+  protected void attachExportFile(Path path, AccountingReport accountingReport)
+      throws IOException {
     try (InputStream is = new FileInputStream(path.toFile())) {
-      Beans.get(MetaFiles.class).attach(is, fileName, accountingReport);
+      Beans.get(MetaFiles.class).attach(is, path.getFileName().toString(), accountingReport);
     }
   }
 
@@ -0,0 +1,601 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.Move;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.PartnerBalance;
+import com.axelor.apps.account.db.repo.AccountRepository;
+import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.account.db.repo.PartnerBalanceRepository;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Partner;
+import com.axelor.apps.base.db.repo.CompanyRepository;
+import com.axelor.apps.base.db.repo.PartnerRepository;
+import com.axelor.db.JPA;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.FlushModeType;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Running balances of the partners, by company and account. The balance of a partner is the amount
+ * remaining of its debit move lines minus the amount remaining of its credit move lines, for the
+ * daybook and validated moves which are not ignored in accounting.
+ *
+ * <p>The balances are updated with the changes of the move lines: the amount of a move line is
+ * removed before it is changed and added again after, so that a change of status, of amount paid,
+ * of partner or of account is taken into account.
+ */
+public class PartnerBalanceService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected PartnerBalanceRepository partnerBalanceRepo;
+  protected PartnerRepository partnerRepo;
+  protected CompanyRepository companyRepo;
+  protected AccountRepository accountRepo;
+
+  @Inject
+  public PartnerBalanceService(
+      PartnerBalanceRepository partnerBalanceRepo,
+      PartnerRepository partnerRepo,
+      CompanyRepository companyRepo,
+      AccountRepository accountRepo) {
+
+    this.partnerBalanceRepo = partnerBalanceRepo;
+    this.partnerRepo = partnerRepo;
+    this.companyRepo = companyRepo;
+    this.accountRepo = accountRepo;
+  }
+
+  /**
+   * Get the balance of a partner for a company, on the accounts used for the partner balances.
+   *
+   * <p>The balances of a partner are all created with the first change of its move lines, and
+   * the ones of the partners without changes since are created by {@link
+   * #checkAllBalances(boolean)}. Until then, the balance is computed from the move lines.
+   *
+   * @param partner
+   * @param company
+   * @return the balance
+   */
+  public BigDecimal getBalance(Partner partner, Company company) {
+
+    Object[] result =
+        (Object[])
+            JPA.em()
+                .createQuery(
+                    "SELECT SUM(CASE WHEN account.useForPartnerBalance = true "
+                        + "THEN self.balance ELSE 0 END), COUNT(self.id) "
+                        + "FROM PartnerBalance self JOIN self.account account "
+                        + "WHERE self.partner = :partner AND self.company = :company")
+                .setParameter("partner", partner)
+                .setParameter("company", company)
+                .getSingleResult();
+
+    if ((Long) result[1] > 0) {
+      return (BigDecimal) result[0];
+    }
+
+    BigDecimal balance = BigDecimal.ZERO;
+
+    for (Map.Entry<Pair<Long, Long>, BigDecimal> entry :
+        this.computeBalanceMap(company, partner, null).entrySet()) {
+      if (accountRepo.find(entry.getKey().getRight()).getUseForPartnerBalance()) {
+        balance = balance.add(entry.getValue());
+      }
+    }
+
+    return balance;
+  }
+
+  /**
+   * Get the amount of a move line in the balance of its partner.
+   *
+   * @param moveLine
+   * @return the amount remaining, negated for a credit, or zero if the move line is not part of a
+   *     partner balance.
+   */
+  public BigDecimal getBalanceAmount(MoveLine moveLine) {
+
+    Move move = moveLine.getMove();
+
+    if (moveLine.getPartner() == null
+        || moveLine.getAccount() == null
+        || move == null
+        || move.getCompany() == null
+        || move.getIgnoreInAccountingOk()
+        || (move.getStatusSelect() != MoveRepository.STATUS_DAYBOOK
+            && move.getStatusSelect() != MoveRepository.STATUS_VALIDATED)
+        || moveLine.getAmountRemaining().signum() <= 0) {
+      return BigDecimal.ZERO;
+    }
+
+    if (moveLine.getDebit().signum() > 0) {
+      return moveLine.getAmountRemaining();
+    }
+    if (moveLine.getCredit().signum() > 0) {
+      return moveLine.getAmountRemaining().negate();
+    }
+    return BigDecimal.ZERO;
+  }
+
+  /**
+   * Remove the amount of the move lines of a move from the balances, before changing the move.
+   *
+   * <p>The amounts are the persisted ones, the move lines may already have been changed in the
+   * form.
+   *
+   * @param move
+   */
+  public void removeMove(Move move) {
+    if (move.getId() != null) {
+      this.updateBalances(this.getPersistedBalanceAmountMap(move), false);
+    }
+  }
+
+  /**
+   * Add the amount of the move lines of a move to the balances, after changing the move.
+   *
+   * @param move
+   */
+  public void addMove(Move move) {
+    if (move.getMoveLineList() != null) {
+      this.addMoveLines(move.getMoveLineList());
+    }
+  }
+
+  /**
+   * Remove the amount of move lines from the balances of their partners, before changing the move
+   * lines.
+   *
+   * @param moveLineList
+   */
+  public void removeMoveLines(Collection<MoveLine> moveLineList) {
+    this.updateBalances(this.getBalanceAmountMap(moveLineList, true), false);
+  }
+
+  /**
+   * Add the amount of move lines to the balances of their partners, after changing the move lines.
+   *
+   * @param moveLineList
+   */
+  public void addMoveLines(Collection<MoveLine> moveLineList) {
+    this.updateBalances(this.getBalanceAmountMap(moveLineList, false), true);
+  }
+
+  protected Map<Triple<Partner, Company, Account>, BigDecimal> getBalanceAmountMap(
+      Collection<MoveLine> moveLineList, boolean negate) {
+
+    Map<Triple<Partner, Company, Account>, BigDecimal> amountMap = new LinkedHashMap<>();
+
+    for (MoveLine moveLine : moveLineList) {
+      BigDecimal amount = this.getBalanceAmount(moveLine);
+      if (amount.signum() != 0) {
+        Triple<Partner, Company, Account> key =
+            Triple.of(
+                moveLine.getPartner(), moveLine.getMove().getCompany(), moveLine.getAccount());
+        amountMap.merge(key, negate ? amount.negate() : amount, BigDecimal::add);
+      }
+    }
+
+    return amountMap;
+  }
+
+  /**
+   * Get the amounts of the move lines of a move in the balances, as they are in database, without
+   * flushing the changes of the move.
+   */
+  @SuppressWarnings("unchecked")
+  protected Map<Triple<Partner, Company, Account>, BigDecimal> getPersistedBalanceAmountMap(
+      Move move) {
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.partner.id, self.move.company.id, self.account.id, "
+                    + "SUM(CASE WHEN self.debit > 0 THEN self.amountRemaining "
+                    + "ELSE 0 - self.amountRemaining END) "
+                    + "FROM MoveLine self "
+                    + "WHERE self.move.id = :moveId "
+                    + "AND self.move.ignoreInAccountingOk = false "
+                    + "AND self.move.statusSelect IN (:statusDaybook, :statusValidated) "
+                    + "AND self.amountRemaining > 0 AND (self.debit > 0 OR self.credit > 0) "
+                    + "GROUP BY self.partner.id, self.move.company.id, self.account.id")
+            .setParameter("moveId", move.getId())
+            .setParameter("statusDaybook", MoveRepository.STATUS_DAYBOOK)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+
+    Map<Triple<Partner, Company, Account>, BigDecimal> amountMap = new LinkedHashMap<>();
+
+    for (Object[] result : resultList) {
+      amountMap.put(
+          Triple.of(
+              partnerRepo.find((Long) result[0]),
+              companyRepo.find((Long) result[1]),
+              accountRepo.find((Long) result[2])),
+          ((BigDecimal) result[3]).negate());
+    }
+
+    return amountMap;
+  }
+
+  /**
+   * Add amounts to balances, creating the missing balances first, in the current transaction.
+   *
+   * <p>A missing balance is created from the move lines as they are in the current transaction:
+   * before the change of the move lines, their amounts are part of it and are removed after, and
+   * after the change, the changes are flushed to be part of it and the amounts are not added
+   * again.
+   *
+   * @param amountMap the amounts by partner, company and account
+   * @param changed whether the move lines are already changed
+   */
+  @Transactional
+  protected void updateBalances(
+      Map<Triple<Partner, Company, Account>, BigDecimal> amountMap, boolean changed) {
+
+    Set<Triple<Partner, Company, Account>> createdKeySet = new HashSet<>();
+
+    for (Map.Entry<Triple<Partner, Company, Account>, BigDecimal> entry : amountMap.entrySet()) {
+      Partner partner = entry.getKey().getLeft();
+      Company company = entry.getKey().getMiddle();
+      Account account = entry.getKey().getRight();
+      BigDecimal amount = entry.getValue();
+
+      if (amount.signum() == 0
+          || (changed && createdKeySet.contains(entry.getKey()))
+          || this.addToBalance(partner, company, account, amount) > 0) {
+        continue;
+      }
+
+      if (changed) {
+        JPA.flush();
+      }
+      createdKeySet.addAll(this.createMissingBalances(partner, company, account));
+
+      if ((!changed || !createdKeySet.contains(entry.getKey()))
+          && this.addToBalance(partner, company, account, amount) == 0) {
+        throw new IllegalStateException(
+            String.format(
+                "Missing balance for partner %s, company %s and account %s",
+                partner.getId(), company.getCode(), account.getCode()));
+      }
+    }
+  }
+
+  /**
+   * Create the missing balances of a partner from its move lines as they are in the current
+   * transaction, without flushing it. If the partner has no balance yet for the company, the
+   * balances of all its accounts are created, so that they are all kept up to date from then on.
+   *
+   * <p>The balances are inserted with an upsert: a balance created by a concurrent transaction is
+   * kept, and the amounts of the current transaction are added to it.
+   *
+   * @param partner
+   * @param company
+   * @param account
+   * @return the keys of the balances created
+   */
+  protected Set<Triple<Partner, Company, Account>> createMissingBalances(
+      Partner partner, Company company, Account account) {
+
+    Long balanceCount =
+        (Long)
+            JPA.em()
+                .createQuery(
+                    "SELECT COUNT(self.id) FROM PartnerBalance self "
+                        + "WHERE self.partner = :partner AND self.company = :company")
+                .setParameter("partner", partner)
+                .setParameter("company", company)
+                .setFlushMode(FlushModeType.COMMIT)
+                .getSingleResult();
+
+    Set<Triple<Partner, Company, Account>> createdKeySet = new HashSet<>();
+
+    List<Long> accountIdList =
+        this.insertBalances(partner, company, balanceCount == 0 ? null : account);
+
+    for (Long accountId : accountIdList) {
+      createdKeySet.add(Triple.of(partner, company, accountRepo.find(accountId)));
+    }
+
+    // the account may have no move line in database yet
+    if (this.upsertBalance(partner, company, account, BigDecimal.ZERO, false) > 0) {
+      createdKeySet.add(Triple.of(partner, company, account));
+    }
+
+    return createdKeySet;
+  }
+
+  /**
+   * Insert the balances of a partner computed from its move lines, except the existing ones.
+   *
+   * @param partner
+   * @param company
+   * @param account the account, or null for all the accounts
+   * @return the ids of the accounts of the balances inserted
+   */
+  @SuppressWarnings("unchecked")
+  protected List<Long> insertBalances(Partner partner, Company company, Account account) {
+
+    javax.persistence.Query query =
+        JPA.em()
+            .createNativeQuery(
+                "INSERT INTO account_partner_balance "
+                    + "(id, version, created_on, partner, company, account, balance) "
+                    + "SELECT nextval('account_partner_balance_seq'), 0, now(), "
+                    + "ml.partner, move.company, ml.account, "
+                    + "SUM(CASE WHEN ml.debit > 0 THEN ml.amount_remaining "
+                    + "ELSE 0 - ml.amount_remaining END) "
+                    + "FROM account_move_line ml JOIN account_move move ON ml.move = move.id "
+                    + "WHERE ml.partner = :partner AND move.company = :company "
+                    + (account != null ? "AND ml.account = :account " : "")
+                    + "AND move.ignore_in_accounting_ok = false "
+                    + "AND move.status_select IN (:statusDaybook, :statusValidated) "
+                    + "AND ml.amount_remaining > 0 AND (ml.debit > 0 OR ml.credit > 0) "
+                    + "GROUP BY ml.partner, move.company, ml.account "
+                    + "ON CONFLICT (partner, company, account) DO NOTHING "
+                    + "RETURNING account")
+            .setParameter("partner", partner.getId())
+            .setParameter("company", company.getId())
+            .setParameter("statusDaybook", MoveRepository.STATUS_DAYBOOK)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED)
+            .setFlushMode(FlushModeType.COMMIT);
+
+    if (account != null) {
+      query.setParameter("account", account.getId());
+    }
+
+    List<Long> accountIdList = new ArrayList<>();
+
+    for (Object accountId : query.getResultList()) {
+      accountIdList.add(((Number) accountId).longValue());
+    }
+
+    return accountIdList;
+  }
+
+  /**
+   * Insert a balance, or replace the existing one if asked.
+   *
+   * @return the number of balances inserted or replaced
+   */
+  protected int upsertBalance(
+      Partner partner, Company company, Account account, BigDecimal balance, boolean replace) {
+
+    return JPA.em()
+        .createNativeQuery(
+            "INSERT INTO account_partner_balance "
+                + "(id, version, created_on, partner, company, account, balance) "
+                + "VALUES (nextval('account_partner_balance_seq'), 0, now(), "
+                + ":partner, :company, :account, :balance) "
+                + "ON CONFLICT (partner, company, account) "
+                + (replace ? "DO UPDATE SET balance = EXCLUDED.balance" : "DO NOTHING"))
+        .setParameter("partner", partner.getId())
+        .setParameter("company", company.getId())
+        .setParameter("account", account.getId())
+        .setParameter("balance", balance)
+        .setFlushMode(FlushModeType.COMMIT)
+        .executeUpdate();
+  }
+
+  protected int addToBalance(Partner partner, Company company, Account account, BigDecimal amount) {
+    return JPA.em()
+        .createQuery(
+            "UPDATE PartnerBalance self SET self.balance = self.balance + :amount "
+                + "WHERE self.partner = :partner AND self.company = :company "
+                + "AND self.account = :account")
+        .setParameter("amount", amount)
+        .setParameter("partner", partner)
+        .setParameter("company", company)
+        .setParameter("account", account)
+        .executeUpdate();
+  }
+
+  /**
+   * Compute again all the balances of a partner for a company from its move lines.
+   *
+   * @param partner
+   * @param company
+   */
+  @Transactional
+  public void rebuildBalances(Partner partner, Company company) {
+
+    Map<Pair<Long, Long>, BigDecimal> balanceMap = this.computeBalanceMap(company, partner, null);
+
+    for (PartnerBalance partnerBalance :
+        partnerBalanceRepo
+            .all()
+            .filter("self.partner = ?1 AND self.company = ?2", partner, company)
+            .fetch()) {
+      BigDecimal balance = balanceMap.remove(this.getKey(partnerBalance));
+      this.setBalance(partnerBalance, balance != null ? balance : BigDecimal.ZERO);
+    }
+
+    for (Map.Entry<Pair<Long, Long>, BigDecimal> entry : balanceMap.entrySet()) {
+      this.setMissingBalance(
+          partner, company, accountRepo.find(entry.getKey().getRight()), entry.getValue());
+    }
+  }
+
+  /**
+   * Compare the balances of a company with its move lines, and fix the wrong ones if asked.
+   *
+   * @param company
+   * @param repair whether the wrong balances should be fixed
+   * @return the number of wrong or missing balances
+   */
+  @Transactional
+  public int checkBalances(Company company, boolean repair) {
+
+    Map<Pair<Long, Long>, BigDecimal> balanceMap = this.computeBalanceMap(company, null, null);
+    int errorCount = 0;
+
+    for (PartnerBalance partnerBalance :
+        partnerBalanceRepo.all().filter("self.company = ?1", company).fetch()) {
+
+      BigDecimal balance = balanceMap.remove(this.getKey(partnerBalance));
+      if (balance == null) {
+        balance = BigDecimal.ZERO;
+      }
+
+      if (partnerBalance.getBalance().compareTo(balance) != 0) {
+        errorCount++;
+        log.warn(
+            "Wrong balance for partner {}, company {} and account {}: {} instead of {}",
+            partnerBalance.getPartner().getId(),
+            company.getCode(),
+            partnerBalance.getAccount().getCode(),
+            partnerBalance.getBalance(),
+            balance);
+        if (repair) {
+          this.setBalance(partnerBalance, balance);
+        }
+      }
+    }
+
+    for (Map.Entry<Pair<Long, Long>, BigDecimal> entry : balanceMap.entrySet()) {
+      if (entry.getValue().signum() == 0) {
+        continue;
+      }
+      errorCount++;
+      log.warn(
+          "Missing balance for partner {}, company {} and account {}: {}",
+          entry.getKey().getLeft(),
+          company.getCode(),
+          entry.getKey().getRight(),
+          entry.getValue());
+      if (repair) {
+        this.setMissingBalance(
+            partnerRepo.find(entry.getKey().getLeft()),
+            company,
+            accountRepo.find(entry.getKey().getRight()),
+            entry.getValue());
+      }
+    }
+
+    return errorCount;
+  }
+
+  /**
+   * Check the balances of all the companies.
+   *
+   * @param repair whether the wrong balances should be fixed
+   * @return the number of wrong or missing balances
+   */
+  public int checkAllBalances(boolean repair) {
+
+    int errorCount = 0;
+
+    for (Company company : companyRepo.all().order("id").fetch()) {
+      errorCount += this.checkBalances(companyRepo.find(company.getId()), repair);
+      JPA.clear();
+    }
+
+    log.info("Partner balances checked, {} wrong or missing balances", errorCount);
+
+    return errorCount;
+  }
+
+  /**
+   * Compute the balances of a company from its move lines, by partner and account.
+   *
+   * @param company
+   * @param partner the partner, or null for all the partners
+   * @param account the account, or null for all the accounts
+   * @return the balances by partner id and account id
+   */
+  @SuppressWarnings("unchecked")
+  protected Map<Pair<Long, Long>, BigDecimal> computeBalanceMap(
+      Company company, Partner partner, Account account) {
+
+    String queryStr =
+        "SELECT self.partner.id, self.account.id, "
+            + "SUM(CASE WHEN self.debit > 0 THEN self.amountRemaining "
+            + "ELSE 0 - self.amountRemaining END) "
+            + "FROM MoveLine self "
+            + "WHERE self.move.company = :company AND self.partner IS NOT NULL "
+            + "AND self.move.ignoreInAccountingOk = false "
+            + "AND self.move.statusSelect IN (:statusDaybook, :statusValidated) "
+            + "AND self.amountRemaining > 0 AND (self.debit > 0 OR self.credit > 0)";
+
+    if (partner != null) {
+      queryStr += " AND self.partner = :partner";
+    }
+    if (account != null) {
+      queryStr += " AND self.account = :account";
+    }
+
+    javax.persistence.Query query =
+        JPA.em()
+            .createQuery(queryStr + " GROUP BY self.partner.id, self.account.id")
+            .setParameter("company", company)
+            .setParameter("statusDaybook", MoveRepository.STATUS_DAYBOOK)
+            .setParameter("statusValidated", MoveRepository.STATUS_VALIDATED);
+
+    if (partner != null) {
+      query.setParameter("partner", partner);
+    }
+    if (account != null) {
+      query.setParameter("account", account);
+    }
+
+    Map<Pair<Long, Long>, BigDecimal> balanceMap = new HashMap<>();
+
+    for (Object[] result : (List<Object[]>) query.getResultList()) {
+      balanceMap.put(Pair.of((Long) result[0], (Long) result[1]), (BigDecimal) result[2]);
+    }
+
+    return balanceMap;
+  }
+
+  protected Pair<Long, Long> getKey(PartnerBalance partnerBalance) {
+    return Pair.of(partnerBalance.getPartner().getId(), partnerBalance.getAccount().getId());
+  }
+
+  protected void setMissingBalance(
+      Partner partner, Company company, Account account, BigDecimal balance) {
+    this.upsertBalance(partner, company, account, balance, true);
+  }
+
+  protected void setBalance(PartnerBalance partnerBalance, BigDecimal balance) {
+    JPA.em()
+        .createQuery("UPDATE PartnerBalance self SET self.balance = :balance WHERE self.id = :id")
+        .setParameter("balance", balance)
+        .setParameter("id", partnerBalance.getId())
+        .executeUpdate();
+  }
+}
@@ -45,6 +45,7 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +62,7 @@ public class ReconcileServiceImpl implements ReconcileService {
   protected ReconcileSequenceService reconcileSequenceService;
   protected InvoicePaymentCreateService invoicePaymentCreateService;
   protected InvoicePaymentCancelService invoicePaymentCancelService;
+  protected PartnerBalanceService partnerBalanceService;
 
   @Inject
   public ReconcileServiceImpl(
@@ -71,7 +73,8 @@ public class ReconcileServiceImpl implements ReconcileService {
       MoveAdjustementService moveAdjustementService,
       ReconcileSequenceService reconcileSequenceService,
       InvoicePaymentCancelService invoicePaymentCancelService,
-      InvoicePaymentCreateService invoicePaymentCreateService) {
+      InvoicePaymentCreateService invoicePaymentCreateService,
+      PartnerBalanceService partnerBalanceService) {
 
     this.moveToolService = moveToolService;
     this.accountCustomerService = accountCustomerService;
@@ -81,6 +84,7 @@ public class ReconcileServiceImpl implements ReconcileService {
     this.reconcileSequenceService = reconcileSequenceService;
     this.invoicePaymentCancelService = invoicePaymentCancelService;
     this.invoicePaymentCreateService = invoicePaymentCreateService;
+    this.partnerBalanceService = partnerBalanceService;
   }
 
   /**
@@ -146,10 +150,14 @@ public class ReconcileServiceImpl implements ReconcileService {
     MoveLine debitMoveLine = reconcile.getDebitMoveLine();
     MoveLine creditMoveLine = reconcile.getCreditMoveLine();
 
+    partnerBalanceService.removeMoveLines(Arrays.asList(debitMoveLine, creditMoveLine));
+
     // Add the reconciled amount to the reconciled amount in the move line
     creditMoveLine.setAmountPaid(creditMoveLine.getAmountPaid().add(reconcile.getAmount()));
     debitMoveLine.setAmountPaid(debitMoveLine.getAmountPaid().add(reconcile.getAmount()));
 
+    partnerBalanceService.addMoveLines(Arrays.asList(debitMoveLine, creditMoveLine));
+
     reconcile = reconcileRepository.save(reconcile);
 
     reconcile.setStatusSelect(ReconcileRepository.STATUS_CONFIRMED);
@@ -376,12 +384,16 @@ public class ReconcileServiceImpl implements ReconcileService {
     MoveLine debitMoveLine = reconcile.getDebitMoveLine();
     MoveLine creditMoveLine = reconcile.getCreditMoveLine();
 
+    partnerBalanceService.removeMoveLines(Arrays.asList(debitMoveLine, creditMoveLine));
+
     // Change the state
     reconcile.setStatusSelect(ReconcileRepository.STATUS_CANCELED);
     // Add the reconciled amount to the reconciled amount in the move line
     creditMoveLine.setAmountPaid(creditMoveLine.getAmountPaid().subtract(reconcile.getAmount()));
     debitMoveLine.setAmountPaid(debitMoveLine.getAmountPaid().subtract(reconcile.getAmount()));
 
+    partnerBalanceService.addMoveLines(Arrays.asList(debitMoveLine, creditMoveLine));
+
     reconcileRepository.save(reconcile);
 
     // Update amount remaining on invoice or refund
@@ -69,50 +69,41 @@ public class BatchAccountCustomer extends BatchStrategy {
     boolean updateDueDebtRecoveryCustAccountOk =
         accountingBatch.getUpdateDueDebtRecoveryCustAccountOk();
 
-    List<AccountingSituation> accountingSituationList =
-        (List<AccountingSituation>)
-            accountingSituationRepo.all().filter("self.company = ?1", company).fetch();
-    int i = 0;
-    JPA.clear();
-    for (AccountingSituation accountingSituation : accountingSituationList) {
-      try {
-
-        accountingSituation =
-            accountCustomerService.updateAccountingSituationCustomerAccount(
-                accountingSituationRepo.find(accountingSituation.getId()),
-                updateCustAccountOk,
-                updateDueCustAccountOk,
-                updateDueDebtRecoveryCustAccountOk);
-
-        if (accountingSituation != null) {
-          this.updateAccountingSituation(accountingSituation);
-          i++;
-        }
-
-      } catch (Exception e) {
-
-        TraceBackService.trace(
-            new Exception(
-                String.format(
-                    I18n.get(IExceptionMessage.BATCH_ACCOUNT_1),
-                    accountingSituationRepo.find(accountingSituation.getId()).getName()),
-                e),
-            IException.ACCOUNT_CUSTOMER,
-            batch.getId());
-
-        incrementAnomaly();
-
-        log.error(
-            "Bug(Anomalie) généré(e) pour la situation compable {}",
-            accountingSituationRepo.find(accountingSituation.getId()).getName());
-
-      } finally {
-
-        if (i % 1 == 0) {
-          JPA.clear();
-        }
-      }
-    }
+    processByChunk(
+        AccountingSituation.class,
+        accountingSituation -> {
+          try {
+
+            accountingSituation =
+                accountCustomerService.updateAccountingSituationCustomerAccount(
+                    accountingSituation,
+                    updateCustAccountOk,
+                    updateDueCustAccountOk,
+                    updateDueDebtRecoveryCustAccountOk);
+
+            if (accountingSituation != null) {
+              this.updateAccountingSituation(accountingSituation);
+            }
+
+          } catch (Exception e) {
+
+            TraceBackService.trace(
+                new Exception(
+                    String.format(
+                        I18n.get(IExceptionMessage.BATCH_ACCOUNT_1), accountingSituation.getName()),
+                    e),
+                IException.ACCOUNT_CUSTOMER,
+                batch.getId());
+
+            incrementAnomaly();
+
+            log.error(
+                "Bug(Anomalie) généré(e) pour la situation compable {}",
+                accountingSituation.getName());
+          }
+        },
+        "self.company = ?1",
+        company);
   }
 
   /**
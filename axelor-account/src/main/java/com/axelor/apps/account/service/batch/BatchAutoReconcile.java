@@ -0,0 +1,91 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.batch;
+
+import com.axelor.apps.account.db.AccountingBatch;
+import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.move.MoveLineAutoReconcileService;
+import com.axelor.apps.account.service.move.MoveLineAutoReconcileService.AutoReconcileResult;
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.google.inject.Inject;
+
+/** Reconcile automatically the move lines of the company of the batch. */
+public class BatchAutoReconcile extends AbstractBatch {
+
+  protected MoveLineAutoReconcileService moveLineAutoReconcileService;
+
+  protected AutoReconcileResult result;
+
+  @Inject
+  public BatchAutoReconcile(MoveLineAutoReconcileService moveLineAutoReconcileService) {
+    this.moveLineAutoReconcileService = moveLineAutoReconcileService;
+  }
+
+  @Override
+  protected void process() {
+
+    AccountingBatch accountingBatch = batch.getAccountingBatch();
+
+    try {
+      result =
+          moveLineAutoReconcileService.autoReconcile(
+              accountingBatch.getCompany(),
+              null,
+              accountingBatch.getMatchAmountAndOriginOk()
+                  ? MoveLineAutoReconcileService.AMOUNT_AND_REFERENCE_STRATEGY_LIST
+                  : MoveLineAutoReconcileService.DEFAULT_STRATEGY_LIST,
+              getThreadCount());
+
+      for (int i = 0; i < result.getGroupCount() - result.getAnomalyCount(); i++) {
+        incrementDone();
+      }
+      for (int i = 0; i < result.getAnomalyCount(); i++) {
+        incrementAnomaly();
+      }
+    } catch (Exception e) {
+      incrementAnomaly();
+      TraceBackService.trace(e, null, batch.getId());
+    }
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s " + I18n.get(IExceptionMessage.BATCH_AUTO_RECONCILE) + "\n", batch.getDone());
+
+    if (result != null) {
+      comment +=
+          String.format(
+              "\t* " + I18n.get(IExceptionMessage.BATCH_AUTO_RECONCILE_LINES) + "\n",
+              result.getMatchedCount(),
+              result.getUnmatchedCount());
+    }
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+
+    addComment(comment);
+    super.stop();
+  }
+}
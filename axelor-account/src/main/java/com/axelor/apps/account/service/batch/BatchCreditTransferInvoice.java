@@ -27,17 +27,17 @@ import com.axelor.apps.account.service.app.AppAccountService;
 import com.axelor.apps.account.service.payment.invoice.payment.InvoicePaymentCreateService;
 import com.axelor.apps.base.db.BankDetails;
 import com.axelor.apps.base.db.repo.BankDetailsRepository;
-import com.axelor.db.JPA;
-import com.axelor.db.Query;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,8 +68,7 @@ public abstract class BatchCreditTransferInvoice extends BatchStrategy {
    * @return
    */
   protected List<InvoicePayment> processInvoices(int operationTypeSelect) {
-    List<InvoicePayment> doneList = new ArrayList<>();
-    List<Long> anomalyList = Lists.newArrayList(0L); // Can't pass an empty collection to the query
+    List<InvoicePayment> doneList = Collections.synchronizedList(new ArrayList<>());
     AccountingBatch accountingBatch = batch.getAccountingBatch();
     boolean manageMultiBanks = appAccountService.getAppBase().getManageMultiBanks();
     StringBuilder filter = new StringBuilder();
@@ -80,8 +79,7 @@ public abstract class BatchCreditTransferInvoice extends BatchStrategy {
             + "AND self.hasPendingPayments = FALSE "
             + "AND self.company = :company "
             + "AND self.dueDate <= :dueDate "
-            + "AND self.paymentMode = :paymentMode "
-            + "AND self.id NOT IN (:anomalyList)");
+            + "AND self.paymentMode = :paymentMode");
 
     if (manageMultiBanks) {
       filter.append(" AND self.companyBankDetails IN (:bankDetailsSet)");
@@ -91,16 +89,12 @@ public abstract class BatchCreditTransferInvoice extends BatchStrategy {
       filter.append(" AND self.currency = :currency");
     }
 
-    Query<Invoice> query =
-        invoiceRepo
-            .all()
-            .filter(filter.toString())
-            .bind("operationTypeSelect", operationTypeSelect)
-            .bind("statusSelect", InvoiceRepository.STATUS_VENTILATED)
-            .bind("company", accountingBatch.getCompany())
-            .bind("dueDate", accountingBatch.getDueDate())
-            .bind("paymentMode", accountingBatch.getPaymentMode())
-            .bind("anomalyList", anomalyList);
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("operationTypeSelect", operationTypeSelect);
+    bindings.put("statusSelect", InvoiceRepository.STATUS_VENTILATED);
+    bindings.put("company", accountingBatch.getCompany());
+    bindings.put("dueDate", accountingBatch.getDueDate());
+    bindings.put("paymentMode", accountingBatch.getPaymentMode());
 
     if (manageMultiBanks) {
       Set<BankDetails> bankDetailsSet = Sets.newHashSet(accountingBatch.getBankDetails());
@@ -109,42 +103,36 @@ public abstract class BatchCreditTransferInvoice extends BatchStrategy {
         bankDetailsSet.addAll(accountingBatch.getCompany().getBankDetailsSet());
       }
 
-      query.bind("bankDetailsSet", bankDetailsSet);
+      bindings.put("bankDetailsSet", bankDetailsSet);
     }
 
     if (accountingBatch.getCurrency() != null) {
-      query.bind("currency", accountingBatch.getCurrency());
+      bindings.put("currency", accountingBatch.getCurrency());
     }
 
     BankDetailsRepository bankDetailsRepo = Beans.get(BankDetailsRepository.class);
-    BankDetails companyBankDetails = accountingBatch.getBankDetails();
-
-    for (List<Invoice> invoiceList;
-        !(invoiceList = query.fetch(FETCH_LIMIT)).isEmpty();
-        JPA.clear()) {
-      if (!JPA.em().contains(companyBankDetails)) {
-        companyBankDetails = bankDetailsRepo.find(companyBankDetails.getId());
-      }
-
-      for (Invoice invoice : invoiceList) {
-        try {
-          doneList.add(
-              invoicePaymentCreateService.createInvoicePayment(invoice, companyBankDetails));
-          incrementDone();
-        } catch (Exception ex) {
-          incrementAnomaly();
-          anomalyList.add(invoice.getId());
-          query.bind("anomalyList", anomalyList);
-          TraceBackService.trace(ex, IException.CREDIT_TRANSFER, batch.getId());
-          ex.printStackTrace();
-          log.error(
-              String.format(
-                  "Credit transfer batch for invoices: anomaly for invoice %s",
-                  invoice.getInvoiceId()));
-          break;
-        }
-      }
-    }
+    Long companyBankDetailsId = accountingBatch.getBankDetails().getId();
+
+    processByPartition(
+        Invoice.class,
+        invoice -> {
+          try {
+            doneList.add(
+                invoicePaymentCreateService.createInvoicePayment(
+                    invoice, bankDetailsRepo.find(companyBankDetailsId)));
+            incrementDone();
+          } catch (Exception ex) {
+            incrementAnomaly();
+            TraceBackService.trace(ex, IException.CREDIT_TRANSFER, batch.getId());
+            ex.printStackTrace();
+            log.error(
+                String.format(
+                    "Credit transfer batch for invoices: anomaly for invoice %s",
+                    invoice.getInvoiceId()));
+          }
+        },
+        filter.toString(),
+        bindings);
 
     return doneList;
   }
@@ -32,7 +32,6 @@ import com.axelor.apps.message.db.repo.MessageRepository;
 import com.axelor.db.EntityHelper;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
-import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
@@ -40,7 +39,6 @@ import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.google.inject.Inject;
 import java.lang.invoke.MethodHandles;
-import java.util.List;
 import javax.persistence.Table;
 import org.apache.commons.collections.CollectionUtils;
 import org.slf4j.Logger;
@@ -105,57 +103,40 @@ public class BatchDebtRecovery extends BatchStrategy {
   public void debtRecoveryPartner() {
     Company company = batch.getAccountingBatch().getCompany();
 
-    Query<Partner> query =
-        partnerRepository
-            .all()
-            .filter(
-                "self.isContact = false "
-                    + "AND :_company MEMBER OF self.companySet "
-                    + "AND self.accountingSituationList IS NOT EMPTY "
-                    + "AND self.isCustomer = true "
-                    + "AND self.id NOT IN ("
-                    + Beans.get(BlockingService.class)
-                        .listOfBlockedPartner(company, BlockingRepository.REMINDER_BLOCKING)
-                    + ")")
-            .bind("_company", company)
-            .order("id");
-
-    int offset = 0;
-    List<Partner> partnerList;
-
-    while (!(partnerList = query.fetch(FETCH_LIMIT, offset)).isEmpty()) {
-      findBatch();
-
-      for (Partner partner : partnerList) {
-        ++offset;
-
-        try {
-          boolean remindedOk = debtRecoveryService.debtRecoveryGenerate(partner, company);
-          if (remindedOk) {
-            DebtRecovery debtRecovery = debtRecoveryService.getDebtRecovery(partner, company);
-            addBatchToModel(debtRecovery);
+    processByChunk(
+        Partner.class,
+        partner -> {
+          try {
+            boolean remindedOk = debtRecoveryService.debtRecoveryGenerate(partner, company);
+            if (remindedOk) {
+              DebtRecovery debtRecovery = debtRecoveryService.getDebtRecovery(partner, company);
+              addBatchToModel(debtRecovery);
+            }
+            incrementDone(partner);
+          } catch (AxelorException e) {
+            TraceBackService.trace(
+                new AxelorException(
+                    e, e.getCategory(), I18n.get("Partner") + " %s", partner.getName()),
+                IException.DEBT_RECOVERY,
+                batch.getId());
+            incrementAnomaly(partner);
+          } catch (Exception e) {
+            TraceBackService.trace(
+                new Exception(String.format(I18n.get("Partner") + " %s", partner.getName()), e),
+                IException.DEBT_RECOVERY,
+                batch.getId());
+            incrementAnomaly(partner);
           }
-          incrementDone(partner);
-        } catch (AxelorException e) {
-          TraceBackService.trace(
-              new AxelorException(
-                  e, e.getCategory(), I18n.get("Partner") + " %s", partner.getName()),
-              IException.DEBT_RECOVERY,
-              batch.getId());
-          incrementAnomaly(partner);
-          break;
-        } catch (Exception e) {
-          TraceBackService.trace(
-              new Exception(String.format(I18n.get("Partner") + " %s", partner.getName()), e),
-              IException.DEBT_RECOVERY,
-              batch.getId());
-          incrementAnomaly(partner);
-          break;
-        }
-      }
-
-      JPA.clear();
-    }
+        },
+        "self.isContact = false "
+            + "AND ?1 MEMBER OF self.companySet "
+            + "AND self.accountingSituationList IS NOT EMPTY "
+            + "AND self.isCustomer = true "
+            + "AND self.id NOT IN ("
+            + Beans.get(BlockingService.class)
+                .listOfBlockedPartner(company, BlockingRepository.REMINDER_BLOCKING)
+            + ")",
+        company);
   }
 
   protected void incrementDone(Partner partner) {
@@ -187,50 +168,37 @@ public class BatchDebtRecovery extends BatchStrategy {
   }
 
   protected void generateMail() {
-    Query<DebtRecovery> query =
-        debtRecoveryRepository
-            .all()
-            .filter(":_batch MEMBER OF self.batchSet")
-            .bind("_batch", batch)
-            .order("id");
-
-    int offset = 0;
-    List<DebtRecovery> debtRecoveries;
-    while (!(debtRecoveries = query.fetch(FETCH_LIMIT, offset)).isEmpty()) {
-      int count = 0;
-      for (DebtRecovery debtRecovery : debtRecoveries) {
-        try {
-          DebtRecoveryHistory debtRecoveryHistory =
-              debtRecoveryActionService.getDebtRecoveryHistory(debtRecovery);
-          if (debtRecoveryHistory == null) {
-            continue;
-          }
-          if (CollectionUtils.isEmpty(
-              messageRepository
-                  .findByRelatedTo(
-                      Math.toIntExact(debtRecoveryHistory.getId()),
-                      DebtRecoveryHistory.class.getCanonicalName())
-                  .fetch())) {
-            debtRecoveryActionService.runMessage(debtRecovery);
+    processByChunk(
+        DebtRecovery.class,
+        debtRecovery -> {
+          try {
+            DebtRecoveryHistory debtRecoveryHistory =
+                debtRecoveryActionService.getDebtRecoveryHistory(debtRecovery);
+            if (debtRecoveryHistory == null) {
+              return;
+            }
+            if (CollectionUtils.isEmpty(
+                messageRepository
+                    .findByRelatedTo(
+                        Math.toIntExact(debtRecoveryHistory.getId()),
+                        DebtRecoveryHistory.class.getCanonicalName())
+                    .fetch())) {
+              debtRecoveryActionService.runMessage(debtRecovery);
+            }
+          } catch (Exception e) {
+            TraceBackService.trace(
+                new Exception(
+                    String.format(
+                        I18n.get("Tiers") + " %s",
+                        debtRecovery.getAccountingSituation().getPartner().getName()),
+                    e),
+                IException.REMINDER,
+                batch.getId());
+            incrementAnomaly();
           }
-        } catch (Exception e) {
-          TraceBackService.trace(
-              new Exception(
-                  String.format(
-                      I18n.get("Tiers") + " %s",
-                      debtRecovery.getAccountingSituation().getPartner().getName()),
-                  e),
-              IException.REMINDER,
-              batch.getId());
-          incrementAnomaly();
-          break;
-        } finally {
-          ++count;
-        }
-      }
-      offset += count;
-      JPA.clear();
-    }
+        },
+        "?1 MEMBER OF self.batchSet",
+        batch);
   }
 
   /**
@@ -25,10 +25,8 @@ import com.axelor.apps.account.service.FixedAssetLineService;
 import com.axelor.apps.base.service.administration.AbstractBatch;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
-import com.axelor.inject.Beans;
 import com.google.inject.Inject;
 import java.time.LocalDate;
-import java.util.List;
 
 public class BatchRealizeFixedAssetLine extends AbstractBatch {
 
@@ -41,26 +39,23 @@ public class BatchRealizeFixedAssetLine extends AbstractBatch {
 
   @Override
   protected void process() {
-    List<FixedAssetLine> fixedAssetLineList =
-        Beans.get(FixedAssetLineRepository.class)
-            .all()
-            .filter(
-                "self.statusSelect = ?1 and self.depreciationDate < ?2",
-                FixedAssetLineRepository.STATUS_PLANNED,
-                LocalDate.now())
-            .fetch();
-
-    for (FixedAssetLine fixedAssetLine : fixedAssetLineList) {
-      try {
-        if (fixedAssetLine.getFixedAsset().getStatusSelect() > FixedAssetRepository.STATUS_DRAFT) {
-          fixedAssetLineService.realize(fixedAssetLine);
-          incrementDone();
-        }
-      } catch (Exception e) {
-        incrementAnomaly();
-        TraceBackService.trace(e);
-      }
-    }
+    processByChunk(
+        FixedAssetLine.class,
+        fixedAssetLine -> {
+          try {
+            if (fixedAssetLine.getFixedAsset().getStatusSelect()
+                > FixedAssetRepository.STATUS_DRAFT) {
+              fixedAssetLineService.realize(fixedAssetLine);
+              incrementDone();
+            }
+          } catch (Exception e) {
+            incrementAnomaly();
+            TraceBackService.trace(e);
+          }
+        },
+        "self.statusSelect = ?1 and self.depreciationDate < ?2",
+        FixedAssetLineRepository.STATUS_PLANNED,
+        LocalDate.now());
   }
 
   @Override
@@ -20,7 +20,6 @@ package com.axelor.apps.account.service.invoice.generator.batch;
 import com.axelor.apps.account.db.Invoice;
 import com.axelor.apps.account.exception.IExceptionMessage;
 import com.axelor.apps.account.service.invoice.InvoiceService;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
@@ -43,35 +42,34 @@ public class BatchVentilation extends BatchWkf {
   @Override
   protected void process() {
 
-    for (Invoice invoice : invoices(batch.getInvoiceBatch(), true)) {
-
-      try {
-
-        invoiceService.ventilate(invoiceRepo.find(invoice.getId()));
-        updateInvoice(invoiceRepo.find(invoice.getId()));
-
-      } catch (AxelorException e) {
-
-        TraceBackService.trace(
-            new AxelorException(
-                e, e.getCategory(), I18n.get("Invoice") + " %s", invoice.getInvoiceId()),
-            IException.INVOICE_ORIGIN,
-            batch.getId());
-        incrementAnomaly();
-
-      } catch (Exception e) {
-
-        TraceBackService.trace(
-            new Exception(String.format(I18n.get("Invoice") + " %s", invoice.getInvoiceId()), e),
-            IException.INVOICE_ORIGIN,
-            batch.getId());
-        incrementAnomaly();
-
-      } finally {
-
-        JPA.clear();
-      }
-    }
+    processInvoices(
+        batch.getInvoiceBatch(),
+        true,
+        invoice -> {
+          try {
+
+            invoiceService.ventilate(invoice);
+            updateInvoice(invoice);
+
+          } catch (AxelorException e) {
+
+            TraceBackService.trace(
+                new AxelorException(
+                    e, e.getCategory(), I18n.get("Invoice") + " %s", invoice.getInvoiceId()),
+                IException.INVOICE_ORIGIN,
+                batch.getId());
+            incrementAnomaly();
+
+          } catch (Exception e) {
+
+            TraceBackService.trace(
+                new Exception(
+                    String.format(I18n.get("Invoice") + " %s", invoice.getInvoiceId()), e),
+                IException.INVOICE_ORIGIN,
+                batch.getId());
+            incrementAnomaly();
+          }
+        });
   }
 
   @Override
@@ -24,8 +24,9 @@ import com.axelor.apps.account.service.invoice.InvoiceService;
 import com.axelor.inject.Beans;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,17 +40,29 @@ public abstract class BatchWkf extends BatchStrategy {
   }
 
   /**
-   * Récupérer la liste des factures à traiter.
+   * Process the invoices of the batch chunk by chunk : the selected ones or the ones matching the
+   * company and status of the batch.
    *
    * @param invoiceBatch Le batch de facturation concerné.
-   * @return Une liste de facture.
+   * @param processor The process to apply on each invoice.
    */
-  protected static Collection<? extends Invoice> invoices(InvoiceBatch invoiceBatch, boolean isTo) {
+  protected void processInvoices(
+      InvoiceBatch invoiceBatch, boolean isTo, Consumer<Invoice> processor) {
 
     if (invoiceBatch.getOnSelectOk()) {
-      return invoiceBatch.getInvoiceSet();
+      List<Long> invoiceIdList =
+          invoiceBatch.getInvoiceSet().stream().map(Invoice::getId).collect(Collectors.toList());
+
+      if (!invoiceIdList.isEmpty()) {
+        processByChunk(Invoice.class, processor, "self.id IN (?1)", invoiceIdList);
+      }
     } else {
-      return invoiceQuery(invoiceBatch, isTo);
+      processByChunk(
+          Invoice.class,
+          processor,
+          "self.company = ?1 AND self.statusSelect = ?2",
+          invoiceBatch.getCompany(),
+          isTo ? invoiceBatch.getToStatusSelect() : invoiceBatch.getFromStatusSelect());
     }
   }
 
@@ -21,6 +21,7 @@ import com.axelor.apps.account.db.Move;
 import com.axelor.apps.account.db.MoveLine;
 import com.axelor.apps.account.db.repo.MoveRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.PartnerBalanceService;
 import com.axelor.apps.account.service.config.AccountConfigService;
 import com.axelor.apps.base.db.Period;
 import com.axelor.apps.base.db.repo.PeriodRepository;
@@ -38,13 +39,17 @@ public class MoveCancelService {
 
   protected MoveRepository moveRepository;
   protected AccountConfigService accountConfigService;
+  protected PartnerBalanceService partnerBalanceService;
 
   @Inject
   public MoveCancelService(
-      AccountConfigService accountConfigService, MoveRepository moveRepository) {
+      AccountConfigService accountConfigService,
+      MoveRepository moveRepository,
+      PartnerBalanceService partnerBalanceService) {
 
     this.accountConfigService = accountConfigService;
     this.moveRepository = moveRepository;
+    this.partnerBalanceService = partnerBalanceService;
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -75,6 +80,8 @@ public class MoveCancelService {
           I18n.get(IExceptionMessage.MOVE_CANCEL_2));
     }
 
+    partnerBalanceService.removeMove(move);
+
     try {
 
       if (move.getStatusSelect() == MoveRepository.STATUS_DAYBOOK
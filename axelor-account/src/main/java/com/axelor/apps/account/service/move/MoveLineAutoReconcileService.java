@@ -0,0 +1,535 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service.move;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.Reconcile;
+import com.axelor.apps.account.db.repo.MoveLineRepository;
+import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.account.service.ReconcileService;
+import com.axelor.apps.account.service.payment.PaymentService;
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.service.app.AppBaseService;
+import com.axelor.auth.AuthUtils;
+import com.axelor.db.JPA;
+import com.axelor.db.Query;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.inject.Beans;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.subject.Subject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Automatic reconciliation of the debit and credit move lines of a same company, account and
+ * partner.
+ */
+public class MoveLineAutoReconcileService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** The ways to match a debit move line with a credit move line, applied in the given order. */
+  public enum MatchStrategy {
+    /** A debit and a credit with the same amount remaining, the oldest first. */
+    EXACT_AMOUNT,
+    /** A debit and a credit with the same origin, such as an invoice number. */
+    REFERENCE,
+    /** The remaining debits and credits by date, as when using an excess payment. */
+    FIFO
+  }
+
+  /** The lines by date only, as they were reconciled before the other strategies. */
+  public static final List<MatchStrategy> DEFAULT_STRATEGY_LIST =
+      Collections.singletonList(MatchStrategy.FIFO);
+
+  /** The lines with the same amount, then with the same origin, then the remaining ones by date. */
+  public static final List<MatchStrategy> AMOUNT_AND_REFERENCE_STRATEGY_LIST =
+      Collections.unmodifiableList(
+          Arrays.asList(MatchStrategy.EXACT_AMOUNT, MatchStrategy.REFERENCE, MatchStrategy.FIFO));
+
+  /** Counters of an automatic reconciliation, updated by all the worker threads. */
+  public static class AutoReconcileResult {
+
+    private final AtomicInteger groupCount = new AtomicInteger();
+    private final AtomicInteger matchedCount = new AtomicInteger();
+    private final AtomicInteger unmatchedCount = new AtomicInteger();
+    private final AtomicInteger anomalyCount = new AtomicInteger();
+    private long durationMillis;
+
+    /** @return the number of company, account and partner groups */
+    public int getGroupCount() {
+      return groupCount.get();
+    }
+
+    /** @return the number of move lines which are fully reconciled */
+    public int getMatchedCount() {
+      return matchedCount.get();
+    }
+
+    /** @return the number of move lines which still have an amount remaining */
+    public int getUnmatchedCount() {
+      return unmatchedCount.get();
+    }
+
+    /** @return the number of groups whose reconciliation failed */
+    public int getAnomalyCount() {
+      return anomalyCount.get();
+    }
+
+    public long getDurationMillis() {
+      return durationMillis;
+    }
+
+    /** @return the number of move lines processed per second */
+    public double getThroughput() {
+      int count = getMatchedCount() + getUnmatchedCount();
+      return durationMillis > 0 ? count * 1000d / durationMillis : count;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "groups: %d, matched: %d, unmatched: %d, anomalies: %d, %d ms, %.1f lines/s",
+          getGroupCount(),
+          getMatchedCount(),
+          getUnmatchedCount(),
+          getAnomalyCount(),
+          getDurationMillis(),
+          getThroughput());
+    }
+  }
+
+  protected ReconcileService reconcileService;
+  protected PaymentService paymentService;
+  protected MoveLineRepository moveLineRepo;
+  protected AppBaseService appBaseService;
+
+  @Inject
+  public MoveLineAutoReconcileService(
+      ReconcileService reconcileService,
+      PaymentService paymentService,
+      MoveLineRepository moveLineRepo,
+      AppBaseService appBaseService) {
+
+    this.reconcileService = reconcileService;
+    this.paymentService = paymentService;
+    this.moveLineRepo = moveLineRepo;
+    this.appBaseService = appBaseService;
+  }
+
+  /**
+   * Reconcile the move lines of a company, using the thread count of the base app configuration.
+   *
+   * @param company
+   * @param account the account to reconcile, or null for all the reconcilable accounts
+   * @param strategyList the strategies to apply, in order
+   * @return the counters of the reconciliation
+   * @throws AxelorException
+   */
+  public AutoReconcileResult autoReconcile(
+      Company company, Account account, List<MatchStrategy> strategyList) throws AxelorException {
+
+    Integer threadCount = appBaseService.getAppBase().getBatchThreadCount();
+
+    return this.autoReconcile(
+        company, account, strategyList, threadCount != null && threadCount > 1 ? threadCount : 1);
+  }
+
+  /**
+   * Reconcile the move lines of a company which are not fully reconciled. The lines are grouped by
+   * account and partner, and each group is reconciled in its own transaction. The partners are
+   * processed in parallel by a pool of threads, the groups of a same partner one after the other.
+   *
+   * @param company
+   * @param account the account to reconcile, or null for all the reconcilable accounts
+   * @param strategyList the strategies to apply, in order
+   * @param threadCount
+   * @return the counters of the reconciliation
+   * @throws AxelorException
+   */
+  public AutoReconcileResult autoReconcile(
+      Company company, Account account, List<MatchStrategy> strategyList, int threadCount)
+      throws AxelorException {
+
+    Preconditions.checkNotNull(company);
+    Preconditions.checkArgument(threadCount > 0, "The thread count must be positive.");
+
+    long start = System.currentTimeMillis();
+    AutoReconcileResult result = new AutoReconcileResult();
+
+    Long companyId = company.getId();
+    Long accountId = account != null ? account.getId() : null;
+    Subject subject = AuthUtils.getSubject();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    try {
+      // the groups of a same partner update its accounting situation, so they are reconciled
+      // one after the other by a same task
+      Map<Long, List<Long>> partnerAccountIdMap = new LinkedHashMap<>();
+
+      for (Object[] group : this.getGroupList(companyId, accountId)) {
+        Long groupAccountId = (Long) group[0];
+        Long partnerId = (Long) group[1];
+        long debitCount = ((Number) group[2]).longValue();
+        long creditCount = ((Number) group[3]).longValue();
+
+        result.groupCount.incrementAndGet();
+
+        // nothing to match on one side only
+        if (debitCount == 0 || creditCount == 0) {
+          result.unmatchedCount.addAndGet((int) (debitCount + creditCount));
+          continue;
+        }
+
+        partnerAccountIdMap
+            .computeIfAbsent(partnerId, key -> new ArrayList<>())
+            .add(groupAccountId);
+      }
+
+      List<Future<Void>> futureList = new ArrayList<>();
+
+      for (Map.Entry<Long, List<Long>> entry : partnerAccountIdMap.entrySet()) {
+        Long partnerId = entry.getKey();
+        List<Long> accountIdList = entry.getValue();
+        Callable<Void> task =
+            () -> {
+              this.reconcilePartnerInThread(
+                  companyId, accountIdList, partnerId, strategyList, result);
+              return null;
+            };
+        futureList.add(executor.submit(subject != null ? subject.associateWith(task) : task));
+      }
+
+      for (Future<Void> future : futureList) {
+        this.waitForGroup(future);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    result.durationMillis = System.currentTimeMillis() - start;
+    log.info("Automatic reconciliation of company {}: {}", company.getCode(), result);
+
+    return result;
+  }
+
+  /**
+   * Get the account and partner groups of the move lines to reconcile, with their number of debit
+   * and credit lines.
+   */
+  @SuppressWarnings("unchecked")
+  protected List<Object[]> getGroupList(Long companyId, Long accountId) {
+
+    javax.persistence.Query query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.account.id, partner.id, "
+                    + "SUM(CASE WHEN self.debit > 0 THEN 1 ELSE 0 END), "
+                    + "SUM(CASE WHEN self.credit > 0 THEN 1 ELSE 0 END) "
+                    + "FROM MoveLine self LEFT JOIN self.partner partner "
+                    + "WHERE "
+                    + this.getMoveLineFilter(accountId)
+                    + " GROUP BY self.account.id, partner.id "
+                    + "ORDER BY self.account.id, partner.id");
+
+    this.bindMoveLineFilter(query::setParameter, companyId, accountId);
+
+    return query.getResultList();
+  }
+
+  protected String getMoveLineFilter(Long accountId) {
+    String filter =
+        "self.move.company.id = :companyId "
+            + "AND self.move.statusSelect IN (:statusValidated, :statusDaybook) "
+            + "AND self.account.reconcileOk = true "
+            + "AND self.amountRemaining > 0 "
+            + "AND ((self.debit > 0 AND self.credit = 0) OR (self.credit > 0 AND self.debit = 0))";
+
+    if (accountId != null) {
+      filter += " AND self.account.id = :accountId";
+    }
+
+    return filter;
+  }
+
+  protected void bindMoveLineFilter(
+      BiConsumer<String, Object> binder, Long companyId, Long accountId) {
+
+    binder.accept("companyId", companyId);
+    binder.accept("statusValidated", MoveRepository.STATUS_VALIDATED);
+    binder.accept("statusDaybook", MoveRepository.STATUS_DAYBOOK);
+
+    if (accountId != null) {
+      binder.accept("accountId", accountId);
+    }
+  }
+
+  protected void reconcilePartnerInThread(
+      Long companyId,
+      List<Long> accountIdList,
+      Long partnerId,
+      List<MatchStrategy> strategyList,
+      AutoReconcileResult result) {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      MoveLineAutoReconcileService service = Beans.get(MoveLineAutoReconcileService.class);
+
+      for (Long accountId : accountIdList) {
+        try {
+          int[] counts = service.reconcileGroup(companyId, accountId, partnerId, strategyList);
+
+          result.matchedCount.addAndGet(counts[0]);
+          result.unmatchedCount.addAndGet(counts[1]);
+
+        } catch (Exception e) {
+          result.anomalyCount.incrementAndGet();
+          TraceBackService.trace(e);
+          log.debug(e.getMessage());
+
+        } finally {
+          JPA.clear();
+        }
+      }
+    }
+  }
+
+  /**
+   * Reconcile the move lines of an account and a partner in a transaction.
+   *
+   * @return the number of fully reconciled lines and the number of lines with an amount remaining
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public int[] reconcileGroup(
+      Long companyId, Long accountId, Long partnerId, List<MatchStrategy> strategyList) {
+
+    Query<MoveLine> query =
+        moveLineRepo
+            .all()
+            .filter(
+                this.getMoveLineFilter(accountId)
+                    + (partnerId != null
+                        ? " AND self.partner.id = :partnerId"
+                        : " AND self.partner IS NULL"))
+            .order("date")
+            .order("id");
+
+    this.bindMoveLineFilter(query::bind, companyId, accountId);
+    if (partnerId != null) {
+      query.bind("partnerId", partnerId);
+    }
+
+    List<MoveLine> debitMoveLineList = new ArrayList<>();
+    List<MoveLine> creditMoveLineList = new ArrayList<>();
+
+    for (MoveLine moveLine : query.fetch()) {
+      if (moveLine.getDebit().signum() > 0) {
+        debitMoveLineList.add(moveLine);
+      } else {
+        creditMoveLineList.add(moveLine);
+      }
+    }
+
+    this.reconcile(debitMoveLineList, creditMoveLineList, strategyList);
+
+    int matchedCount = 0;
+    int unmatchedCount = 0;
+
+    for (MoveLine moveLine : debitMoveLineList) {
+      if (moveLine.getAmountRemaining().signum() > 0) {
+        unmatchedCount++;
+      } else {
+        matchedCount++;
+      }
+    }
+    for (MoveLine moveLine : creditMoveLineList) {
+      if (moveLine.getAmountRemaining().signum() > 0) {
+        unmatchedCount++;
+      } else {
+        matchedCount++;
+      }
+    }
+
+    return new int[] {matchedCount, unmatchedCount};
+  }
+
+  /**
+   * Reconcile debit move lines with credit move lines of a same company, account and partner,
+   * applying the given strategies in order. The lists need to be ordered by date. A failing
+   * reconciliation is traced and the next ones are still done.
+   *
+   * @param debitMoveLineList
+   * @param creditMoveLineList
+   * @param strategyList
+   */
+  public void reconcile(
+      List<MoveLine> debitMoveLineList,
+      List<MoveLine> creditMoveLineList,
+      List<MatchStrategy> strategyList) {
+
+    for (MatchStrategy strategy : strategyList) {
+      switch (strategy) {
+        case EXACT_AMOUNT:
+          this.reconcileByExactAmount(debitMoveLineList, creditMoveLineList);
+          break;
+        case REFERENCE:
+          this.reconcileByReference(debitMoveLineList, creditMoveLineList);
+          break;
+        case FIFO:
+          paymentService.useExcessPaymentOnMoveLinesDontThrow(
+              this.getRemainingMoveLines(debitMoveLineList),
+              this.getRemainingMoveLines(creditMoveLineList));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown match strategy: " + strategy);
+      }
+    }
+  }
+
+  protected void reconcileByExactAmount(
+      List<MoveLine> debitMoveLineList, List<MoveLine> creditMoveLineList) {
+
+    Map<BigDecimal, Deque<MoveLine>> creditMoveLineMap = new HashMap<>();
+
+    for (MoveLine creditMoveLine : this.getRemainingMoveLines(creditMoveLineList)) {
+      creditMoveLineMap
+          .computeIfAbsent(
+              creditMoveLine.getAmountRemaining().stripTrailingZeros(), key -> new ArrayDeque<>())
+          .add(creditMoveLine);
+    }
+
+    for (MoveLine debitMoveLine : this.getRemainingMoveLines(debitMoveLineList)) {
+
+      // the amount of the debit line may be limited, leave it to the next strategies
+      if (debitMoveLine.getMaxAmountToReconcile() != null
+          && debitMoveLine.getMaxAmountToReconcile().signum() > 0) {
+        continue;
+      }
+
+      BigDecimal amount = debitMoveLine.getAmountRemaining();
+      Deque<MoveLine> creditMoveLineQueue = creditMoveLineMap.get(amount.stripTrailingZeros());
+
+      if (creditMoveLineQueue != null && !creditMoveLineQueue.isEmpty()) {
+        this.reconcile(debitMoveLine, creditMoveLineQueue.poll(), amount);
+      }
+    }
+  }
+
+  protected void reconcileByReference(
+      List<MoveLine> debitMoveLineList, List<MoveLine> creditMoveLineList) {
+
+    Map<String, List<MoveLine>> creditMoveLineMap = new HashMap<>();
+
+    for (MoveLine creditMoveLine : this.getRemainingMoveLines(creditMoveLineList)) {
+      if (StringUtils.isNotBlank(creditMoveLine.getOrigin())) {
+        creditMoveLineMap
+            .computeIfAbsent(creditMoveLine.getOrigin(), key -> new ArrayList<>())
+            .add(creditMoveLine);
+      }
+    }
+
+    if (creditMoveLineMap.isEmpty()) {
+      return;
+    }
+
+    for (MoveLine debitMoveLine : this.getRemainingMoveLines(debitMoveLineList)) {
+
+      List<MoveLine> sameOriginMoveLineList =
+          creditMoveLineMap.get(StringUtils.defaultString(debitMoveLine.getOrigin()));
+
+      if (sameOriginMoveLineList == null
+          || (debitMoveLine.getMaxAmountToReconcile() != null
+              && debitMoveLine.getMaxAmountToReconcile().signum() > 0)) {
+        continue;
+      }
+
+      for (MoveLine creditMoveLine : sameOriginMoveLineList) {
+        if (debitMoveLine.getAmountRemaining().signum() <= 0) {
+          break;
+        }
+        if (creditMoveLine.getAmountRemaining().signum() > 0) {
+          this.reconcile(
+              debitMoveLine,
+              creditMoveLine,
+              debitMoveLine.getAmountRemaining().min(creditMoveLine.getAmountRemaining()));
+        }
+      }
+    }
+  }
+
+  protected void reconcile(MoveLine debitMoveLine, MoveLine creditMoveLine, BigDecimal amount) {
+    try {
+      Reconcile reconcile =
+          reconcileService.createReconcile(debitMoveLine, creditMoveLine, amount, false);
+      if (reconcile != null) {
+        reconcileService.confirmReconcile(reconcile, true);
+      }
+    } catch (Exception e) {
+      TraceBackService.trace(e);
+      log.debug(e.getMessage());
+    }
+  }
+
+  protected List<MoveLine> getRemainingMoveLines(List<MoveLine> moveLineList) {
+    List<MoveLine> remainingMoveLineList = new ArrayList<>();
+    for (MoveLine moveLine : moveLineList) {
+      if (moveLine.getAmountRemaining().signum() > 0) {
+        remainingMoveLineList.add(moveLine);
+      }
+    }
+    return remainingMoveLineList;
+  }
+
+  protected void waitForGroup(Future<Void> future) throws AxelorException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    } catch (ExecutionException e) {
+      throw new AxelorException(e.getCause(), TraceBackRepository.CATEGORY_INCONSISTENCY);
+    }
+  }
+}
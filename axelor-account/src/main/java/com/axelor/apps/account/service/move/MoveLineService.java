@@ -38,7 +38,6 @@ import com.axelor.apps.account.service.FiscalPositionAccountService;
 import com.axelor.apps.account.service.TaxAccountService;
 import com.axelor.apps.account.service.app.AppAccountService;
 import com.axelor.apps.account.service.invoice.InvoiceToolService;
-import com.axelor.apps.account.service.payment.PaymentService;
 import com.axelor.apps.base.db.Company;
 import com.axelor.apps.base.db.Currency;
 import com.axelor.apps.base.db.Partner;
@@ -945,15 +944,18 @@ public class MoveLineService {
 
     Comparator<MoveLine> byDate = Comparator.comparing(MoveLine::getDate);
 
-    PaymentService paymentService = Beans.get(PaymentService.class);
+    MoveLineAutoReconcileService moveLineAutoReconcileService =
+        Beans.get(MoveLineAutoReconcileService.class);
 
     for (Pair<List<MoveLine>, List<MoveLine>> moveLineLists : moveLineMap.values()) {
       List<MoveLine> companyPartnerCreditMoveLineList = moveLineLists.getLeft();
       List<MoveLine> companyPartnerDebitMoveLineList = moveLineLists.getRight();
       companyPartnerCreditMoveLineList.sort(byDate);
       companyPartnerDebitMoveLineList.sort(byDate);
-      paymentService.useExcessPaymentOnMoveLinesDontThrow(
-          companyPartnerDebitMoveLineList, companyPartnerCreditMoveLineList);
+      moveLineAutoReconcileService.reconcile(
+          companyPartnerDebitMoveLineList,
+          companyPartnerCreditMoveLineList,
+          MoveLineAutoReconcileService.DEFAULT_STRATEGY_LIST);
     }
   }
 
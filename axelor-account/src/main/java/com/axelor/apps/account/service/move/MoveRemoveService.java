@@ -21,6 +21,7 @@ import com.axelor.apps.account.db.Move;
 import com.axelor.apps.account.db.MoveLine;
 import com.axelor.apps.account.db.repo.MoveLineRepository;
 import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.account.service.PartnerBalanceService;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.util.List;
@@ -31,15 +32,22 @@ public class MoveRemoveService {
 
   protected MoveLineRepository moveLineRepo;
 
+  protected PartnerBalanceService partnerBalanceService;
+
   @Inject
-  public MoveRemoveService(MoveRepository moveRepo, MoveLineRepository moveLineRepo) {
+  public MoveRemoveService(
+      MoveRepository moveRepo,
+      MoveLineRepository moveLineRepo,
+      PartnerBalanceService partnerBalanceService) {
 
     this.moveRepo = moveRepo;
     this.moveLineRepo = moveLineRepo;
+    this.partnerBalanceService = partnerBalanceService;
   }
 
   @Transactional
   public void archiveMove(Move move) {
+    partnerBalanceService.removeMove(move);
     moveRepo.remove(move);
     for (MoveLine moveLine : move.getMoveLineList()) {
       moveLineRepo.remove(moveLine);
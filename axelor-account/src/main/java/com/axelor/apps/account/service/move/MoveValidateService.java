@@ -24,6 +24,7 @@ import com.axelor.apps.account.db.MoveLine;
 import com.axelor.apps.account.db.repo.AccountRepository;
 import com.axelor.apps.account.db.repo.MoveRepository;
 import com.axelor.apps.account.exception.IExceptionMessage;
+import com.axelor.apps.account.service.PartnerBalanceService;
 import com.axelor.apps.account.service.config.AccountConfigService;
 import com.axelor.apps.base.db.Company;
 import com.axelor.apps.base.db.Partner;
@@ -58,6 +59,7 @@ public class MoveValidateService {
   protected MoveRepository moveRepository;
   protected AccountRepository accountRepository;
   protected PartnerRepository partnerRepository;
+  protected PartnerBalanceService partnerBalanceService;
 
   @Inject
   public MoveValidateService(
@@ -66,7 +68,8 @@ public class MoveValidateService {
       MoveCustAccountService moveCustAccountService,
       MoveRepository moveRepository,
       AccountRepository accountRepository,
-      PartnerRepository partnerRepository) {
+      PartnerRepository partnerRepository,
+      PartnerBalanceService partnerBalanceService) {
 
     this.accountConfigService = accountConfigService;
     this.moveSequenceService = moveSequenceService;
@@ -74,6 +77,7 @@ public class MoveValidateService {
     this.moveRepository = moveRepository;
     this.accountRepository = accountRepository;
     this.partnerRepository = partnerRepository;
+    this.partnerBalanceService = partnerBalanceService;
   }
 
   /**
@@ -190,6 +194,9 @@ public class MoveValidateService {
 
     log.debug("Validation de l'écriture comptable {}", move.getReference());
 
+    // the persisted amounts, before the changes of the form are merged
+    partnerBalanceService.removeMove(move);
+
     this.checkPreconditions(move);
 
     Boolean dayBookMode =
@@ -211,6 +218,8 @@ public class MoveValidateService {
 
     moveRepository.save(move);
 
+    partnerBalanceService.addMove(move);
+
     if (updateCustomerAccount) {
       moveCustAccountService.updateCustomerAccount(move);
     }
@@ -284,6 +293,11 @@ public class MoveValidateService {
     this.freezeAccountAndPartnerFieldsOnMoveLines(move);
     moveRepository.save(move);
 
+    // the move lines were changed in the form, so their previous amounts are unknown
+    for (Partner partner : partnerList) {
+      partnerBalanceService.rebuildBalances(partner, move.getCompany());
+    }
+
     moveCustAccountService.updateCustomerAccount(partnerList, move.getCompany());
   }
 
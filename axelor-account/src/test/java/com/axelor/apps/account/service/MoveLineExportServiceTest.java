@@ -0,0 +1,196 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.account.service;
+
+import com.axelor.apps.account.db.Account;
+import com.axelor.apps.account.db.AccountingReport;
+import com.axelor.apps.account.db.Journal;
+import com.axelor.apps.account.db.Move;
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.service.move.MoveLineService;
+import com.axelor.apps.base.db.Company;
+import com.opencsv.CSVWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.hibernate.ScrollableResults;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Pins down the order of the rows of the accounting exports, without the database: the rows read
+ * by the export queries are given in the order asked by the queries.
+ */
+public class MoveLineExportServiceTest {
+
+  private static final LocalDate DATE = LocalDate.of(2019, 3, 1);
+
+  private MoveLineExportServiceImpl exportService;
+
+  private List<Object[]> rowList;
+
+  private String queryStr;
+
+  @Before
+  public void setUp() {
+    rowList = new ArrayList<>();
+
+    MoveLineService moveLineService =
+        new MoveLineService(null, null, null, null, null, null, null) {
+          @Override
+          public List<MoveLine> consolidateMoveLines(List<MoveLine> moveLines) {
+            return new ArrayList<>(moveLines);
+          }
+        };
+
+    exportService =
+        new MoveLineExportServiceImpl(
+            null, null, null, null, null, null, null, null, null, moveLineService, null) {
+          @Override
+          protected ScrollableResults scroll(String queryStr) {
+            MoveLineExportServiceTest.this.queryStr = queryStr;
+            return createScrollableResults(rowList);
+          }
+        };
+  }
+
+  /**
+   * The moves of the headers file are read by date, journal and id, and each date and journal
+   * gives one header, with its moves in the order of their ids.
+   */
+  @Test
+  public void testHeaderMovesAreGroupedByDateAndJournal() throws Exception {
+
+    rowList.add(createMoveRow(1L, DATE, 2L));
+    rowList.add(createMoveRow(3L, DATE, 2L));
+    rowList.add(createMoveRow(2L, DATE, 5L));
+    rowList.add(createMoveRow(4L, DATE.plusDays(1), 2L));
+
+    List<String> groupList = new ArrayList<>();
+    exportService.forEachFile1MoveGroup(
+        createAccountingReport(),
+        false,
+        (date, journalId, moveRowList) -> {
+          List<Long> moveIdList = new ArrayList<>();
+          for (Object[] moveRow : moveRowList) {
+            moveIdList.add((Long) moveRow[0]);
+          }
+          groupList.add(date + " " + journalId + " " + moveIdList);
+        });
+
+    Assert.assertTrue(queryStr.endsWith(" ORDER BY self.date, self.journal.id, self.id"));
+    Assert.assertEquals(
+        Arrays.asList("2019-03-01 2 [1, 3]", "2019-03-01 5 [2]", "2019-03-02 2 [4]"), groupList);
+  }
+
+  /**
+   * The lines of an account in the details file are numbered after the ones of the previous
+   * accounts of the same export number, the debit lines first.
+   */
+  @Test
+  public void testDetailLinesAreNumberedDebitsFirst() {
+
+    Move move = createMove("EXP0001");
+    Account account = new Account();
+    account.setCode("411000");
+
+    MoveLine creditMoveLine = createMoveLine(move, account, BigDecimal.ZERO, new BigDecimal(30));
+    MoveLine debitMoveLine = createMoveLine(move, account, new BigDecimal(100), BigDecimal.ZERO);
+
+    StringWriter writer = new StringWriter();
+    CSVWriter csvWriter = new CSVWriter(writer, '|', CSVWriter.NO_QUOTE_CHARACTER, "\n");
+
+    int sequence =
+        exportService.writeFile2MoveLines(
+            csvWriter, Arrays.asList(creditMoveLine, debitMoveLine), "COMP", 8, 3);
+
+    Assert.assertEquals(5, sequence);
+    Assert.assertEquals(
+        "COMP|VT|EXP0001|3|411000|D|100||VEN DU 01/03/2019|||\n"
+            + "COMP|VT|EXP0001|4|411000|C|30||VEN DU 01/03/2019|||\n",
+        writer.toString());
+  }
+
+  private AccountingReport createAccountingReport() {
+    Company company = new Company();
+    company.setId(1L);
+    Journal journal = new Journal();
+    journal.setId(2L);
+
+    AccountingReport accountingReport = new AccountingReport();
+    accountingReport.setCompany(company);
+    accountingReport.setJournal(journal);
+    return accountingReport;
+  }
+
+  private Object[] createMoveRow(Long moveId, LocalDate date, Long journalId) {
+    return new Object[] {moveId, date, journalId, date.withDayOfMonth(1), null, null, null};
+  }
+
+  private Move createMove(String exportNumber) {
+    Journal journal = new Journal();
+    journal.setCode("VEN");
+    journal.setExportCode("VT");
+
+    Move move = new Move();
+    move.setJournal(journal);
+    move.setExportNumber(exportNumber);
+    return move;
+  }
+
+  private MoveLine createMoveLine(Move move, Account account, BigDecimal debit, BigDecimal credit) {
+    MoveLine moveLine = new MoveLine();
+    moveLine.setMove(move);
+    moveLine.setAccount(account);
+    moveLine.setDate(DATE);
+    moveLine.setDebit(debit);
+    moveLine.setCredit(credit);
+    moveLine.setAnalyticMoveLineList(new ArrayList<>());
+    return moveLine;
+  }
+
+  /** Scrollable results going through the rows, with only the methods used by the exports. */
+  private ScrollableResults createScrollableResults(List<Object[]> rowList) {
+    Iterator<Object[]> iterator = rowList.iterator();
+    Object[][] row = new Object[1][];
+
+    return (ScrollableResults)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {ScrollableResults.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "next":
+                  row[0] = iterator.hasNext() ? iterator.next() : null;
+                  return row[0] != null;
+                case "get":
+                  return args == null ? row[0] : row[0][(Integer) args[0]];
+                case "close":
+                  return null;
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+}
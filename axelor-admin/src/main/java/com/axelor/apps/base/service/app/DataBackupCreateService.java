@@ -18,14 +18,14 @@
 package com.axelor.apps.base.service.app;
 
 import com.axelor.apps.base.db.App;
+import com.axelor.auth.AuthUtils;
 import com.axelor.auth.db.AuditableModel;
 import com.axelor.common.StringUtils;
 import com.axelor.data.csv.CSVBind;
 import com.axelor.data.csv.CSVConfig;
 import com.axelor.data.csv.CSVInput;
+import com.axelor.db.JPA;
 import com.axelor.db.JpaRepository;
-import com.axelor.db.Model;
-import com.axelor.db.Query;
 import com.axelor.db.mapper.Mapper;
 import com.axelor.db.mapper.Property;
 import com.axelor.exception.service.TraceBackService;
@@ -37,26 +37,39 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import com.opencsv.CSVWriter;
 import com.thoughtworks.xstream.XStream;
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
+import javax.persistence.metamodel.EntityType;
+import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,15 +79,10 @@ public class DataBackupCreateService {
   private static final char QUOTE_CHAR = '"';
   private static final char REFERENCE_FIELD_SEPARATOR = '|';
 
-  private static final int BUFFER_SIZE = 1000;
-
   @Inject private MetaModelRepository metaModelRepo;
 
   private Logger LOG = LoggerFactory.getLogger(getClass());
 
-  private boolean notNullReferenceFlag, referenceFlag;
-  private boolean byteArrFieldFlag = false;
-
   private static Set<String> exceptColumnNameList =
       ImmutableSet.of(
           "importOrigin",
@@ -103,65 +111,118 @@ public class DataBackupCreateService {
           .put("com.axelor.apps.bankpayment.db.BankStatementFileFormat", "self.name = :name")
           .build();
 
-  List<String> fileNameList;
+  /** The csv file of a model and the files of its binary fields, with how to import it. */
+  protected static class ModelBackup {
+
+    protected CSVInput csvInput;
+
+    protected boolean referenceFlag;
+
+    protected boolean notNullReferenceFlag;
 
-  /* Generate csv Files for each individual MetaModel and single config file */
+    protected boolean byteArrFieldFlag;
+
+    protected List<String> fileNameList = new ArrayList<>();
+  }
+
+  /**
+   * Generate csv Files for each individual MetaModel and single config file, and zip them. The
+   * models are exported in parallel and each file is added to the zip as soon as its model is
+   * exported.
+   */
   public File create(Integer fetchLimit) throws InterruptedException {
     File tempDir = Files.createTempDir();
     String tempDirectoryPath = tempDir.getAbsolutePath();
 
-    fileNameList = new ArrayList<>();
     List<MetaModel> metaModelList = getMetaModels();
+    Map<String, List<String>> subClassesMap = getSubClassesMap();
+
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmSS");
+    String backupZipFileName = "DataBackup_" + LocalDateTime.now().format(formatter) + ".zip";
+    File zipFile = new File(tempDirectoryPath, backupZipFileName);
+
+    ExecutorService executor = Executors.newFixedThreadPool(DataBackupServiceImpl.getThreadCount());
+    CompletionService<ModelBackup> completionService = new ExecutorCompletionService<>(executor);
+    Map<String, ModelBackup> modelBackupMap = new HashMap<>();
+    Subject subject = AuthUtils.getSubject();
+
+    try (ZipOutputStream zipOut =
+        new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)))) {
+
+      for (MetaModel metaModel : metaModelList) {
+        String fullName = metaModel.getFullName();
+        String name = metaModel.getName();
+        List<String> subClasses = subClassesMap.get(fullName);
+        Callable<ModelBackup> task =
+            () -> {
+              ModelBackup modelBackup =
+                  writeCSVDataInThread(fullName, name, subClasses, fetchLimit, tempDirectoryPath);
+              synchronized (modelBackupMap) {
+                modelBackupMap.put(fullName, modelBackup);
+              }
+              return modelBackup;
+            };
+        completionService.submit(subject != null ? subject.associateWith(task) : task);
+      }
+
+      for (int i = 0; i < metaModelList.size(); i++) {
+        try {
+          ModelBackup modelBackup = completionService.take().get();
+          for (String fileName : modelBackup.fileNameList) {
+            addToZip(zipOut, tempDirectoryPath, fileName);
+          }
+        } catch (ExecutionException e) {
+          TraceBackService.trace(e, DataBackupService.class.getName());
+        }
+      }
+
+      zipOut.putNextEntry(new ZipEntry(DataBackupServiceImpl.CONFIG_FILE_NAME));
+      Writer configWriter = new OutputStreamWriter(zipOut, StandardCharsets.UTF_8);
+      generateConfig(configWriter, getCSVConfig(metaModelList, modelBackupMap));
+      configWriter.flush();
+      zipOut.closeEntry();
+
+    } catch (IOException e) {
+      TraceBackService.trace(e, "Error From DataBackupCreateService - create()");
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return zipFile;
+  }
+
+  /* Build the config in the order of the models: plain data first, then references */
+  protected CSVConfig getCSVConfig(
+      List<MetaModel> metaModelList, Map<String, ModelBackup> modelBackupMap) {
 
     LinkedList<CSVInput> simpleCsvs = new LinkedList<>();
     LinkedList<CSVInput> refernceCsvs = new LinkedList<>();
     LinkedList<CSVInput> notNullReferenceCsvs = new LinkedList<>();
-    Map<String, List<String>> subClassesMap = getSubClassesMap();
 
     for (MetaModel metaModel : metaModelList) {
-      try {
-        List<String> subClasses = subClassesMap.get(metaModel.getFullName());
-        long totalRecord = getMetaModelDataCount(metaModel, subClasses);
-        if (totalRecord > 0) {
-          LOG.debug("Exporting Model : " + metaModel.getFullName());
-
-          notNullReferenceFlag = false;
-          referenceFlag = false;
-
-          CSVWriter csvWriter =
-              new CSVWriter(
-                  new FileWriter(new File(tempDirectoryPath, metaModel.getName() + ".csv")),
-                  SEPARATOR,
-                  QUOTE_CHAR);
-          CSVInput csvInput =
-              writeCSVData(
-                  metaModel, csvWriter, fetchLimit, totalRecord, subClasses, tempDirectoryPath);
-          csvWriter.close();
-
-          if (notNullReferenceFlag) {
-            notNullReferenceCsvs.add(csvInput);
-          } else if (referenceFlag) {
-            refernceCsvs.add(csvInput);
-
-            CSVInput temcsv = new CSVInput();
-            temcsv.setFileName(csvInput.getFileName());
-            temcsv.setTypeName(csvInput.getTypeName());
-            if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
-              temcsv.setSearch(AutoImportModelMap.get(csvInput.getTypeName()).toString());
-            }
-            if (Class.forName(metaModel.getFullName()).getSuperclass() == App.class) {
-              temcsv.setSearch("self.code = :code");
-            }
-            simpleCsvs.add(temcsv);
-          } else {
-            simpleCsvs.add(csvInput);
-          }
-
-          fileNameList.add(metaModel.getName() + ".csv");
+      ModelBackup modelBackup = modelBackupMap.get(metaModel.getFullName());
+      if (modelBackup == null || modelBackup.csvInput == null) {
+        continue;
+      }
+      CSVInput csvInput = modelBackup.csvInput;
+
+      if (modelBackup.notNullReferenceFlag) {
+        notNullReferenceCsvs.add(csvInput);
+      } else if (modelBackup.referenceFlag) {
+        refernceCsvs.add(csvInput);
+
+        CSVInput temcsv = new CSVInput();
+        temcsv.setFileName(csvInput.getFileName());
+        temcsv.setTypeName(csvInput.getTypeName());
+        if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
+          temcsv.setSearch(AutoImportModelMap.get(csvInput.getTypeName()).toString());
         }
-      } catch (ClassNotFoundException e) {
-      } catch (IOException e) {
-        TraceBackService.trace(e, DataBackupService.class.getName());
+        if (isAppModel(csvInput.getTypeName())) {
+          temcsv.setSearch("self.code = :code");
+        }
+        simpleCsvs.add(temcsv);
+      } else {
+        simpleCsvs.add(csvInput);
       }
     }
 
@@ -170,11 +231,15 @@ public class DataBackupCreateService {
     csvConfig.getInputs().addAll(notNullReferenceCsvs);
     csvConfig.getInputs().addAll(refernceCsvs);
     csvConfig.getInputs().addAll(notNullReferenceCsvs);
-    generateConfig(tempDirectoryPath, csvConfig);
+    return csvConfig;
+  }
 
-    fileNameList.add(DataBackupServiceImpl.CONFIG_FILE_NAME);
-    File zippedFile = generateZIP(tempDirectoryPath, fileNameList);
-    return zippedFile;
+  private boolean isAppModel(String typeName) {
+    try {
+      return Class.forName(typeName).getSuperclass() == App.class;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
   }
 
   /* Get All MetaModels */
@@ -212,116 +277,225 @@ public class DataBackupCreateService {
     return subClassMap;
   }
 
-  /* Get All Data of Specific MetaModel */
-  private List<Model> getMetaModelDataList(
-      MetaModel metaModel, int start, Integer fetchLimit, List<String> subClasses)
-      throws ClassNotFoundException {
-    return getQuery(metaModel, subClasses).fetch(fetchLimit, start);
-  }
+  protected ModelBackup writeCSVDataInThread(
+      String fullName, String name, List<String> subClasses, Integer fetchLimit, String dirPath)
+      throws IOException {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
 
-  private long getMetaModelDataCount(MetaModel metaModel, List<String> subClasses)
-      throws InterruptedException, ClassNotFoundException {
-    Query<Model> query = getQuery(metaModel, subClasses);
-    long count = 0;
-    if (query != null) {
-      count = query.count();
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      return writeCSVData(fullName, name, subClasses, fetchLimit, dirPath);
+    } finally {
+      JPA.clear();
     }
-    return count;
   }
 
-  private Query<Model> getQuery(MetaModel metaModel, List<String> subClasses)
-      throws ClassNotFoundException {
-    String whereStr = "";
-    if (subClasses != null && subClasses.size() > 0) {
-      for (String subClassName : subClasses) {
-        whereStr += whereStr.length() > 0 ? " AND " : "";
-        whereStr += "id NOT IN (select id from " + subClassName + ")";
-      }
-    }
-    @SuppressWarnings("unchecked")
-    Class<Model> klass = (Class<Model>) Class.forName(metaModel.getFullName());
-    JpaRepository<Model> model = null;
-    Query<Model> query = null;
+  /**
+   * Write the csv file of a model. The exported fields are read with projection queries, one page
+   * of records at a time ordered by id, and the collections with one query for each page.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  protected ModelBackup writeCSVData(
+      String fullName, String name, List<String> subClasses, Integer fetchLimit, String dirPath)
+      throws IOException {
+
+    ModelBackup modelBackup = new ModelBackup();
+    Class<?> klass;
+
     try {
-      model = JpaRepository.of(klass);
+      klass = Class.forName(fullName);
+      JpaRepository.of((Class) klass);
     } catch (Exception e) {
-      TraceBackService.trace(e, DataBackupService.class.getName());
-    }
-    if (model != null) {
-      query = JpaRepository.of(klass).all();
-      if (StringUtils.notEmpty(whereStr)) {
-        query.filter(whereStr);
+      if (!(e instanceof ClassNotFoundException)) {
+        TraceBackService.trace(e, DataBackupService.class.getName());
       }
+      return modelBackup;
     }
-    return query;
-  }
 
-  private CSVInput writeCSVData(
-      MetaModel metaModel,
-      CSVWriter csvWriter,
-      Integer fetchLimit,
-      long totalRecord,
-      List<String> subClasses,
-      String dirPath) {
+    LOG.debug("Exporting Model : " + fullName);
+
     CSVInput csvInput = new CSVInput();
-    boolean headerFlag = true;
-    List<String> dataArr = null;
-    List<String> headerArr = new ArrayList<>();
-    List<Model> dataList = null;
+    csvInput.setFileName(name + ".csv");
+    csvInput.setTypeName(fullName);
+    csvInput.setBindings(new ArrayList<>());
+
+    EntityType<?> entityType = JPA.em().getMetamodel().entity(klass);
+    List<Property> propertyList = new ArrayList<>();
+    List<String> headerList = new ArrayList<>();
+
+    for (Property property : Mapper.of(klass).getProperties()) {
+      if (isPropertyExportable(property) && isPersistent(entityType, property)) {
+        propertyList.add(property);
+        headerList.add(getMetaModelHeader(property, csvInput, modelBackup));
+      }
+    }
 
-    try {
-      Mapper metaModelMapper = Mapper.of(Class.forName(metaModel.getFullName()));
-      Property[] pro = metaModelMapper.getProperties();
-
-      csvInput.setFileName(metaModel.getName() + ".csv");
-      csvInput.setTypeName(metaModel.getFullName());
-      csvInput.setBindings(new ArrayList<>());
-
-      for (int i = 0; i < totalRecord; i = i + fetchLimit) {
-
-        dataList = getMetaModelDataList(metaModel, i, fetchLimit, subClasses);
-
-        if (dataList != null && dataList.size() > 0) {
-          for (Object dataObject : dataList) {
-            dataArr = new ArrayList<>();
-
-            for (Property property : pro) {
-              if (isPropertyExportable(property)) {
-                if (headerFlag) {
-                  String headerStr = getMetaModelHeader(dataObject, property, csvInput);
-                  headerArr.add(headerStr);
-                }
-                dataArr.add(
-                    getMetaModelData(
-                        metaModel.getName(),
-                        metaModelMapper.get(dataObject, "id").toString(),
-                        property,
-                        metaModelMapper.get(dataObject, property.getName()),
-                        dirPath));
-              }
-            }
+    String selectQuery = getSelectQuery(name, propertyList, subClasses);
+    File csvFile = new File(dirPath, csvInput.getFileName());
+    boolean empty = true;
 
-            if (headerFlag) {
-              if (byteArrFieldFlag) {
-                csvInput.setCallable(
-                    "com.axelor.apps.base.service.app.DataBackupRestoreService:importObjectWithByteArray");
-                byteArrFieldFlag = false;
-              }
-              csvWriter.writeNext(headerArr.toArray(new String[headerArr.size()]), true);
-              headerFlag = false;
+    try (CSVWriter csvWriter =
+        new CSVWriter(new BufferedWriter(new FileWriter(csvFile)), SEPARATOR, QUOTE_CHAR)) {
+
+      Long lastId = 0L;
+
+      while (true) {
+        List<Object[]> rowList =
+            JPA.em()
+                .createQuery(selectQuery)
+                .setParameter("lastId", lastId)
+                .setMaxResults(fetchLimit)
+                .getResultList();
+        if (rowList.isEmpty()) {
+          break;
+        }
+
+        if (empty) {
+          csvWriter.writeNext(headerList.toArray(new String[headerList.size()]), true);
+          empty = false;
+        }
+
+        List<Long> idList = new ArrayList<>();
+        for (Object[] row : rowList) {
+          idList.add((Long) row[0]);
+        }
+        Map<String, Map<Long, String>> collectionValueMap =
+            getCollectionValueMap(name, propertyList, idList);
+
+        for (Object[] row : rowList) {
+          Long id = (Long) row[0];
+          List<String> dataArr = new ArrayList<>();
+          int column = 1;
+
+          for (Property property : propertyList) {
+            if (property.isCollection()) {
+              dataArr.add(collectionValueMap.get(property.getName()).getOrDefault(id, ""));
+              continue;
             }
-            csvWriter.writeNext(dataArr.toArray(new String[dataArr.size()]), true);
+            Object value = row[column++];
+            if (property.getTarget() != null) {
+              value =
+                  getRelationalFieldValue(
+                      property, value, isNamedMetaTarget(property) ? row[column++] : null);
+            }
+            dataArr.add(getMetaModelData(name, id, property, value, dirPath, modelBackup));
           }
+
+          csvWriter.writeNext(dataArr.toArray(new String[dataArr.size()]), true);
+          lastId = id;
         }
       }
-      if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
-        csvInput.setSearch(AutoImportModelMap.get(csvInput.getTypeName()).toString());
-      } else if (Class.forName(metaModel.getFullName()).getSuperclass() == App.class) {
-        csvInput.setSearch("self.code = :code");
+    }
+
+    if (empty) {
+      java.nio.file.Files.delete(csvFile.toPath());
+      return modelBackup;
+    }
+
+    if (modelBackup.byteArrFieldFlag) {
+      csvInput.setCallable(
+          "com.axelor.apps.base.service.app.DataBackupRestoreService:importObjectWithByteArray");
+    }
+    if (AutoImportModelMap.containsKey(csvInput.getTypeName())) {
+      csvInput.setSearch(AutoImportModelMap.get(csvInput.getTypeName()).toString());
+    } else if (klass.getSuperclass() == App.class) {
+      csvInput.setSearch("self.code = :code");
+    }
+
+    modelBackup.csvInput = csvInput;
+    modelBackup.fileNameList.add(0, csvInput.getFileName());
+    return modelBackup;
+  }
+
+  private boolean isPersistent(EntityType<?> entityType, Property property) {
+    try {
+      entityType.getAttribute(property.getName());
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Select the id, then each field, with the id and the name of the referenced records. The
+   * collections are read by {@link #getCollectionValueMap}.
+   */
+  protected String getSelectQuery(
+      String name, List<Property> propertyList, List<String> subClasses) {
+    List<String> selectList = new ArrayList<>();
+    List<String> joinList = new ArrayList<>();
+    selectList.add("self.id");
+
+    for (Property property : propertyList) {
+      if (property.isCollection()) {
+        continue;
+      }
+      if (property.getTarget() != null) {
+        String alias = "_" + property.getName();
+        joinList.add("LEFT JOIN self." + property.getName() + " " + alias);
+        selectList.add(alias + ".id");
+        if (isNamedMetaTarget(property)) {
+          selectList.add(alias + ".name");
+        }
+      } else {
+        selectList.add("self." + property.getName());
       }
-    } catch (ClassNotFoundException e) {
     }
-    return csvInput;
+
+    StringBuilder query =
+        new StringBuilder("SELECT ")
+            .append(String.join(", ", selectList))
+            .append(" FROM ")
+            .append(name)
+            .append(" self ")
+            .append(String.join(" ", joinList))
+            .append(" WHERE self.id > :lastId");
+
+    if (subClasses != null) {
+      for (String subClassName : subClasses) {
+        query.append(" AND self.id NOT IN (SELECT sub.id FROM " + subClassName + " sub)");
+      }
+    }
+
+    return query.append(" ORDER BY self.id").toString();
+  }
+
+  /* Get the values of the collections of a page of records, by field name and record id */
+  @SuppressWarnings("unchecked")
+  protected Map<String, Map<Long, String>> getCollectionValueMap(
+      String name, List<Property> propertyList, List<Long> idList) {
+
+    Map<String, Map<Long, String>> collectionValueMap = new HashMap<>();
+
+    for (Property property : propertyList) {
+      if (!property.isCollection()) {
+        continue;
+      }
+
+      boolean named = isNamedMetaTarget(property);
+      Map<Long, String> valueMap = new HashMap<>();
+      List<Object[]> resultList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, _item.id"
+                      + (named ? ", _item.name" : "")
+                      + " FROM "
+                      + name
+                      + " self JOIN self."
+                      + property.getName()
+                      + " _item WHERE self.id IN (:idList) ORDER BY self.id, _item.id")
+              .setParameter("idList", idList)
+              .getResultList();
+
+      for (Object[] result : resultList) {
+        String value = getRelationalFieldValue(property, result[1], named ? result[2] : null);
+        valueMap.merge((Long) result[0], value, (v1, v2) -> v1 + REFERENCE_FIELD_SEPARATOR + v2);
+      }
+
+      collectionValueMap.put(property.getName(), valueMap);
+    }
+
+    return collectionValueMap;
   }
 
   private boolean isPropertyExportable(Property property) {
@@ -340,29 +514,40 @@ public class DataBackupCreateService {
     return false;
   }
 
+  private boolean isMetaTarget(Property property) {
+    return property.getTarget() != null
+        && property.getTarget().getPackage().equals(Package.getPackage("com.axelor.meta.db"))
+        && !property.getTarget().getTypeName().equals("com.axelor.meta.db.MetaFile");
+  }
+
+  private boolean isNamedMetaTarget(Property property) {
+    return isMetaTarget(property) && Mapper.of(property.getTarget()).getProperty("name") != null;
+  }
+
   /* Get Header For csv File */
-  private String getMetaModelHeader(Object value, Property property, CSVInput csvInput) {
+  private String getMetaModelHeader(
+      Property property, CSVInput csvInput, ModelBackup modelBackup) {
     String propertyTypeStr = property.getType().toString();
     String propertyName = property.getName();
     switch (propertyTypeStr) {
       case "LONG":
         return propertyName.equalsIgnoreCase("id") ? "importId" : propertyName;
       case "BINARY":
-        byteArrFieldFlag = true;
+        modelBackup.byteArrFieldFlag = true;
         return "byte_" + propertyName;
       case "ONE_TO_ONE":
       case "MANY_TO_ONE":
-        return getRelationalFieldHeader(property, csvInput, "ONE");
+        return getRelationalFieldHeader(property, csvInput, "ONE", modelBackup);
       case "ONE_TO_MANY":
       case "MANY_TO_MANY":
-        return getRelationalFieldHeader(property, csvInput, "MANY");
+        return getRelationalFieldHeader(property, csvInput, "MANY", modelBackup);
       default:
         return propertyName;
     }
   }
 
   private String getRelationalFieldHeader(
-      Property property, CSVInput csvInput, String relationship) {
+      Property property, CSVInput csvInput, String relationship, ModelBackup modelBackup) {
     csvInput.setSearch("self.importId = :importId");
     CSVBind csvBind = new CSVBind();
 
@@ -371,9 +556,7 @@ public class DataBackupCreateService {
         relationship.equalsIgnoreCase("ONE")
             ? "self.importId = :" + columnName
             : "self.importId in :" + columnName;
-    if (property.getTarget() != null
-        && property.getTarget().getPackage().equals(Package.getPackage("com.axelor.meta.db"))
-        && !property.getTarget().getTypeName().equals("com.axelor.meta.db.MetaFile")) {
+    if (isMetaTarget(property)) {
       columnName = property.getName() + "_name";
       search =
           relationship.equalsIgnoreCase("ONE")
@@ -388,16 +571,21 @@ public class DataBackupCreateService {
       csvBind.setExpression(columnName + ".split('\\\\|') as List");
     }
     csvInput.getBindings().add(csvBind);
-    referenceFlag = true;
+    modelBackup.referenceFlag = true;
     if (property.isRequired()) {
-      notNullReferenceFlag = true;
+      modelBackup.notNullReferenceFlag = true;
     }
     return columnName;
   }
 
   /* Get Data For csv File */
   private String getMetaModelData(
-      String metaModelName, String id, Property property, Object value, String dirPath) {
+      String metaModelName,
+      Long id,
+      Property property,
+      Object value,
+      String dirPath,
+      ModelBackup modelBackup) {
     if (value == null) {
       return "";
     }
@@ -414,101 +602,41 @@ public class DataBackupCreateService {
         try {
           org.apache.commons.io.FileUtils.writeByteArrayToFile(
               new File(dirPath, fileName), (byte[]) value);
-          fileNameList.add(fileName);
+          modelBackup.fileNameList.add(fileName);
         } catch (IOException e) {
           e.printStackTrace();
         }
         return fileName;
-      case "ONE_TO_ONE":
-      case "MANY_TO_ONE":
-        return getRelationalFieldValue(property, value);
-      case "ONE_TO_MANY":
-      case "MANY_TO_MANY":
-        return getRelationalFieldData(property, value);
       default:
         return value.toString();
     }
   }
 
-  public String getRelationalFieldData(Property property, Object value) {
-    StringBuilder idStringBuilder = new StringBuilder();
-    Collection<?> valueList = (Collection<?>) value;
-    String referenceData = "";
-    for (Object val : valueList) {
-      referenceData = getRelationalFieldValue(property, val);
-      if (StringUtils.notBlank(referenceData)) {
-        idStringBuilder.append(referenceData + REFERENCE_FIELD_SEPARATOR);
-      }
+  /* The name of the referenced meta record if any, else its id */
+  private String getRelationalFieldValue(Property property, Object id, Object name) {
+    if (id == null) {
+      return null;
     }
-
-    if (StringUtils.notBlank(idStringBuilder)) {
-      idStringBuilder.setLength(idStringBuilder.length() - 1);
+    if (isMetaTarget(property) && name != null) {
+      return name.toString();
     }
-    return idStringBuilder.toString();
+    return id.toString();
   }
 
-  private String getRelationalFieldValue(Property property, Object val) {
-    if (property.getTarget() != null
-        && property.getTarget().getPackage().equals(Package.getPackage("com.axelor.meta.db"))
-        && !property.getTarget().getTypeName().equals("com.axelor.meta.db.MetaFile")) {
-      try {
-        return Mapper.of(val.getClass()).get(val, "name").toString();
-      } catch (Exception e) {
-        return ((Model) val).getId().toString();
-      }
-    } else {
-      return ((Model) val).getId().toString();
-    }
-  }
-
-  private File generateZIP(String dirPath, List<String> fileNameList) {
-
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmSS");
-    String backupZipFileName = "DataBackup_" + LocalDateTime.now().format(formatter) + ".zip";
-    File zipFile = new File(dirPath, backupZipFileName);
-    try {
-      ZipOutputStream out = null;
-      out = new ZipOutputStream(new FileOutputStream(zipFile));
-      for (String fileName : fileNameList) {
-        ZipEntry e = new ZipEntry(fileName);
-        out.putNextEntry(e);
-        File file = new File(dirPath, fileName);
-        BufferedInputStream bin = new BufferedInputStream(new FileInputStream(file));
-        byte[] data;
-        while (bin.available() > 0) {
-          if (bin.available() < BUFFER_SIZE) {
-            data = new byte[bin.available()];
-          } else {
-            data = new byte[BUFFER_SIZE];
-          }
-          bin.read(data, 0, data.length);
-          out.write(data, 0, data.length);
-        }
-        bin.close();
-        out.closeEntry();
-        file.delete();
-      }
-      out.close();
-    } catch (IOException e) {
-      TraceBackService.trace(e, "Error From DataBackupCreateService - generateZIP()");
-    }
-    return zipFile;
+  private void addToZip(ZipOutputStream zipOut, String dirPath, String fileName)
+      throws IOException {
+    File file = new File(dirPath, fileName);
+    zipOut.putNextEntry(new ZipEntry(fileName));
+    java.nio.file.Files.copy(file.toPath(), zipOut);
+    zipOut.closeEntry();
+    java.nio.file.Files.delete(file.toPath());
   }
 
   /* Generate XML File from CSVConfig */
-  private void generateConfig(String dirPath, CSVConfig csvConfig) {
-    try {
-      File file = new File(dirPath, DataBackupServiceImpl.CONFIG_FILE_NAME);
-      FileWriter fileWriter = new FileWriter(file, true);
-
-      XStream xStream = new XStream();
-      xStream.processAnnotations(CSVConfig.class);
-      xStream.setMode(XStream.NO_REFERENCES);
-      fileWriter.append(xStream.toXML(csvConfig));
-
-      fileWriter.close();
-    } catch (IOException e) {
-      TraceBackService.trace(e, "Error From DataBackupCreateService - generateConfig()");
-    }
+  private void generateConfig(Writer writer, CSVConfig csvConfig) throws IOException {
+    XStream xStream = new XStream();
+    xStream.processAnnotations(CSVConfig.class);
+    xStream.setMode(XStream.NO_REFERENCES);
+    writer.append(xStream.toXML(csvConfig));
   }
 }
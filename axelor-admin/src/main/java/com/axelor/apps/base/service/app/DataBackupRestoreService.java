@@ -17,30 +17,50 @@
  */
 package com.axelor.apps.base.service.app;
 
+import com.axelor.auth.AuthUtils;
 import com.axelor.common.StringUtils;
 import com.axelor.data.Listener;
+import com.axelor.data.csv.CSVBind;
+import com.axelor.data.csv.CSVConfig;
 import com.axelor.data.csv.CSVImporter;
+import com.axelor.data.csv.CSVInput;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
 import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.meta.MetaFiles;
 import com.axelor.meta.db.MetaFile;
 import com.google.common.base.Strings;
 import com.google.common.io.Files;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import com.thoughtworks.xstream.XStream;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,48 +72,32 @@ public class DataBackupRestoreService {
     File tempDir = Files.createTempDir();
     String dirPath = tempDir.getAbsolutePath();
     StringBuilder sb = new StringBuilder();
+    ExecutorService executor = Executors.newFixedThreadPool(DataBackupServiceImpl.getThreadCount());
     try {
       unZip(zipedBackupFile, dirPath);
-      String configFName =
-          tempDir.getAbsolutePath() + File.separator + DataBackupServiceImpl.CONFIG_FILE_NAME;
-
-      CSVImporter csvImporter = new CSVImporter(configFName, tempDir.getAbsolutePath());
-      csvImporter.addListener(
-          new Listener() {
-            String modelName;
-            StringBuilder sb1 = new StringBuilder();
-
-            @Override
-            public void handle(Model bean, Exception e) {
-              if (e.getMessage() != null && !e.getMessage().equals("null")) {
-                if (bean != null) {
-                  sb1.append(bean.getClass().getSimpleName() + " : \n" + e.getMessage() + "\n\n");
-                } else {
-                  sb1.append(e.getMessage() + "\n\n");
-                }
-              }
-            }
-
-            @Override
-            public void imported(Model model) {
-              modelName = model.getClass().getSimpleName();
-            }
-
-            @Override
-            public void imported(Integer total, Integer count) {
-              String str = "", strError = "";
-              if (!StringUtils.isBlank(sb1)) {
-                strError = "Errors : \n" + sb1.toString();
-              }
-              str = "Total Records :  {" + total + "} - Success Records :  {" + count + "}  \n";
-              if (total != 0 && count != 0) {
-                sb.append(modelName + " : \n");
-              }
-              sb.append(strError).append(str + "-----------------------------------------\n");
-              sb1.setLength(0);
-            }
-          });
-      csvImporter.run();
+      CSVConfig csvConfig = readConfig(new File(dirPath, DataBackupServiceImpl.CONFIG_FILE_NAME));
+      Subject subject = AuthUtils.getSubject();
+      int configIndex = 0;
+
+      for (List<CSVInput> inputGroup : getInputGroups(csvConfig.getInputs())) {
+        List<Future<String>> futureList = new ArrayList<>();
+
+        for (CSVInput csvInput : inputGroup) {
+          String configFilePath = writeConfig(dirPath, csvInput, configIndex++);
+          Callable<String> task = () -> importInThread(configFilePath, dirPath);
+          futureList.add(executor.submit(subject != null ? subject.associateWith(task) : task));
+        }
+
+        for (Future<String> future : futureList) {
+          try {
+            sb.append(future.get());
+          } catch (ExecutionException e) {
+            TraceBackService.trace(e);
+            sb.append("Errors : \n" + e.getCause() + "\n\n");
+          }
+        }
+      }
+
       LOG.info("Data Restore Completed");
       FileUtils.cleanDirectory(new File(tempDir.getAbsolutePath()));
       DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmSS");
@@ -107,7 +111,160 @@ public class DataBackupRestoreService {
     } catch (IOException e) {
       TraceBackService.trace(e);
       return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      TraceBackService.trace(e);
+      return null;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Split the inputs, keeping their order, in groups which can be imported in parallel. An input
+   * starts a new group when it imports or references a model of the same hierarchy as a model
+   * imported by the current group, or when the current group references a model it imports.
+   */
+  protected List<List<CSVInput>> getInputGroups(List<CSVInput> inputList) {
+    List<List<CSVInput>> groupList = new ArrayList<>();
+    List<CSVInput> group = new ArrayList<>();
+    Set<Class<?>> groupTypeSet = new HashSet<>();
+    Set<Class<?>> groupTargetSet = new HashSet<>();
+
+    for (CSVInput csvInput : inputList) {
+      Class<?> type;
+      try {
+        type = Class.forName(csvInput.getTypeName());
+      } catch (ClassNotFoundException e) {
+        type = Object.class;
+      }
+      Set<Class<?>> typeSet = Collections.singleton(type);
+      Set<Class<?>> targetSet = getBindingTargets(type, csvInput);
+
+      if (!group.isEmpty()
+          && (isRelated(typeSet, groupTypeSet)
+              || isRelated(typeSet, groupTargetSet)
+              || isRelated(targetSet, groupTypeSet))) {
+        groupList.add(group);
+        group = new ArrayList<>();
+        groupTypeSet.clear();
+        groupTargetSet.clear();
+      }
+
+      group.add(csvInput);
+      groupTypeSet.add(type);
+      groupTargetSet.addAll(targetSet);
+    }
+
+    if (!group.isEmpty()) {
+      groupList.add(group);
+    }
+    return groupList;
+  }
+
+  private Set<Class<?>> getBindingTargets(Class<?> type, CSVInput csvInput) {
+    Set<Class<?>> targetSet = new HashSet<>();
+    if (csvInput.getBindings() == null || type == Object.class) {
+      return targetSet;
+    }
+    Mapper mapper = Mapper.of(type);
+    for (CSVBind csvBind : csvInput.getBindings()) {
+      Property property =
+          csvBind.getField() != null ? mapper.getProperty(csvBind.getField()) : null;
+      if (property != null && property.getTarget() != null) {
+        targetSet.add(property.getTarget());
+      }
+    }
+    return targetSet;
+  }
+
+  /* Whether a class of a set is the same, a sub or a super class of a class of the other one */
+  private boolean isRelated(Set<Class<?>> classSet, Set<Class<?>> otherClassSet) {
+    for (Class<?> klass : classSet) {
+      for (Class<?> otherClass : otherClassSet) {
+        if (klass == Object.class
+            || otherClass == Object.class
+            || klass.isAssignableFrom(otherClass)
+            || otherClass.isAssignableFrom(klass)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private CSVConfig readConfig(File configFile) {
+    XStream xStream = new XStream();
+    xStream.processAnnotations(CSVConfig.class);
+    return (CSVConfig) xStream.fromXML(configFile);
+  }
+
+  /* Write a config with a single input, for the importer of this input */
+  private String writeConfig(String dirPath, CSVInput csvInput, int configIndex)
+      throws IOException {
+    CSVConfig csvConfig = new CSVConfig();
+    csvConfig.setInputs(new ArrayList<>(Collections.singletonList(csvInput)));
+
+    XStream xStream = new XStream();
+    xStream.processAnnotations(CSVConfig.class);
+    xStream.setMode(XStream.NO_REFERENCES);
+
+    File file = new File(dirPath, "config_" + configIndex + ".xml");
+    try (FileWriter fileWriter = new FileWriter(file)) {
+      fileWriter.append(xStream.toXML(csvConfig));
     }
+    return file.getAbsolutePath();
+  }
+
+  protected String importInThread(String configFilePath, String dirPath) {
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      StringBuilder sb = new StringBuilder();
+      CSVImporter csvImporter = new CSVImporter(configFilePath, dirPath);
+      csvImporter.addListener(createListener(sb));
+      csvImporter.run();
+      return sb.toString();
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  private Listener createListener(StringBuilder sb) {
+    return new Listener() {
+      String modelName;
+      StringBuilder sb1 = new StringBuilder();
+
+      @Override
+      public void handle(Model bean, Exception e) {
+        if (e.getMessage() != null && !e.getMessage().equals("null")) {
+          if (bean != null) {
+            sb1.append(bean.getClass().getSimpleName() + " : \n" + e.getMessage() + "\n\n");
+          } else {
+            sb1.append(e.getMessage() + "\n\n");
+          }
+        }
+      }
+
+      @Override
+      public void imported(Model model) {
+        modelName = model.getClass().getSimpleName();
+      }
+
+      @Override
+      public void imported(Integer total, Integer count) {
+        String str = "", strError = "";
+        if (!StringUtils.isBlank(sb1)) {
+          strError = "Errors : \n" + sb1.toString();
+        }
+        str = "Total Records :  {" + total + "} - Success Records :  {" + count + "}  \n";
+        if (total != 0 && count != 0) {
+          sb.append(modelName + " : \n");
+        }
+        sb.append(strError).append(str + "-----------------------------------------\n");
+        sb1.setLength(0);
+      }
+    };
   }
 
   private boolean unZip(MetaFile zipMetaFile, String destinationDirectoryPath) throws IOException {
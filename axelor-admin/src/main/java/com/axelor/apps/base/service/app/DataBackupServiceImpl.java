@@ -30,6 +30,7 @@ import com.google.inject.servlet.RequestScoper;
 import com.google.inject.servlet.ServletScopes;
 import java.io.File;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -40,6 +41,10 @@ public class DataBackupServiceImpl implements DataBackupService {
 
   static final String CONFIG_FILE_NAME = "config.xml";
 
+  /** Thread count used when the base app can't be read. */
+  static final int DEFAULT_THREAD_COUNT =
+      Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+
   @Inject private DataBackupCreateService createService;
 
   @Inject private DataBackupRestoreService restoreService;
@@ -50,6 +55,31 @@ public class DataBackupServiceImpl implements DataBackupService {
 
   private ExecutorService executor = Executors.newCachedThreadPool();
 
+  /**
+   * Number of models exported or imported at the same time, each one using a connection: the batch
+   * thread count of the base app. The base app is queried by its entity name, this module being a
+   * dependency of the base module.
+   */
+  static int getThreadCount() {
+    List<Integer> batchThreadCountList;
+
+    try {
+      batchThreadCountList =
+          JPA.em()
+              .createQuery("SELECT self.batchThreadCount FROM AppBase self", Integer.class)
+              .setMaxResults(1)
+              .getResultList();
+    } catch (IllegalArgumentException e) {
+      return DEFAULT_THREAD_COUNT;
+    }
+
+    if (batchThreadCountList.isEmpty() || batchThreadCountList.get(0) == null) {
+      return DEFAULT_THREAD_COUNT;
+    }
+
+    return Math.max(1, batchThreadCountList.get(0));
+  }
+
   @Transactional(rollbackOn = Exception.class)
   @Override
   public void createBackUp(DataBackup dataBackup) {
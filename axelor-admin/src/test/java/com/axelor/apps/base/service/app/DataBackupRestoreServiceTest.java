@@ -0,0 +1,102 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service.app;
+
+import com.axelor.auth.db.Group;
+import com.axelor.auth.db.User;
+import com.axelor.data.csv.CSVBind;
+import com.axelor.data.csv.CSVInput;
+import com.axelor.meta.db.MetaFile;
+import com.axelor.meta.db.MetaModule;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Checks how the inputs of a backup are split in groups of inputs restored in parallel. */
+public class DataBackupRestoreServiceTest {
+
+  private DataBackupRestoreService restoreService = new DataBackupRestoreService();
+
+  /**
+   * The users reference the groups, so they wait for the groups to be restored. The groups
+   * imported again after the users wait for the users, which reference them.
+   */
+  @Test
+  public void testReferencedModelsAreRestoredFirst() {
+
+    CSVInput groupInput = createInput(Group.class);
+    CSVInput fileInput = createInput(MetaFile.class);
+    CSVInput userInput = createInput(User.class, "group");
+    CSVInput moduleInput = createInput(MetaModule.class);
+    CSVInput groupUpdateInput = createInput(Group.class);
+
+    List<List<CSVInput>> groupList =
+        restoreService.getInputGroups(
+            Arrays.asList(groupInput, fileInput, userInput, moduleInput, groupUpdateInput));
+
+    Assert.assertEquals(3, groupList.size());
+    Assert.assertEquals(Arrays.asList(groupInput, fileInput), groupList.get(0));
+    Assert.assertEquals(Arrays.asList(userInput, moduleInput), groupList.get(1));
+    Assert.assertEquals(Arrays.asList(groupUpdateInput), groupList.get(2));
+  }
+
+  /** An input of an unknown model is restored on its own, as it may depend on any other one. */
+  @Test
+  public void testUnknownModelIsRestoredAlone() {
+
+    CSVInput groupInput = createInput(Group.class);
+    CSVInput unknownInput = new CSVInput();
+    unknownInput.setTypeName("com.axelor.apps.unknown.db.Unknown");
+    CSVInput fileInput = createInput(MetaFile.class);
+
+    List<List<CSVInput>> groupList =
+        restoreService.getInputGroups(Arrays.asList(groupInput, unknownInput, fileInput));
+
+    Assert.assertEquals(3, groupList.size());
+    Assert.assertEquals(Arrays.asList(unknownInput), groupList.get(1));
+  }
+
+  /** Inputs of models without any link are all restored together. */
+  @Test
+  public void testUnrelatedModelsAreRestoredTogether() {
+
+    List<CSVInput> inputList =
+        Arrays.asList(
+            createInput(Group.class), createInput(MetaFile.class), createInput(MetaModule.class));
+
+    List<List<CSVInput>> groupList = restoreService.getInputGroups(inputList);
+
+    Assert.assertEquals(1, groupList.size());
+    Assert.assertEquals(inputList, groupList.get(0));
+  }
+
+  private CSVInput createInput(Class<?> type, String... fieldNames) {
+    CSVInput csvInput = new CSVInput();
+    csvInput.setTypeName(type.getName());
+    csvInput.setBindings(new ArrayList<>());
+    for (String fieldName : fieldNames) {
+      CSVBind csvBind = new CSVBind();
+      csvBind.setColumn(fieldName);
+      csvBind.setField(fieldName);
+      csvInput.getBindings().add(csvBind);
+    }
+    return csvInput;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.ebics.client;
+
+import com.axelor.app.AppSettings;
+import com.axelor.apps.bankpayment.db.EbicsBank;
+import com.axelor.apps.bankpayment.db.EbicsCertificate;
+import com.axelor.apps.bankpayment.db.repo.EbicsCertificateRepository;
+import com.axelor.apps.bankpayment.ebics.service.EbicsCertificateService;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import java.lang.invoke.MethodHandles;
+import java.net.URL;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HTTP clients of the ebics banks. Each bank has its own client, with a pool of keep-alive
+ * connections reused by all the requests of its transfers. The client is created again when the
+ * bank or its ssl certificate is modified.
+ */
+public class EbicsHttpClientPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int MAX_CONNECTIONS_PER_BANK = 4;
+  private static final int TIMEOUT = 30000;
+  private static final long IDLE_TIMEOUT = 60000;
+
+  private static final Map<Long, PooledClient> clients = new HashMap<>();
+
+  private EbicsHttpClientPool() {}
+
+  /**
+   * Returns the client of a bank using the ssl protocol, with the ssl certificate of the bank.
+   *
+   * @param bank the ebics bank
+   * @return the pooled client of the bank
+   */
+  public static synchronized DefaultHttpClient getSecuredHttpClient(EbicsBank bank)
+      throws AxelorException {
+
+    PooledClient client = getPooledClient(bank);
+    if (client == null) {
+      client = new PooledClient(bank, createSecuredHttpClient(bank), null);
+      clients.put(bank.getId(), client);
+    }
+    client
+        .securedClient
+        .getConnectionManager()
+        .closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    return client.securedClient;
+  }
+
+  /**
+   * Returns the client of a bank using the tls protocol.
+   *
+   * @param bank the ebics bank
+   * @return the pooled client of the bank
+   */
+  public static synchronized HttpClient getHttpClient(EbicsBank bank) {
+
+    PooledClient client = getPooledClient(bank);
+    if (client == null) {
+      client = new PooledClient(bank, null, createHttpClient());
+      clients.put(bank.getId(), client);
+    }
+    client.connectionManager.closeIdleConnections(IDLE_TIMEOUT);
+    return client.client;
+  }
+
+  /** Returns the client of the bank, unless the bank was modified since its creation. */
+  private static PooledClient getPooledClient(EbicsBank bank) {
+
+    PooledClient client = clients.get(bank.getId());
+    if (client == null || client.isFor(bank)) {
+      return client;
+    }
+    client.shutdown();
+    clients.remove(bank.getId());
+    return null;
+  }
+
+  private static DefaultHttpClient createSecuredHttpClient(EbicsBank bank) throws AxelorException {
+
+    X509Certificate cert =
+        EbicsCertificateService.getBankCertificate(bank, EbicsCertificateRepository.TYPE_SSL);
+    SchemeRegistry schemeRegistry = SchemeRegistryFactory.createDefault();
+
+    try {
+      Scheme https = null;
+      if (cert != null) {
+        LOG.debug("SSL certificate exist");
+        URL url = new URL(bank.getUrl());
+        LOG.debug("Url host: {}", url.getHost());
+        KeyStore keystore = KeyStore.getInstance("jks");
+        char[] password = "NoPassword".toCharArray();
+        keystore.load(null, password);
+        keystore.setCertificateEntry(url.getHost(), cert);
+        SSLSocketFactory factory = new SSLSocketFactory(keystore);
+        try {
+          factory.getHostnameVerifier().verify(url.getHost(), cert);
+          https = new Scheme("https", 443, new SSLSocketFactory(keystore));
+        } catch (SSLException e) {
+          LOG.debug("Error in ssl certifcate host name verification");
+          https = new Scheme("https", 443, SSLSocketFactory.getSocketFactory());
+        }
+
+      } else {
+        LOG.debug("SSL certificate not exist");
+        https = new Scheme("https", 443, SSLSocketFactory.getSocketFactory());
+      }
+      schemeRegistry.register(https);
+    } catch (Exception e) {
+      e.printStackTrace();
+      throw new AxelorException(
+          e.getCause(), TraceBackRepository.TYPE_TECHNICAL, I18n.get("Error adding certificate"));
+    }
+
+    PoolingClientConnectionManager connectionManager =
+        new PoolingClientConnectionManager(schemeRegistry);
+    connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_BANK);
+    connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_BANK);
+
+    HttpParams httpParams = new BasicHttpParams();
+    HttpConnectionParams.setConnectionTimeout(httpParams, TIMEOUT);
+    HttpConnectionParams.setSoTimeout(httpParams, TIMEOUT);
+    DefaultHttpClient client = new DefaultHttpClient(connectionManager, httpParams);
+
+    String proxyConfiguration = AppSettings.get().get("http.proxy.host");
+    if (proxyConfiguration != null && !proxyConfiguration.equals("")) {
+      setProxy(client);
+    }
+
+    return client;
+  }
+
+  private static HttpClient createHttpClient() {
+
+    MultiThreadedHttpConnectionManager connectionManager =
+        new MultiThreadedHttpConnectionManager();
+    connectionManager.getParams().setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_BANK);
+    connectionManager.getParams().setMaxTotalConnections(MAX_CONNECTIONS_PER_BANK);
+    connectionManager.getParams().setConnectionTimeout(TIMEOUT);
+    connectionManager.getParams().setSoTimeout(TIMEOUT);
+    HttpClient httpClient = new HttpClient(connectionManager);
+
+    String proxyConfiguration = AppSettings.get().get("http.proxy.host");
+    if (proxyConfiguration != null && !proxyConfiguration.equals("")) {
+      setProxy(httpClient);
+    }
+
+    return httpClient;
+  }
+
+  private static void setProxy(DefaultHttpClient client) {
+
+    String proxyHost;
+    int proxyPort;
+
+    proxyHost = AppSettings.get().get("http.proxy.host").trim();
+    proxyPort = Integer.parseInt(AppSettings.get().get("http.proxy.port").trim());
+    if (!AppSettings.get().get("http.proxy.user").equals("")) {
+      String user;
+      String pwd;
+      Credentials credentials;
+      AuthScope authscope;
+
+      user = AppSettings.get().get("http.proxy.user").trim();
+      pwd = AppSettings.get().get("http.proxy.password").trim();
+      credentials = new UsernamePasswordCredentials(user, pwd);
+      authscope = new AuthScope(proxyHost, proxyPort);
+      client.getCredentialsProvider().setCredentials(authscope, credentials);
+    }
+  }
+
+  private static void setProxy(HttpClient httpClient) {
+
+    String proxyHost = AppSettings.get().get("http.proxy.host").trim();
+    Integer proxyPort = Integer.parseInt(AppSettings.get().get("http.proxy.port").trim());
+    HostConfiguration hostConfig = httpClient.getHostConfiguration();
+    hostConfig.setProxy(proxyHost, proxyPort);
+    if (!AppSettings.get().get("http.proxy.user").equals("")) {
+      String user;
+      String pwd;
+      org.apache.commons.httpclient.UsernamePasswordCredentials credentials;
+      org.apache.commons.httpclient.auth.AuthScope authscope;
+
+      user = AppSettings.get().get("http.proxy.user").trim();
+      pwd = AppSettings.get().get("http.proxy.password").trim();
+      credentials = new org.apache.commons.httpclient.UsernamePasswordCredentials(user, pwd);
+      authscope = new org.apache.commons.httpclient.auth.AuthScope(proxyHost, proxyPort);
+      httpClient.getState().setProxyCredentials(authscope, credentials);
+    }
+  }
+
+  private static class PooledClient {
+
+    private final Integer version;
+    private final String url;
+    private final String protocolSelect;
+    private final Long certificateId;
+    private final Integer certificateVersion;
+    private final DefaultHttpClient securedClient;
+    private final HttpClient client;
+    private final MultiThreadedHttpConnectionManager connectionManager;
+
+    private PooledClient(EbicsBank bank, DefaultHttpClient securedClient, HttpClient client) {
+      this.version = bank.getVersion();
+      this.url = bank.getUrl();
+      this.protocolSelect = bank.getProtocolSelect();
+      EbicsCertificate certificate = getSslCertificate(bank);
+      this.certificateId = certificate != null ? certificate.getId() : null;
+      this.certificateVersion = certificate != null ? certificate.getVersion() : null;
+      this.securedClient = securedClient;
+      this.client = client;
+      this.connectionManager =
+          client != null
+              ? (MultiThreadedHttpConnectionManager) client.getHttpConnectionManager()
+              : null;
+    }
+
+    private boolean isFor(EbicsBank bank) {
+      EbicsCertificate certificate = getSslCertificate(bank);
+      return Objects.equals(version, bank.getVersion())
+          && Objects.equals(url, bank.getUrl())
+          && Objects.equals(protocolSelect, bank.getProtocolSelect())
+          && Objects.equals(certificateId, certificate != null ? certificate.getId() : null)
+          && Objects.equals(
+              certificateVersion, certificate != null ? certificate.getVersion() : null);
+    }
+
+    /** The ssl certificate trusted by the secured client of the bank. */
+    private static EbicsCertificate getSslCertificate(EbicsBank bank) {
+      return EbicsCertificateService.getEbicsCertificate(bank, EbicsCertificateRepository.TYPE_SSL);
+    }
+
+    private void shutdown() {
+      if (securedClient != null) {
+        securedClient.getConnectionManager().shutdown();
+      }
+      if (connectionManager != null) {
+        connectionManager.shutdown();
+      }
+    }
+  }
+}
@@ -278,6 +278,23 @@ public class EbicsUtils {
    */
   private static byte[] encryptOrDecrypt(int mode, byte[] input, SecretKeySpec keySpec)
       throws AxelorException {
+    try {
+      return createCipher(mode, keySpec).doFinal(input);
+    } catch (GeneralSecurityException e) {
+      throw new AxelorException(
+          e.getCause(), TraceBackRepository.CATEGORY_CONFIGURATION_ERROR, e.getMessage());
+    }
+  }
+
+  /**
+   * Creates the cipher to encrypt or decrypt the order data according to key spec, to be used on
+   * streams.
+   *
+   * @param mode the encryption-decryption mode.
+   * @param keySpec the key spec.
+   * @return the initialized cipher.
+   */
+  public static Cipher createCipher(int mode, SecretKeySpec keySpec) throws AxelorException {
     IvParameterSpec iv;
     Cipher cipher;
 
@@ -285,7 +302,7 @@ public class EbicsUtils {
     try {
       cipher = Cipher.getInstance("AES/CBC/ISO10126Padding", BouncyCastleProvider.PROVIDER_NAME);
       cipher.init(mode, keySpec, iv);
-      return cipher.doFinal(input);
+      return cipher;
     } catch (GeneralSecurityException e) {
       throw new AxelorException(
           e.getCause(), TraceBackRepository.CATEGORY_CONFIGURATION_ERROR, e.getMessage());
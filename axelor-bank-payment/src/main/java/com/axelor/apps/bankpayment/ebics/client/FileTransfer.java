@@ -33,11 +33,10 @@ import com.axelor.apps.bankpayment.ebics.xml.TransferResponseElement;
 import com.axelor.apps.bankpayment.ebics.xml.UInitializationRequestElement;
 import com.axelor.apps.bankpayment.ebics.xml.UTransferRequestElement;
 import com.axelor.exception.AxelorException;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
-import org.jdom.JDOMException;
 
 /**
  * Handling of file transfers. Files can be transferred to and fetched from the bank. Every transfer
@@ -78,12 +77,12 @@ public class FileTransfer {
   /**
    * Initiates a file transfer to the bank.
    *
-   * @param content The bytes you want to send.
+   * @param content The file you want to send, read as a stream.
    * @param orderType As which order type
    * @throws IOException
    * @throws EbicsException
    */
-  public void sendFile(byte[] content, OrderType orderType, byte[] signature)
+  public void sendFile(File content, OrderType orderType, byte[] signature)
       throws IOException, AxelorException {
     HttpRequestSender sender;
     UInitializationRequestElement initializer;
@@ -95,47 +94,41 @@ public class FileTransfer {
 
     initializer = new UInitializationRequestElement(session, orderType, content, signature);
 
-    initializer.build();
-
-    initializer.validate();
-    ByteArrayOutputStream bout = new ByteArrayOutputStream();
     try {
-      initializer.save(bout);
-    } catch (JDOMException e) {
-      // TODO Bloc catch généré automatiquement
-      e.printStackTrace();
-    }
-    System.out.println(
-        "Requete ----------------------------------------------------------------------------");
-    System.out.println(bout.toString());
+      initializer.build();
 
-    httpCode = sender.send(new ByteArrayContentFactory(initializer.prettyPrint()));
+      initializer.validate();
 
-    EbicsUtils.checkHttpCode(httpCode);
-    response =
-        new InitializationResponseElement(
-            sender.getResponseBody(),
-            orderType,
-            DefaultEbicsRootElement.generateName(orderType),
-            session.getUser());
-    response.build();
-    response.report(new EbicsRootElement[] {initializer, response});
-    state = new EbicsTransferState();
-    state.setNumSegments(initializer.getSegmentNumber());
-    state.setTransactionId(response.getTransactionId());
-    int segNumber = 1;
-    while (segNumber <= state.getNumSegments()) {
-      state.setSegmentNumber(segNumber);
-      if (segNumber == state.getSegmentNumber()) {
-        state.setLastSegment(true);
+      httpCode = sender.send(new ByteArrayContentFactory(initializer.prettyPrint()));
+
+      EbicsUtils.checkHttpCode(httpCode);
+      response =
+          new InitializationResponseElement(
+              sender.getResponseBody(),
+              orderType,
+              DefaultEbicsRootElement.generateName(orderType),
+              session.getUser());
+      response.build();
+      response.report(new EbicsRootElement[] {initializer, response});
+      state = new EbicsTransferState();
+      state.setNumSegments(initializer.getSegmentNumber());
+      state.setTransactionId(response.getTransactionId());
+      int segNumber = 1;
+      while (segNumber <= state.getNumSegments()) {
+        state.setSegmentNumber(segNumber);
+        if (segNumber == state.getNumSegments()) {
+          state.setLastSegment(true);
+        }
+        sendFile(
+            initializer.getContent(segNumber),
+            segNumber,
+            state.getLastSegment(),
+            state.getTransactionId(),
+            orderType);
+        segNumber++;
       }
-      sendFile(
-          initializer.getContent(segNumber),
-          segNumber,
-          state.getLastSegment(),
-          state.getTransactionId(),
-          orderType);
-      segNumber++;
+    } finally {
+      initializer.close();
     }
   }
 
@@ -217,25 +210,29 @@ public class FileTransfer {
     response.build();
     response.report(new EbicsRootElement[] {initializer, response});
     state = new EbicsTransferState();
-    state.setSegmentNumber(response.getSegmentsNumber());
+    state.setNumSegments(response.getSegmentsNumber());
     state.setTransactionId(response.getTransactionId());
-    state.setSegmentNumber(response.getSegmentNumber());
+    state.setSegmentNumber(response.getSegmentNumber() + 1);
     joiner = new Joiner(session.getUser());
-    joiner.append(response.getOrderData());
-    while (state.getSegmentNumber() <= state.getNumSegments()) {
-      if (state.getSegmentNumber() == state.getNumSegments()) {
-        state.setLastSegment(true);
+    try {
+      joiner.append(response.getOrderData());
+      while (state.getSegmentNumber() <= state.getNumSegments()) {
+        if (state.getSegmentNumber() == state.getNumSegments()) {
+          state.setLastSegment(true);
+        }
+        fetchFile(
+            orderType,
+            state.getSegmentNumber(),
+            state.getLastSegment(),
+            state.getTransactionId(),
+            joiner);
+        state.setSegmentNumber(state.getSegmentNumber() + 1);
       }
-      fetchFile(
-          orderType,
-          state.getSegmentNumber(),
-          state.getLastSegment(),
-          state.getTransactionId(),
-          joiner);
-      state.setSegmentNumber(state.getSegmentNumber() + 1);
-    }
 
-    joiner.writeTo(dest, response.getTransactionKey());
+      joiner.writeTo(dest, response.getTransactionKey());
+    } finally {
+      joiner.close();
+    }
     receipt =
         new ReceiptRequestElement(
             session, state.getTransactionId(), DefaultEbicsRootElement.generateName(orderType));
@@ -23,32 +23,50 @@ import com.axelor.apps.bankpayment.ebics.service.EbicsUserService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.inject.Beans;
-import java.io.ByteArrayOutputStream;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.GeneralSecurityException;
+import java.util.zip.InflaterInputStream;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 
 /**
  * A simple mean to join downloaded segments from the bank ebics server.
  *
+ * <p>The segments are appended to a temporary file, which is then decrypted and uncompressed as a
+ * stream, so the memory used does not depend on the size of the download.
+ *
  * @author Hachani
  */
 public class Joiner {
 
+  private static final int BUFFER_SIZE = 65536;
+
   /**
    * Constructs a new <code>Joiner</code> object.
    *
    * @param user the ebics user.
    */
-  public Joiner(EbicsUser user) {
+  public Joiner(EbicsUser user) throws AxelorException {
     this.user = user;
-    buffer = new ByteArrayOutputStream();
+    try {
+      file = File.createTempFile("ebics", ".download");
+      buffer = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+    } catch (IOException e) {
+      throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
+    }
   }
 
   public void append(byte[] data) throws AxelorException {
     try {
       buffer.write(data);
-      buffer.flush();
     } catch (IOException e) {
       throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
     }
@@ -63,19 +81,40 @@ public class Joiner {
    */
   public void writeTo(OutputStream output, byte[] transactionKey) throws AxelorException {
     try {
-      byte[] decrypted;
-
       buffer.close();
-      decrypted =
-          Beans.get(EbicsUserService.class).decrypt(user, buffer.toByteArray(), transactionKey);
-      output.write(EbicsUtils.unzip(decrypted));
-      output.close();
+      Cipher cipher =
+          EbicsUtils.createCipher(
+              Cipher.DECRYPT_MODE,
+              Beans.get(EbicsUserService.class).decryptTransactionKey(user, transactionKey));
+
+      try (InputStream input =
+              new InflaterInputStream(
+                  new CipherInputStream(
+                      new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), cipher));
+          OutputStream out = output) {
+        ByteStreams.copy(input, out);
+      }
     } catch (GeneralSecurityException e) {
       throw new AxelorException(
           e.getCause(), TraceBackRepository.CATEGORY_INCONSISTENCY, e.getMessage());
     } catch (IOException e) {
       throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Closes and deletes the temporary file of the segments, whether they were written or not. Does
+   * nothing when it is already done.
+   */
+  public void close() {
+    try {
+      buffer.close();
+    } catch (IOException e) {
+      // The file is deleted anyway.
     }
+    file.delete();
   }
 
   // --------------------------------------------------------------------
@@ -83,5 +122,6 @@ public class Joiner {
   // --------------------------------------------------------------------
 
   private EbicsUser user;
-  private ByteArrayOutputStream buffer;
+  private File file;
+  private OutputStream buffer;
 }
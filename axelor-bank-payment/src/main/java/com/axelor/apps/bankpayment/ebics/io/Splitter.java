@@ -21,22 +21,58 @@ import com.axelor.apps.bankpayment.ebics.client.EbicsUtils;
 import com.axelor.apps.bankpayment.ebics.interfaces.ContentFactory;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
  * A mean to split a given input file to 1MB portions. this i useful to handle big file uploading.
  *
+ * <p>The input is compressed and encrypted as a stream into a temporary file, and each segment is
+ * read from this file when it is sent, so the memory used does not depend on the size of the
+ * input.
+ *
  * @author Hachani
  */
-public class Splitter {
+public class Splitter implements Closeable {
+
+  /** Maximum size of a base64-coded segment: 1 MB = 1,048,576 bytes. */
+  private static final int MAX_SEGMENT_SIZE = 1048576;
+
+  /** Maximum size of a segment before base64 coding, each 3 bytes giving 4 characters. */
+  private static final int MAX_SEGMENT_BYTES = MAX_SEGMENT_SIZE / 4 * 3;
+
+  private static final int BUFFER_SIZE = 65536;
 
   /**
-   * Constructs a new <code>FileSplitter</code> with a given file.
+   * Constructs a new <code>FileSplitter</code> with a given byte array.
    *
    * @param input the input byte array
    */
   public Splitter(byte[] input) {
-    this.input = input;
+    this.input = ByteSource.wrap(input);
+  }
+
+  /**
+   * Constructs a new <code>FileSplitter</code> with a given file, read as a stream.
+   *
+   * @param input the input file
+   */
+  public Splitter(File input) {
+    this.input = Files.asByteSource(input);
   }
 
   /**
@@ -59,21 +95,40 @@ public class Splitter {
    *             maximum of 1,048,576 bytes.
    *       </ol>
    *
+   * <p>The base64 coding is done by the XML serialization of each segment.
+   *
    * @param isCompressionEnabled enable compression?
    * @param keySpec the secret key spec
    * @throws EbicsException
    */
   public final void readInput(boolean isCompressionEnabled, SecretKeySpec keySpec)
       throws AxelorException {
+    Cipher cipher = EbicsUtils.createCipher(Cipher.ENCRYPT_MODE, keySpec);
+    Deflater compressor = null;
+
     try {
+      content = File.createTempFile("ebics", ".upload");
+      OutputStream output =
+          new CipherOutputStream(
+              new BufferedOutputStream(new FileOutputStream(content), BUFFER_SIZE), cipher);
       if (isCompressionEnabled) {
-        input = EbicsUtils.zip(input);
+        compressor = new Deflater(Deflater.BEST_COMPRESSION);
+        output = new DeflaterOutputStream(output, compressor, BUFFER_SIZE);
+      }
+      try (InputStream in = input.openStream();
+          OutputStream out = output) {
+        ByteStreams.copy(in, out);
       }
-      content = EbicsUtils.encrypt(input, keySpec);
+      contentLength = content.length();
       segmentation();
-    } catch (Exception e) {
+    } catch (IOException e) {
+      close();
       throw new AxelorException(
           e.getCause(), TraceBackRepository.CATEGORY_CONFIGURATION_ERROR, e.getMessage());
+    } finally {
+      if (compressor != null) {
+        compressor.end();
+      }
     }
   }
 
@@ -88,13 +143,7 @@ public class Splitter {
    */
   private void segmentation() {
 
-    numSegments = content.length / 1048576; // (1024 * 1024)
-
-    if (content.length % 1048576 != 0) {
-      numSegments++;
-    }
-
-    segmentSize = content.length / numSegments;
+    numSegments = (int) ((contentLength + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES);
   }
 
   /**
@@ -103,30 +152,20 @@ public class Splitter {
    * @param segmentNumber the segment number
    * @return
    */
-  public ContentFactory getContent(int segmentNumber) {
-    byte[] segment;
-    int offset;
-
-    offset = segmentSize * (segmentNumber - 1);
-    if (content.length < segmentSize + offset) {
-      segment = new byte[content.length - offset];
-    } else {
-      segment = new byte[segmentSize];
+  public ContentFactory getContent(int segmentNumber) throws AxelorException {
+    long offset = (long) MAX_SEGMENT_BYTES * (segmentNumber - 1);
+    byte[] segment = new byte[(int) Math.min(MAX_SEGMENT_BYTES, contentLength - offset)];
+
+    try (RandomAccessFile file = new RandomAccessFile(content, "r")) {
+      file.seek(offset);
+      file.readFully(segment);
+    } catch (IOException e) {
+      throw new AxelorException(e.getCause(), TraceBackRepository.TYPE_TECHNICAL, e.getMessage());
     }
 
-    System.arraycopy(content, offset, segment, 0, segment.length);
     return new ByteArrayContentFactory(segment);
   }
 
-  /**
-   * Returns the hole content.
-   *
-   * @return the input content.
-   */
-  public byte[] getContent() {
-    return content;
-  }
-
   /**
    * Returns the total segment number.
    *
@@ -136,12 +175,21 @@ public class Splitter {
     return numSegments;
   }
 
+  /** Deletes the temporary file of the content, once every segment is sent. */
+  @Override
+  public void close() {
+    if (content != null) {
+      content.delete();
+      content = null;
+    }
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
-  private byte[] input;
-  private byte[] content;
-  private int segmentSize;
+  private ByteSource input;
+  private File content;
+  private long contentLength;
   private int numSegments;
 }
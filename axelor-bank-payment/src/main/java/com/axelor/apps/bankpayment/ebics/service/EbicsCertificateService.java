@@ -248,7 +248,14 @@ public class EbicsCertificateService {
     return certRepo.save(cert);
   }
 
-  private static EbicsCertificate getEbicsCertificate(EbicsBank bank, String type) {
+  /**
+   * Returns the certificate of the given type stored on the bank, if any.
+   *
+   * @param bank the ebics bank
+   * @param type the type of the certificate
+   * @return the certificate, or null if the bank has none of this type
+   */
+  public static EbicsCertificate getEbicsCertificate(EbicsBank bank, String type) {
 
     if (bank == null) {
       return null;
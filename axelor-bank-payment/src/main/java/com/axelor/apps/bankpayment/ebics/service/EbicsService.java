@@ -373,12 +373,9 @@ public class EbicsService {
     try {
       if (ebicsPartner.getEbicsTypeSelect() == EbicsPartnerRepository.EBICS_TYPE_TS) {
         transferManager.sendFile(
-            IOUtils.getFileContent(file.getAbsolutePath()),
-            OrderType.FUL,
-            IOUtils.getFileContent(signature.getAbsolutePath()));
+            file, OrderType.FUL, IOUtils.getFileContent(signature.getAbsolutePath()));
       } else {
-        transferManager.sendFile(
-            IOUtils.getFileContent(file.getAbsolutePath()), OrderType.FUL, null);
+        transferManager.sendFile(file, OrderType.FUL, null);
       }
       userService.getNextOrderId(transportUser);
     } catch (IOException | AxelorException e) {
@@ -27,10 +27,12 @@ import com.axelor.apps.bankpayment.ebics.client.EbicsUtils;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
+import com.google.common.io.ByteSource;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.security.Signature;
 import java.time.LocalDateTime;
@@ -41,6 +43,8 @@ import org.jdom.JDOMException;
 
 public class EbicsUserService {
 
+  private static final int BUFFER_SIZE = 65536;
+
   @Inject private EbicsService ebicsService;
 
   @Inject private EbicsRequestLogRepository requestLogRepo;
@@ -91,11 +95,32 @@ public class EbicsUserService {
    */
   public byte[] sign(EbicsUser ebicsUser, byte[] digest)
       throws IOException, GeneralSecurityException {
+    return sign(ebicsUser, ByteSource.wrap(digest));
+  }
+
+  /**
+   * Signs the data like {@link #sign(EbicsUser, byte[])}, reading it as a stream so that the memory
+   * used does not depend on the size of the data.
+   *
+   * @param ebicsUser the signing user
+   * @param data the data to sign
+   * @return the A005 signature of the data
+   */
+  public byte[] sign(EbicsUser ebicsUser, ByteSource data)
+      throws IOException, GeneralSecurityException {
 
     Signature signature =
         Signature.getInstance("SHA256WithRSA", BouncyCastleProvider.PROVIDER_NAME);
     signature.initSign(ebicsService.getPrivateKey(ebicsUser.getA005Certificate().getPrivateKey()));
-    signature.update(removeOSSpecificChars(digest));
+
+    try (InputStream input = data.openStream()) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int length;
+      while ((length = input.read(buffer)) != -1) {
+        signature.update(buffer, 0, removeOSSpecificChars(buffer, length));
+      }
+    }
+
     return signature.sign();
   }
 
@@ -170,6 +195,31 @@ public class EbicsUserService {
     return output.toByteArray();
   }
 
+  /**
+   * Removes the white-space characters, like {@link #removeOSSpecificChars(byte[])}, from the first
+   * {@code length} bytes of the buffer, in place. Each character is removed on its own, so a buffer
+   * can be cleaned one read at a time.
+   *
+   * @param buffer the given byte buffer
+   * @param length the number of bytes read in the buffer
+   * @return the number of bytes left at the beginning of the buffer
+   */
+  public static int removeOSSpecificChars(byte[] buffer, int length) {
+    int newLength = 0;
+    for (int i = 0; i < length; i++) {
+      switch (buffer[i]) {
+        case '\r':
+        case '\n':
+        case 0x1A: // CTRL-Z / EOF
+          // ignore this characters
+          break;
+        default:
+          buffer[newLength++] = buffer[i];
+      }
+    }
+    return newLength;
+  }
+
   /**
    * EBICS IG CFONB VF 2.1.4 2012 02 24 - 2.1.3.2 Calcul de la signature:
    *
@@ -186,6 +236,20 @@ public class EbicsUserService {
    */
   public byte[] decrypt(EbicsUser user, byte[] encryptedData, byte[] transactionKey)
       throws AxelorException, GeneralSecurityException, IOException {
+
+    return decryptData(encryptedData, decryptTransactionKey(user, transactionKey));
+  }
+
+  /**
+   * Decrypts the transaction key with the secret key of the user, to decrypt the order data as a
+   * stream.
+   *
+   * @param user the ebics user
+   * @param transactionKey the encrypted transaction key
+   * @return the key spec of the order data
+   */
+  public SecretKeySpec decryptTransactionKey(EbicsUser user, byte[] transactionKey)
+      throws AxelorException, GeneralSecurityException, IOException {
     Cipher cipher;
     int blockSize;
     ByteArrayOutputStream outputStream;
@@ -199,7 +263,7 @@ public class EbicsUserService {
       outputStream.write(cipher.doFinal(transactionKey, j * blockSize, blockSize));
     }
 
-    return decryptData(encryptedData, outputStream.toByteArray());
+    return new SecretKeySpec(outputStream.toByteArray(), "EAS");
   }
 
   /**
@@ -220,13 +284,13 @@ public class EbicsUserService {
    * form.
    *
    * @param input The encrypted data
-   * @param key The secret key.
+   * @param keySpec The secret key spec.
    * @return The decrypted data sent from the EBICS bank.
    * @throws GeneralSecurityException
    * @throws IOException
    */
-  private byte[] decryptData(byte[] input, byte[] key) throws AxelorException {
-    return EbicsUtils.decrypt(input, new SecretKeySpec(key, "EAS"));
+  private byte[] decryptData(byte[] input, SecretKeySpec keySpec) throws AxelorException {
+    return EbicsUtils.decrypt(input, keySpec);
   }
 
   @Transactional
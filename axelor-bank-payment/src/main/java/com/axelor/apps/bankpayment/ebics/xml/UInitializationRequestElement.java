@@ -46,14 +46,15 @@ import com.axelor.apps.bankpayment.ebics.client.OrderAttribute;
 import com.axelor.apps.bankpayment.ebics.interfaces.ContentFactory;
 import com.axelor.apps.bankpayment.ebics.io.Splitter;
 import com.axelor.exception.AxelorException;
-import java.io.ByteArrayOutputStream;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.XMLConstants;
-import org.jdom.JDOMException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,17 +73,17 @@ public class UInitializationRequestElement extends InitializationRequestElement
    *
    * @param session the current ebics session.
    * @param orderType the upload order type
-   * @param userData the user data to be uploaded
+   * @param userData the file of the user data to be uploaded, read as a stream
    * @throws EbicsException
    */
   public UInitializationRequestElement(
       EbicsSession session,
       com.axelor.apps.bankpayment.ebics.client.OrderType orderType,
-      byte[] userData,
+      File userData,
       byte[] userSignatureData)
       throws AxelorException {
     super(session, orderType, generateName(orderType));
-    this.userData = userData;
+    this.userData = Files.asByteSource(userData);
     this.userSignatureData = userSignatureData;
     keySpec = new SecretKeySpec(nonce, "EAS");
     splitter = new Splitter(userData);
@@ -205,10 +206,6 @@ public class UInitializationRequestElement extends InitializationRequestElement
             "http://www.w3.org/2001/04/xmlenc#sha256",
             decodeHex(KeyUtil.getKeyDigest(session.getBankE002Key())));
 
-    System.out.println(
-        "signature ----------------------------------------------------------------------------");
-    System.out.println(userSignature.toString());
-
     // USE PREVALIDATION
     //    PreValidation preValidation = PreValidation.Factory.newInstance();
     //    preValidation.setAuthenticate(true);
@@ -233,18 +230,6 @@ public class UInitializationRequestElement extends InitializationRequestElement
 
     request = EbicsXmlFactory.createEbicsRequest(1, "H003", header, body);
     document = EbicsXmlFactory.createEbicsRequestDocument(request);
-
-    ByteArrayOutputStream bout = new ByteArrayOutputStream();
-    try {
-      this.save(bout);
-    } catch (JDOMException e) {
-      // TODO Bloc catch généré automatiquement
-      e.printStackTrace();
-    }
-
-    System.out.println(
-        "Requete signature ----------------------------------------------------------------------------");
-    System.out.println(bout.toString());
   }
 
   @Override
@@ -269,10 +254,15 @@ public class UInitializationRequestElement extends InitializationRequestElement
    * @param segment the segment number
    * @return the content of the given segment
    */
-  public ContentFactory getContent(int segment) {
+  public ContentFactory getContent(int segment) throws AxelorException {
     return splitter.getContent(segment);
   }
 
+  /** Deletes the temporary content of the segments, once the upload is done. */
+  public void close() {
+    splitter.close();
+  }
+
   /**
    * Returns the total segment number.
    *
@@ -286,7 +276,7 @@ public class UInitializationRequestElement extends InitializationRequestElement
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
-  private byte[] userData;
+  private ByteSource userData;
   private byte[] userSignatureData;
   private UserSignature userSignature;
   private SecretKeySpec keySpec;
@@ -24,6 +24,7 @@ import com.axelor.apps.bankpayment.db.repo.EbicsPartnerRepository;
 import com.axelor.apps.bankpayment.ebics.service.EbicsUserService;
 import com.axelor.exception.AxelorException;
 import com.axelor.inject.Beans;
+import com.google.common.io.ByteSource;
 import java.util.Base64;
 import javax.xml.XMLConstants;
 import org.slf4j.Logger;
@@ -41,7 +42,7 @@ public class UserSignature extends DefaultEbicsRootElement {
 
   private EbicsUser user;
   private String signatureVersion;
-  private byte[] data;
+  private ByteSource data;
   private byte[] signature;
   private String name;
 
@@ -54,6 +55,19 @@ public class UserSignature extends DefaultEbicsRootElement {
    */
   public UserSignature(
       EbicsUser user, String name, String signatureVersion, byte[] data, byte[] signature) {
+    this(user, name, signatureVersion, ByteSource.wrap(data), signature);
+  }
+
+  /**
+   * Constructs a new <code>UserSignature</code> element for a data read as a stream, so that the
+   * memory used does not depend on the size of the data.
+   *
+   * @param user the ebics user
+   * @param signatureVersion the signature version
+   * @param data the data to be signed
+   */
+  public UserSignature(
+      EbicsUser user, String name, String signatureVersion, ByteSource data, byte[] signature) {
     this.user = user;
     this.data = data;
     this.signature = signature;
@@ -23,7 +23,11 @@ import com.axelor.apps.bankpayment.ebics.service.EbicsUserService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
+import java.security.MessageDigest;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
@@ -37,11 +41,13 @@ import org.slf4j.LoggerFactory;
  */
 public class UserSignatureVerify {
 
+  private static final int BUFFER_SIZE = 65536;
+
   private final Logger log = LoggerFactory.getLogger(getClass());
 
   private EbicsUser user;
   private byte[] signature;
-  private byte[] bankOrderContent;
+  private ByteSource bankOrderContent;
   private String modulus;
   private String exponent;
 
@@ -53,6 +59,17 @@ public class UserSignatureVerify {
    * @param toSign the data to be signed
    */
   public UserSignatureVerify(EbicsUser user, byte[] bankOrderContent, byte[] signature) {
+    this(user, ByteSource.wrap(bankOrderContent), signature);
+  }
+
+  /**
+   * Constructs a new <code>UserSignatureVerify</code> for a bank order content read as a stream.
+   *
+   * @param user the ebics user
+   * @param bankOrderContent the signed data
+   * @param signature the signature to verify
+   */
+  public UserSignatureVerify(EbicsUser user, ByteSource bankOrderContent, byte[] signature) {
     this.user = user;
     this.bankOrderContent = bankOrderContent;
     this.signature = signature;
@@ -61,7 +78,12 @@ public class UserSignatureVerify {
 
   public void verify() throws AxelorException {
 
-    String comptedSha256Digest = computeSha256Digest();
+    String comptedSha256Digest;
+    try {
+      comptedSha256Digest = computeSha256Digest();
+    } catch (IOException e) {
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    }
     String originalDigestFromSignature = getOriginalDigestFromSignature();
     if (!comptedSha256Digest.equals(originalDigestFromSignature)) {
       String message =
@@ -89,11 +111,19 @@ public class UserSignatureVerify {
     this.exponent = certificate.getPublicKeyExponent();
   }
 
-  public String computeSha256Digest() {
+  public String computeSha256Digest() throws IOException {
 
-    bankOrderContent = EbicsUserService.removeOSSpecificChars(bankOrderContent);
+    MessageDigest digest = DigestUtils.getSha256Digest();
+
+    try (InputStream input = bankOrderContent.openStream()) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int length;
+      while ((length = input.read(buffer)) != -1) {
+        digest.update(buffer, 0, EbicsUserService.removeOSSpecificChars(buffer, length));
+      }
+    }
 
-    String sha = DigestUtils.sha256Hex(bankOrderContent);
+    String sha = Hex.encodeHexString(digest.digest());
 
     log.debug("Digest (SHA256) of bank order content : {}", sha);
 
@@ -104,7 +134,7 @@ public class UserSignatureVerify {
 
     String hexSignature = getHexSignature();
 
-    System.out.println("Signature (HEX STRING) : " + hexSignature);
+    log.debug("Signature (HEX STRING) : {}", hexSignature);
 
     String result =
         new BigInteger(hexSignature, 16)
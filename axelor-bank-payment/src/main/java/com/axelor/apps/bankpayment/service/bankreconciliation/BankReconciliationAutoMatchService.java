@@ -0,0 +1,618 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankreconciliation;
+
+import com.axelor.apps.account.db.MoveLine;
+import com.axelor.apps.account.db.repo.MoveRepository;
+import com.axelor.apps.bankpayment.db.BankReconciliation;
+import com.axelor.apps.bankpayment.db.BankReconciliationLine;
+import com.axelor.apps.bankpayment.db.repo.BankReconciliationRepository;
+import com.axelor.apps.bankpayment.exception.IExceptionMessage;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import com.google.common.base.Strings;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.persistence.TypedQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Match the bank reconciliation lines with the unreconciled move lines of the cash account.
+ *
+ * <p>The move lines are loaded once and indexed in memory by remaining amount, by date and by
+ * reference token, so each bank reconciliation line only scores the few move lines it can match.
+ * The matches are proposed on the lines, with their score, and posted by the validation of the
+ * bank reconciliation.
+ */
+public class BankReconciliationAutoMatchService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected static final int MOVE_LINE_PAGE_SIZE = 5000;
+
+  /** Number of days between the bank and the accounting dates of a match. */
+  protected static final int DATE_WINDOW_DAYS = 5;
+
+  protected static final int AMOUNT_SCORE = 50;
+  protected static final int DATE_SCORE = 30;
+  protected static final int REFERENCE_SCORE = 20;
+  protected static final int PARTNER_SCORE = 10;
+  protected static final int MIN_SCORE = 60;
+
+  protected static final int MIN_TOKEN_LENGTH = 4;
+
+  /** Tokens found on more move lines than this are too common to tell a match. */
+  protected static final int MAX_TOKEN_FREQUENCY = 50;
+
+  /** Maximum number of move lines matched together with one bank reconciliation line. */
+  protected static final int MAX_GROUP_SIZE = 5;
+
+  protected static final int MAX_GROUP_CANDIDATES = 15;
+
+  protected BankReconciliationRepository bankReconciliationRepository;
+  protected BankReconciliationLineService bankReconciliationLineService;
+
+  @Inject
+  public BankReconciliationAutoMatchService(
+      BankReconciliationRepository bankReconciliationRepository,
+      BankReconciliationLineService bankReconciliationLineService) {
+
+    this.bankReconciliationRepository = bankReconciliationRepository;
+    this.bankReconciliationLineService = bankReconciliationLineService;
+  }
+
+  /**
+   * Propose a move line for each bank reconciliation line that is not posted, nor already paired
+   * with a move line or an account. A line may be split to match several move lines whose amounts
+   * add up to its own.
+   *
+   * @param bankReconciliation the bank reconciliation
+   * @return the number of bank reconciliation lines matched
+   * @throws AxelorException if the bank reconciliation has no cash account
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public int autoMatch(BankReconciliation bankReconciliation) throws AxelorException {
+
+    if (bankReconciliation.getCashAccount() == null) {
+      throw new AxelorException(
+          bankReconciliation,
+          TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
+          I18n.get(IExceptionMessage.BANK_RECONCILIATION_MISSING_CASH_ACCOUNT),
+          bankReconciliation.getName());
+    }
+
+    long startTime = System.currentTimeMillis();
+
+    List<BankReconciliationLine> bankReconciliationLineList = new ArrayList<>();
+    Map<Long, BigDecimal> pairedAmountMap = new HashMap<>();
+
+    if (bankReconciliation.getBankReconciliationLineList() != null) {
+      for (BankReconciliationLine bankReconciliationLine :
+          bankReconciliation.getBankReconciliationLineList()) {
+        BigDecimal amount =
+            bankReconciliationLine.getDebit().add(bankReconciliationLine.getCredit());
+        if (bankReconciliationLine.getIsPosted()) {
+          continue;
+        }
+        if (bankReconciliationLine.getMoveLine() != null) {
+          pairedAmountMap.merge(
+              bankReconciliationLine.getMoveLine().getId(), amount, BigDecimal::add);
+        } else if (bankReconciliationLine.getAccount() == null
+            && bankReconciliationLine.getEffectDate() != null
+            && amount.signum() > 0) {
+          bankReconciliationLineList.add(bankReconciliationLine);
+        }
+      }
+    }
+
+    if (bankReconciliationLineList.isEmpty()) {
+      return 0;
+    }
+
+    MoveLineIndex index = this.createMoveLineIndex(bankReconciliation, pairedAmountMap);
+    List<Match> matchList = new ArrayList<>();
+    List<BankReconciliationLine> unmatchedLineList =
+        this.matchOneToOne(bankReconciliationLineList, index, matchList);
+    for (BankReconciliationLine bankReconciliationLine : unmatchedLineList) {
+      Match match = this.matchManyToOne(bankReconciliationLine, index);
+      if (match != null) {
+        matchList.add(match);
+      }
+    }
+
+    for (Match match : matchList) {
+      this.applyMatch(bankReconciliation, match);
+    }
+    bankReconciliationRepository.save(bankReconciliation);
+
+    long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+    log.info(
+        "Bank reconciliation {}: {} of {} lines matched with {} move lines in {} ms ({} lines/s)",
+        bankReconciliation.getName(),
+        matchList.size(),
+        bankReconciliationLineList.size(),
+        index.size,
+        duration,
+        bankReconciliationLineList.size() * 1000L / duration);
+
+    return matchList.size();
+  }
+
+  /**
+   * Load the move lines of the cash account with an amount still to reconcile, in pages of ids,
+   * and index them.
+   */
+  protected MoveLineIndex createMoveLineIndex(
+      BankReconciliation bankReconciliation, Map<Long, BigDecimal> pairedAmountMap) {
+
+    StringBuilder filter =
+        new StringBuilder(
+            "self.id > :lastId AND self.account.id = :cashAccountId "
+                + "AND move.company.id = :companyId AND move.statusSelect != :statusCanceled "
+                + "AND ((self.debit > 0 AND self.bankReconciledAmount < self.debit) "
+                + "OR (self.credit > 0 AND self.bankReconciledAmount < self.credit))");
+    if (bankReconciliation.getJournal() != null) {
+      filter.append(" AND move.journal.id = :journalId");
+    }
+    if (bankReconciliation.getFromDate() != null) {
+      filter.append(" AND self.date >= :fromDate");
+    }
+    if (bankReconciliation.getToDate() != null) {
+      filter.append(" AND self.date <= :toDate");
+    }
+
+    MoveLineIndex index = new MoveLineIndex();
+    long lastId = 0L;
+    List<Object[]> resultList;
+
+    do {
+      TypedQuery<Object[]> query =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.date, self.debit, self.credit, "
+                      + "self.bankReconciledAmount, partner.id, self.name, self.origin, "
+                      + "self.description, move.reference "
+                      + "FROM MoveLine self JOIN self.move move LEFT JOIN self.partner partner "
+                      + "WHERE "
+                      + filter
+                      + " ORDER BY self.id",
+                  Object[].class)
+              .setParameter("lastId", lastId)
+              .setParameter("cashAccountId", bankReconciliation.getCashAccount().getId())
+              .setParameter("companyId", bankReconciliation.getCompany().getId())
+              .setParameter("statusCanceled", MoveRepository.STATUS_CANCELED)
+              .setMaxResults(MOVE_LINE_PAGE_SIZE);
+      if (bankReconciliation.getJournal() != null) {
+        query.setParameter("journalId", bankReconciliation.getJournal().getId());
+      }
+      if (bankReconciliation.getFromDate() != null) {
+        query.setParameter(
+            "fromDate", bankReconciliation.getFromDate().minusDays(DATE_WINDOW_DAYS));
+      }
+      if (bankReconciliation.getToDate() != null) {
+        query.setParameter("toDate", bankReconciliation.getToDate().plusDays(DATE_WINDOW_DAYS));
+      }
+      resultList = query.getResultList();
+
+      for (Object[] result : resultList) {
+        lastId = (Long) result[0];
+        BigDecimal debit = this.zeroIfNull((BigDecimal) result[2]);
+        BigDecimal credit = this.zeroIfNull((BigDecimal) result[3]);
+        boolean isDebit = debit.signum() > 0;
+        BigDecimal remaining =
+            (isDebit ? debit : credit)
+                .subtract(this.zeroIfNull((BigDecimal) result[4]))
+                .subtract(pairedAmountMap.getOrDefault(lastId, BigDecimal.ZERO));
+        if (remaining.signum() <= 0) {
+          continue;
+        }
+
+        Set<String> tokens = new HashSet<>();
+        for (int i = 6; i < 10; i++) {
+          this.addTokens(tokens, (String) result[i]);
+        }
+        index.add(
+            new Candidate(
+                lastId, (LocalDate) result[1], isDebit, remaining, (Long) result[5], tokens));
+      }
+    } while (resultList.size() == MOVE_LINE_PAGE_SIZE);
+
+    return index;
+  }
+
+  /**
+   * Pair the bank reconciliation lines with the move lines of the same amount, best scores first.
+   * The lines left with two equally good move lines are not matched.
+   *
+   * @return the bank reconciliation lines without any move line of their amount
+   */
+  protected List<BankReconciliationLine> matchOneToOne(
+      List<BankReconciliationLine> bankReconciliationLineList,
+      MoveLineIndex index,
+      List<Match> matchList) {
+
+    // the lines are keyed by identity, the new ones have no id and all of them the same hash code
+    List<Pair> pairList = new ArrayList<>();
+    Map<BankReconciliationLine, List<Pair>> linePairMap = new IdentityHashMap<>();
+    Map<Candidate, List<Pair>> candidatePairMap = new HashMap<>();
+
+    for (BankReconciliationLine bankReconciliationLine : bankReconciliationLineList) {
+      LineKey lineKey = this.getLineKey(bankReconciliationLine);
+      List<Candidate> candidateList = index.getByAmount(lineKey.isMoveLineDebit, lineKey.amount);
+      for (Candidate candidate : candidateList) {
+        int score = AMOUNT_SCORE + this.scoreWithoutAmount(lineKey, candidate, index);
+        if (score >= MIN_SCORE) {
+          Pair pair = new Pair(bankReconciliationLine, candidate, score);
+          pairList.add(pair);
+          linePairMap.computeIfAbsent(bankReconciliationLine, key -> new ArrayList<>()).add(pair);
+          candidatePairMap.computeIfAbsent(candidate, key -> new ArrayList<>()).add(pair);
+        }
+      }
+    }
+
+    pairList.sort(Comparator.comparingInt((Pair pair) -> pair.score).reversed());
+    Set<BankReconciliationLine> doneLineSet = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    for (Pair pair : pairList) {
+      if (doneLineSet.contains(pair.line) || pair.candidate.matched) {
+        continue;
+      }
+      if (this.isAmbiguous(pair, linePairMap.get(pair.line), doneLineSet)) {
+        doneLineSet.add(pair.line);
+        continue;
+      }
+      if (this.isAmbiguous(pair, candidatePairMap.get(pair.candidate), doneLineSet)) {
+        for (Pair otherPair : candidatePairMap.get(pair.candidate)) {
+          if (otherPair.score == pair.score) {
+            doneLineSet.add(otherPair.line);
+          }
+        }
+        continue;
+      }
+      pair.candidate.matched = true;
+      doneLineSet.add(pair.line);
+      matchList.add(new Match(pair.line, Collections.singletonList(pair.candidate), pair.score));
+    }
+
+    List<BankReconciliationLine> unmatchedLineList = new ArrayList<>();
+    for (BankReconciliationLine bankReconciliationLine : bankReconciliationLineList) {
+      if (!linePairMap.containsKey(bankReconciliationLine)) {
+        unmatchedLineList.add(bankReconciliationLine);
+      }
+    }
+    return unmatchedLineList;
+  }
+
+  /** Whether another free pair of the list has the same score as the given one. */
+  protected boolean isAmbiguous(
+      Pair pair, List<Pair> otherPairList, Set<BankReconciliationLine> doneLineSet) {
+
+    for (Pair otherPair : otherPairList) {
+      if (otherPair != pair
+          && otherPair.score == pair.score
+          && !otherPair.candidate.matched
+          && !doneLineSet.contains(otherPair.line)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Search, among the best move lines of the date window, a group of move lines whose amounts add
+   * up to the amount of the bank reconciliation line.
+   */
+  protected Match matchManyToOne(
+      BankReconciliationLine bankReconciliationLine, MoveLineIndex index) {
+
+    LineKey lineKey = this.getLineKey(bankReconciliationLine);
+    List<Candidate> candidateList = new ArrayList<>();
+    Map<Candidate, Integer> scoreMap = new HashMap<>();
+
+    for (List<Candidate> dateCandidateList :
+        index
+            .getByDate(lineKey.isMoveLineDebit)
+            .subMap(
+                lineKey.date.minusDays(DATE_WINDOW_DAYS),
+                true,
+                lineKey.date.plusDays(DATE_WINDOW_DAYS),
+                true)
+            .values()) {
+      for (Candidate candidate : dateCandidateList) {
+        if (!candidate.matched && candidate.remaining.compareTo(lineKey.amount) < 0) {
+          scoreMap.put(candidate, this.scoreWithoutAmount(lineKey, candidate, index));
+          candidateList.add(candidate);
+        }
+      }
+    }
+
+    candidateList.sort(
+        Comparator.comparing((Candidate candidate) -> scoreMap.get(candidate)).reversed());
+    if (candidateList.size() > MAX_GROUP_CANDIDATES) {
+      candidateList = candidateList.subList(0, MAX_GROUP_CANDIDATES);
+    }
+    candidateList.sort(
+        Comparator.comparing((Candidate candidate) -> candidate.remaining).reversed());
+
+    List<Candidate> group = new ArrayList<>();
+    if (!this.findGroup(candidateList, 0, lineKey.amount, group)) {
+      return null;
+    }
+
+    int score = AMOUNT_SCORE + group.stream().mapToInt(scoreMap::get).min().orElse(0);
+    if (score < MIN_SCORE) {
+      return null;
+    }
+    group.forEach(candidate -> candidate.matched = true);
+    return new Match(bankReconciliationLine, group, score);
+  }
+
+  /** Depth-first search of move lines, sorted by decreasing amount, adding up to the amount. */
+  protected boolean findGroup(
+      List<Candidate> candidateList, int start, BigDecimal amount, List<Candidate> group) {
+
+    if (amount.signum() == 0) {
+      return group.size() > 1;
+    }
+    if (group.size() == MAX_GROUP_SIZE) {
+      return false;
+    }
+    for (int i = start; i < candidateList.size(); i++) {
+      Candidate candidate = candidateList.get(i);
+      if (candidate.remaining.compareTo(amount) > 0) {
+        continue;
+      }
+      group.add(candidate);
+      if (this.findGroup(candidateList, i + 1, amount.subtract(candidate.remaining), group)) {
+        return true;
+      }
+      group.remove(group.size() - 1);
+    }
+    return false;
+  }
+
+  /** Score the date distance, the shared reference tokens and the partner of a move line. */
+  protected int scoreWithoutAmount(LineKey lineKey, Candidate candidate, MoveLineIndex index) {
+
+    int score = 0;
+
+    if (candidate.date != null) {
+      long days = Math.abs(ChronoUnit.DAYS.between(lineKey.date, candidate.date));
+      if (days <= DATE_WINDOW_DAYS) {
+        score += DATE_SCORE * (DATE_WINDOW_DAYS + 1 - days) / (DATE_WINDOW_DAYS + 1);
+      }
+    }
+
+    for (String token : lineKey.tokens) {
+      if (candidate.tokens.contains(token) && index.isSignificant(token)) {
+        score += REFERENCE_SCORE;
+        break;
+      }
+    }
+
+    if (lineKey.partnerId != null && lineKey.partnerId.equals(candidate.partnerId)) {
+      score += PARTNER_SCORE;
+    }
+
+    return Math.min(score, 100 - AMOUNT_SCORE);
+  }
+
+  /**
+   * Set the move lines of the match on the bank reconciliation line, splitting it into one line
+   * for each move line, as the multiple reconcile does.
+   */
+  protected void applyMatch(BankReconciliation bankReconciliation, Match match) {
+
+    BankReconciliationLine bankReconciliationLine = match.line;
+    boolean isDebit = bankReconciliationLine.getDebit().signum() > 0;
+    boolean firstLine = true;
+
+    for (Candidate candidate : match.candidateList) {
+      MoveLine moveLine = JPA.em().getReference(MoveLine.class, candidate.id);
+      BigDecimal debit = isDebit ? candidate.remaining : BigDecimal.ZERO;
+      BigDecimal credit = isDebit ? BigDecimal.ZERO : candidate.remaining;
+
+      if (firstLine) {
+        if (match.candidateList.size() > 1) {
+          bankReconciliationLine.setDebit(debit);
+          bankReconciliationLine.setCredit(credit);
+        }
+        bankReconciliationLine.setMoveLine(moveLine);
+        bankReconciliationLine.setAutoMatchScore(match.score);
+        firstLine = false;
+      } else {
+        BankReconciliationLine newBankReconciliationLine =
+            bankReconciliationLineService.createBankReconciliationLine(
+                bankReconciliationLine.getEffectDate(),
+                debit,
+                credit,
+                bankReconciliationLine.getName(),
+                bankReconciliationLine.getReference(),
+                bankReconciliationLine.getBankStatementLine(),
+                moveLine);
+        newBankReconciliationLine.setAutoMatchScore(match.score);
+        bankReconciliation.addBankReconciliationLineListItem(newBankReconciliationLine);
+      }
+    }
+  }
+
+  protected LineKey getLineKey(BankReconciliationLine bankReconciliationLine) {
+
+    Set<String> tokens = new HashSet<>();
+    this.addTokens(tokens, bankReconciliationLine.getName());
+    this.addTokens(tokens, bankReconciliationLine.getReference());
+
+    return new LineKey(
+        bankReconciliationLine.getCredit().signum() > 0,
+        bankReconciliationLine.getDebit().add(bankReconciliationLine.getCredit()),
+        bankReconciliationLine.getEffectDate(),
+        bankReconciliationLine.getPartner() != null
+            ? bankReconciliationLine.getPartner().getId()
+            : null,
+        tokens);
+  }
+
+  protected void addTokens(Set<String> tokens, String text) {
+
+    if (Strings.isNullOrEmpty(text)) {
+      return;
+    }
+    for (String token : text.toUpperCase().split("[^\\p{Alnum}]+")) {
+      if (token.length() >= MIN_TOKEN_LENGTH) {
+        tokens.add(token);
+      }
+    }
+  }
+
+  protected BigDecimal zeroIfNull(BigDecimal value) {
+    return value != null ? value : BigDecimal.ZERO;
+  }
+
+  /** Unreconciled move lines by remaining amount, by date and by reference token. */
+  protected static class MoveLineIndex {
+
+    protected final Map<BigDecimal, List<Candidate>> debitAmountMap = new HashMap<>();
+    protected final Map<BigDecimal, List<Candidate>> creditAmountMap = new HashMap<>();
+    protected final NavigableMap<LocalDate, List<Candidate>> debitDateMap = new TreeMap<>();
+    protected final NavigableMap<LocalDate, List<Candidate>> creditDateMap = new TreeMap<>();
+    protected final Map<String, Integer> tokenCountMap = new HashMap<>();
+    protected int size;
+
+    protected void add(Candidate candidate) {
+      (candidate.isDebit ? debitAmountMap : creditAmountMap)
+          .computeIfAbsent(candidate.remaining.stripTrailingZeros(), key -> new ArrayList<>())
+          .add(candidate);
+      if (candidate.date != null) {
+        (candidate.isDebit ? debitDateMap : creditDateMap)
+            .computeIfAbsent(candidate.date, key -> new ArrayList<>())
+            .add(candidate);
+      }
+      for (String token : candidate.tokens) {
+        tokenCountMap.merge(token, 1, Integer::sum);
+      }
+      size++;
+    }
+
+    protected List<Candidate> getByAmount(boolean isDebit, BigDecimal amount) {
+      return (isDebit ? debitAmountMap : creditAmountMap)
+          .getOrDefault(amount.stripTrailingZeros(), Collections.emptyList());
+    }
+
+    protected NavigableMap<LocalDate, List<Candidate>> getByDate(boolean isDebit) {
+      return isDebit ? debitDateMap : creditDateMap;
+    }
+
+    protected boolean isSignificant(String token) {
+      return tokenCountMap.getOrDefault(token, 0) <= MAX_TOKEN_FREQUENCY;
+    }
+  }
+
+  /** An unreconciled move line, with its amount still to reconcile. */
+  protected static class Candidate {
+
+    protected final long id;
+    protected final LocalDate date;
+    protected final boolean isDebit;
+    protected final BigDecimal remaining;
+    protected final Long partnerId;
+    protected final Set<String> tokens;
+    protected boolean matched;
+
+    protected Candidate(
+        long id,
+        LocalDate date,
+        boolean isDebit,
+        BigDecimal remaining,
+        Long partnerId,
+        Set<String> tokens) {
+      this.id = id;
+      this.date = date;
+      this.isDebit = isDebit;
+      this.remaining = remaining;
+      this.partnerId = partnerId;
+      this.tokens = tokens;
+    }
+  }
+
+  /** What a bank reconciliation line is matched on; a bank debit matches a move line credit. */
+  protected static class LineKey {
+
+    protected final boolean isMoveLineDebit;
+    protected final BigDecimal amount;
+    protected final LocalDate date;
+    protected final Long partnerId;
+    protected final Set<String> tokens;
+
+    protected LineKey(
+        boolean isMoveLineDebit,
+        BigDecimal amount,
+        LocalDate date,
+        Long partnerId,
+        Set<String> tokens) {
+      this.isMoveLineDebit = isMoveLineDebit;
+      this.amount = amount;
+      this.date = date;
+      this.partnerId = partnerId;
+      this.tokens = tokens;
+    }
+  }
+
+  protected static class Pair {
+
+    protected final BankReconciliationLine line;
+    protected final Candidate candidate;
+    protected final int score;
+
+    protected Pair(BankReconciliationLine line, Candidate candidate, int score) {
+      this.line = line;
+      this.candidate = candidate;
+      this.score = score;
+    }
+  }
+
+  protected static class Match {
+
+    protected final BankReconciliationLine line;
+    protected final List<Candidate> candidateList;
+    protected final int score;
+
+    protected Match(BankReconciliationLine line, List<Candidate> candidateList, int score) {
+      this.line = line;
+      this.candidateList = candidateList;
+      this.score = score;
+    }
+  }
+}
@@ -19,6 +19,7 @@ package com.axelor.apps.bankpayment.service.bankstatement.file.afb120;
 
 import com.axelor.apps.account.db.InterbankCodeLine;
 import com.axelor.apps.account.db.repo.InterbankCodeLineRepository;
+import com.axelor.apps.bankpayment.db.BankStatement;
 import com.axelor.apps.bankpayment.db.BankStatementLineAFB120;
 import com.axelor.apps.bankpayment.db.repo.BankStatementLineAFB120Repository;
 import com.axelor.apps.bankpayment.service.bankstatement.BankStatementService;
@@ -28,23 +29,25 @@ import com.axelor.apps.base.db.BankDetails;
 import com.axelor.apps.base.db.Currency;
 import com.axelor.apps.base.db.repo.BankDetailsRepository;
 import com.axelor.apps.base.db.repo.CurrencyRepository;
-import com.axelor.apps.tool.file.FileTool;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
+import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.inject.Beans;
-import com.beust.jcommander.internal.Lists;
-import com.beust.jcommander.internal.Maps;
 import com.google.inject.Inject;
-import com.google.inject.persist.Transactional;
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +69,53 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("ddMMyy");
 
+  /** Number of lines created in one transaction, and inserted in one JDBC batch. */
+  protected static final int CHUNK_SIZE = 500;
+
+  protected static final int READ_BUFFER_SIZE = 1 << 16;
+
+  /** The ids of the entities read in the file, by code. */
+  protected Map<String, Long> currencyIdMap;
+
+  protected Map<String, Long> bankDetailsIdMap;
+
+  /** A record of the file, referencing the entities by id as the session is cleared by chunk. */
+  protected static class StatementRecord {
+
+    protected int sequence;
+    protected int lineNumber;
+    protected int lineType;
+    protected Long bankDetailsId;
+    protected Long currencyId;
+    protected Long operationInterbankCodeLineId;
+    protected Long rejectInterbankCodeLineId;
+    protected BigDecimal debit;
+    protected BigDecimal credit;
+    protected String description;
+    protected String additionalInformation;
+    protected LocalDate operationDate;
+    protected LocalDate valueDate;
+    protected String origin;
+    protected String reference;
+    protected String unavailabilityIndexSelect;
+    protected String commissionExemptionIndexSelect;
+
+    protected void setAmount(BigDecimal amount) {
+      if (amount.signum() == 1) {
+        debit = BigDecimal.ZERO;
+        credit = amount.abs();
+      } else {
+        credit = BigDecimal.ZERO;
+        debit = amount.abs();
+      }
+    }
+
+    protected void addAdditionalInformation(String information) {
+      additionalInformation =
+          additionalInformation == null ? information : additionalInformation + "\n" + information;
+    }
+  }
+
   @Inject
   public BankStatementFileAFB120Service(BankStatementService bankStatementService) {
 
@@ -84,151 +134,202 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
   public void process() throws IOException, AxelorException {
     super.process();
 
-    List<Map<String, Object>> structuredContentFile = readFile();
+    currencyIdMap = new HashMap<>();
+    bankDetailsIdMap = new HashMap<>();
 
+    // an invalid file fails the import before any line is created
+    checkFile();
+
+    List<StatementRecord> recordList = new ArrayList<>(CHUNK_SIZE);
+    StatementRecord movementRecord = null;
     int sequence = 0;
-    findBankStatement();
-
-    for (Map<String, Object> structuredContentLine : structuredContentFile) {
-
-      try {
-        createBankStatementLine(structuredContentLine, sequence++);
-      } catch (Exception e) {
-        TraceBackService.trace(
-            new Exception(String.format("Line %s : %s", sequence, e), e), IException.IMPORT);
-        findBankStatement();
-      } finally {
-        if (sequence % 10 == 0) {
-          JPA.clear();
-          findBankStatement();
+    int lineNumber = 0;
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(file), READ_BUFFER_SIZE)) {
+      while (true) {
+        String lineContent = reader.readLine();
+
+        if (lineContent == null) {
+          break;
+        }
+
+        lineNumber++;
+
+        StatementRecord record = readRecord(lineContent, movementRecord);
+
+        if (record == null) {
+          continue;
+        }
+
+        record.sequence = sequence++;
+        record.lineNumber = lineNumber;
+        movementRecord =
+            record.lineType == BankStatementLineAFB120Repository.LINE_TYPE_MOVEMENT
+                ? record
+                : null;
+        recordList.add(record);
+
+        // A movement is only complete once the next record is read.
+        if (recordList.size() > CHUNK_SIZE) {
+          createBankStatementLines(recordList.subList(0, CHUNK_SIZE));
+          recordList = new ArrayList<>(recordList.subList(CHUNK_SIZE, recordList.size()));
         }
       }
     }
 
-    JPA.clear();
+    createBankStatementLines(recordList);
   }
 
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  public void createBankStatementLine(Map<String, Object> structuredContentLine, int sequence) {
+  /**
+   * Read all the lines of the file without keeping them, so that a line which can't be read fails
+   * the import as a whole. The lookups of the currencies and bank details are cached for the
+   * import.
+   */
+  protected void checkFile() throws IOException, AxelorException {
 
-    String description = (String) structuredContentLine.get("description");
+    int lineNumber = 0;
 
-    if (structuredContentLine.containsKey("additionalInformation")
-        && structuredContentLine.get("additionalInformation") != null) {
-      description += "\n" + (String) structuredContentLine.get("additionalInformation");
-    }
+    try (BufferedReader reader = new BufferedReader(new FileReader(file), READ_BUFFER_SIZE)) {
+      while (true) {
+        String lineContent = reader.readLine();
 
-    BankDetails bankDetails = null;
-    if (structuredContentLine.containsKey("bankDetails")
-        && structuredContentLine.get("bankDetails") != null) {
-      bankDetails =
-          bankDetailsRepository.find(
-              ((BankDetails) structuredContentLine.get("bankDetails")).getId());
-    }
+        if (lineContent == null) {
+          break;
+        }
 
-    Currency currency = null;
-    if (structuredContentLine.containsKey("currency")
-        && structuredContentLine.get("currency") != null) {
-      currency =
-          currencyRepository.find(((Currency) structuredContentLine.get("currency")).getId());
-    }
+        lineNumber++;
 
-    InterbankCodeLine operationInterbankCodeLine = null;
-    if (structuredContentLine.containsKey("operationInterbankCodeLine")
-        && structuredContentLine.get("operationInterbankCodeLine") != null) {
-      operationInterbankCodeLine =
-          interbankCodeLineRepository.find(
-              ((InterbankCodeLine) structuredContentLine.get("operationInterbankCodeLine"))
-                  .getId());
+        try {
+          readRecord(lineContent, null);
+        } catch (AxelorException e) {
+          throw new AxelorException(e, e.getCategory(), "Line %s : %s", lineNumber, e.getMessage());
+        } catch (Exception e) {
+          throw new AxelorException(
+              e, TraceBackRepository.CATEGORY_INCONSISTENCY, "Line %s : %s", lineNumber, e);
+        }
+      }
     }
+  }
 
-    InterbankCodeLine rejectInterbankCodeLine = null;
-    if (structuredContentLine.containsKey("rejectInterbankCodeLine")
-        && structuredContentLine.get("rejectInterbankCodeLine") != null) {
-      rejectInterbankCodeLine =
-          interbankCodeLineRepository.find(
-              ((InterbankCodeLine) structuredContentLine.get("rejectInterbankCodeLine")).getId());
-    }
+  /**
+   * Read a line of the file. A complement record is appended to the movement record it follows and
+   * null is returned.
+   */
+  protected StatementRecord readRecord(String lineContent, StatementRecord movementRecord)
+      throws AxelorException {
 
-    BankStatementLineAFB120 bankStatementLineAFB120 =
-        bankStatementLineAFB120Service.createBankStatementLine(
-            findBankStatement(),
-            sequence,
-            bankDetails,
-            (BigDecimal) structuredContentLine.get("debit"),
-            (BigDecimal) structuredContentLine.get("credit"),
-            currency,
-            description,
-            (LocalDate) structuredContentLine.get("operationDate"),
-            (LocalDate) structuredContentLine.get("valueDate"),
-            operationInterbankCodeLine,
-            rejectInterbankCodeLine,
-            (String) structuredContentLine.get("origin"),
-            (String) structuredContentLine.get("reference"),
-            (int) structuredContentLine.get("lineType"),
-            (String) structuredContentLine.get("unavailabilityIndexSelect"),
-            (String) structuredContentLine.get("commissionExemptionIndexSelect"));
-
-    bankStatementLineAFB120Repository.save(bankStatementLineAFB120);
-  }
+    log.debug("Read line : {}", lineContent);
 
-  protected List<Map<String, Object>> readFile() throws IOException, AxelorException {
+    // Code enregistrement
+    String operationCode =
+        cfonbToolService.readZone(
+            "Record code",
+            lineContent,
+            cfonbToolService.STATUS_MANDATORY,
+            cfonbToolService.FORMAT_NUMERIC,
+            1,
+            2);
 
-    List<Map<String, Object>> structuredContent = Lists.newArrayList();
+    switch (operationCode) {
+      case PREVIOUS_BALANCE_OPERATION_CODE:
+        return readPreviousBalanceRecord(lineContent);
+      case MOVEMENT_OPERATION_CODE:
+        return readMovementRecord(lineContent);
+      case COMPLEMENT_MOVEMENT_OPERATION_CODE:
+        String additionalInformation = readAdditionalMovementRecord(lineContent);
+        if (movementRecord != null) {
+          movementRecord.addAdditionalInformation(additionalInformation);
+        }
+        return null;
+      case NEW_BALANCE_OPERATION_CODE:
+        return readNewBalanceRecord(lineContent);
+      default:
+        return null;
+    }
+  }
 
-    List<String> fileContent = FileTool.reader(file.getPath());
+  /**
+   * Create the lines of the records in one transaction, inserted by JDBC batches. If it fails, the
+   * lines are created one by one to trace the failing ones.
+   */
+  protected void createBankStatementLines(List<StatementRecord> recordList) {
 
-    for (String lineContent : fileContent) {
+    if (recordList.isEmpty()) {
+      return;
+    }
 
-      log.info("Read line : {}", lineContent);
+    try {
+      JPA.em().unwrap(Session.class).setJdbcBatchSize(CHUNK_SIZE);
+      JPA.runInTransaction(
+          () -> {
+            BankStatement bankStatement = findBankStatement();
+            for (StatementRecord record : recordList) {
+              bankStatementLineAFB120Repository.save(
+                  createBankStatementLine(bankStatement, record));
+            }
+          });
+    } catch (Exception e) {
+      JPA.clear();
+      for (StatementRecord record : recordList) {
+        createBankStatementLine(record);
+      }
+    } finally {
+      JPA.clear();
+      findBankStatement();
+    }
+  }
 
-      // Code enregistrement
-      String operationCode =
-          cfonbToolService.readZone(
-              "Record code",
-              lineContent,
-              cfonbToolService.STATUS_MANDATORY,
-              cfonbToolService.FORMAT_NUMERIC,
-              1,
-              2);
+  protected void createBankStatementLine(StatementRecord record) {
+
+    try {
+      JPA.runInTransaction(
+          () ->
+              bankStatementLineAFB120Repository.save(
+                  createBankStatementLine(findBankStatement(), record)));
+    } catch (Exception e) {
+      TraceBackService.trace(
+          new Exception(String.format("Line %s : %s", record.lineNumber, e), e), IException.IMPORT);
+      JPA.clear();
+    }
+  }
 
-      switch (operationCode) {
-        case PREVIOUS_BALANCE_OPERATION_CODE:
-          structuredContent.add(readPreviousBalanceRecord(lineContent));
-          break;
-        case MOVEMENT_OPERATION_CODE:
-          structuredContent.add(readMovementRecord(lineContent));
-          break;
-        case COMPLEMENT_MOVEMENT_OPERATION_CODE:
-          Map<String, Object> movementLine = structuredContent.get(structuredContent.size() - 1);
-          String additionalInformation = "";
-          if (movementLine.containsKey("additionalInformation")) {
-            additionalInformation = (String) movementLine.get("additionalInformation") + "\n";
-          }
-          additionalInformation +=
-              (String) readAdditionalMovementRecord(lineContent).get("additionalInformation");
+  protected BankStatementLineAFB120 createBankStatementLine(
+      BankStatement bankStatement, StatementRecord record) {
 
-          movementLine.put("additionalInformation", additionalInformation);
+    String description = record.description;
 
-          break;
-        case NEW_BALANCE_OPERATION_CODE:
-          structuredContent.add(readNewBalanceRecord(lineContent));
-          break;
-        default:
-          break;
-      }
+    if (record.additionalInformation != null) {
+      description += "\n" + record.additionalInformation;
     }
 
-    return structuredContent;
+    return bankStatementLineAFB120Service.createBankStatementLine(
+        bankStatement,
+        record.sequence,
+        getReference(BankDetails.class, record.bankDetailsId),
+        record.debit,
+        record.credit,
+        getReference(Currency.class, record.currencyId),
+        description,
+        record.operationDate,
+        record.valueDate,
+        getReference(InterbankCodeLine.class, record.operationInterbankCodeLineId),
+        getReference(InterbankCodeLine.class, record.rejectInterbankCodeLineId),
+        record.origin,
+        record.reference,
+        record.lineType,
+        record.unavailabilityIndexSelect,
+        record.commissionExemptionIndexSelect);
   }
 
-  protected Map<String, Object> readPreviousBalanceRecord(String lineContent)
-      throws AxelorException {
+  protected <T> T getReference(Class<T> klass, Long id) {
+    return id != null ? JPA.em().getReference(klass, id) : null;
+  }
+
+  protected StatementRecord readPreviousBalanceRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    StatementRecord record = new StatementRecord();
 
-    structuredLineContent.put(
-        "lineType", BankStatementLineAFB120Repository.LINE_TYPE_INITIAL_BALANCE);
+    record.lineType = BankStatementLineAFB120Repository.LINE_TYPE_INITIAL_BALANCE;
 
     // Zone 1-B : Code banque
     String bankCode =
@@ -259,7 +360,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 1-F : Nombre de décimales du montant de l'ancien solde
     int decimalDigitNumber =
@@ -282,7 +383,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 1-J : Date de l'ancien solde (JJMMAA)
     String date =
@@ -293,7 +394,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(date));
+    record.operationDate = getDate(date);
 
     // Zone 1-L : Montant de l'ancien solde
     String amountStr =
@@ -307,22 +408,16 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
     BigDecimal amount = getAmount(amountStr, decimalDigitNumber);
 
-    if (amount.signum() == 1) {
-      structuredLineContent.put("debit", BigDecimal.ZERO);
-      structuredLineContent.put("credit", amount.abs());
-    } else {
-      structuredLineContent.put("credit", BigDecimal.ZERO);
-      structuredLineContent.put("debit", amount.abs());
-    }
+    record.setAmount(amount);
 
-    return structuredLineContent;
+    return record;
   }
 
-  protected Map<String, Object> readMovementRecord(String lineContent) throws AxelorException {
+  protected StatementRecord readMovementRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    StatementRecord record = new StatementRecord();
 
-    structuredLineContent.put("lineType", BankStatementLineAFB120Repository.LINE_TYPE_MOVEMENT);
+    record.lineType = BankStatementLineAFB120Repository.LINE_TYPE_MOVEMENT;
 
     // Zone 2-B : Code banque
     String bankCode =
@@ -353,7 +448,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 2-F : Nombre de décimales du montant du mouvement
     int decimalDigitNumber =
@@ -376,7 +471,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 2-I : Code opération interbancaire
     String operationInterbankCode =
@@ -387,8 +482,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             33,
             2);
-    structuredLineContent.put(
-        "operationInterbankCodeLine", getInterbankCodeLine(operationInterbankCode));
+    record.operationInterbankCodeLineId = getInterbankCodeLineId(operationInterbankCode);
 
     // Zone 2-J : Date de comptabilisation de l'opération (JJMMAA)
     String movementDate =
@@ -399,7 +493,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(movementDate));
+    record.operationDate = getDate(movementDate);
 
     // Zone 2-K : Code motif de rejet
     String rejectInterbankCodeLine =
@@ -410,8 +504,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             41,
             2);
-    structuredLineContent.put(
-        "rejectInterbankCodeLine", getInterbankCodeLine(rejectInterbankCodeLine));
+    record.rejectInterbankCodeLineId = getInterbankCodeLineId(rejectInterbankCodeLine);
 
     // Zone 2-L : Date de valeur (JJMMAA)
     String valueDate =
@@ -422,51 +515,47 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             43,
             6);
-    structuredLineContent.put("valueDate", getDate(valueDate));
+    record.valueDate = getDate(valueDate);
 
     // Zone 2-M : Libellé
-    structuredLineContent.put(
-        "description",
+    record.description =
         cfonbToolService.readZone(
             "2-M : label",
             lineContent,
             cfonbToolService.STATUS_MANDATORY,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             49,
-            31));
+            31);
 
     // Zone 2-O : Numéro d'écriture
-    structuredLineContent.put(
-        "origin",
+    record.origin =
         cfonbToolService.readZone(
             "2-O : move number",
             lineContent,
             cfonbToolService.STATUS_MANDATORY,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             82,
-            7));
+            7);
 
     // Zone 2-P : Indice d'exonération de commission de mouvement de compte
-    structuredLineContent.put(
-        "commissionExemptionIndexSelect",
+    record.commissionExemptionIndexSelect =
         cfonbToolService.readZone(
             "2-P : turnover commission exemption index",
             lineContent,
             cfonbToolService.STATUS_OPTIONAL,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             89,
-            1));
+            1);
 
     // Zone 2-Q : Indice d'indisponibilité
-    structuredLineContent.put(
-        "unavailabilityIndexSelect",
+    record.unavailabilityIndexSelect =
         cfonbToolService.readZone(
             "2-Q : unavailability index",
             lineContent,
             cfonbToolService.STATUS_OPTIONAL,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             90,
-            1));
+            1);
 
     // Zone 2-R : Montant du mouvement
     String amountStr =
@@ -479,63 +568,53 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             14);
     BigDecimal amount = getAmount(amountStr, decimalDigitNumber);
 
-    if (amount.signum() == 1) {
-      structuredLineContent.put("debit", BigDecimal.ZERO);
-      structuredLineContent.put("credit", amount.abs());
-    } else {
-      structuredLineContent.put("credit", BigDecimal.ZERO);
-      structuredLineContent.put("debit", amount.abs());
-    }
+    record.setAmount(amount);
 
     // Zone 2-S : Zone référence
-    structuredLineContent.put(
-        "reference",
+    record.reference =
         cfonbToolService.readZone(
             "2-S : reference zone",
             lineContent,
             cfonbToolService.STATUS_OPTIONAL,
             cfonbToolService.FORMAT_ALPHA_NUMERIC,
             105,
-            16));
+            16);
 
-    return structuredLineContent;
+    return record;
   }
 
-  protected Map<String, Object> readAdditionalMovementRecord(String lineContent)
-      throws AxelorException {
-
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+  /**
+   * Read a complement record, whose additional information is appended to the previous movement.
+   * The zones identifying the movement are only checked.
+   */
+  protected String readAdditionalMovementRecord(String lineContent) throws AxelorException {
 
     // Zone 2b-B : Code banque
-    String bankCode =
-        cfonbToolService.readZone(
-            "2b-B : bank code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            3,
-            5);
+    cfonbToolService.readZone(
+        "2b-B : bank code",
+        lineContent,
+        cfonbToolService.STATUS_MANDATORY,
+        cfonbToolService.FORMAT_NUMERIC,
+        3,
+        5);
 
     // Zone 2b-D : Code guichet
-    String sortCode =
-        cfonbToolService.readZone(
-            "2b-D : sort code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            12,
-            5);
+    cfonbToolService.readZone(
+        "2b-D : sort code",
+        lineContent,
+        cfonbToolService.STATUS_MANDATORY,
+        cfonbToolService.FORMAT_NUMERIC,
+        12,
+        5);
 
     // Zone 2b-E : Code devise ISO
-    String currencyCode =
-        cfonbToolService.readZone(
-            "2b-E : currency code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA,
-            17,
-            3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    cfonbToolService.readZone(
+        "2b-E : currency code",
+        lineContent,
+        cfonbToolService.STATUS_MANDATORY,
+        cfonbToolService.FORMAT_ALPHA,
+        17,
+        3);
 
     // Zone 2b-F : Nombre de décimales du montant du mouvement
     cfonbToolService.readZone(
@@ -547,39 +626,31 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
         1);
 
     // Zone 2b-H : Numéro de compte
-    String accountNumber =
-        cfonbToolService.readZone(
-            "2b-H : account number",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            22,
-            11);
-
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    cfonbToolService.readZone(
+        "2b-H : account number",
+        lineContent,
+        cfonbToolService.STATUS_MANDATORY,
+        cfonbToolService.FORMAT_ALPHA_NUMERIC,
+        22,
+        11);
 
     // Zone 2b-I : Code opération interbancaire
-    String operationInterbankCode =
-        cfonbToolService.readZone(
-            "2b-I : interbank operation code",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_ALPHA_NUMERIC,
-            33,
-            2);
-    structuredLineContent.put(
-        "operationInterbankCodeLine", getInterbankCodeLine(operationInterbankCode));
+    cfonbToolService.readZone(
+        "2b-I : interbank operation code",
+        lineContent,
+        cfonbToolService.STATUS_MANDATORY,
+        cfonbToolService.FORMAT_ALPHA_NUMERIC,
+        33,
+        2);
 
     // Zone 2b-J : Date de comptabilisation de l'opération (JJMMAA)
-    String date =
-        cfonbToolService.readZone(
-            "2b-J : operation date",
-            lineContent,
-            cfonbToolService.STATUS_MANDATORY,
-            cfonbToolService.FORMAT_NUMERIC,
-            35,
-            6);
-    structuredLineContent.put("operationDate", getDate(date));
+    cfonbToolService.readZone(
+        "2b-J : operation date",
+        lineContent,
+        cfonbToolService.STATUS_MANDATORY,
+        cfonbToolService.FORMAT_NUMERIC,
+        35,
+        6);
 
     // Zone 2b-L : Qualifiant de la zone "Informations complémentaires"
     String additionalInformationType =
@@ -594,16 +665,13 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     switch (additionalInformationType) {
       case "LIB":
         // Zone 2b-M : Informations complémentaires
-        structuredLineContent.put(
-            "additionalInformation",
-            cfonbToolService.readZone(
-                "2b-M : additional informations",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                49,
-                70));
-        break;
+        return cfonbToolService.readZone(
+            "2b-M : additional informations",
+            lineContent,
+            cfonbToolService.STATUS_MANDATORY,
+            cfonbToolService.FORMAT_ALPHA_NUMERIC,
+            49,
+            70);
       case "MMO":
         // Zone 2b-M : Informations complémentaires
         // 2b-M-1 : Code devise ISO (norme ISO4217 (NF K 10 020)) du montant d'origine
@@ -639,32 +707,24 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
         String decimalPartOfAmount =
             amountInCurrency.substring(amountInCurrency.length() - decimalDigitNumber);
         String correctAmount = integerPartOfAmount + "." + decimalPartOfAmount;
-        structuredLineContent.put(
-            "additionalInformation", correctAmount + " " + origineCurrencyCode);
-        break;
+        return correctAmount + " " + origineCurrencyCode;
       default:
         // Zone 2b-M : Informations complémentaires
-        structuredLineContent.put(
-            "additionalInformation",
-            cfonbToolService.readZone(
-                "2b-M : additional informations",
-                lineContent,
-                cfonbToolService.STATUS_MANDATORY,
-                cfonbToolService.FORMAT_ALPHA_NUMERIC,
-                49,
-                70));
-        break;
+        return cfonbToolService.readZone(
+            "2b-M : additional informations",
+            lineContent,
+            cfonbToolService.STATUS_MANDATORY,
+            cfonbToolService.FORMAT_ALPHA_NUMERIC,
+            49,
+            70);
     }
-
-    return structuredLineContent;
   }
 
-  protected Map<String, Object> readNewBalanceRecord(String lineContent) throws AxelorException {
+  protected StatementRecord readNewBalanceRecord(String lineContent) throws AxelorException {
 
-    Map<String, Object> structuredLineContent = Maps.newHashMap();
+    StatementRecord record = new StatementRecord();
 
-    structuredLineContent.put(
-        "lineType", BankStatementLineAFB120Repository.LINE_TYPE_FINAL_BALANCE);
+    record.lineType = BankStatementLineAFB120Repository.LINE_TYPE_FINAL_BALANCE;
 
     // Zone 1-B : Code banque
     String bankCode =
@@ -695,7 +755,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_ALPHA,
             17,
             3);
-    structuredLineContent.put("currency", getCurrency(currencyCode));
+    record.currencyId = getCurrencyId(currencyCode);
 
     // Zone 1-F : Nombre de décimales du montant du nouveau solde
     int nbDecimalDigit =
@@ -718,7 +778,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             22,
             11);
 
-    structuredLineContent.put("bankDetails", getBankDetails(accountNumber, bankCode, sortCode));
+    record.bankDetailsId = getBankDetailsId(accountNumber, bankCode, sortCode);
 
     // Zone 1-J : Date du nouveau solde (JJMMAA)
     String date =
@@ -729,7 +789,7 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
             cfonbToolService.FORMAT_NUMERIC,
             35,
             6);
-    structuredLineContent.put("operationDate", getDate(date));
+    record.operationDate = getDate(date);
 
     // Zone 1-L : Montant du nouveau solde
     String amountStr =
@@ -743,15 +803,9 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
 
     BigDecimal amount = getAmount(amountStr, nbDecimalDigit);
 
-    if (amount.signum() == 1) {
-      structuredLineContent.put("debit", BigDecimal.ZERO);
-      structuredLineContent.put("credit", amount.abs());
-    } else {
-      structuredLineContent.put("credit", BigDecimal.ZERO);
-      structuredLineContent.put("debit", amount.abs());
-    }
+    record.setAmount(amount);
 
-    return structuredLineContent;
+    return record;
   }
 
   protected Currency getCurrency(String isoCode) {
@@ -759,6 +813,16 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     return currencyRepository.findByCode(isoCode);
   }
 
+  protected Long getCurrencyId(String isoCode) {
+
+    if (!currencyIdMap.containsKey(isoCode)) {
+      Currency currency = getCurrency(isoCode);
+      currencyIdMap.put(isoCode, currency != null ? currency.getId() : null);
+    }
+
+    return currencyIdMap.get(isoCode);
+  }
+
   protected BankDetails getBankDetails(String accountNumber, String bankCode, String sortCode) {
 
     return bankDetailsRepository
@@ -771,6 +835,18 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
         .fetchOne();
   }
 
+  protected Long getBankDetailsId(String accountNumber, String bankCode, String sortCode) {
+
+    String key = String.join("|", accountNumber, bankCode, sortCode);
+
+    if (!bankDetailsIdMap.containsKey(key)) {
+      BankDetails bankDetails = getBankDetails(accountNumber, bankCode, sortCode);
+      bankDetailsIdMap.put(key, bankDetails != null ? bankDetails.getId() : null);
+    }
+
+    return bankDetailsIdMap.get(key);
+  }
+
   protected LocalDate getDate(String date) {
 
     return LocalDate.parse(date, DATE_FORMATTER);
@@ -896,4 +972,10 @@ public class BankStatementFileAFB120Service extends BankStatementFileService {
     // TODO Manage reject and operation code
     return null;
   }
+
+  protected Long getInterbankCodeLineId(String code) {
+
+    InterbankCodeLine interbankCodeLine = getInterbankCodeLine(code);
+    return interbankCodeLine != null ? interbankCodeLine.getId() : null;
+  }
 }
@@ -151,11 +151,11 @@ public class BatchBankPaymentServiceImpl implements BatchBankPaymentService {
       throws AxelorException, JAXBException, IOException, DatatypeConfigurationException {
 
     List<PaymentScheduleLine> paymentScheduleLineList;
-    int offset = 0;
+    long lastId = 0L;
 
-    while (!(paymentScheduleLineList = fetchPaymentScheduleLineDoneList(batch, offset)).isEmpty()) {
+    while (!(paymentScheduleLineList = fetchPaymentScheduleLineDoneList(batch, lastId)).isEmpty()) {
       createBankOrders(batch, paymentScheduleLineList);
-      offset += paymentScheduleLineList.size();
+      lastId = paymentScheduleLineList.get(paymentScheduleLineList.size() - 1).getId();
       JPA.clear();
       batch = batchRepo.find(batch.getId());
     }
@@ -263,10 +263,10 @@ public class BatchBankPaymentServiceImpl implements BatchBankPaymentService {
     bankOrder = JPA.save(bankOrder);
 
     List<PaymentScheduleLine> paymentScheduleLineList;
-    int offset = 0;
+    long lastId = 0L;
 
     try {
-      while (!(paymentScheduleLineList = fetchPaymentScheduleLineDoneList(batch, offset))
+      while (!(paymentScheduleLineList = fetchPaymentScheduleLineDoneList(batch, lastId))
           .isEmpty()) {
         bankOrder = bankOrderRepo.find(bankOrder.getId());
 
@@ -293,7 +293,7 @@ public class BatchBankPaymentServiceImpl implements BatchBankPaymentService {
         }
 
         bankOrder = JPA.save(bankOrder);
-        offset += paymentScheduleLineList.size();
+        lastId = paymentScheduleLineList.get(paymentScheduleLineList.size() - 1).getId();
         JPA.clear();
       }
     } catch (Exception e) {
@@ -312,11 +312,16 @@ public class BatchBankPaymentServiceImpl implements BatchBankPaymentService {
     return bankOrder;
   }
 
-  protected List<PaymentScheduleLine> fetchPaymentScheduleLineDoneList(Batch batch, int offset) {
-    return getPaymentScheduleLineDoneListQuery(batch).fetch(AbstractBatch.FETCH_LIMIT, offset);
+  protected List<PaymentScheduleLine> fetchPaymentScheduleLineDoneList(Batch batch, long lastId) {
+    return getPaymentScheduleLineDoneListQuery(batch, lastId).fetch(getFetchLimit());
   }
 
   private Query<PaymentScheduleLine> getPaymentScheduleLineDoneListQuery(Batch batch) {
+    return getPaymentScheduleLineDoneListQuery(batch, 0L);
+  }
+
+  private Query<PaymentScheduleLine> getPaymentScheduleLineDoneListQuery(
+      Batch batch, long lastId) {
     QueryBuilder<PaymentScheduleLine> queryBuilder = QueryBuilder.of(PaymentScheduleLine.class);
 
     queryBuilder.add(":batch MEMBER OF self.batchSet");
@@ -325,11 +330,21 @@ public class BatchBankPaymentServiceImpl implements BatchBankPaymentService {
     queryBuilder.add("self.statusSelect = :statusSelect");
     queryBuilder.bind("statusSelect", PaymentScheduleLineRepository.STATUS_VALIDATED);
 
+    queryBuilder.add("self.id > :lastId");
+    queryBuilder.bind("lastId", lastId);
+
     return queryBuilder.build().order("id");
   }
 
   protected List<BankOrder> fetchLimitedBankOrderList(Batch batch) {
-    return getBankOrderListQuery(batch).fetch(AbstractBatch.FETCH_LIMIT);
+    return getBankOrderListQuery(batch).fetch(getFetchLimit());
+  }
+
+  protected int getFetchLimit() {
+    Integer batchFetchLimit = appBaseService.getAppBase().getBatchFetchLimit();
+    return batchFetchLimit != null && batchFetchLimit > 0
+        ? batchFetchLimit
+        : AbstractBatch.FETCH_LIMIT;
   }
 
   private Query<BankOrder> getBankOrderListQuery(Batch batch) {
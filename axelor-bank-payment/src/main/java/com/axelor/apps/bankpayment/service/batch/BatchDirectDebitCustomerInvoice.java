@@ -27,8 +27,6 @@ import com.axelor.apps.base.db.BankDetails;
 import com.axelor.apps.base.db.repo.BankDetailsRepository;
 import com.axelor.apps.base.db.repo.BlockingRepository;
 import com.axelor.apps.base.service.app.AppBaseService;
-import com.axelor.db.JPA;
-import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
@@ -40,8 +38,10 @@ import com.google.common.collect.Sets;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -115,11 +115,7 @@ public class BatchDirectDebitCustomerInvoice extends BatchDirectDebit {
   private List<InvoicePayment> processQuery(
       List<String> filterList, List<Pair<String, Object>> bindingList) {
 
-    List<InvoicePayment> doneList = new ArrayList<>();
-
-    List<Long> anomalyList = Lists.newArrayList(0L);
-    filterList.add("self.id NOT IN (:anomalyList)");
-    bindingList.add(Pair.of("anomalyList", (Object) anomalyList));
+    List<InvoicePayment> doneList = Collections.synchronizedList(new ArrayList<>());
 
     String filter =
         Joiner.on(" AND ")
@@ -133,47 +129,33 @@ public class BatchDirectDebitCustomerInvoice extends BatchDirectDebit {
                       }
                     }));
 
-    Query<Invoice> query = Beans.get(InvoiceRepository.class).all().filter(filter);
+    Map<String, Object> bindings = new HashMap<>();
 
     for (Pair<String, Object> binding : bindingList) {
-      query.bind(binding.getLeft(), binding.getRight());
+      bindings.put(binding.getLeft(), binding.getRight());
     }
 
-    Set<Long> treatedSet = new HashSet<>();
-    List<Invoice> invoiceList;
     InvoicePaymentCreateService invoicePaymentCreateService =
         Beans.get(InvoicePaymentCreateService.class);
     BankDetailsRepository bankDetailsRepo = Beans.get(BankDetailsRepository.class);
-    BankDetails companyBankDetails = getCompanyBankDetails(batch.getAccountingBatch());
-
-    while (!(invoiceList = query.fetch(FETCH_LIMIT)).isEmpty()) {
-      if (!JPA.em().contains(companyBankDetails)) {
-        companyBankDetails = bankDetailsRepo.find(companyBankDetails.getId());
-      }
-
-      for (Invoice invoice : invoiceList) {
-        if (treatedSet.contains(invoice.getId())) {
-          throw new IllegalArgumentException("Invoice payment generation error");
-        }
-
-        treatedSet.add(invoice.getId());
-
-        try {
-          doneList.add(
-              invoicePaymentCreateService.createInvoicePayment(invoice, companyBankDetails));
-          incrementDone();
-        } catch (Exception e) {
-          incrementAnomaly();
-          anomalyList.add(invoice.getId());
-          query.bind("anomalyList", anomalyList);
-          TraceBackService.trace(e, IException.DIRECT_DEBIT, batch.getId());
-          LOG.error(e.getMessage());
-          break;
-        }
-      }
-
-      JPA.clear();
-    }
+    Long companyBankDetailsId = getCompanyBankDetails(batch.getAccountingBatch()).getId();
+
+    processByPartition(
+        Invoice.class,
+        invoice -> {
+          try {
+            doneList.add(
+                invoicePaymentCreateService.createInvoicePayment(
+                    invoice, bankDetailsRepo.find(companyBankDetailsId)));
+            incrementDone();
+          } catch (Exception e) {
+            incrementAnomaly();
+            TraceBackService.trace(e, IException.DIRECT_DEBIT, batch.getId());
+            LOG.error(e.getMessage());
+          }
+        },
+        filter,
+        bindings);
 
     return doneList;
   }
@@ -176,7 +176,7 @@ public class BatchDirectDebitPaymentSchedule extends BatchDirectDebit {
 
     BankDetails companyBankDetails = getCompanyBankDetails(batch.getAccountingBatch());
 
-    while (!(paymentScheduleLineList = query.fetch(FETCH_LIMIT)).isEmpty()) {
+    while (!(paymentScheduleLineList = query.fetch(getFetchLimit())).isEmpty()) {
       findBatch();
       companyBankDetails = bankDetailsRepo.find(companyBankDetails.getId());
       PaymentMode directDebitPaymentMode = batch.getAccountingBatch().getPaymentMode();
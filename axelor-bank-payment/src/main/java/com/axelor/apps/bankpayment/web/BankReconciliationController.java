@@ -22,11 +22,14 @@ import com.axelor.apps.bankpayment.db.BankReconciliation;
 import com.axelor.apps.bankpayment.db.BankReconciliationLine;
 import com.axelor.apps.bankpayment.db.repo.BankReconciliationLineRepository;
 import com.axelor.apps.bankpayment.db.repo.BankReconciliationRepository;
+import com.axelor.apps.bankpayment.exception.IExceptionMessage;
 import com.axelor.apps.bankpayment.report.IReport;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationAutoMatchService;
 import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationService;
 import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationValidateService;
 import com.axelor.apps.report.engine.ReportSettings;
 import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
 import com.axelor.meta.schema.actions.ActionView;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
@@ -44,6 +47,8 @@ public class BankReconciliationController {
 
   @Inject BankReconciliationValidateService bankReconciliationValidateService;
 
+  @Inject BankReconciliationAutoMatchService bankReconciliationAutoMatchService;
+
   @Inject BankReconciliationRepository bankReconciliationRepo;
 
   @Inject BankReconciliationLineRepository bankReconciliationLineRepo;
@@ -84,6 +89,21 @@ public class BankReconciliationController {
     }
   }
 
+  public void autoMatch(ActionRequest request, ActionResponse response) {
+
+    try {
+      BankReconciliation bankReconciliation = request.getContext().asType(BankReconciliation.class);
+      bankReconciliation = bankReconciliationRepo.find(bankReconciliation.getId());
+      int matchCount = bankReconciliationAutoMatchService.autoMatch(bankReconciliation);
+      bankReconciliationService.compute(bankReconciliation);
+      response.setFlash(
+          String.format(I18n.get(IExceptionMessage.BANK_RECONCILIATION_AUTO_MATCH), matchCount));
+      response.setReload(true);
+    } catch (Exception e) {
+      TraceBackService.trace(response, e);
+    }
+  }
+
   public void validate(ActionRequest request, ActionResponse response) {
 
     try {
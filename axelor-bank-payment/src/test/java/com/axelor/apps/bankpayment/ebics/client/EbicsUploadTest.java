@@ -0,0 +1,188 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.ebics.client;
+
+import com.axelor.apps.bankpayment.db.EbicsBank;
+import com.axelor.apps.bankpayment.db.EbicsCertificate;
+import com.axelor.apps.bankpayment.db.EbicsPartner;
+import com.axelor.apps.bankpayment.db.EbicsUser;
+import com.axelor.apps.bankpayment.ebics.io.Splitter;
+import com.axelor.apps.bankpayment.ebics.service.EbicsUserService;
+import com.axelor.apps.bankpayment.ebics.xml.UserSignatureVerify;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Uploads a file of several segments to a mock bank server, started on a local port, which keeps
+ * the received segments and the client ports of the requests.
+ */
+public class EbicsUploadTest {
+
+  private static final byte[] RESPONSE = "<ebicsResponse/>".getBytes();
+
+  private HttpServer server;
+
+  private ByteArrayOutputStream received;
+
+  private Set<Integer> clientPortSet;
+
+  private File file;
+
+  @BeforeClass
+  public static void setUpProvider() {
+    Security.addProvider(new BouncyCastleProvider());
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    received = new ByteArrayOutputStream();
+    clientPortSet = Collections.synchronizedSet(new HashSet<>());
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/ebics",
+        exchange -> {
+          try (InputStream input = exchange.getRequestBody()) {
+            synchronized (received) {
+              ByteStreams.copy(input, received);
+            }
+          }
+          clientPortSet.add(exchange.getRemoteAddress().getPort());
+          exchange.sendResponseHeaders(200, RESPONSE.length);
+          try (OutputStream output = exchange.getResponseBody()) {
+            output.write(RESPONSE);
+          }
+        });
+    server.start();
+
+    file = File.createTempFile("ebics", ".test");
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    file.delete();
+  }
+
+  /**
+   * Sends the segments of a 3 MB file that can not be compressed, and checks that the bank gets
+   * back the file from them, through a single kept alive connection.
+   */
+  @Test
+  public void testUploadSegmentsToBank() throws Exception {
+
+    byte[] content = new byte[3 * 1024 * 1024];
+    new Random(0).nextBytes(content);
+    Files.write(content, file);
+
+    byte[] key = new byte[16];
+    new Random(1).nextBytes(key);
+    SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+
+    EbicsSession session = new EbicsSession(createUser());
+    int segmentNumber;
+
+    try (Splitter splitter = new Splitter(file)) {
+      splitter.readInput(true, keySpec);
+      segmentNumber = splitter.getSegmentNumber();
+
+      for (int segment = 1; segment <= segmentNumber; segment++) {
+        HttpRequestSender sender = new HttpRequestSender(session);
+        Assert.assertEquals(200, sender.send(splitter.getContent(segment)));
+        Assert.assertArrayEquals(
+            RESPONSE, ByteStreams.toByteArray(sender.getResponseBody().getContent()));
+      }
+    }
+
+    Assert.assertTrue(segmentNumber > 1);
+    Assert.assertEquals(1, clientPortSet.size());
+
+    try (InputStream input =
+        new InflaterInputStream(
+            new CipherInputStream(
+                new ByteArrayInputStream(received.toByteArray()),
+                EbicsUtils.createCipher(Cipher.DECRYPT_MODE, keySpec)))) {
+      Assert.assertArrayEquals(content, ByteStreams.toByteArray(input));
+    }
+  }
+
+  /**
+   * Checks that the digest of the signed data, read one buffer at a time, is the digest of the
+   * whole data without its white-space characters, even when a line break is split by a buffer.
+   */
+  @Test
+  public void testStreamedDigest() throws Exception {
+
+    List<String> lineList = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      lineList.add(String.format("%0120d", i));
+    }
+    byte[] content = String.join("\r\n", lineList).getBytes();
+    content[65535] = '\r';
+    content[65536] = '\n';
+    Files.write(content, file);
+
+    UserSignatureVerify userSignatureVerify =
+        new UserSignatureVerify(createUser(), Files.asByteSource(file), null);
+
+    Assert.assertEquals(
+        DigestUtils.sha256Hex(EbicsUserService.removeOSSpecificChars(content)),
+        userSignatureVerify.computeSha256Digest());
+  }
+
+  private EbicsUser createUser() {
+    EbicsBank bank = new EbicsBank();
+    bank.setId(1L);
+    bank.setUrl("http://localhost:" + server.getAddress().getPort() + "/ebics");
+    bank.setProtocolSelect("tls");
+    bank.setEbicsCertificateList(new ArrayList<>());
+
+    EbicsPartner partner = new EbicsPartner();
+    partner.setEbicsBank(bank);
+
+    EbicsUser user = new EbicsUser();
+    user.setEbicsPartner(partner);
+    user.setA005Certificate(new EbicsCertificate());
+    return user;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.bankpayment.service.bankreconciliation;
+
+import com.axelor.apps.bankpayment.db.BankReconciliationLine;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationAutoMatchService.Candidate;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationAutoMatchService.Match;
+import com.axelor.apps.bankpayment.service.bankreconciliation.BankReconciliationAutoMatchService.MoveLineIndex;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches bank reconciliation lines with move lines indexed in memory, without the database. The
+ * bank lines are credits, so they match debit move lines.
+ */
+public class BankReconciliationAutoMatchServiceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final LocalDate DATE = LocalDate.of(2019, 3, 1);
+
+  private BankReconciliationAutoMatchService autoMatchService;
+
+  private MoveLineIndex index;
+
+  private List<Match> matchList;
+
+  @Before
+  public void setUp() {
+    autoMatchService = new BankReconciliationAutoMatchService(null, null);
+    index = new MoveLineIndex();
+    matchList = new ArrayList<>();
+  }
+
+  /** The move line sharing the reference of the bank line wins over a later one. */
+  @Test
+  public void testOneToOneMatchOnReference() {
+
+    Candidate referenceCandidate = addCandidate(1L, "100", DATE.plusDays(1), "INV 20190001");
+    addCandidate(2L, "100", DATE.plusDays(4), null);
+    BankReconciliationLine line = createLine("100", DATE, "Payment 20190001");
+
+    List<BankReconciliationLine> unmatchedLineList =
+        autoMatchService.matchOneToOne(Arrays.asList(line), index, matchList);
+
+    Assert.assertTrue(unmatchedLineList.isEmpty());
+    Assert.assertEquals(1, matchList.size());
+    Assert.assertSame(line, matchList.get(0).line);
+    Assert.assertEquals(Arrays.asList(referenceCandidate), matchList.get(0).candidateList);
+  }
+
+  /** Two move lines as good as each other are not matched, the line is left for review. */
+  @Test
+  public void testAmbiguousMatchIsNotProposed() {
+
+    addCandidate(1L, "100", DATE, null);
+    addCandidate(2L, "100", DATE, null);
+    BankReconciliationLine line = createLine("100", DATE, null);
+
+    List<BankReconciliationLine> unmatchedLineList =
+        autoMatchService.matchOneToOne(Arrays.asList(line), index, matchList);
+
+    Assert.assertTrue(unmatchedLineList.isEmpty());
+    Assert.assertTrue(matchList.isEmpty());
+  }
+
+  /** A bank line without a move line of its amount matches move lines adding up to it. */
+  @Test
+  public void testManyToOneMatch() {
+
+    Candidate firstCandidate = addCandidate(1L, "100", DATE, null);
+    Candidate secondCandidate = addCandidate(2L, "50", DATE.plusDays(1), null);
+    addCandidate(3L, "70", DATE, null);
+    BankReconciliationLine line = createLine("150", DATE, null);
+
+    List<BankReconciliationLine> unmatchedLineList =
+        autoMatchService.matchOneToOne(Arrays.asList(line), index, matchList);
+    Assert.assertEquals(Arrays.asList(line), unmatchedLineList);
+
+    Match match = autoMatchService.matchManyToOne(line, index);
+
+    Assert.assertNotNull(match);
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(firstCandidate, secondCandidate)),
+        new HashSet<>(match.candidateList));
+  }
+
+  /**
+   * Matches 100000 bank lines among 200000 move lines, each bank line having a single match. The
+   * bank lines are new, so they have no id and all the same hash code.
+   */
+  @Test
+  public void testMatch100000Lines() {
+
+    List<BankReconciliationLine> lineList = new ArrayList<>();
+    for (long id = 1; id <= 200000; id++) {
+      String amount = String.valueOf(id) + ".25";
+      LocalDate date = DATE.plusDays(id % 300);
+      addCandidate(id, amount, date, "REF" + id);
+      if (id % 2 == 0) {
+        lineList.add(createLine(amount, date.plusDays(id % 3), "Transfer REF" + id));
+      }
+    }
+
+    long startTime = System.currentTimeMillis();
+    List<BankReconciliationLine> unmatchedLineList =
+        autoMatchService.matchOneToOne(lineList, index, matchList);
+    long duration = Math.max(System.currentTimeMillis() - startTime, 1);
+    LOG.info(
+        "100000 bank lines matched in {} ms ({} lines/s)", duration, 100000L * 1000 / duration);
+
+    Assert.assertTrue(unmatchedLineList.isEmpty());
+    Assert.assertEquals(100000, matchList.size());
+    for (Match match : matchList) {
+      Assert.assertEquals(
+          0, match.line.getCredit().compareTo(match.candidateList.get(0).remaining));
+    }
+  }
+
+  private Candidate addCandidate(Long id, String amount, LocalDate date, String name) {
+    HashSet<String> tokens = new HashSet<>();
+    autoMatchService.addTokens(tokens, name);
+    Candidate candidate = new Candidate(id, date, true, new BigDecimal(amount), null, tokens);
+    index.add(candidate);
+    return candidate;
+  }
+
+  private BankReconciliationLine createLine(String amount, LocalDate date, String name) {
+    BankReconciliationLine line = new BankReconciliationLine();
+    line.setDebit(BigDecimal.ZERO);
+    line.setCredit(new BigDecimal(amount));
+    line.setEffectDate(date);
+    line.setName(name);
+    return line;
+  }
+}
@@ -244,6 +244,12 @@ public interface IExceptionMessage {
       "Warning : Exported maximum export limit records." /*)*/;
   static final String ADVANCED_EXPORT_4 = /*$$(*/
       "Please select export object or export format." /*)*/;
+  static final String ADVANCED_EXPORT_5 = /*$$(*/
+      "An export of this advanced export is already running." /*)*/;
+  static final String ADVANCED_EXPORT_6 = /*$$(*/
+      "The export is running in background, the file will be attached to the advanced export when it is done." /*)*/;
+  static final String ADVANCED_EXPORT_7 = /*$$(*/ "%d records exported so far." /*)*/;
+  static final String ADVANCED_EXPORT_8 = /*$$(*/ "No export is running in background." /*)*/;
 
   /** Barcode Generator Service */
   public static final String BARCODE_GENERATOR_1 = /*$$(*/
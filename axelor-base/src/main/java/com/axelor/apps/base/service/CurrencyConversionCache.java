@@ -0,0 +1,156 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.CurrencyConversionLine;
+import com.axelor.apps.tool.TransactionTool;
+import com.google.inject.Singleton;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Application wide index of the currency conversion lines, by couple of currency codes and sorted
+ * by from date. Only the values of the lines are kept, not the entities. The index is built again
+ * once a change on the lines is committed.
+ */
+@Singleton
+public class CurrencyConversionCache {
+
+  private volatile Map<Pair<String, String>, NavigableMap<LocalDate, List<ConversionRate>>> rateMap;
+
+  private final AtomicLong version = new AtomicLong();
+
+  /** The values of a currency conversion line. */
+  public static final class ConversionRate {
+
+    private final Long id;
+    private final BigDecimal exchangeRate;
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+
+    private ConversionRate(CurrencyConversionLine line) {
+      this.id = line.getId();
+      this.exchangeRate = line.getExchangeRate();
+      this.fromDate = line.getFromDate();
+      this.toDate = line.getToDate();
+    }
+
+    public Long getId() {
+      return id;
+    }
+
+    public BigDecimal getExchangeRate() {
+      return exchangeRate;
+    }
+
+    public LocalDate getFromDate() {
+      return fromDate;
+    }
+
+    public LocalDate getToDate() {
+      return toDate;
+    }
+  }
+
+  /**
+   * Get the conversion rate from a currency to another one which applies at the given date. When
+   * several lines apply, the one with the latest from date is used.
+   *
+   * @param startCode The code of the start currency
+   * @param endCode The code of the end currency
+   * @param date The date of the conversion
+   * @param lineListSupplier Gives the conversion lines to index, if they are not yet indexed
+   * @return The values of the conversion line, or null if there is none at this date.
+   */
+  public ConversionRate getConversionRate(
+      String startCode,
+      String endCode,
+      LocalDate date,
+      Supplier<List<CurrencyConversionLine>> lineListSupplier) {
+
+    Map<Pair<String, String>, NavigableMap<LocalDate, List<ConversionRate>>> map = rateMap;
+
+    if (map == null) {
+      long loadedVersion = version.get();
+      map = index(lineListSupplier.get());
+
+      // don't keep the index if the lines were changed in the meantime
+      if (loadedVersion == version.get()) {
+        rateMap = map;
+      }
+    }
+
+    NavigableMap<LocalDate, List<ConversionRate>> dateMap = map.get(Pair.of(startCode, endCode));
+
+    if (dateMap == null) {
+      return null;
+    }
+
+    // latest from dates first, stopping at the first line still valid at the date
+    for (List<ConversionRate> rateList : dateMap.headMap(date, true).descendingMap().values()) {
+      for (ConversionRate rate : rateList) {
+        if (rate.getToDate() == null || !rate.getToDate().isBefore(date)) {
+          return rate;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Clear the index once the current transaction is completed, it will be built again on next
+   * conversion.
+   */
+  public void invalidate() {
+    TransactionTool.runAfterCompletion(
+        () -> {
+          version.incrementAndGet();
+          rateMap = null;
+        });
+  }
+
+  protected Map<Pair<String, String>, NavigableMap<LocalDate, List<ConversionRate>>> index(
+      List<CurrencyConversionLine> lineList) {
+
+    Map<Pair<String, String>, NavigableMap<LocalDate, List<ConversionRate>>> map = new HashMap<>();
+
+    if (lineList == null) {
+      return map;
+    }
+
+    for (CurrencyConversionLine line : lineList) {
+      map.computeIfAbsent(
+              Pair.of(line.getStartCurrency().getCode(), line.getEndCurrency().getCode()),
+              key -> new TreeMap<>())
+          .computeIfAbsent(line.getFromDate(), key -> new ArrayList<>())
+          .add(new ConversionRate(line));
+    }
+
+    return map;
+  }
+}
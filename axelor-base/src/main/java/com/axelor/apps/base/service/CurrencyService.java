@@ -18,20 +18,24 @@
 package com.axelor.apps.base.service;
 
 import com.axelor.apps.base.db.Currency;
-import com.axelor.apps.base.db.CurrencyConversionLine;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
+import com.axelor.apps.base.service.CurrencyConversionCache.ConversionRate;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
+import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,18 +46,23 @@ public class CurrencyService {
 
   protected AppBaseService appBaseService;
 
+  protected CurrencyConversionCache currencyConversionCache;
+
   private LocalDate today;
 
   @Inject
-  public CurrencyService(AppBaseService appBaseService) {
+  public CurrencyService(
+      AppBaseService appBaseService, CurrencyConversionCache currencyConversionCache) {
 
     this.appBaseService = appBaseService;
+    this.currencyConversionCache = currencyConversionCache;
     this.today = appBaseService.getTodayDate();
   }
 
   public CurrencyService(LocalDate today) {
 
     this.appBaseService = Beans.get(AppBaseService.class);
+    this.currencyConversionCache = Beans.get(CurrencyConversionCache.class);
     this.today = today;
   }
 
@@ -71,16 +80,15 @@ public class CurrencyService {
 
       LocalDate dateToConvert = this.getDateToConvert(date);
 
-      CurrencyConversionLine currencyConversionLine =
-          this.getCurrencyConversionLine(startCurrency, endCurrency, dateToConvert);
-      if (currencyConversionLine != null) {
-        return currencyConversionLine.getExchangeRate();
+      ConversionRate conversionRate =
+          this.getConversionRate(startCurrency, endCurrency, dateToConvert);
+      if (conversionRate != null) {
+        return conversionRate.getExchangeRate();
       } else {
-        currencyConversionLine =
-            this.getCurrencyConversionLine(endCurrency, startCurrency, dateToConvert);
+        conversionRate = this.getConversionRate(endCurrency, startCurrency, dateToConvert);
       }
 
-      if (currencyConversionLine == null) {
+      if (conversionRate == null) {
         throw new AxelorException(
             TraceBackRepository.CATEGORY_CONFIGURATION_ERROR,
             I18n.get(IExceptionMessage.CURRENCY_1),
@@ -89,7 +97,7 @@ public class CurrencyService {
             dateToConvert);
       }
 
-      BigDecimal exchangeRate = currencyConversionLine.getExchangeRate();
+      BigDecimal exchangeRate = conversionRate.getExchangeRate();
 
       if (exchangeRate == null || exchangeRate.compareTo(BigDecimal.ZERO) == 0) {
         throw new AxelorException(
@@ -100,44 +108,23 @@ public class CurrencyService {
             dateToConvert);
       }
 
-      return BigDecimal.ONE.divide(
-          currencyConversionLine.getExchangeRate(), 10, RoundingMode.HALF_EVEN);
+      return BigDecimal.ONE.divide(conversionRate.getExchangeRate(), 10, RoundingMode.HALF_EVEN);
     }
 
     return BigDecimal.ONE;
   }
 
-  private CurrencyConversionLine getCurrencyConversionLine(
+  private ConversionRate getConversionRate(
       Currency startCurrency, Currency endCurrency, LocalDate localDate) {
 
-    List<CurrencyConversionLine> currencyConversionLineList =
-        appBaseService.getCurrencyConfigurationLineList();
-
-    if (currencyConversionLineList == null) {
-      return null;
-    }
-
     log.debug(
         "Currency from: {}, Currency to: {}, localDate: {}", startCurrency, endCurrency, localDate);
 
-    for (CurrencyConversionLine ccl : currencyConversionLineList) {
-
-      String cclStartCode = ccl.getStartCurrency().getCode();
-      String cclEndCode = ccl.getEndCurrency().getCode();
-      String startCode = startCurrency.getCode();
-      String endCode = endCurrency.getCode();
-      LocalDate fromDate = ccl.getFromDate();
-      LocalDate toDate = ccl.getToDate();
-
-      if (cclStartCode.equals(startCode) && cclEndCode.equals(endCode)) {
-        if ((fromDate.isBefore(localDate) || fromDate.equals(localDate))
-            && (toDate == null || toDate.isAfter(localDate) || toDate.isEqual(localDate))) {
-          return ccl;
-        }
-      }
-    }
-
-    return null;
+    return currencyConversionCache.getConversionRate(
+        startCurrency.getCode(),
+        endCurrency.getCode(),
+        localDate,
+        appBaseService::getCurrencyConfigurationLineList);
   }
 
   /**
@@ -165,6 +152,50 @@ public class CurrencyService {
     return amount;
   }
 
+  /**
+   * Convert the amounts in start currency into the end currency, each one according to its date to
+   * convert. The exchange rate is computed once per distinct date.
+   *
+   * @param startCurrency
+   * @param endCurrency
+   * @param amountList
+   * @param dateList the dates to convert, in the same order as the amounts
+   * @return the converted amounts, in the same order
+   * @throws AxelorException
+   */
+  public List<BigDecimal> getAmountCurrencyConvertedAtDate(
+      Currency startCurrency,
+      Currency endCurrency,
+      List<BigDecimal> amountList,
+      List<LocalDate> dateList)
+      throws AxelorException {
+
+    Preconditions.checkArgument(
+        amountList.size() == dateList.size(), "There must be one date per amount.");
+
+    if (startCurrency == null || endCurrency == null || startCurrency.equals(endCurrency)) {
+      return new ArrayList<>(amountList);
+    }
+
+    Map<LocalDate, BigDecimal> exchangeRateMap = new HashMap<>();
+    List<BigDecimal> convertedAmountList = new ArrayList<>(amountList.size());
+
+    for (int i = 0; i < amountList.size(); i++) {
+      LocalDate dateToConvert = this.getDateToConvert(dateList.get(i));
+      BigDecimal exchangeRate = exchangeRateMap.get(dateToConvert);
+
+      if (exchangeRate == null) {
+        exchangeRate = this.getCurrencyConversionRate(startCurrency, endCurrency, dateToConvert);
+        exchangeRateMap.put(dateToConvert, exchangeRate);
+      }
+
+      convertedAmountList.add(
+          this.getAmountCurrencyConvertedUsingExchangeRate(amountList.get(i), exchangeRate));
+    }
+
+    return convertedAmountList;
+  }
+
   /**
    * Convert the amount in start currency into the end currency according to the exchange rate
    *
@@ -0,0 +1,311 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.service;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.db.JPA;
+import com.axelor.tool.template.TemplateMaker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Singleton;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.tuple.Pair;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.stringtemplate.v4.ST;
+
+/**
+ * Application wide cache of the unit conversions, indexed by couple of units, and of the compiled
+ * conversion formulas. Only the values of the unit conversions are kept, not the entities. They
+ * are loaded again once a change on them is committed.
+ */
+@Singleton
+public class UnitConversionCache {
+
+  private static final char TEMPLATE_DELIMITER = '$';
+
+  private static final Pattern TEMPLATE_PATTERN = Pattern.compile("\\$[^$]+\\$");
+
+  private static final Pattern INTEGER_PATTERN = Pattern.compile("-?\\d+");
+
+  private static final String TEMPLATE_VARIABLE = "__template__";
+
+  private static final int MAX_FORMULAS = 1000;
+
+  private volatile Map<Pair<Long, Long>, List<Conversion>> conversionMap;
+
+  private final AtomicLong version = new AtomicLong();
+
+  private final AtomicInteger scriptCount = new AtomicInteger();
+
+  private final ScriptClassLoader classLoader = new ScriptClassLoader();
+
+  private final TemplateMaker templateMaker =
+      new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
+
+  private final Cache<String, Formula> formulaCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_FORMULAS)
+          .removalListener(this::release)
+          .build();
+
+  /** The values of a unit conversion. */
+  public static final class Conversion {
+
+    private final Long startUnitId;
+    private final Long endUnitId;
+    private final int typeSelect;
+    private final BigDecimal coef;
+    private final String formula;
+
+    public Conversion(UnitConversion unitConversion) {
+      this.startUnitId = unitConversion.getStartUnit().getId();
+      this.endUnitId = unitConversion.getEndUnit().getId();
+      this.typeSelect = unitConversion.getTypeSelect();
+      this.coef = unitConversion.getCoef();
+      this.formula = unitConversion.getFormula();
+    }
+
+    public Long getStartUnitId() {
+      return startUnitId;
+    }
+
+    public Long getEndUnitId() {
+      return endUnitId;
+    }
+
+    public int getTypeSelect() {
+      return typeSelect;
+    }
+
+    public BigDecimal getCoef() {
+      return coef;
+    }
+
+    public String getFormula() {
+      return formula;
+    }
+  }
+
+  /**
+   * A conversion formula compiled once for all the products. The templates of the formula, like
+   * $Product.netMass$, are rendered by the template engine for each product, and their values are
+   * read as numbers, as they were when the rendered formula was compiled.
+   */
+  public final class Formula {
+
+    private final Class<? extends Script> scriptClass;
+    private final List<ST> templateList;
+
+    private Formula(Class<? extends Script> scriptClass, List<ST> templateList) {
+      this.scriptClass = scriptClass;
+      this.templateList = templateList;
+    }
+
+    public BigDecimal evaluate(Product product) {
+      TemplateMaker maker =
+          new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
+      maker.setContext(product, "Product");
+
+      IntFunction<Number> templateFunction =
+          index -> {
+            maker.setTemplate(templateList.get(index));
+            return toNumber(maker.make());
+          };
+
+      Binding binding = new Binding();
+      binding.setVariable(TEMPLATE_VARIABLE, templateFunction);
+      return new BigDecimal(InvokerHelper.createScript(scriptClass, binding).run().toString());
+    }
+  }
+
+  /** Class loader of the compiled formulas, which releases the classes removed from the cache. */
+  private static class ScriptClassLoader extends GroovyClassLoader {
+
+    private ScriptClassLoader() {
+      super(UnitConversionCache.class.getClassLoader(), createConfiguration());
+    }
+
+    private static CompilerConfiguration createConfiguration() {
+      CompilerConfiguration conf = new CompilerConfiguration();
+      ImportCustomizer customizer = new ImportCustomizer();
+      customizer.addStaticStars("java.lang.Math");
+      conf.addCompilationCustomizers(customizer);
+      return conf;
+    }
+
+    private void release(Class<?> scriptClass) {
+      removeClassCacheEntry(scriptClass.getName());
+      InvokerHelper.removeClass(scriptClass);
+    }
+  }
+
+  /**
+   * Get the unit conversions between two units, in both directions, in the order of their ids.
+   *
+   * @param startUnit The start unit
+   * @param endUnit The end unit
+   * @return The list of unit conversions from startUnit to endUnit or from endUnit to startUnit.
+   */
+  public List<Conversion> getConversionList(Unit startUnit, Unit endUnit) {
+    Map<Pair<Long, Long>, List<Conversion>> map = conversionMap;
+
+    if (map == null) {
+      long loadedVersion = version.get();
+      map = loadConversionMap();
+
+      // don't keep the loaded conversions if they were changed in the meantime
+      if (loadedVersion == version.get()) {
+        conversionMap = map;
+      }
+    }
+
+    return map.getOrDefault(getKey(startUnit.getId(), endUnit.getId()), Collections.emptyList());
+  }
+
+  /**
+   * Clear the unit conversions once the current transaction is completed, they will be loaded
+   * again on next conversion. The compiled formulas only depend on their text, so they are kept.
+   */
+  public void invalidate() {
+    TransactionTool.runAfterCompletion(
+        () -> {
+          version.incrementAndGet();
+          conversionMap = null;
+        });
+  }
+
+  /**
+   * Get a conversion formula compiled once for all the products. At most 1000 formulas are kept,
+   * the least recently used ones are compiled again when needed.
+   *
+   * @param formula The formula of a unit conversion
+   * @return The compiled formula
+   */
+  public Formula getFormula(String formula) {
+    try {
+      return formulaCache.get(formula, () -> compile(formula));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Compile a formula, each template of the formula being replaced by a call reading its value for
+   * the product.
+   */
+  @SuppressWarnings("unchecked")
+  protected Formula compile(String formula) {
+    List<ST> templateList = new ArrayList<>();
+    StringBuffer expression = new StringBuffer();
+    Matcher matcher = TEMPLATE_PATTERN.matcher(formula);
+
+    while (matcher.find()) {
+      matcher.appendReplacement(
+          expression, String.format("(%s.apply(%s))", TEMPLATE_VARIABLE, templateList.size()));
+      templateList.add(templateMaker.compile(matcher.group()));
+    }
+    matcher.appendTail(expression);
+
+    GroovyCodeSource codeSource =
+        new GroovyCodeSource(
+            expression.toString(),
+            "UnitConversionFormula" + scriptCount.incrementAndGet() + ".groovy",
+            GroovyShell.DEFAULT_CODE_BASE);
+
+    return new Formula(
+        (Class<? extends Script>) classLoader.parseClass(codeSource, false), templateList);
+  }
+
+  protected void release(RemovalNotification<String, Formula> notification) {
+    classLoader.release(notification.getValue().scriptClass);
+  }
+
+  /**
+   * Read the rendered value of a template as groovy reads a number written in a formula: an
+   * integer or a decimal.
+   */
+  protected Number toNumber(String text) {
+    String number = text.trim();
+
+    if (INTEGER_PATTERN.matcher(number).matches()) {
+      BigInteger integer = new BigInteger(number);
+      if (integer.bitLength() < Integer.SIZE) {
+        return integer.intValue();
+      }
+      return integer.bitLength() < Long.SIZE ? integer.longValue() : integer;
+    }
+
+    return new BigDecimal(number);
+  }
+
+  protected Map<Pair<Long, Long>, List<Conversion>> loadConversionMap() {
+    List<UnitConversion> unitConversionList =
+        JPA.em()
+            .createQuery(
+                "SELECT self FROM UnitConversion self "
+                    + "LEFT JOIN FETCH self.startUnit "
+                    + "LEFT JOIN FETCH self.endUnit "
+                    + "ORDER BY self.id",
+                UnitConversion.class)
+            .getResultList();
+
+    Map<Pair<Long, Long>, List<Conversion>> map = new HashMap<>();
+
+    for (UnitConversion unitConversion : unitConversionList) {
+      Conversion conversion = new Conversion(unitConversion);
+      map.computeIfAbsent(
+              getKey(conversion.getStartUnitId(), conversion.getEndUnitId()),
+              key -> new ArrayList<>())
+          .add(conversion);
+    }
+
+    return map;
+  }
+
+  protected Pair<Long, Long> getKey(Long unitId, Long otherUnitId) {
+    return unitId < otherUnitId ? Pair.of(unitId, otherUnitId) : Pair.of(otherUnitId, unitId);
+  }
+}
@@ -22,24 +22,20 @@ import com.axelor.apps.base.db.Unit;
 import com.axelor.apps.base.db.UnitConversion;
 import com.axelor.apps.base.db.repo.UnitConversionRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
+import com.axelor.apps.base.service.UnitConversionCache.Conversion;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
-import com.axelor.tool.template.TemplateMaker;
 import com.google.inject.Inject;
 import com.google.inject.servlet.RequestScoped;
-import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import org.codehaus.groovy.control.CompilationFailedException;
-import org.codehaus.groovy.control.CompilerConfiguration;
-import org.codehaus.groovy.control.customizers.ImportCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,14 +44,14 @@ public class UnitConversionService {
   private static final Logger logger =
       LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private static final char TEMPLATE_DELIMITER = '$';
   private static final int DEFAULT_COEFFICIENT_SCALE = 12;
-  protected TemplateMaker maker;
 
   @Inject protected AppBaseService appBaseService;
 
   @Inject protected UnitConversionRepository unitConversionRepo;
 
+  @Inject protected UnitConversionCache unitConversionCache;
+
   /**
    * Convert a value from a unit to another
    *
@@ -77,17 +73,15 @@ public class UnitConversionService {
           I18n.get(IExceptionMessage.UNIT_CONVERSION_2));
 
     if (startUnit.equals(endUnit)) return value;
-    else {
-      try {
-        BigDecimal coefficient =
-            this.getCoefficient(unitConversionRepo.all().fetch(), startUnit, endUnit, product);
-
-        return value.multiply(coefficient).setScale(scale, RoundingMode.HALF_EVEN);
-      } catch (IOException | ClassNotFoundException e) {
-        e.printStackTrace();
-      }
-    }
-    return value;
+
+    BigDecimal coefficient =
+        this.getConversionCoefficient(
+            unitConversionCache.getConversionList(startUnit, endUnit),
+            startUnit,
+            endUnit,
+            product);
+
+    return value.multiply(coefficient).setScale(scale, RoundingMode.HALF_EVEN);
   }
 
   /**
@@ -111,49 +105,46 @@ public class UnitConversionService {
       Unit endUnit,
       Product product)
       throws AxelorException, CompilationFailedException, ClassNotFoundException, IOException {
-    /* Looking for the start unit and the end unit in the unitConversionList to get the coefficient */
-    if (product != null) {
-      this.maker = new TemplateMaker(Locale.FRENCH, TEMPLATE_DELIMITER, TEMPLATE_DELIMITER);
-      this.maker.setContext(product, "Product");
-    }
-    String eval = null;
+    List<Conversion> conversionList = new ArrayList<>();
     for (UnitConversion unitConversion : unitConversionList) {
+      conversionList.add(new Conversion(unitConversion));
+    }
+    return this.getConversionCoefficient(conversionList, startUnit, endUnit, product);
+  }
 
-      if (unitConversion.getStartUnit().equals(startUnit)
-          && unitConversion.getEndUnit().equals(endUnit)) {
-        if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF) {
-          return unitConversion.getCoef();
+  /**
+   * Get the conversion coefficient between two units from the values of unit conversions.
+   *
+   * @see #getCoefficient(List, Unit, Unit, Product)
+   */
+  protected BigDecimal getConversionCoefficient(
+      List<Conversion> conversionList, Unit startUnit, Unit endUnit, Product product)
+      throws AxelorException {
+    Long startUnitId = startUnit.getId();
+    Long endUnitId = endUnit.getId();
+
+    /* Looking for the start unit and the end unit in the conversionList to get the coefficient */
+    for (Conversion conversion : conversionList) {
+
+      if (conversion.getStartUnitId().equals(startUnitId)
+          && conversion.getEndUnitId().equals(endUnitId)) {
+        if (conversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF) {
+          return conversion.getCoef();
         } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          return new BigDecimal(shell.evaluate(eval).toString());
+          return this.evaluateFormula(conversion.getFormula(), product);
         }
       }
 
       /* The endUnit become the start unit and the startUnit become the end unit */
 
-      if (unitConversion.getStartUnit().equals(endUnit)
-          && unitConversion.getEndUnit().equals(startUnit)) {
-        if (unitConversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF
-            && unitConversion.getCoef().compareTo(BigDecimal.ZERO) != 0) {
+      if (conversion.getStartUnitId().equals(endUnitId)
+          && conversion.getEndUnitId().equals(startUnitId)) {
+        if (conversion.getTypeSelect() == UnitConversionRepository.TYPE_COEFF
+            && conversion.getCoef().compareTo(BigDecimal.ZERO) != 0) {
           return BigDecimal.ONE.divide(
-              unitConversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
+              conversion.getCoef(), DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
         } else if (product != null) {
-          maker.setTemplate(unitConversion.getFormula());
-          eval = maker.make();
-          CompilerConfiguration conf = new CompilerConfiguration();
-          ImportCustomizer customizer = new ImportCustomizer();
-          customizer.addStaticStars("java.lang.Math");
-          conf.addCompilationCustomizers(customizer);
-          Binding binding = new Binding();
-          GroovyShell shell = new GroovyShell(binding, conf);
-          BigDecimal result = new BigDecimal(shell.evaluate(eval).toString());
+          BigDecimal result = this.evaluateFormula(conversion.getFormula(), product);
           if (result.compareTo(BigDecimal.ZERO) != 0) {
             return BigDecimal.ONE.divide(result, DEFAULT_COEFFICIENT_SCALE, RoundingMode.HALF_EVEN);
           }
@@ -167,4 +158,16 @@ public class UnitConversionService {
         startUnit.getName(),
         endUnit.getName());
   }
+
+  /**
+   * Evaluate a conversion formula for a product. The formula is compiled once for all the
+   * products, the templates of the formula like $Product.netMass$ being rendered for each product.
+   *
+   * @param formula The formula of a unit conversion
+   * @param product The product to convert
+   * @return The result of the formula
+   */
+  protected BigDecimal evaluateFormula(String formula, Product product) {
+    return unitConversionCache.getFormula(formula).evaluate(product);
+  }
 }
@@ -21,20 +21,43 @@ import com.axelor.apps.base.db.Batch;
 import com.axelor.apps.base.db.repo.BatchRepository;
 import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.base.service.app.AppBaseService;
+import com.axelor.auth.AuthUtils;
 import com.axelor.auth.db.AuditableModel;
 import com.axelor.db.EntityHelper;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
+import com.axelor.db.Query;
+import com.axelor.db.mapper.Mapper;
+import com.axelor.db.mapper.Property;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.google.common.base.Preconditions;
 import com.google.inject.persist.Transactional;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import javax.inject.Inject;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +66,12 @@ public abstract class AbstractBatch {
 
   public static final int FETCH_LIMIT = 10;
 
+  /** Number of partitions per thread, so that faster threads take over the remaining work. */
+  private static final int PARTITIONS_PER_THREAD = 4;
+
+  /** Interval in seconds between two saves of the progress of a batch processed by partition. */
+  private static final int PROGRESS_INTERVAL = 10;
+
   @Inject protected AppBaseService appBaseService;
 
   protected static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -52,19 +81,25 @@ public abstract class AbstractBatch {
 
   @Inject protected BatchRepository batchRepo;
 
-  private int done;
-  private int anomaly;
+  private final AtomicInteger done = new AtomicInteger();
+  private final AtomicInteger anomaly = new AtomicInteger();
+  private int total;
+
+  private Integer fetchLimit;
+  private Integer threadCount;
+  private final ThreadLocal<Boolean> processingChunk = ThreadLocal.withInitial(() -> false);
+  private final ThreadLocal<Boolean> partitionWorker = ThreadLocal.withInitial(() -> false);
+
+  /** Anomalies of the current thread, so that a chunk is only interrupted by its own anomalies. */
+  private final ThreadLocal<Integer> threadAnomaly = ThreadLocal.withInitial(() -> 0);
 
   protected AbstractBatch() {
     this.batch = new Batch();
 
     this.batch.setStartDate(ZonedDateTime.now());
 
-    this.done = 0;
-    this.anomaly = 0;
-
-    this.batch.setDone(this.done);
-    this.batch.setAnomaly(this.anomaly);
+    this.batch.setDone(this.done.get());
+    this.batch.setAnomaly(this.anomaly.get());
 
     JPA.runInTransaction(() -> batch = JPA.persist(batch));
   }
@@ -140,6 +175,7 @@ public abstract class AbstractBatch {
     findBatch();
 
     batch.setEndDate(ZonedDateTime.now());
+    batch.setEstimatedEndDate(null);
     batch.setDuration(getDuring());
 
     checkPoint();
@@ -153,11 +189,10 @@ public abstract class AbstractBatch {
   }
 
   protected void _incrementDone() {
-    done += 1;
-    batch.setDone(done);
-    checkPoint();
+    int count = done.incrementAndGet();
+    saveCounters();
 
-    LOG.debug("Done ::: {}", done);
+    LOG.debug("Done ::: {}", count);
   }
 
   protected void incrementAnomaly() {
@@ -166,11 +201,11 @@ public abstract class AbstractBatch {
   }
 
   protected void _incrementAnomaly() {
-    anomaly += 1;
-    batch.setAnomaly(anomaly);
-    checkPoint();
+    int count = anomaly.incrementAndGet();
+    threadAnomaly.set(threadAnomaly.get() + 1);
+    saveCounters();
 
-    LOG.debug("Anomaly ::: {}", anomaly);
+    LOG.debug("Anomaly ::: {}", count);
   }
 
   protected void addComment(String comment) {
@@ -186,6 +221,352 @@ public abstract class AbstractBatch {
     return findBatch();
   }
 
+  /**
+   * When records are processed by {@link #processByChunk}, counters are only saved at the end of
+   * each chunk. Otherwise they are saved on each increment, as processes may rely on it to commit
+   * their changes before clearing the persistence context. Partition workers never save them, the
+   * thread running the batch does.
+   */
+  private void saveCounters() {
+    if (isPartitionWorker()) {
+      return;
+    }
+
+    findBatch();
+
+    if (!processingChunk.get()) {
+      checkPoint();
+    }
+  }
+
+  /**
+   * Returns whether the current thread is a worker processing a partition of the batch records.
+   *
+   * <p>Workers have their own persistence context and transactions: they must not use the {@code
+   * batch} entity other than for its id.
+   */
+  protected boolean isPartitionWorker() {
+    return partitionWorker.get();
+  }
+
+  /**
+   * Save the counters with the progress of the batch: the estimated end date is computed from the
+   * records processed so far and the total number of records to process.
+   */
+  protected void saveProgress() {
+    if (isPartitionWorker()) {
+      return;
+    }
+
+    findBatch();
+
+    int processed = done.get() + anomaly.get();
+    batch.setTotal(total);
+    batch.setEstimatedEndDate(null);
+
+    if (processed > 0 && total > processed && batch.getStartDate() != null) {
+      ZonedDateTime now = ZonedDateTime.now();
+      long elapsed = ChronoUnit.MILLIS.between(batch.getStartDate(), now);
+      long remaining = elapsed * (total - processed) / processed;
+      batch.setEstimatedEndDate(now.plus(remaining, ChronoUnit.MILLIS));
+    }
+
+    checkPoint();
+  }
+
+  /**
+   * Returns the number of records to fetch and process between two commits.
+   *
+   * <p>Uses the <code>fetchLimit</code> field of the batch configuration if it has one and it is
+   * filled, else the value of the base app configuration.
+   *
+   * @return the chunk size of the batch.
+   */
+  protected int getFetchLimit() {
+    if (fetchLimit == null) {
+      fetchLimit = computeFetchLimit();
+    }
+    return fetchLimit;
+  }
+
+  private int computeFetchLimit() {
+    if (model != null) {
+      Property property = Mapper.of(EntityHelper.getEntityClass(model)).getProperty("fetchLimit");
+      Object value = property == null ? null : property.get(model);
+
+      if (value instanceof Integer && (Integer) value > 0) {
+        return (Integer) value;
+      }
+    }
+
+    Integer batchFetchLimit = appBaseService.getAppBase().getBatchFetchLimit();
+    return batchFetchLimit != null && batchFetchLimit > 0 ? batchFetchLimit : FETCH_LIMIT;
+  }
+
+  /**
+   * Returns the number of threads used by {@link #processByPartition}.
+   *
+   * @return the thread count of the base app configuration, 1 by default.
+   */
+  protected int getThreadCount() {
+    if (threadCount == null) {
+      Integer batchThreadCount = appBaseService.getAppBase().getBatchThreadCount();
+      threadCount = batchThreadCount != null && batchThreadCount > 1 ? batchThreadCount : 1;
+    }
+    return threadCount;
+  }
+
+  /**
+   * Process the records matching the filter chunk by chunk, in the order of their ids.
+   *
+   * <p>Each chunk is fetched with a condition on the id of the last processed record instead of an
+   * offset, so fetching a chunk doesn't get slower as the batch goes on and records leaving the
+   * filter once processed are not an issue. The counters are saved and the persistence context is
+   * cleared after each chunk. A chunk is interrupted after an anomaly so that the next records are
+   * processed with a clean persistence context.
+   *
+   * @param klass the model of the records.
+   * @param processor called for each record, it should handle its own errors.
+   * @param filter the JPQL filter, with positional parameters.
+   * @param params the filter parameters.
+   */
+  protected <T extends Model> void processByChunk(
+      Class<T> klass, Consumer<T> processor, String filter, Object... params) {
+
+    String chunkFilter = getChunkFilter(filter, "?" + (params.length + 1));
+    Object[] chunkParams = Arrays.copyOf(params, params.length + 1);
+
+    if (!isPartitionWorker()) {
+      addTotal(all(klass, filter, params).count());
+    }
+
+    processByChunk(
+        lastId -> {
+          chunkParams[params.length] = lastId;
+          return JPA.all(klass).filter(chunkFilter, chunkParams);
+        },
+        processor);
+  }
+
+  /**
+   * Same as {@link #processByChunk(Class, Consumer, String, Object...)} with named parameters.
+   *
+   * @param klass the model of the records.
+   * @param processor called for each record, it should handle its own errors.
+   * @param filter the JPQL filter, with named parameters.
+   * @param bindings the filter parameters.
+   */
+  protected <T extends Model> void processByChunk(
+      Class<T> klass, Consumer<T> processor, String filter, Map<String, Object> bindings) {
+
+    String chunkFilter = getChunkFilter(filter, ":_lastId");
+
+    if (!isPartitionWorker()) {
+      addTotal(all(klass, filter).bind(bindings).count());
+    }
+
+    processByChunk(
+        lastId -> JPA.all(klass).filter(chunkFilter).bind(bindings).bind("_lastId", lastId),
+        processor);
+  }
+
+  private <T extends Model> Query<T> all(Class<T> klass, String filter, Object... params) {
+    return StringUtils.isBlank(filter) ? JPA.all(klass) : JPA.all(klass).filter(filter, params);
+  }
+
+  private String getChunkFilter(String filter, String lastIdParam) {
+    String idFilter = "self.id > " + lastIdParam;
+    return StringUtils.isBlank(filter) ? idFilter : "(" + filter + ") AND " + idFilter;
+  }
+
+  private <T extends Model> void processByChunk(
+      Function<Long, Query<T>> queryFactory, Consumer<T> processor) {
+
+    long lastId = 0L;
+    List<T> recordList;
+
+    do {
+      recordList = queryFactory.apply(lastId).order("id").fetch(getFetchLimit());
+
+      processingChunk.set(true);
+      try {
+        for (T record : recordList) {
+          lastId = record.getId();
+          int previousAnomaly = threadAnomaly.get();
+
+          processor.accept(record);
+
+          if (threadAnomaly.get() > previousAnomaly) {
+            break;
+          }
+        }
+      } finally {
+        processingChunk.remove();
+      }
+
+      saveProgress();
+      JPA.clear();
+    } while (!recordList.isEmpty());
+  }
+
+  /**
+   * Same as {@link #processByChunk(Class, Consumer, String, Map)}, but the records are split in
+   * partitions of ids which are processed in parallel, using the thread count of the base app
+   * configuration. Each partition is processed chunk by chunk on a worker thread, with its own
+   * persistence context and transactions. The counters of all the workers are merged in the batch,
+   * and the progress of the batch is saved regularly while the workers are running.
+   *
+   * <p>As the processor is called from several threads, it must be thread-safe and must only use
+   * the {@code batch} entity for its id. Anomalies should be traced with the id of the batch so
+   * they are all linked to it.
+   *
+   * @param klass the model of the records.
+   * @param processor called for each record, it should handle its own errors.
+   * @param filter the JPQL filter, with named parameters.
+   * @param bindings the filter parameters.
+   */
+  protected <T extends Model> void processByPartition(
+      Class<T> klass, Consumer<T> processor, String filter, Map<String, Object> bindings) {
+
+    int threads = getThreadCount();
+
+    if (threads <= 1 || isPartitionWorker()) {
+      processByChunk(klass, processor, filter, bindings);
+      return;
+    }
+
+    long count = all(klass, filter).bind(bindings).count();
+
+    if (count == 0) {
+      return;
+    }
+
+    addTotal(count);
+
+    long minId = all(klass, filter).bind(bindings).order("id").fetchOne().getId();
+    long maxId = all(klass, filter).bind(bindings).order("-id").fetchOne().getId();
+    int partitionCount = (int) Math.min(count, (long) threads * PARTITIONS_PER_THREAD);
+    long partitionSize = (maxId - minId) / partitionCount + 1;
+
+    List<long[]> idRangeList = new ArrayList<>();
+    for (long id = minId - 1; id < maxId; id += partitionSize) {
+      idRangeList.add(new long[] {id, Math.min(id + partitionSize, maxId)});
+    }
+
+    String partitionFilter = getChunkFilter(filter, ":_lastId") + " AND self.id <= :_toId";
+
+    processInParallel(
+        idRangeList,
+        idRange ->
+            processByChunk(
+                lastId ->
+                    JPA.all(klass)
+                        .filter(partitionFilter)
+                        .bind(bindings)
+                        .bind("_lastId", Math.max(lastId, idRange[0]))
+                        .bind("_toId", idRange[1]),
+                processor));
+  }
+
+  /**
+   * Process the given partitions in parallel, using the thread count of the base app
+   * configuration, and wait for all of them. Each partition is processed on a worker thread, with
+   * its own persistence context and transactions, and the progress of the batch is saved regularly
+   * while the workers are running. Without several threads, the partitions are processed one after
+   * the other by the current thread.
+   *
+   * <p>The same rules as for {@link #processByPartition} apply to the processor: it must be
+   * thread-safe, only use the {@code batch} entity for its id, and update the counters with {@link
+   * #incrementDone} and {@link #incrementAnomaly}. The total is given with {@link #addTotal}.
+   *
+   * @param partitionList the partitions of the records to process.
+   * @param processor called for each partition, it should handle its own errors.
+   */
+  protected <T> void processInParallel(List<T> partitionList, Consumer<T> processor) {
+
+    int threads = getThreadCount();
+
+    if (threads <= 1 || isPartitionWorker()) {
+      partitionList.forEach(processor);
+      saveProgress();
+      return;
+    }
+
+    Long batchId = batch.getId();
+    Subject subject = AuthUtils.getSubject();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    try {
+      List<Future<Void>> futureList = new ArrayList<>();
+
+      for (T partition : partitionList) {
+        Callable<Void> task = () -> processPartition(() -> processor.accept(partition), batchId);
+        futureList.add(executor.submit(subject != null ? subject.associateWith(task) : task));
+      }
+
+      for (Future<Void> future : futureList) {
+        waitForPartition(future);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    saveProgress();
+  }
+
+  private Void processPartition(Runnable partitionProcessor, Long batchId) {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      partitionWorker.set(true);
+      threadBatchId.set(batchId);
+
+      partitionProcessor.run();
+
+      return null;
+    } finally {
+      partitionWorker.remove();
+      threadAnomaly.remove();
+      threadBatchId.remove();
+      JPA.clear();
+    }
+  }
+
+  private void waitForPartition(Future<Void> future) {
+    while (true) {
+      try {
+        future.get(PROGRESS_INTERVAL, TimeUnit.SECONDS);
+        return;
+      } catch (TimeoutException e) {
+        saveProgress();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Add records to the total number of records to process, used to estimate the end date of the
+   * batch.
+   *
+   * @param count the number of records.
+   */
+  protected void addTotal(long count) {
+    total += (int) count;
+  }
+
+  protected int getDoneCount() {
+    return done.get();
+  }
+
+  protected int getAnomalyCount() {
+    return anomaly.get();
+  }
+
   @Transactional
   protected void unarchived() {
     try {
@@ -227,10 +608,18 @@ public abstract class AbstractBatch {
   }
 
   protected Batch findBatch() {
+    if (isPartitionWorker()) {
+      return JPA.find(Batch.class, batch.getId());
+    }
+
     if (!JPA.em().contains(batch)) {
       batch = JPA.find(Batch.class, batch.getId());
     }
 
+    // counters may not have been saved yet, or the batch may have been fetched again elsewhere
+    batch.setDone(done.get());
+    batch.setAnomaly(anomaly.get());
+
     return batch;
   }
 }
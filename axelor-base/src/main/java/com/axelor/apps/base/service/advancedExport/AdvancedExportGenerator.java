@@ -25,7 +25,10 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntConsumer;
 import javax.persistence.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +38,10 @@ public abstract class AdvancedExportGenerator {
 
   private boolean isReachMaxExportLimit;
 
+  private int exportedRecordCount;
+
+  private IntConsumer progressListener;
+
   /**
    * This method generate the header of export file.
    *
@@ -48,9 +55,10 @@ public abstract class AdvancedExportGenerator {
    * This method generate the body of export file.
    *
    * @param dataList
+   * @throws AxelorException
    */
   @SuppressWarnings("rawtypes")
-  public abstract void generateBody(List<List> dataList);
+  public abstract void generateBody(List<List> dataList) throws AxelorException;
 
   /**
    * This method close the object.
@@ -83,17 +91,30 @@ public abstract class AdvancedExportGenerator {
   public abstract String getFileName();
 
   /**
-   * This method is used to generate the export file.
+   * This method is used to generate the export file. The query is read with a forward only cursor,
+   * so that only one page of records is in memory at a time.
    *
-   * @param advancedExport
    * @param query
    * @return
    * @throws AxelorException
-   * @throws IOException
-   * @throws DocumentException
    */
-  @SuppressWarnings({"unchecked", "rawtypes"})
   public File generateFile(Query query) throws AxelorException {
+    return generateFile(query, null);
+  }
+
+  /**
+   * This method is used to generate the export file.
+   *
+   * <p>When a parameter position is given, the query must select the id of the record as last
+   * column, be ordered by id and filter the ids greater than this parameter. The records are then
+   * paged by id, which stays fast whatever the page, and the id column is not exported.
+   *
+   * @param query
+   * @param lastIdPosition the position of the id parameter, or null to read the query in one pass
+   * @return
+   * @throws AxelorException
+   */
+  public File generateFile(Query query, Integer lastIdPosition) throws AxelorException {
 
     AdvancedExport advancedExport = getAdvancedExport();
 
@@ -101,31 +122,97 @@ public abstract class AdvancedExportGenerator {
 
     generateHeader();
 
-    int startPosition = 0;
-    int reachLimit = 0;
+    exportedRecordCount = 0;
     int maxExportLimit = advancedExport.getMaxExportLimit();
     int queryFetchLimit = advancedExport.getQueryFetchSize();
-    List<List> dataList = new ArrayList<>();
-    query.setMaxResults(queryFetchLimit);
 
-    while (startPosition < maxExportLimit) {
-      if ((maxExportLimit - startPosition) < queryFetchLimit) {
-        query.setMaxResults((maxExportLimit - startPosition));
+    if (lastIdPosition != null) {
+      generateBodyByIdPage(query, lastIdPosition, maxExportLimit, queryFetchLimit);
+    } else {
+      generateBodyByScroll(query, maxExportLimit, queryFetchLimit);
+    }
+
+    if (maxExportLimit == exportedRecordCount) {
+      isReachMaxExportLimit = true;
+    }
+    close();
+    return getExportFile();
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  protected void generateBodyByIdPage(
+      Query query, int lastIdPosition, int maxExportLimit, int queryFetchLimit)
+      throws AxelorException {
+
+    Long lastId = 0L;
+
+    while (exportedRecordCount < maxExportLimit) {
+      query.setParameter(lastIdPosition, lastId);
+      query.setMaxResults(Math.min(queryFetchLimit, maxExportLimit - exportedRecordCount));
+      List<List> dataList = query.getResultList();
+      if (dataList.isEmpty()) {
+        break;
+      }
+
+      for (List data : dataList) {
+        lastId = (Long) data.remove(data.size() - 1);
       }
-      query.setFirstResult(startPosition);
-      dataList = query.getResultList();
-      if (dataList.isEmpty()) break;
 
       generateBody(dataList);
+      onPageExported(dataList.size());
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  protected void generateBodyByScroll(Query query, int maxExportLimit, int queryFetchLimit)
+      throws AxelorException {
+
+    ScrollableResults results =
+        query
+            .unwrap(org.hibernate.query.Query.class)
+            .setFetchSize(queryFetchLimit)
+            .setMaxResults(maxExportLimit)
+            .scroll(ScrollMode.FORWARD_ONLY);
+
+    try {
+      List<List> dataList = new ArrayList<>(queryFetchLimit);
+
+      while (results.next()) {
+        dataList.add((List) results.get(0));
+        if (dataList.size() == queryFetchLimit) {
+          generateBody(dataList);
+          onPageExported(dataList.size());
+          dataList.clear();
+        }
+      }
 
-      startPosition = startPosition + queryFetchLimit;
-      reachLimit += dataList.size();
+      if (!dataList.isEmpty()) {
+        generateBody(dataList);
+        onPageExported(dataList.size());
+      }
+    } finally {
+      results.close();
     }
-    if (maxExportLimit == reachLimit) {
-      isReachMaxExportLimit = true;
+  }
+
+  protected void onPageExported(int recordCount) {
+    exportedRecordCount += recordCount;
+    if (progressListener != null) {
+      progressListener.accept(exportedRecordCount);
     }
-    close();
-    return getExportFile();
+  }
+
+  /**
+   * Set a listener called after each exported page, with the number of records exported so far.
+   *
+   * @param progressListener
+   */
+  public void setProgressListener(IntConsumer progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  public int getExportedRecordCount() {
+    return exportedRecordCount;
   }
 
   public boolean getIsReachMaxExportLimit() {
@@ -23,6 +23,7 @@ import com.axelor.meta.db.MetaModel;
 import com.axelor.rpc.filter.Filter;
 import java.io.File;
 import java.util.List;
+import java.util.function.IntConsumer;
 import javax.persistence.Query;
 
 public interface AdvancedExportService {
@@ -39,6 +40,46 @@ public interface AdvancedExportService {
   public File export(AdvancedExport advancedExport, List<Long> recordIds, String fileType)
       throws AxelorException;
 
+  /**
+   * Generate the export file, calling the listener with the number of records exported so far
+   * after each page of records.
+   *
+   * @param advancedExport
+   * @param recordIds
+   * @param fileType
+   * @param progressListener
+   * @return
+   * @throws AxelorException
+   */
+  public File export(
+      AdvancedExport advancedExport,
+      List<Long> recordIds,
+      String fileType,
+      IntConsumer progressListener)
+      throws AxelorException;
+
+  /**
+   * Generate the export file in a background thread, and attach it to the advanced export when it
+   * is done.
+   *
+   * @param advancedExport
+   * @param recordIds
+   * @param fileType
+   * @throws AxelorException if an export of this advanced export is already running
+   */
+  public void exportInBackground(
+      AdvancedExport advancedExport, List<Long> recordIds, String fileType)
+      throws AxelorException;
+
+  /**
+   * Get the number of records exported so far by the export of this advanced export running in
+   * background.
+   *
+   * @param advancedExport
+   * @return the number of records, or null if no export is running
+   */
+  public Integer getBackgroundExportProgress(AdvancedExport advancedExport);
+
   public Filter getJpaSecurityFilter(MetaModel metaModel);
 
   public boolean getIsReachMaxExportLimit();
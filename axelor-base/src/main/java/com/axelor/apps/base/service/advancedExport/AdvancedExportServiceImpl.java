@@ -19,6 +19,8 @@ package com.axelor.apps.base.service.advancedExport;
 
 import com.axelor.apps.base.db.AdvancedExport;
 import com.axelor.apps.base.db.AdvancedExportLine;
+import com.axelor.apps.base.db.repo.AdvancedExportRepository;
+import com.axelor.apps.base.exceptions.IExceptionMessage;
 import com.axelor.apps.tool.NamingTool;
 import com.axelor.auth.AuthUtils;
 import com.axelor.db.JPA;
@@ -30,7 +32,9 @@ import com.axelor.db.mapper.Property;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
+import com.axelor.meta.MetaFiles;
 import com.axelor.meta.db.MetaField;
 import com.axelor.meta.db.MetaModel;
 import com.axelor.meta.db.MetaSelect;
@@ -43,15 +47,27 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.persistence.Query;
+import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,14 +88,29 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
 
   private List<Object> params = null;
 
+  /** Position of the id parameter when the records are paged by id, null otherwise. */
+  private Integer lastIdPosition;
+
+  private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+  /** Number of records exported so far by each export running in background. */
+  private static final Map<Long, Integer> backgroundExportProgressMap = new ConcurrentHashMap<>();
+
   private String exportFileName, language, selectField, aliasName;
   private boolean isReachMaxExportLimit, isNormalField, isSelectionField = false;
+
+  /** Whether a one-to-many or many-to-many field is joined, giving several rows per record. */
+  private boolean hasCollectionJoin;
   private int msi, mt;
 
   /**
    * This method split and join the all fields/columns which are selected by user and create the
    * query.
    *
+   * <p>When no field is used to order the records and no collection field is joined, they are
+   * ordered by id and the query also selects the id, after the other fields, and filters the ids
+   * greater than its last positional parameter, so that the records can be paged by id.
+   *
    * @param advancedExport
    * @param criteria
    * @return
@@ -96,6 +127,7 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
     joinFieldSet.clear();
     selectionJoinFieldSet.clear();
     isNormalField = true;
+    hasCollectionJoin = false;
     selectField = "";
     msi = 0;
     mt = 0;
@@ -148,6 +180,10 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
           metaModelRepo.all().filter("self.name = ?1", relationalField.getTypeName()).fetchOne();
 
       if (!Strings.isNullOrEmpty(relationalField.getRelationship())) {
+        if ("OneToMany".equals(relationalField.getRelationship())
+            || "ManyToMany".equals(relationalField.getRelationship())) {
+          hasCollectionJoin = true;
+        }
         checkRelationalField(splitField, parentIndex);
       } else {
         checkSelectionField(splitField, parentIndex, metaModel);
@@ -296,9 +332,24 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
     params = null;
     String criteria = getCriteria(metaModel, recordIds);
 
-    if (!orderByFieldBuilder.toString().equals(""))
+    if (!orderByFieldBuilder.toString().equals("")) {
       orderByCol =
           " ORDER BY " + orderByFieldBuilder.substring(0, orderByFieldBuilder.length() - 1);
+      lastIdPosition = null;
+    } else if (hasCollectionJoin) {
+      // several rows share the same id, a page could end in the middle of them
+      orderByCol = " ORDER BY self.id";
+      lastIdPosition = null;
+    } else {
+      selectFieldBuilder.append("self.id,");
+      criteria =
+          Strings.isNullOrEmpty(criteria)
+              ? " WHERE self.id > ?"
+              : criteria + " AND self.id > ?";
+      orderByCol = " ORDER BY self.id";
+      // set from the number of parameters once they are numbered
+      lastIdPosition = 0;
+    }
 
     StringBuilder queryBuilder = new StringBuilder();
     queryBuilder.append("SELECT NEW List(");
@@ -338,7 +389,7 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
         TraceBackService.trace(e, e.getMessage());
       }
       if (recordIds == null) {
-        criteria = " WHERE " + permissionFilter;
+        criteria = " WHERE (" + permissionFilter + ")";
       } else {
         criteria += " AND (" + permissionFilter + ")";
       }
@@ -373,6 +424,9 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
       queryBuilder.replace(i, i + 1, "?" + (++n));
       i = queryBuilder.indexOf("?", i + 1);
     }
+    if (lastIdPosition != null) {
+      lastIdPosition = n;
+    }
     log.debug("query : {}", queryBuilder.toString());
     Query query = JPA.em().createQuery(queryBuilder.toString(), List.class);
     if (params != null) {
@@ -413,20 +467,100 @@ public class AdvancedExportServiceImpl implements AdvancedExportService {
   @Override
   public File export(AdvancedExport advancedExport, List<Long> recordIds, String fileType)
       throws AxelorException {
+    return export(advancedExport, recordIds, fileType, null);
+  }
+
+  /**
+   * The export runs in a transaction, as the database only streams the results of a query with a
+   * fetch size inside a transaction.
+   */
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public File export(
+      AdvancedExport advancedExport,
+      List<Long> recordIds,
+      String fileType,
+      IntConsumer progressListener)
+      throws AxelorException {
 
     AdvancedExportGenerator exportGenerator =
         exportGeneratorFactory.getAdvancedExportGenerator(advancedExport, fileType);
+    exportGenerator.setProgressListener(progressListener);
 
     sortAdvancedExportLineList(advancedExport.getAdvancedExportLineList());
 
     Query query = getAdvancedExportQuery(advancedExport, recordIds);
 
-    File file = exportGenerator.generateFile(query);
+    File file = exportGenerator.generateFile(query, lastIdPosition);
     isReachMaxExportLimit = exportGenerator.getIsReachMaxExportLimit();
     exportFileName = exportGenerator.getExportFileName();
     return file;
   }
 
+  @Override
+  public void exportInBackground(
+      AdvancedExport advancedExport, List<Long> recordIds, String fileType)
+      throws AxelorException {
+
+    Long advancedExportId = advancedExport.getId();
+
+    if (backgroundExportProgressMap.putIfAbsent(advancedExportId, 0) != null) {
+      throw new AxelorException(
+          advancedExport,
+          TraceBackRepository.CATEGORY_INCONSISTENCY,
+          I18n.get(IExceptionMessage.ADVANCED_EXPORT_5));
+    }
+
+    Callable<Boolean> task =
+        () -> {
+          runBackgroundExport(advancedExportId, recordIds, fileType);
+          return true;
+        };
+    Subject subject = AuthUtils.getSubject();
+
+    try {
+      executor.submit(subject != null ? subject.associateWith(task) : task);
+    } catch (Exception e) {
+      backgroundExportProgressMap.remove(advancedExportId);
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+    }
+  }
+
+  protected void runBackgroundExport(Long advancedExportId, List<Long> recordIds, String fileType) {
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      AdvancedExportService advancedExportService = Beans.get(AdvancedExportService.class);
+      AdvancedExport advancedExport =
+          Beans.get(AdvancedExportRepository.class).find(advancedExportId);
+
+      File file =
+          advancedExportService.export(
+              advancedExport,
+              recordIds,
+              fileType,
+              exportedRecordCount ->
+                  backgroundExportProgressMap.put(advancedExportId, exportedRecordCount));
+
+      try (FileInputStream inStream = new FileInputStream(file)) {
+        Beans.get(MetaFiles.class)
+            .attach(inStream, advancedExportService.getExportFileName(), advancedExport);
+      }
+      Files.delete(file.toPath());
+
+    } catch (Exception e) {
+      TraceBackService.trace(e);
+    } finally {
+      backgroundExportProgressMap.remove(advancedExportId);
+      JPA.clear();
+    }
+  }
+
+  @Override
+  public Integer getBackgroundExportProgress(AdvancedExport advancedExport) {
+    return backgroundExportProgressMap.get(advancedExport.getId());
+  }
+
   @Override
   public boolean getIsReachMaxExportLimit() {
     return isReachMaxExportLimit;
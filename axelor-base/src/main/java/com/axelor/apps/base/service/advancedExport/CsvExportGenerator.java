@@ -24,6 +24,7 @@ import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.opencsv.CSVWriter;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -47,7 +48,7 @@ public class CsvExportGenerator extends AdvancedExportGenerator {
     exportFileName = advancedExport.getMetaModel().getName() + ".csv";
     try {
       exportFile = File.createTempFile(advancedExport.getMetaModel().getName(), ".csv");
-      csvWriter = new CSVWriter(new FileWriter(exportFile, true), ';');
+      csvWriter = new CSVWriter(new BufferedWriter(new FileWriter(exportFile, true)), ';');
     } catch (IOException e) {
       TraceBackService.trace(e);
       throw new AxelorException(e, TraceBackRepository.CATEGORY_CONFIGURATION_ERROR);
@@ -66,7 +67,7 @@ public class CsvExportGenerator extends AdvancedExportGenerator {
 
   @SuppressWarnings("rawtypes")
   @Override
-  public void generateBody(List<List> dataList) {
+  public void generateBody(List<List> dataList) throws AxelorException {
     for (List listObj : dataList) {
       for (int colIndex = 0; colIndex < listObj.size(); colIndex++) {
         Object value = listObj.get(colIndex);
@@ -79,6 +80,12 @@ public class CsvExportGenerator extends AdvancedExportGenerator {
       }
       csvWriter.writeNext(totalCols);
     }
+    try {
+      csvWriter.flush();
+    } catch (IOException e) {
+      TraceBackService.trace(e);
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_CONFIGURATION_ERROR);
+    }
   }
 
   @Override
@@ -40,13 +40,19 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.DateFormatConverter;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 public class ExcelExportGenerator extends AdvancedExportGenerator {
 
-  private Workbook workbook;
+  /** Number of rows kept in memory, the older ones are flushed to a temporary file. */
+  protected static final int ROW_ACCESS_WINDOW_SIZE = 100;
+
+  private SXSSFWorkbook workbook;
+
+  private CellStyle dateCellStyle;
+
+  private CellStyle dateTimeCellStyle;
 
   private Sheet sheet;
 
@@ -65,8 +71,10 @@ public class ExcelExportGenerator extends AdvancedExportGenerator {
       TraceBackService.trace(e);
       throw new AxelorException(e, TraceBackRepository.CATEGORY_CONFIGURATION_ERROR);
     }
-    workbook = new XSSFWorkbook();
+    workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+    workbook.setCompressTempFiles(true);
     sheet = workbook.createSheet(advancedExport.getMetaModel().getName());
+    createDateCellStyles();
   }
 
   @Override
@@ -79,11 +87,9 @@ public class ExcelExportGenerator extends AdvancedExportGenerator {
     }
   }
 
-  @SuppressWarnings("rawtypes")
-  @Override
-  public void generateBody(List<List> dataList) {
-    CellStyle dateCellStyle = workbook.createCellStyle();
-    CellStyle dateTimeCellStyle = workbook.createCellStyle();
+  protected void createDateCellStyles() {
+    dateCellStyle = workbook.createCellStyle();
+    dateTimeCellStyle = workbook.createCellStyle();
 
     DateFormat fmt = DateFormat.getDateInstance(DateFormat.SHORT, AppFilter.getLocale());
     if (fmt instanceof SimpleDateFormat) {
@@ -107,7 +113,11 @@ public class ExcelExportGenerator extends AdvancedExportGenerator {
               .createDataFormat()
               .getFormat(DateFormatConverter.convert(AppFilter.getLocale(), pattern)));
     }
+  }
 
+  @SuppressWarnings("rawtypes")
+  @Override
+  public void generateBody(List<List> dataList) {
     for (List listObj : dataList) {
       Row row = sheet.createRow(sheet.getLastRowNum() + 1);
       for (int colIndex = 0; colIndex < listObj.size(); colIndex++) {
@@ -120,8 +130,7 @@ public class ExcelExportGenerator extends AdvancedExportGenerator {
             cell.setCellValue(
                 Date.from(
                     ((LocalDate) value).atStartOfDay().atZone(ZoneId.systemDefault()).toInstant()));
-          }
-          if (value instanceof LocalDateTime) {
+          } else if (value instanceof LocalDateTime) {
             cell.setCellStyle(dateTimeCellStyle);
             cell.setCellValue(
                 Date.from(((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant()));
@@ -143,13 +152,13 @@ public class ExcelExportGenerator extends AdvancedExportGenerator {
 
   @Override
   public void close() throws AxelorException {
-    try {
-      FileOutputStream fout = new FileOutputStream(exportFile);
+    try (FileOutputStream fout = new FileOutputStream(exportFile)) {
       workbook.write(fout);
-      fout.close();
     } catch (IOException e) {
       TraceBackService.trace(e);
       throw new AxelorException(e, TraceBackRepository.CATEGORY_CONFIGURATION_ERROR);
+    } finally {
+      workbook.dispose();
     }
   }
 
@@ -198,6 +198,12 @@ public class AdvancedExportController {
     if (!advancedExport.getAdvancedExportLineList().isEmpty()) {
       List<Long> recordIds = createCriteria(request, advancedExport);
 
+      if (advancedExport.getExportInBackground()) {
+        advancedExportService.exportInBackground(advancedExport, recordIds, fileType);
+        response.setFlash(I18n.get(IExceptionMessage.ADVANCED_EXPORT_6));
+        return;
+      }
+
       File file = advancedExportService.export(advancedExport, recordIds, fileType);
 
       if (advancedExportService.getIsReachMaxExportLimit()) {
@@ -300,6 +306,18 @@ public class AdvancedExportController {
     }
   }
 
+  public void showBackgroundExportProgress(ActionRequest request, ActionResponse response) {
+    AdvancedExport advancedExport = request.getContext().asType(AdvancedExport.class);
+    Integer exportedRecordCount = advancedExportService.getBackgroundExportProgress(advancedExport);
+
+    if (exportedRecordCount != null) {
+      response.setFlash(
+          String.format(I18n.get(IExceptionMessage.ADVANCED_EXPORT_7), exportedRecordCount));
+    } else {
+      response.setFlash(I18n.get(IExceptionMessage.ADVANCED_EXPORT_8));
+    }
+  }
+
   private void downloadExportFile(ActionResponse response, MetaFile exportFile) {
     if (exportFile != null) {
       response.setView(
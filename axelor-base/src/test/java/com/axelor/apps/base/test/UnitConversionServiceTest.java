@@ -0,0 +1,178 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.base.test;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.base.db.UnitConversion;
+import com.axelor.apps.base.db.repo.UnitConversionRepository;
+import com.axelor.apps.base.service.UnitConversionCache;
+import com.axelor.apps.base.service.UnitConversionCache.Conversion;
+import com.axelor.apps.base.service.UnitConversionService;
+import com.axelor.exception.AxelorException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Converts quantities with unit conversions kept in memory, without the database: 1 box is 12
+ * pieces, and a piece weighs the net mass of the product in kilograms.
+ */
+public class UnitConversionServiceTest {
+
+  private Unit box;
+
+  private Unit piece;
+
+  private Unit kilogram;
+
+  private UnitConversionCache unitConversionCache;
+
+  private UnitConversionService unitConversionService;
+
+  private int loadCount;
+
+  @Before
+  public void setUp() {
+    box = createUnit(1L, "Box");
+    piece = createUnit(2L, "Piece");
+    kilogram = createUnit(3L, "Kilogram");
+
+    List<UnitConversion> unitConversionList = new ArrayList<>();
+    unitConversionList.add(
+        createUnitConversion(box, piece, UnitConversionRepository.TYPE_COEFF, "12", null));
+    unitConversionList.add(
+        createUnitConversion(
+            piece, kilogram, UnitConversionRepository.TYPE_FORMULA, "0", "$Product.netMass$"));
+
+    unitConversionCache =
+        new UnitConversionCache() {
+          @Override
+          protected Map<Pair<Long, Long>, List<Conversion>> loadConversionMap() {
+            loadCount++;
+            Map<Pair<Long, Long>, List<Conversion>> map = new HashMap<>();
+            for (UnitConversion unitConversion : unitConversionList) {
+              Conversion conversion = new Conversion(unitConversion);
+              map.computeIfAbsent(
+                      getKey(conversion.getStartUnitId(), conversion.getEndUnitId()),
+                      key -> new ArrayList<>())
+                  .add(conversion);
+            }
+            return map;
+          }
+        };
+
+    unitConversionService =
+        new UnitConversionService() {
+          {
+            unitConversionCache = UnitConversionServiceTest.this.unitConversionCache;
+          }
+        };
+  }
+
+  /** The coefficient of a conversion is used in both directions. */
+  @Test
+  public void testConvertWithCoefficient() throws AxelorException {
+
+    Assert.assertEquals(
+        0,
+        new BigDecimal(36).compareTo(unitConversionService.convert(box, piece, three(), 2, null)));
+    Assert.assertEquals(
+        0,
+        new BigDecimal("0.25")
+            .compareTo(unitConversionService.convert(piece, box, three(), 2, null)));
+    Assert.assertEquals(1, loadCount);
+  }
+
+  /**
+   * The formula is compiled once, and the template of the formula is rendered for each product, in
+   * both directions.
+   */
+  @Test
+  public void testConvertWithFormula() throws AxelorException {
+
+    Product product = createProduct("1.5");
+    Product otherProduct = createProduct("2");
+
+    Assert.assertEquals(
+        0,
+        new BigDecimal("4.5")
+            .compareTo(unitConversionService.convert(piece, kilogram, three(), 2, product)));
+    Assert.assertEquals(
+        0,
+        new BigDecimal(6)
+            .compareTo(unitConversionService.convert(piece, kilogram, three(), 2, otherProduct)));
+    Assert.assertEquals(
+        0,
+        new BigDecimal("1.5")
+            .compareTo(unitConversionService.convert(kilogram, piece, three(), 2, otherProduct)));
+    Assert.assertSame(
+        unitConversionCache.getFormula("$Product.netMass$"),
+        unitConversionCache.getFormula("$Product.netMass$"));
+  }
+
+  /** The rendered templates are read as numbers, as in a formula where they would be written. */
+  @Test
+  public void testFormulaWithSeveralTemplates() {
+
+    Product product = createProduct("1.5");
+    product.setGrossMass(new BigDecimal("2.5"));
+
+    Assert.assertEquals(
+        0,
+        new BigDecimal("2.75")
+            .compareTo(
+                unitConversionCache
+                    .getFormula("$Product.netMass$ + $Product.grossMass$ / 2")
+                    .evaluate(product)));
+  }
+
+  private BigDecimal three() {
+    return new BigDecimal(3);
+  }
+
+  private Unit createUnit(Long id, String name) {
+    Unit unit = new Unit();
+    unit.setId(id);
+    unit.setName(name);
+    return unit;
+  }
+
+  private UnitConversion createUnitConversion(
+      Unit startUnit, Unit endUnit, int typeSelect, String coef, String formula) {
+    UnitConversion unitConversion = new UnitConversion();
+    unitConversion.setStartUnit(startUnit);
+    unitConversion.setEndUnit(endUnit);
+    unitConversion.setTypeSelect(typeSelect);
+    unitConversion.setCoef(new BigDecimal(coef));
+    unitConversion.setFormula(formula);
+    return unitConversion;
+  }
+
+  private Product createProduct(String netMass) {
+    Product product = new Product();
+    product.setNetMass(new BigDecimal(netMass));
+    return product;
+  }
+}
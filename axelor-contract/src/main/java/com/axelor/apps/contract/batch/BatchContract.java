@@ -67,7 +67,7 @@ public class BatchContract extends BatchStrategy {
       Query<Contract> query = factory.prepare(batch);
       List<Contract> contracts;
 
-      while (!(contracts = query.fetch(FETCH_LIMIT)).isEmpty()) {
+      while (!(contracts = query.fetch(getFetchLimit())).isEmpty()) {
         findBatch();
         for (Contract contract : contracts) {
           try {
@@ -18,15 +18,11 @@
 package com.axelor.exception.service;
 
 import com.axelor.auth.AuthUtils;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.ResponseMessageType;
 import com.axelor.exception.db.TraceBack;
-import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.inject.Beans;
 import com.axelor.rpc.ActionResponse;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.lang.invoke.MethodHandles;
 import java.time.ZonedDateTime;
 import org.slf4j.Logger;
@@ -54,9 +50,6 @@ public class TraceBackService {
   private static TraceBack _create(
       Throwable e, String origin, int typeSelect, int categorySelect, long batchId) {
 
-    StringWriter sw = new StringWriter();
-    e.printStackTrace(new PrintWriter(sw));
-
     TraceBack traceBack = new TraceBack();
     traceBack.setException(e.toString());
     traceBack.setDate(ZonedDateTime.now());
@@ -77,9 +70,6 @@ public class TraceBackService {
       traceBack.setMessage(e.getMessage());
     }
 
-    traceBack.setTrace(sw.toString());
-    Beans.get(TraceBackRepository.class).persist(traceBack);
-
     return traceBack;
   }
 
@@ -98,6 +88,14 @@ public class TraceBackService {
     return traceBack;
   }
 
+  /**
+   * Send the trace back to the sink which writes it in background, or counts it on the trace back
+   * of the previous occurrences of the same exception.
+   */
+  private static void _write(TraceBack traceBack, Throwable e) {
+    Beans.get(TraceBackSink.class).add(traceBack, e);
+  }
+
   /**
    * Affiche à l'écran par l'intermédiaire d'une popup le message d'une exception.
    *
@@ -118,17 +116,16 @@ public class TraceBackService {
    */
   public static void trace(final Throwable e, final String origin) {
 
-    JPA.runInTransaction(
-        () -> {
-          if (e instanceof AxelorException) {
+    if (e instanceof AxelorException) {
 
-            LOG.trace(_create((AxelorException) e, origin, 0).getTrace());
+      LOG.trace(e.toString(), e);
+      _write(_create((AxelorException) e, origin, 0), e);
 
-          } else {
+    } else {
 
-            LOG.error(_create(e, origin, 0, 0).getTrace());
-          }
-        });
+      LOG.error(e.toString(), e);
+      _write(_create(e, origin, 0, 0), e);
+    }
   }
 
   /**
@@ -138,7 +135,8 @@ public class TraceBackService {
    */
   public static void trace(final AxelorException e, final String origin, final long batchId) {
 
-    JPA.runInTransaction(() -> LOG.trace(_create(e, origin, batchId).getTrace()));
+    LOG.trace(e.toString(), e);
+    _write(_create(e, origin, batchId), e);
   }
 
   /**
@@ -148,7 +146,8 @@ public class TraceBackService {
    */
   public static void trace(final Throwable e, final String origin, final long batchId) {
 
-    JPA.runInTransaction(() -> LOG.error(_create(e, origin, 0, batchId).getTrace()));
+    LOG.error(e.toString(), e);
+    _write(_create(e, origin, 0, batchId), e);
   }
 
   /**
@@ -0,0 +1,238 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.exception.service;
+
+import com.axelor.auth.db.User;
+import com.axelor.db.JPA;
+import com.axelor.exception.db.TraceBack;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.inject.Beans;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write the trace backs in a background thread, by batches. The repeated occurrences of an
+ * exception, identified by its class, origin, top stack frames and batch, are counted on a single
+ * trace back. When the queue is full, the trace back is dropped and counted: writing it in the
+ * transaction of the calling thread could wait for a row locked by the writer thread, or the
+ * other way round.
+ */
+@Singleton
+public class TraceBackSink {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected static final int QUEUE_CAPACITY = 10000;
+  protected static final int BATCH_SIZE = 500;
+  protected static final int FINGERPRINT_FRAME_COUNT = 5;
+  protected static final int MAX_SAMPLE_REF_IDS = 10;
+
+  /** The occurrences are counted on a trace back last seen less than this duration ago. */
+  protected static final Duration AGGREGATION_WINDOW = Duration.ofHours(1);
+
+  private final BlockingQueue<Occurrence> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  /** Dropped occurrences already reported in the logs, only used by the writer thread. */
+  private long reportedDroppedCount;
+
+  protected static class Occurrence {
+
+    protected final TraceBack traceBack;
+
+    protected final Throwable exception;
+
+    protected Occurrence(TraceBack traceBack, Throwable exception) {
+      this.traceBack = traceBack;
+      this.exception = exception;
+    }
+  }
+
+  public TraceBackSink() {
+    Thread writer = new Thread(this::run, "traceback-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Add an occurrence of an exception. The trace of the exception is only rendered when a new
+   * trace back is created.
+   *
+   * @param traceBack the trace back of the exception, not persisted
+   * @param e the exception
+   */
+  public void add(TraceBack traceBack, Throwable e) {
+    traceBack.setFingerprint(computeFingerprint(traceBack, e));
+    Occurrence occurrence = new Occurrence(traceBack, e);
+
+    if (!queue.offer(occurrence)) {
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  /** @return the number of occurrences dropped because the queue was full */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  protected String computeFingerprint(TraceBack traceBack, Throwable e) {
+    StringBuilder key =
+        new StringBuilder(e.getClass().getName())
+            .append('|')
+            .append(traceBack.getOrigin())
+            .append('|')
+            .append(traceBack.getBatchId());
+
+    StackTraceElement[] stackTrace = e.getStackTrace();
+    for (int i = 0; i < Math.min(FINGERPRINT_FRAME_COUNT, stackTrace.length); i++) {
+      key.append('|').append(stackTrace[i]);
+    }
+
+    return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+  }
+
+  protected void run() {
+    List<Occurrence> occurrenceList = new ArrayList<>(BATCH_SIZE);
+
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        occurrenceList.add(queue.take());
+        queue.drainTo(occurrenceList, BATCH_SIZE - 1);
+        writeInScope(occurrenceList);
+        reportDroppedCount();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        // the trace backs can't be used to report their own failures
+        LOG.error(e.getMessage(), e);
+      } finally {
+        occurrenceList.clear();
+      }
+    }
+  }
+
+  protected void writeInScope(List<Occurrence> occurrenceList) {
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      JPA.runInTransaction(() -> write(occurrenceList));
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  protected void reportDroppedCount() {
+    long count = droppedCount.get();
+
+    if (count > reportedDroppedCount) {
+      LOG.warn("{} trace backs dropped, the queue was full", count - reportedDroppedCount);
+      reportedDroppedCount = count;
+    }
+  }
+
+  protected void write(List<Occurrence> occurrenceList) {
+    TraceBackRepository traceBackRepo = Beans.get(TraceBackRepository.class);
+    Map<String, TraceBack> traceBackMap = new HashMap<>();
+    ZonedDateTime since = ZonedDateTime.now().minus(AGGREGATION_WINDOW);
+
+    for (Occurrence occurrence : occurrenceList) {
+      TraceBack newTraceBack = occurrence.traceBack;
+      String fingerprint = newTraceBack.getFingerprint();
+      TraceBack traceBack = traceBackMap.get(fingerprint);
+
+      if (traceBack == null) {
+        traceBack =
+            traceBackRepo
+                .all()
+                .filter("self.fingerprint = :fingerprint AND self.lastDate >= :since")
+                .bind("fingerprint", fingerprint)
+                .bind("since", since)
+                .order("-id")
+                .fetchOne();
+      }
+
+      if (traceBack == null) {
+        traceBack = newTraceBack;
+        create(traceBack, occurrence.exception);
+        traceBackRepo.persist(traceBack);
+      } else {
+        traceBack.setOccurrenceCount(traceBack.getOccurrenceCount() + 1);
+        traceBack.setLastDate(newTraceBack.getDate());
+        addSampleRefId(traceBack, newTraceBack.getRefId());
+      }
+
+      traceBackMap.put(fingerprint, traceBack);
+    }
+  }
+
+  protected void create(TraceBack traceBack, Throwable e) {
+    StringWriter sw = new StringWriter();
+    e.printStackTrace(new PrintWriter(sw));
+    traceBack.setTrace(sw.toString());
+
+    traceBack.setOccurrenceCount(1);
+    traceBack.setLastDate(traceBack.getDate());
+    addSampleRefId(traceBack, traceBack.getRefId());
+
+    // the user was loaded by the thread of the exception
+    if (traceBack.getInternalUser() != null) {
+      traceBack.setInternalUser(
+          JPA.em().getReference(User.class, traceBack.getInternalUser().getId()));
+    }
+  }
+
+  protected void addSampleRefId(TraceBack traceBack, Long refId) {
+    if (refId == null) {
+      return;
+    }
+
+    String sampleRefIds = traceBack.getSampleRefIds();
+
+    if (Strings.isNullOrEmpty(sampleRefIds)) {
+      traceBack.setSampleRefIds(refId.toString());
+      return;
+    }
+
+    List<String> sampleRefIdList = Splitter.on(',').splitToList(sampleRefIds);
+    if (sampleRefIdList.size() < MAX_SAMPLE_REF_IDS
+        && !sampleRefIdList.contains(refId.toString())) {
+      traceBack.setSampleRefIds(sampleRefIds + "," + refId);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.exception.service;
+
+import com.axelor.exception.db.TraceBack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the sink without the database: the batches of the writer thread are recorded instead of
+ * being written, and the writer thread is held on its first batch until it is released.
+ */
+public class TraceBackSinkTest {
+
+  private static final long TIMEOUT_SECONDS = 30;
+
+  private static class TestTraceBackSink extends TraceBackSink {
+
+    private final List<List<Long>> batchList = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch writing = new CountDownLatch(1);
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private final CountDownLatch written;
+
+    private TestTraceBackSink(int occurrenceCount) {
+      this.written = new CountDownLatch(occurrenceCount);
+    }
+
+    @Override
+    protected void writeInScope(List<Occurrence> occurrenceList) {
+      List<Long> refIdList = new ArrayList<>();
+      for (Occurrence occurrence : occurrenceList) {
+        refIdList.add(occurrence.traceBack.getRefId());
+      }
+      batchList.add(refIdList);
+
+      writing.countDown();
+      try {
+        released.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      for (int i = 0; i < occurrenceList.size(); i++) {
+        written.countDown();
+      }
+    }
+
+    private void holdWriter() throws InterruptedException {
+      add(createTraceBack(0L), new IllegalStateException());
+      Assert.assertTrue(writing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private void await() throws InterruptedException {
+      released.countDown();
+      Assert.assertTrue(written.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * The writer thread being busy, the occurrences fill the queue, then the next ones are dropped
+   * without waiting and counted.
+   */
+  @Test
+  public void testOccurrencesAreDroppedWhenTheQueueIsFull() throws InterruptedException {
+
+    int queuedCount = TraceBackSink.QUEUE_CAPACITY;
+    TestTraceBackSink sink = new TestTraceBackSink(1 + queuedCount);
+    sink.holdWriter();
+
+    for (long refId = 1; refId <= queuedCount + 3; refId++) {
+      sink.add(createTraceBack(refId), new IllegalStateException());
+    }
+    Assert.assertEquals(3, sink.getDroppedCount());
+
+    sink.await();
+
+    long writtenCount = 0;
+    for (List<Long> batch : sink.batchList) {
+      writtenCount += batch.size();
+    }
+    Assert.assertEquals(1 + queuedCount, writtenCount);
+  }
+
+  /** The queued occurrences are written in the order they were added, by batches. */
+  @Test
+  public void testQueuedOccurrencesAreWrittenByBatches() throws InterruptedException {
+
+    TestTraceBackSink sink = new TestTraceBackSink(1201);
+    sink.holdWriter();
+
+    for (long refId = 1; refId <= 1200; refId++) {
+      sink.add(createTraceBack(refId), new IllegalStateException());
+    }
+
+    sink.await();
+
+    List<Integer> batchSizeList = new ArrayList<>();
+    List<Long> refIdList = new ArrayList<>();
+    for (List<Long> batch : sink.batchList) {
+      batchSizeList.add(batch.size());
+      refIdList.addAll(batch);
+    }
+    Assert.assertEquals(Arrays.asList(1, 500, 500, 200), batchSizeList);
+    for (int i = 0; i < refIdList.size(); i++) {
+      Assert.assertEquals(Long.valueOf(i), refIdList.get(i));
+    }
+    Assert.assertEquals(0, sink.getDroppedCount());
+  }
+
+  /** The occurrences of an exception thrown at the same place in the same batch are counted. */
+  @Test
+  public void testFingerprint() {
+
+    TraceBackSink sink = new TestTraceBackSink(0);
+    List<Exception> exceptionList = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      exceptionList.add(new IllegalStateException("Occurrence " + i));
+    }
+
+    TraceBack traceBack = createTraceBack(1L);
+    TraceBack otherBatchTraceBack = createTraceBack(2L);
+    otherBatchTraceBack.setBatchId(1L);
+
+    Assert.assertEquals(
+        sink.computeFingerprint(traceBack, exceptionList.get(0)),
+        sink.computeFingerprint(createTraceBack(3L), exceptionList.get(1)));
+    Assert.assertNotEquals(
+        sink.computeFingerprint(traceBack, exceptionList.get(0)),
+        sink.computeFingerprint(otherBatchTraceBack, exceptionList.get(0)));
+  }
+
+  private static TraceBack createTraceBack(Long refId) {
+    TraceBack traceBack = new TraceBack();
+    traceBack.setOrigin("test");
+    traceBack.setBatchId(0L);
+    traceBack.setRefId(refId);
+    return traceBack;
+  }
+}
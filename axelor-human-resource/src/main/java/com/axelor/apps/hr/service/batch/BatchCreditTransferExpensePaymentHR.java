@@ -28,18 +28,17 @@ import com.axelor.apps.base.db.BankDetails;
 import com.axelor.apps.hr.db.Expense;
 import com.axelor.apps.hr.db.repo.ExpenseRepository;
 import com.axelor.apps.hr.service.expense.ExpenseService;
-import com.axelor.db.JPA;
-import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -109,28 +108,22 @@ public class BatchCreditTransferExpensePaymentHR extends BatchCreditTransferExpe
    */
   protected List<Expense> processExpenses() {
     List<Expense> doneList = new ArrayList<>();
-    List<Long> anomalyList = Lists.newArrayList(0L); // Can't pass an empty collection to the query
     AccountingBatch accountingBatch = batch.getAccountingBatch();
     boolean manageMultiBanks = appAccountService.getAppBase().getManageMultiBanks();
     String filter =
         "self.ventilated = true "
             + "AND self.paymentStatusSelect = :paymentStatusSelect "
             + "AND self.company = :company "
-            + "AND self.user.partner.outPaymentMode = :paymentMode "
-            + "AND self.id NOT IN (:anomalyList)";
+            + "AND self.user.partner.outPaymentMode = :paymentMode";
 
     if (manageMultiBanks) {
       filter += " AND self.bankDetails IN (:bankDetailsSet)";
     }
 
-    Query<Expense> query =
-        expenseRepo
-            .all()
-            .filter(filter)
-            .bind("paymentStatusSelect", InvoicePaymentRepository.STATUS_DRAFT)
-            .bind("company", accountingBatch.getCompany())
-            .bind("paymentMode", accountingBatch.getPaymentMode())
-            .bind("anomalyList", anomalyList);
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("paymentStatusSelect", InvoicePaymentRepository.STATUS_DRAFT);
+    bindings.put("company", accountingBatch.getCompany());
+    bindings.put("paymentMode", accountingBatch.getPaymentMode());
 
     if (manageMultiBanks) {
       Set<BankDetails> bankDetailsSet = Sets.newHashSet(accountingBatch.getBankDetails());
@@ -139,31 +132,28 @@ public class BatchCreditTransferExpensePaymentHR extends BatchCreditTransferExpe
         bankDetailsSet.addAll(accountingBatch.getCompany().getBankDetailsSet());
       }
 
-      query.bind("bankDetailsSet", bankDetailsSet);
+      bindings.put("bankDetailsSet", bankDetailsSet);
     }
 
-    for (List<Expense> expenseList;
-        !(expenseList = query.fetch(FETCH_LIMIT)).isEmpty();
-        JPA.clear()) {
-      for (Expense expense : expenseList) {
-        try {
-          addPayment(expense, accountingBatch.getBankDetails());
-          doneList.add(expense);
-          incrementDone();
-        } catch (Exception ex) {
-          incrementAnomaly();
-          anomalyList.add(expense.getId());
-          query.bind("anomalyList", anomalyList);
-          TraceBackService.trace(ex, IException.CREDIT_TRANSFER, batch.getId());
-          ex.printStackTrace();
-          log.error(
-              String.format(
-                  "Credit transfer batch for expense payment: anomaly for expense %s",
-                  expense.getExpenseSeq()));
-          break;
-        }
-      }
-    }
+    processByChunk(
+        Expense.class,
+        expense -> {
+          try {
+            addPayment(expense, accountingBatch.getBankDetails());
+            doneList.add(expense);
+            incrementDone();
+          } catch (Exception ex) {
+            incrementAnomaly();
+            TraceBackService.trace(ex, IException.CREDIT_TRANSFER, batch.getId());
+            ex.printStackTrace();
+            log.error(
+                String.format(
+                    "Credit transfer batch for expense payment: anomaly for expense %s",
+                    expense.getExpenseSeq()));
+          }
+        },
+        filter,
+        bindings);
 
     return doneList;
   }
@@ -29,7 +29,6 @@ import com.axelor.apps.hr.exception.IExceptionMessage;
 import com.axelor.apps.hr.service.leave.LeaveService;
 import com.axelor.apps.hr.service.leave.management.LeaveManagementService;
 import com.axelor.auth.AuthUtils;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -45,7 +44,9 @@ import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.validation.constraints.Digits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,9 +55,9 @@ public class BatchLeaveManagement extends BatchStrategy {
 
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  int total;
-  int noValueAnomaly;
-  int confAnomaly;
+  AtomicInteger total;
+  AtomicInteger noValueAnomaly;
+  AtomicInteger confAnomaly;
 
   protected LeaveLineRepository leaveLineRepository;
   protected LeaveManagementRepository leaveManagementRepository;
@@ -89,20 +90,23 @@ public class BatchLeaveManagement extends BatchStrategy {
           IException.LEAVE_MANAGEMENT,
           batch.getId());
     }
-    total = 0;
-    noValueAnomaly = 0;
-    confAnomaly = 0;
+    total = new AtomicInteger();
+    noValueAnomaly = new AtomicInteger();
+    confAnomaly = new AtomicInteger();
     checkPoint();
   }
 
   @Override
   protected void process() {
 
-    List<Employee> employeeList = this.getEmployees(batch.getHrBatch());
-    generateLeaveManagementLines(employeeList);
+    processByPartition(
+        Employee.class,
+        this::generateLeaveManagementLine,
+        getEmployeeFilter(batch.getHrBatch()),
+        Collections.emptyMap());
   }
 
-  public List<Employee> getEmployees(HrBatch hrBatch) {
+  public String getEmployeeFilter(HrBatch hrBatch) {
 
     List<String> query = Lists.newArrayList();
 
@@ -136,78 +140,58 @@ public class BatchLeaveManagement extends BatchStrategy {
       query.add("self.weeklyPlanning.id IN (" + planningIds + ")");
     }
 
-    List<Employee> employeeList;
-    String liaison = query.isEmpty() ? "" : " AND";
     if (hrBatch.getCompany() != null) {
-      employeeList =
-          JPA.all(Employee.class)
-              .filter(
-                  Joiner.on(" AND ").join(query)
-                      + liaison
-                      + " self.mainEmploymentContract.payCompany = :company")
-              .bind("company", hrBatch.getCompany())
-              .fetch();
-    } else {
-      employeeList = JPA.all(Employee.class).filter(Joiner.on(" AND ").join(query)).fetch();
+      query.add("self.mainEmploymentContract.payCompany.id = " + hrBatch.getCompany().getId());
     }
 
-    return employeeList;
+    return Joiner.on(" AND ").join(query);
   }
 
-  public void generateLeaveManagementLines(List<Employee> employeeList) {
+  public void generateLeaveManagementLine(Employee employee) {
 
-    for (Employee employee : employeeList) {
-
-      try {
-        createLeaveManagement(employeeRepository.find(employee.getId()));
-      } catch (AxelorException e) {
-        TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
-        incrementAnomaly();
-        if (e.getCategory() == TraceBackRepository.CATEGORY_NO_VALUE) {
-          noValueAnomaly++;
-        }
-        if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
-          confAnomaly++;
-        }
-      } finally {
-        total++;
-        JPA.clear();
+    try {
+      createLeaveManagement(employee);
+    } catch (AxelorException e) {
+      TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
+      incrementAnomaly();
+      if (e.getCategory() == TraceBackRepository.CATEGORY_NO_VALUE) {
+        noValueAnomaly.incrementAndGet();
+      }
+      if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
+        confAnomaly.incrementAndGet();
       }
+    } finally {
+      total.incrementAndGet();
     }
   }
 
   @Transactional
   public void createLeaveManagement(Employee employee) throws AxelorException {
 
-    batch = batchRepo.find(batch.getId());
+    HrBatch hrBatch = batchRepo.find(batch.getId()).getHrBatch();
     LeaveLine leaveLine = null;
-    LeaveReason leaveReason = batch.getHrBatch().getLeaveReason();
+    LeaveReason leaveReason = hrBatch.getLeaveReason();
 
     if (employee != null) {
       leaveLine = leaveServiceProvider.get().addLeaveReasonOrCreateIt(employee, leaveReason);
 
       BigDecimal dayNumber =
-          batch.getHrBatch().getUseWeeklyPlanningCoef()
-              ? batch
-                  .getHrBatch()
-                  .getDayNumber()
-                  .multiply(employee.getWeeklyPlanning().getLeaveCoef())
-              : batch.getHrBatch().getDayNumber();
+          hrBatch.getUseWeeklyPlanningCoef()
+              ? hrBatch.getDayNumber().multiply(employee.getWeeklyPlanning().getLeaveCoef())
+              : hrBatch.getDayNumber();
       dayNumber =
           dayNumber.subtract(
               new BigDecimal(
                   publicHolidayService.getImposedDayNumber(
-                      employee,
-                      batch.getHrBatch().getStartDate(),
-                      batch.getHrBatch().getEndDate())));
+                      employee, hrBatch.getStartDate(), hrBatch.getEndDate())));
       LeaveManagement leaveManagement =
           leaveManagementService.createLeaveManagement(
               leaveLine,
               AuthUtils.getUser(),
-              batch.getHrBatch().getComments(),
+              hrBatch.getComments(),
               null,
-              batch.getHrBatch().getStartDate(),
-              batch.getHrBatch().getEndDate(),
+              hrBatch.getStartDate(),
+              hrBatch.getEndDate(),
               dayNumber);
       BigDecimal qty = leaveLine.getQuantity().add(dayNumber);
       BigDecimal totalQty = leaveLine.getTotalQuantity().add(dayNumber);
@@ -240,20 +224,24 @@ public class BatchLeaveManagement extends BatchStrategy {
   protected void stop() {
 
     String comment =
-        String.format(I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_0), total) + '\n';
+        String.format(I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_0), total.get())
+            + '\n';
 
     comment +=
         String.format(I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_1), batch.getDone())
             + '\n';
 
-    if (confAnomaly > 0) {
+    if (confAnomaly.get() > 0) {
       comment +=
-          String.format(I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_2), confAnomaly)
+          String.format(
+                  I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_2), confAnomaly.get())
               + '\n';
     }
-    if (noValueAnomaly > 0) {
+    if (noValueAnomaly.get() > 0) {
       comment +=
-          String.format(I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_3), noValueAnomaly)
+          String.format(
+                  I18n.get(IExceptionMessage.BATCH_LEAVE_MANAGEMENT_ENDING_3),
+                  noValueAnomaly.get())
               + '\n';
     }
 
@@ -18,20 +18,20 @@
 package com.axelor.apps.hr.service.batch;
 
 import com.axelor.apps.hr.db.Employee;
+import com.axelor.apps.hr.db.HrBatch;
 import com.axelor.apps.hr.db.LeaveLine;
 import com.axelor.apps.hr.db.LeaveReason;
 import com.axelor.apps.hr.db.repo.LeaveLineRepository;
 import com.axelor.apps.hr.db.repo.LeaveManagementRepository;
 import com.axelor.apps.hr.service.leave.management.LeaveManagementService;
 import com.axelor.auth.AuthUtils;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.exception.service.TraceBackService;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
-import java.util.List;
+import java.util.Collections;
 
 public class BatchLeaveManagementReset extends BatchLeaveManagement {
 
@@ -45,42 +45,43 @@ public class BatchLeaveManagementReset extends BatchLeaveManagement {
 
   @Override
   protected void process() {
-    List<Employee> employeeList = getEmployees(batch.getHrBatch());
-    resetLeaveManagementLines(employeeList);
+    processByPartition(
+        Employee.class,
+        this::resetLeaveManagementLine,
+        getEmployeeFilter(batch.getHrBatch()),
+        Collections.emptyMap());
   }
 
-  public void resetLeaveManagementLines(List<Employee> employeeList) {
-    for (Employee employee : employeeList) {
-      try {
-        resetLeaveManagement(employeeRepository.find(employee.getId()));
-      } catch (AxelorException e) {
-        TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
-        incrementAnomaly();
-        if (e.getCategory() == TraceBackRepository.CATEGORY_NO_VALUE) {
-          noValueAnomaly++;
-        }
-        if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
-          confAnomaly++;
-        }
-      } finally {
-        total++;
-        JPA.clear();
+  public void resetLeaveManagementLine(Employee employee) {
+    try {
+      resetLeaveManagement(employee);
+    } catch (AxelorException e) {
+      TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
+      incrementAnomaly();
+      if (e.getCategory() == TraceBackRepository.CATEGORY_NO_VALUE) {
+        noValueAnomaly.incrementAndGet();
       }
+      if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
+        confAnomaly.incrementAndGet();
+      }
+    } finally {
+      total.incrementAndGet();
     }
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void resetLeaveManagement(Employee employee) throws AxelorException {
-    LeaveReason leaveReason = batch.getHrBatch().getLeaveReason();
+    HrBatch hrBatch = batchRepo.find(batch.getId()).getHrBatch();
+    LeaveReason leaveReason = hrBatch.getLeaveReason();
     for (LeaveLine leaveLine : employee.getLeaveLineList()) {
       if (leaveReason.equals(leaveLine.getLeaveReason())) {
         leaveManagementService.reset(
             leaveLine,
             AuthUtils.getUser(),
-            batch.getHrBatch().getComments(),
+            hrBatch.getComments(),
             null,
-            batch.getHrBatch().getStartDate(),
-            batch.getHrBatch().getEndDate());
+            hrBatch.getStartDate(),
+            hrBatch.getEndDate());
       }
     }
   }
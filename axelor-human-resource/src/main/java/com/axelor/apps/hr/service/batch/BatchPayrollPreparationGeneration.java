@@ -29,7 +29,6 @@ import com.axelor.apps.hr.db.repo.HrBatchRepository;
 import com.axelor.apps.hr.db.repo.PayrollPreparationRepository;
 import com.axelor.apps.hr.exception.IExceptionMessage;
 import com.axelor.apps.hr.service.PayrollPreparationService;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -88,11 +87,10 @@ public class BatchPayrollPreparationGeneration extends BatchStrategy {
   @Override
   protected void process() {
 
-    List<Employee> employeeList = this.getEmployees(hrBatch);
-    generatePayrollPreparations(employeeList);
+    processByChunk(Employee.class, this::generatePayrollPreparation, getEmployeeFilter(hrBatch));
   }
 
-  public List<Employee> getEmployees(HrBatch hrBatch) {
+  public String getEmployeeFilter(HrBatch hrBatch) {
 
     List<String> query = Lists.newArrayList();
 
@@ -124,41 +122,26 @@ public class BatchPayrollPreparationGeneration extends BatchStrategy {
       query.add("self.weeklyPlanning.id IN (" + planningIds + ")");
     }
 
-    List<Employee> employeeList = Lists.newArrayList();
-    String liaison = query.isEmpty() ? "" : " AND";
     if (hrBatch.getCompany() != null) {
-      employeeList =
-          JPA.all(Employee.class)
-              .filter(
-                  Joiner.on(" AND ").join(query)
-                      + liaison
-                      + " self.mainEmploymentContract.payCompany = :company")
-              .bind("company", hrBatch.getCompany())
-              .fetch();
-    } else {
-      employeeList = JPA.all(Employee.class).filter(Joiner.on(" AND ").join(query)).fetch();
+      query.add("self.mainEmploymentContract.payCompany.id = " + hrBatch.getCompany().getId());
     }
 
-    return employeeList;
+    return Joiner.on(" AND ").join(query);
   }
 
-  public void generatePayrollPreparations(List<Employee> employeeList) {
-
-    for (Employee employee : employeeList) {
-      try {
-        createPayrollPreparation(employeeRepository.find(employee.getId()));
-      } catch (AxelorException e) {
-        TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
-        incrementAnomaly();
-        if (e.getCategory() == TraceBackRepository.CATEGORY_NO_UNIQUE_KEY) {
-          duplicateAnomaly++;
-        } else if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
-          configurationAnomaly++;
-        }
-      } finally {
-        total++;
-        JPA.clear();
+  public void generatePayrollPreparation(Employee employee) {
+    try {
+      createPayrollPreparation(employee);
+    } catch (AxelorException e) {
+      TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
+      incrementAnomaly();
+      if (e.getCategory() == TraceBackRepository.CATEGORY_NO_UNIQUE_KEY) {
+        duplicateAnomaly++;
+      } else if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
+        configurationAnomaly++;
       }
+    } finally {
+      total++;
     }
   }
 
@@ -45,7 +45,6 @@ import com.axelor.apps.hr.exception.IExceptionMessage;
 import com.axelor.apps.hr.service.employee.EmployeeService;
 import com.axelor.apps.hr.service.leave.management.LeaveManagementService;
 import com.axelor.auth.AuthUtils;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.db.repo.TraceBackRepository;
@@ -53,14 +52,12 @@ import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.axelor.tool.template.TemplateMaker;
-import com.beust.jcommander.internal.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import groovy.lang.Binding;
 import groovy.lang.GroovyShell;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
-import java.util.List;
 import java.util.Locale;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
@@ -122,43 +119,33 @@ public class BatchSeniorityLeaveManagement extends BatchStrategy {
   @Override
   protected void process() {
 
-    List<Employee> employeeList = this.getEmployees(batch.getHrBatch());
-    generateLeaveManagementLines(employeeList);
-  }
-
-  public List<Employee> getEmployees(HrBatch hrBatch) {
+    HrBatch hrBatch = batch.getHrBatch();
 
-    List<Employee> employeeList = Lists.newArrayList();
     if (hrBatch.getCompany() != null) {
-      employeeList =
-          JPA.all(Employee.class)
-              .filter("self.mainEmploymentContract.payCompany = :company")
-              .bind("company", hrBatch.getCompany())
-              .fetch();
+      processByChunk(
+          Employee.class,
+          this::generateLeaveManagementLine,
+          "self.mainEmploymentContract.payCompany = ?1",
+          hrBatch.getCompany());
     } else {
-      employeeList = JPA.all(Employee.class).fetch();
+      processByChunk(Employee.class, this::generateLeaveManagementLine, null);
     }
-    return employeeList;
   }
 
-  public void generateLeaveManagementLines(List<Employee> employeeList) {
-
-    for (Employee employee : employeeList) {
-      try {
-        createLeaveManagement(employeeRepository.find(employee.getId()));
-      } catch (AxelorException e) {
-        TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
-        incrementAnomaly();
-        if (e.getCategory() == TraceBackRepository.CATEGORY_NO_VALUE) {
-          noValueAnomaly++;
-        }
-        if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
-          confAnomaly++;
-        }
-      } finally {
-        total++;
-        JPA.clear();
+  public void generateLeaveManagementLine(Employee employee) {
+    try {
+      createLeaveManagement(employee);
+    } catch (AxelorException e) {
+      TraceBackService.trace(e, IException.LEAVE_MANAGEMENT, batch.getId());
+      incrementAnomaly();
+      if (e.getCategory() == TraceBackRepository.CATEGORY_NO_VALUE) {
+        noValueAnomaly++;
+      }
+      if (e.getCategory() == TraceBackRepository.CATEGORY_CONFIGURATION_ERROR) {
+        confAnomaly++;
       }
+    } finally {
+      total++;
     }
   }
 
@@ -30,6 +30,10 @@ public interface IExceptionMessage {
   static final String MAIL_ACCOUNT_4 = /*$$(*/
       "Provided settings are wrong, please modify them and try again" /*)*/;
   static final String MAIL_ACCOUNT_5 = /*$$(*/ "There is already a default account" /*)*/;
+  static final String MAIL_ACCOUNT_6 = /*$$(*/
+      "Waiting: %s, open connections: %s, sent: %s, failed: %s, retried: %s" /*)*/;
+  static final String MAIL_ACCOUNT_7 = /*$$(*/
+      "Connections opened: %s, messages per connection: %.1f, messages per second: %.1f" /*)*/;
 
   /** Template service */
   static final String TEMPLATE_SERVICE_1 = /*$$(*/ "Model empty. Please configure a model." /*)*/;
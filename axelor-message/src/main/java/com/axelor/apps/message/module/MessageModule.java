@@ -22,6 +22,8 @@ import com.axelor.apps.message.db.repo.MessageManagementRepository;
 import com.axelor.apps.message.db.repo.MessageRepository;
 import com.axelor.apps.message.service.MailAccountService;
 import com.axelor.apps.message.service.MailAccountServiceImpl;
+import com.axelor.apps.message.service.MailOutboxService;
+import com.axelor.apps.message.service.MailOutboxServiceImpl;
 import com.axelor.apps.message.service.MailServiceMessageImpl;
 import com.axelor.apps.message.service.MessageService;
 import com.axelor.apps.message.service.MessageServiceImpl;
@@ -38,5 +40,6 @@ public class MessageModule extends AxelorModule {
     bind(MessageRepository.class).to(MessageManagementRepository.class);
     bind(MailAccountService.class).to(MailAccountServiceImpl.class);
     bind(MailServiceImpl.class).to(MailServiceMessageImpl.class);
+    bind(MailOutboxService.class).to(MailOutboxServiceImpl.class);
   }
 }
@@ -0,0 +1,57 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.apps.message.db.EmailAccount;
+import com.axelor.apps.message.db.Message;
+import com.axelor.exception.AxelorException;
+import com.google.inject.persist.Transactional;
+import java.util.Map;
+
+/**
+ * Outbox of the emails. The messages are sent by a bounded number of connections per mail account,
+ * each connection sending many messages.
+ */
+public interface MailOutboxService {
+
+  /**
+   * Put the message in the outbox of its mail account. It is sent as soon as a connection of the
+   * account is free, once the current transaction is committed.
+   *
+   * @param message the message to send by email
+   * @return the message, in outbox
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public Message enqueue(Message message);
+
+  /**
+   * Enqueue the messages of the outbox whose send attempt is due: the messages to retry and the
+   * ones left by a restart of the server.
+   *
+   * @return the number of messages enqueued
+   */
+  public int enqueueDueMessages();
+
+  /**
+   * Get the metrics of the outbox of a mail account, since the start of the server.
+   *
+   * @param emailAccount the mail account
+   * @return the metrics by name
+   */
+  public Map<String, Object> getMetrics(EmailAccount emailAccount);
+}
@@ -0,0 +1,515 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.apps.message.db.EmailAccount;
+import com.axelor.apps.message.db.Message;
+import com.axelor.apps.message.db.repo.MessageRepository;
+import com.axelor.auth.AuthUtils;
+import com.axelor.common.StringUtils;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.inject.Beans;
+import com.axelor.mail.MailSender;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Send the messages of the outbox with, for each mail account, at most {@link
+ * EmailAccount#getMaxConnections()} connections open at once. Each connection sends the messages of
+ * the account as long as some are waiting, then is closed after {@link #IDLE_TIMEOUT_SECONDS}.
+ *
+ * <p>The outbox itself is persisted: the messages stay in {@link
+ * MessageRepository#STATUS_IN_OUTBOX} until they are sent or all their send attempts failed, and
+ * the failed attempts are retried by {@link #enqueueDueMessages()} after an exponential backoff.
+ */
+@Singleton
+public class MailOutboxServiceImpl implements MailOutboxService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected static final int DEFAULT_MAX_CONNECTIONS = 2;
+
+  protected static final int DEFAULT_MAX_SEND_ATTEMPTS = 5;
+
+  /** Time a connection is kept open waiting for more messages. */
+  protected static final long IDLE_TIMEOUT_SECONDS = 30;
+
+  /**
+   * A message is enqueued before the transaction that put it in outbox is committed, so it is
+   * looked up again a few times before leaving it to {@link #enqueueDueMessages()}.
+   */
+  protected static final long LOOKUP_DELAY_MILLIS = 500;
+
+  protected static final int MAX_LOOKUP_COUNT = 10;
+
+  protected static final long RETRY_BASE_DELAY_SECONDS = 60;
+
+  protected static final long RETRY_MAX_DELAY_SECONDS = 3600;
+
+  /** Beyond this number of messages waiting in memory, the outbox job enqueues them later. */
+  protected static final int QUEUE_CAPACITY = 10000;
+
+  protected static final int FETCH_LIMIT = 500;
+
+  private final ExecutorService executor =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "mail-outbox");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final Map<Long, Outbox> outboxMap = new ConcurrentHashMap<>();
+
+  protected MessageRepository messageRepo;
+
+  protected MailAccountService mailAccountService;
+
+  /** The messages waiting to be sent by the connections of one mail account. */
+  protected static class Outbox {
+
+    private final DelayQueue<OutboxEntry> queue = new DelayQueue<>();
+
+    private final Set<Long> pendingIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private final RateLimiter rateLimiter = RateLimiter.create(Double.MAX_VALUE);
+
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private volatile boolean rateLimited;
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong retriedCount = new AtomicLong();
+
+    private final AtomicLong openedConnectionCount = new AtomicLong();
+
+    private volatile long firstSentTime;
+
+    private volatile long lastSentTime;
+
+    protected void configure(EmailAccount emailAccount) {
+      maxConnections =
+          emailAccount.getMaxConnections() > 0
+              ? emailAccount.getMaxConnections()
+              : DEFAULT_MAX_CONNECTIONS;
+      rateLimited = emailAccount.getMaxMessagesPerSecond() > 0;
+      if (rateLimited && rateLimiter.getRate() != emailAccount.getMaxMessagesPerSecond()) {
+        rateLimiter.setRate(emailAccount.getMaxMessagesPerSecond());
+      }
+    }
+
+    protected void onSent() {
+      long now = System.currentTimeMillis();
+      if (sentCount.getAndIncrement() == 0) {
+        firstSentTime = now;
+      }
+      lastSentTime = now;
+    }
+  }
+
+  protected static class OutboxEntry implements Delayed {
+
+    private final Long messageId;
+
+    private final int lookupCount;
+
+    private final long dueTime;
+
+    protected OutboxEntry(Long messageId, int lookupCount, long delayMillis) {
+      this.messageId = messageId;
+      this.lookupCount = lookupCount;
+      this.dueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    protected Long getMessageId() {
+      return messageId;
+    }
+
+    protected OutboxEntry lookUpLater() {
+      return new OutboxEntry(messageId, lookupCount + 1, LOOKUP_DELAY_MILLIS);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+
+  /** The connection of a worker, opened on the first message and reused for the next ones. */
+  protected static class OutboxConnection {
+
+    private MailSender sender;
+
+    private Transport transport;
+
+    protected void close() {
+      if (transport != null) {
+        try {
+          transport.close();
+        } catch (MessagingException e) {
+          // The connection is dropped anyway.
+        }
+      }
+      sender = null;
+      transport = null;
+    }
+  }
+
+  @Inject
+  public MailOutboxServiceImpl(
+      MessageRepository messageRepo, MailAccountService mailAccountService) {
+    this.messageRepo = messageRepo;
+    this.mailAccountService = mailAccountService;
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public Message enqueue(Message message) {
+
+    message.setStatusSelect(MessageRepository.STATUS_IN_OUTBOX);
+    message.setSendAttemptCount(0);
+    message.setNextSendAttemptDateT(LocalDateTime.now());
+    message.setSendErrorMessage(null);
+    message.setSenderUser(AuthUtils.getUser());
+    message = messageRepo.save(message);
+
+    this.offer(message.getMailAccount(), message.getId());
+
+    return message;
+  }
+
+  @Override
+  public int enqueueDueMessages() {
+
+    int count = 0;
+    long lastId = 0;
+    LocalDateTime now = LocalDateTime.now();
+
+    while (true) {
+      List<Message> messageList =
+          messageRepo
+              .all()
+              .filter(
+                  "self.statusSelect = :statusInOutbox AND self.mailAccount IS NOT NULL "
+                      + "AND (self.nextSendAttemptDateT IS NULL "
+                      + "OR self.nextSendAttemptDateT <= :now) "
+                      + "AND self.id > :lastId")
+              .bind("statusInOutbox", MessageRepository.STATUS_IN_OUTBOX)
+              .bind("now", now)
+              .bind("lastId", lastId)
+              .order("id")
+              .fetch(FETCH_LIMIT);
+
+      if (messageList.isEmpty()) {
+        break;
+      }
+
+      for (Message message : messageList) {
+        if (this.offer(message.getMailAccount(), message.getId())) {
+          count++;
+        }
+      }
+
+      lastId = messageList.get(messageList.size() - 1).getId();
+      JPA.clear();
+    }
+
+    if (count > 0) {
+      log.debug("Enqueued {} messages from the outbox", count);
+    }
+
+    return count;
+  }
+
+  @Override
+  public Map<String, Object> getMetrics(EmailAccount emailAccount) {
+
+    Outbox outbox = outboxMap.get(emailAccount.getId());
+    Map<String, Object> metrics = new LinkedHashMap<>();
+
+    if (outbox == null) {
+      outbox = new Outbox();
+    }
+
+    long sentCount = outbox.sentCount.get();
+    long openedConnectionCount = outbox.openedConnectionCount.get();
+    long sendDuration = outbox.lastSentTime - outbox.firstSentTime;
+
+    metrics.put("waiting", outbox.pendingIds.size());
+    metrics.put("openConnections", outbox.connectionCount.get());
+    metrics.put("sent", sentCount);
+    metrics.put("failed", outbox.failedCount.get());
+    metrics.put("retried", outbox.retriedCount.get());
+    metrics.put("openedConnections", openedConnectionCount);
+    metrics.put(
+        "messagesPerConnection",
+        openedConnectionCount > 0 ? (double) sentCount / openedConnectionCount : 0d);
+    metrics.put("messagesPerSecond", sendDuration > 0 ? sentCount * 1000d / sendDuration : 0d);
+
+    return metrics;
+  }
+
+  /**
+   * Offer a message to the outbox of its mail account.
+   *
+   * @return false if the message is already waiting or the outbox is full
+   */
+  protected boolean offer(EmailAccount emailAccount, Long messageId) {
+
+    Outbox outbox = outboxMap.computeIfAbsent(emailAccount.getId(), id -> new Outbox());
+    outbox.configure(emailAccount);
+
+    if (outbox.pendingIds.size() >= QUEUE_CAPACITY || !outbox.pendingIds.add(messageId)) {
+      return false;
+    }
+
+    outbox.queue.offer(new OutboxEntry(messageId, 0, 0));
+    this.openConnection(outbox);
+
+    return true;
+  }
+
+  /** Start a worker if the messages waiting are more than the connections open. */
+  protected void openConnection(Outbox outbox) {
+
+    while (true) {
+      int connectionCount = outbox.connectionCount.get();
+
+      if (connectionCount >= Math.min(outbox.maxConnections, outbox.queue.size())) {
+        return;
+      }
+      if (outbox.connectionCount.compareAndSet(connectionCount, connectionCount + 1)) {
+        executor.submit(() -> this.drain(outbox));
+        return;
+      }
+    }
+  }
+
+  protected void drain(Outbox outbox) {
+
+    OutboxConnection connection = new OutboxConnection();
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+      while (true) {
+        OutboxEntry entry = outbox.queue.poll(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        if (entry == null) {
+          break;
+        }
+
+        this.process(outbox, entry, connection);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      TraceBackService.trace(e);
+    } finally {
+      connection.close();
+      outbox.connectionCount.decrementAndGet();
+      if (!outbox.queue.isEmpty() && !Thread.currentThread().isInterrupted()) {
+        this.openConnection(outbox);
+      }
+    }
+  }
+
+  /** Send the message of an entry, then clear the persistence context for the next one. */
+  protected void process(Outbox outbox, OutboxEntry entry, OutboxConnection connection) {
+
+    try {
+      Message message = messageRepo.find(entry.messageId);
+
+      if (message == null
+          || message.getStatusSelect() != MessageRepository.STATUS_IN_OUTBOX
+          || message.getMailAccount() == null) {
+        if (entry.lookupCount < MAX_LOOKUP_COUNT) {
+          outbox.queue.offer(entry.lookUpLater());
+        } else {
+          outbox.pendingIds.remove(entry.messageId);
+        }
+        return;
+      }
+
+      try {
+        if (outbox.rateLimited) {
+          outbox.rateLimiter.acquire();
+        }
+        this.send(outbox, message, connection);
+        this.markSent(message);
+        outbox.onSent();
+      } catch (Exception e) {
+        if (!(e instanceof SendFailedException)) {
+          // The connection may be broken, it is open again for the next message.
+          connection.close();
+        }
+        this.markFailed(outbox, message, e);
+      } finally {
+        outbox.pendingIds.remove(entry.messageId);
+      }
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  protected void send(Outbox outbox, Message message, OutboxConnection connection)
+      throws MessagingException, IOException, AxelorException {
+
+    EmailAccount emailAccount = message.getMailAccount();
+
+    if (connection.transport == null || !connection.transport.isConnected()) {
+      connection.close();
+
+      com.axelor.mail.MailAccount account = mailAccountService.getMailAccount(emailAccount);
+      Transport transport =
+          account.getSession().getTransport(mailAccountService.getProtocol(emailAccount));
+      String login = emailAccount.getLogin();
+      transport.connect(
+          emailAccount.getHost(),
+          emailAccount.getPort() > 0 ? emailAccount.getPort() : -1,
+          StringUtils.isBlank(login) ? null : login,
+          StringUtils.isBlank(login)
+              ? null
+              : mailAccountService.getDecryptPassword(emailAccount.getPassword()));
+
+      connection.sender = new MailSender(account);
+      connection.transport = transport;
+      outbox.openedConnectionCount.incrementAndGet();
+    }
+
+    MimeMessage mimeMessage =
+        Beans.get(MessageService.class).getMailBuilder(message, connection.sender).build();
+    mimeMessage.saveChanges();
+    connection.transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+  }
+
+  protected void markSent(Message message) {
+    JPA.runInTransaction(
+        () -> {
+          message.setSentByEmail(true);
+          message.setStatusSelect(MessageRepository.STATUS_SENT);
+          message.setSentDateT(LocalDateTime.now());
+          message.setSendAttemptCount(message.getSendAttemptCount() + 1);
+          message.setNextSendAttemptDateT(null);
+          message.setSendErrorMessage(null);
+          messageRepo.save(message);
+        });
+  }
+
+  /**
+   * Schedule the next send attempt of the message, or put it back in draft if it failed for good:
+   * the errors of the message itself (addresses, attachments) are not retried.
+   */
+  protected void markFailed(Outbox outbox, Message message, Exception e) {
+
+    int sendAttemptCount = message.getSendAttemptCount() + 1;
+    int maxSendAttempts =
+        message.getMailAccount().getMaxSendAttempts() > 0
+            ? message.getMailAccount().getMaxSendAttempts()
+            : DEFAULT_MAX_SEND_ATTEMPTS;
+    boolean retry = sendAttemptCount < maxSendAttempts && !this.isPermanentFailure(e);
+
+    log.debug("Send attempt {} of message {} failed: {}", sendAttemptCount, message.getId(), e);
+
+    try {
+      JPA.runInTransaction(
+          () -> {
+            message.setSendAttemptCount(sendAttemptCount);
+            message.setSendErrorMessage(e.toString());
+            if (retry) {
+              message.setNextSendAttemptDateT(
+                  LocalDateTime.now().plusSeconds(this.getRetryDelay(sendAttemptCount)));
+            } else {
+              message.setStatusSelect(MessageRepository.STATUS_DRAFT);
+              message.setNextSendAttemptDateT(null);
+            }
+            messageRepo.save(message);
+          });
+    } catch (Exception saveException) {
+      TraceBackService.trace(saveException);
+    }
+
+    if (retry) {
+      outbox.retriedCount.incrementAndGet();
+    } else {
+      outbox.failedCount.incrementAndGet();
+      TraceBackService.trace(e);
+    }
+  }
+
+  /**
+   * Whether the send attempt failed because of the message itself, so that sending it again would
+   * fail the same way: its content or attachments can't be built, or its addresses are invalid or
+   * rejected by the server.
+   */
+  protected boolean isPermanentFailure(Exception e) {
+    return e instanceof AxelorException
+        || e instanceof IOException
+        || e instanceof SendFailedException
+        || e instanceof AddressException;
+  }
+
+  /**
+   * The delay before the next attempt to send a message, doubled after each failed attempt.
+   *
+   * @param sendAttemptCount the number of failed attempts, at least 1
+   * @return the delay in seconds
+   */
+  protected long getRetryDelay(int sendAttemptCount) {
+    return Math.min(
+        RETRY_BASE_DELAY_SECONDS << Math.min(sendAttemptCount - 1, 16), RETRY_MAX_DELAY_SECONDS);
+  }
+}
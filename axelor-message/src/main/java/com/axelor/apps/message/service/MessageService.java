@@ -21,6 +21,8 @@ import com.axelor.apps.message.db.EmailAccount;
 import com.axelor.apps.message.db.EmailAddress;
 import com.axelor.apps.message.db.Message;
 import com.axelor.exception.AxelorException;
+import com.axelor.mail.MailBuilder;
+import com.axelor.mail.MailSender;
 import com.axelor.meta.db.MetaAttachment;
 import com.axelor.meta.db.MetaFile;
 import com.google.inject.persist.Transactional;
@@ -58,6 +60,16 @@ public interface MessageService {
   public Message sendByEmail(Message message)
       throws MessagingException, IOException, AxelorException;
 
+  /**
+   * Get the builder of the email of a message.
+   *
+   * @param message the message to send by email
+   * @param sender the sender of the mail account
+   * @return the builder, with the recipients, content and attachments of the message
+   * @throws AxelorException if the message has no recipient or sender address
+   */
+  public MailBuilder getMailBuilder(Message message, MailSender sender) throws AxelorException;
+
   @Transactional(rollbackOn = Exception.class)
   public Message sendToUser(Message message);
 
@@ -52,9 +52,6 @@ import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.mail.MessagingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,8 +62,6 @@ public class MessageServiceImpl implements MessageService {
   private MetaAttachmentRepository metaAttachmentRepository;
   protected MessageRepository messageRepository;
 
-  private ExecutorService executor = Executors.newCachedThreadPool();
-
   @Inject
   public MessageServiceImpl(
       MetaAttachmentRepository metaAttachmentRepository, MessageRepository messageRepository) {
@@ -255,7 +250,6 @@ public class MessageServiceImpl implements MessageService {
       return message;
     }
 
-    log.debug("Sent email");
     MailAccountService mailAccountService = Beans.get(MailAccountService.class);
     com.axelor.mail.MailAccount account =
         new SmtpAccount(
@@ -265,6 +259,16 @@ public class MessageServiceImpl implements MessageService {
             mailAccountService.getDecryptPassword(mailAccount.getPassword()),
             mailAccountService.getSecurity(mailAccount));
 
+    // check the message can be sent, then let the outbox send it without blocking the thread
+    getMailBuilder(message, new MailSender(account));
+
+    log.debug("Put email in outbox");
+    return Beans.get(MailOutboxService.class).enqueue(message);
+  }
+
+  @Override
+  public MailBuilder getMailBuilder(Message message, MailSender sender) throws AxelorException {
+
     List<String> replytoRecipients = this.getEmailAddresses(message.getReplyToEmailAddressSet()),
         toRecipients = this.getEmailAddresses(message.getToEmailAddressSet()),
         ccRecipients = this.getEmailAddresses(message.getCcEmailAddressSet()),
@@ -277,7 +281,6 @@ public class MessageServiceImpl implements MessageService {
           I18n.get(IExceptionMessage.MESSAGE_6));
     }
 
-    MailSender sender = new MailSender(account);
     MailBuilder mailBuilder = sender.compose();
 
     mailBuilder.subject(message.getSubject());
@@ -312,29 +315,7 @@ public class MessageServiceImpl implements MessageService {
       mailBuilder.attach(metaFile.getFileName(), MetaFiles.getPath(metaFile).toString());
     }
 
-    // send email using a separate process to avoid thread blocking
-    executor.submit(
-        new Callable<Boolean>() {
-          @Override
-          public Boolean call() {
-            try {
-              mailBuilder.send();
-              Message updateMessage = messageRepository.find(message.getId());
-              JPA.em().getTransaction().begin();
-              updateMessage.setSentByEmail(true);
-              updateMessage.setStatusSelect(MessageRepository.STATUS_SENT);
-              updateMessage.setSentDateT(LocalDateTime.now());
-              updateMessage.setSenderUser(AuthUtils.getUser());
-              messageRepository.save(updateMessage);
-              JPA.em().getTransaction().commit();
-            } catch (Exception e) {
-              TraceBackService.trace(e);
-            }
-            return true;
-          }
-        });
-
-    return message;
+    return mailBuilder;
   }
 
   public Set<MetaAttachment> getMetaAttachments(Message message) {
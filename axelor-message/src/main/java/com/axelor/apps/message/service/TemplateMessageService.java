@@ -20,10 +20,13 @@ package com.axelor.apps.message.service;
 import com.axelor.apps.message.db.Message;
 import com.axelor.apps.message.db.Template;
 import com.axelor.db.Model;
+import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.meta.db.MetaFile;
 import com.axelor.tool.template.TemplateMaker;
+import com.google.inject.persist.Transactional;
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import javax.mail.MessagingException;
 
@@ -37,6 +40,19 @@ public interface TemplateMessageService {
       throws ClassNotFoundException, InstantiationException, IllegalAccessException,
           AxelorException, IOException;
 
+  /**
+   * Generate one message for each record of the query, rendering them all with the same compiled
+   * template. The persistence context is cleared after each page of records.
+   *
+   * @param template the template of the messages
+   * @param query the records, of the model of the template
+   * @return the ids of the messages generated
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public List<Long> generateMessages(Template template, Query<? extends Model> query)
+      throws ClassNotFoundException, InstantiationException, IllegalAccessException,
+          AxelorException, IOException;
+
   public Message generateAndSendMessage(Model model, Template template)
       throws MessagingException, IOException, AxelorException, ClassNotFoundException,
           InstantiationException, IllegalAccessException;
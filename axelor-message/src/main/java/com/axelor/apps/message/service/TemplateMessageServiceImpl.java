@@ -38,12 +38,15 @@ import com.axelor.meta.db.MetaFile;
 import com.axelor.meta.db.MetaModel;
 import com.axelor.tool.template.TemplateMaker;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -52,12 +55,18 @@ import java.util.Set;
 import javax.mail.MessagingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.stringtemplate.v4.ST;
 
 public class TemplateMessageServiceImpl implements TemplateMessageService {
 
   private static final String RECIPIENT_SEPARATOR = ";|,";
   private static final char TEMPLATE_DELIMITER = '$';
 
+  protected static final int FETCH_LIMIT = 100;
+
+  private static final Cache<String, CompiledTemplate> COMPILED_TEMPLATE_CACHE =
+      CacheBuilder.newBuilder().maximumSize(500).build();
+
   private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   protected TemplateMaker maker =
@@ -65,6 +74,34 @@ public class TemplateMessageServiceImpl implements TemplateMessageService {
 
   protected MessageService messageService;
 
+  /** The parts of a template parsed once, to render them for many records. */
+  protected static class CompiledTemplate {
+
+    protected final ST content;
+    protected final ST subject;
+    protected final ST fromAdress;
+    protected final ST replyToRecipients;
+    protected final ST toRecipients;
+    protected final ST ccRecipients;
+    protected final ST bccRecipients;
+    protected final ST addressBlock;
+
+    protected CompiledTemplate(TemplateMaker maker, Template template) {
+      content = compile(maker, template.getContent());
+      subject = compile(maker, template.getSubject());
+      fromAdress = compile(maker, template.getFromAdress());
+      replyToRecipients = compile(maker, template.getReplyToRecipients());
+      toRecipients = compile(maker, template.getToRecipients());
+      ccRecipients = compile(maker, template.getCcRecipients());
+      bccRecipients = compile(maker, template.getBccRecipients());
+      addressBlock = compile(maker, template.getAddressBlock());
+    }
+
+    private static ST compile(TemplateMaker maker, String text) {
+      return Strings.isNullOrEmpty(text) ? null : maker.compile(text);
+    }
+  }
+
   @Inject
   public TemplateMessageServiceImpl(MessageService messageService) {
     this.messageService = messageService;
@@ -85,80 +122,128 @@ public class TemplateMessageServiceImpl implements TemplateMessageService {
       throws ClassNotFoundException, InstantiationException, IllegalAccessException,
           AxelorException, IOException {
 
-    MetaModel metaModel = template.getMetaModel();
-    if (metaModel != null) {
-      if (!model.equals(metaModel.getFullName())) {
-        throw new AxelorException(
-            TraceBackRepository.CATEGORY_INCONSISTENCY,
-            I18n.get(IExceptionMessage.TEMPLATE_SERVICE_3),
-            template.getMetaModel().getFullName());
-      }
-      initMaker(objectId, model, tag);
-    }
+    checkModel(model, template);
 
-    log.debug("model : {}", model);
-    log.debug("tag : {}", tag);
-    log.debug("object id : {}", objectId);
-    log.debug("template : {}", template);
+    return generateMessage(
+        objectId, model, tag, template, getCompiledTemplate(template), getMailAccount());
+  }
 
-    String content = "",
-        subject = "",
-        from = "",
-        replyToRecipients = "",
-        toRecipients = "",
-        ccRecipients = "",
-        bccRecipients = "",
-        addressBlock = "";
-    int mediaTypeSelect;
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public List<Long> generateMessages(Template template, Query<? extends Model> query)
+      throws ClassNotFoundException, InstantiationException, IllegalAccessException,
+          AxelorException, IOException {
 
-    if (!Strings.isNullOrEmpty(template.getContent())) {
-      // Set template
-      maker.setTemplate(template.getContent());
-      content = maker.make();
-    }
+    // the ids are read once, in order, so that the records are neither skipped nor repeated
+    Model firstRecord = query.order("id").fetchOne();
 
-    if (!Strings.isNullOrEmpty(template.getAddressBlock())) {
-      maker.setTemplate(template.getAddressBlock());
-      // Make it
-      addressBlock = maker.make();
+    if (firstRecord == null) {
+      return new ArrayList<>();
     }
 
-    if (!Strings.isNullOrEmpty(template.getSubject())) {
-      maker.setTemplate(template.getSubject());
-      subject = maker.make();
-      log.debug("Subject ::: {}", subject);
+    Class<?> klass = EntityHelper.getEntityClass(firstRecord);
+    String model = klass.getCanonicalName();
+    String tag = klass.getSimpleName();
+    checkModel(model, template);
+
+    List<Long> idList = new ArrayList<>();
+    for (Map<String, Object> idMap : query.select("id").fetch(0, 0)) {
+      idList.add((Long) idMap.get("id"));
     }
 
-    if (!Strings.isNullOrEmpty(template.getFromAdress())) {
-      maker.setTemplate(template.getFromAdress());
-      from = maker.make();
-      log.debug("From ::: {}", from);
+    Long templateId = template.getId();
+    CompiledTemplate compiledTemplate = getCompiledTemplate(template);
+    EmailAccount mailAccount = getMailAccount();
+    List<Long> messageIdList = new ArrayList<>(idList.size());
+
+    for (List<Long> idPartition : Lists.partition(idList, FETCH_LIMIT)) {
+      for (Long id : idPartition) {
+        Message message = generateMessage(id, model, tag, template, compiledTemplate, mailAccount);
+        messageIdList.add(message.getId());
+      }
+
+      JPA.flush();
+      JPA.clear();
+
+      if (templateId != null) {
+        template = Beans.get(TemplateRepository.class).find(templateId);
+      }
+      if (mailAccount != null) {
+        mailAccount = JPA.find(EmailAccount.class, mailAccount.getId());
+      }
     }
 
-    if (!Strings.isNullOrEmpty(template.getReplyToRecipients())) {
-      maker.setTemplate(template.getReplyToRecipients());
-      replyToRecipients = maker.make();
-      log.debug("Reply to ::: {}", replyToRecipients);
+    return messageIdList;
+  }
+
+  protected void checkModel(String model, Template template) throws AxelorException {
+
+    MetaModel metaModel = template.getMetaModel();
+    if (metaModel != null && !model.equals(metaModel.getFullName())) {
+      throw new AxelorException(
+          TraceBackRepository.CATEGORY_INCONSISTENCY,
+          I18n.get(IExceptionMessage.TEMPLATE_SERVICE_3),
+          template.getMetaModel().getFullName());
     }
+  }
 
-    if (template.getToRecipients() != null) {
-      maker.setTemplate(template.getToRecipients());
-      toRecipients = maker.make();
-      log.debug("To ::: {}", toRecipients);
+  /**
+   * Get the compiled parts of the template. They are cached by template id and version, so a
+   * template is only parsed again once modified.
+   */
+  protected CompiledTemplate getCompiledTemplate(Template template) {
+
+    if (template.getId() == null) {
+      return new CompiledTemplate(maker, template);
     }
 
-    if (template.getCcRecipients() != null) {
-      maker.setTemplate(template.getCcRecipients());
-      ccRecipients = maker.make();
-      log.debug("CC ::: {}", ccRecipients);
+    String key = template.getId() + ":" + template.getVersion();
+    CompiledTemplate compiledTemplate = COMPILED_TEMPLATE_CACHE.getIfPresent(key);
+
+    if (compiledTemplate == null) {
+      compiledTemplate = new CompiledTemplate(maker, template);
+      COMPILED_TEMPLATE_CACHE.put(key, compiledTemplate);
     }
 
-    if (template.getBccRecipients() != null) {
-      maker.setTemplate(template.getBccRecipients());
-      bccRecipients = maker.make();
-      log.debug("BCC ::: {}", bccRecipients);
+    return compiledTemplate;
+  }
+
+  protected Message generateMessage(
+      Long objectId,
+      String model,
+      String tag,
+      Template template,
+      CompiledTemplate compiledTemplate,
+      EmailAccount mailAccount)
+      throws ClassNotFoundException, InstantiationException, IllegalAccessException,
+          AxelorException, IOException {
+
+    if (template.getMetaModel() != null) {
+      initMaker(objectId, model, tag);
     }
 
+    log.debug("model : {}", model);
+    log.debug("tag : {}", tag);
+    log.debug("object id : {}", objectId);
+    log.debug("template : {}", template);
+
+    String content = make(compiledTemplate.content),
+        subject = make(compiledTemplate.subject),
+        from = make(compiledTemplate.fromAdress),
+        replyToRecipients = make(compiledTemplate.replyToRecipients),
+        toRecipients = make(compiledTemplate.toRecipients),
+        ccRecipients = make(compiledTemplate.ccRecipients),
+        bccRecipients = make(compiledTemplate.bccRecipients),
+        addressBlock = make(compiledTemplate.addressBlock);
+    int mediaTypeSelect;
+
+    log.debug("Subject ::: {}", subject);
+    log.debug("From ::: {}", from);
+    log.debug("Reply to ::: {}", replyToRecipients);
+    log.debug("To ::: {}", toRecipients);
+    log.debug("CC ::: {}", ccRecipients);
+    log.debug("BCC ::: {}", bccRecipients);
+
     mediaTypeSelect = this.getMediaTypeSelect(template);
     log.debug("Media ::: {}", mediaTypeSelect);
     log.debug("Content ::: {}", content);
@@ -177,7 +262,7 @@ public class TemplateMessageServiceImpl implements TemplateMessageService {
             null,
             addressBlock,
             mediaTypeSelect,
-            getMailAccount());
+            mailAccount);
 
     message.setTemplate(Beans.get(TemplateRepository.class).find(template.getId()));
 
@@ -188,6 +273,16 @@ public class TemplateMessageServiceImpl implements TemplateMessageService {
     return message;
   }
 
+  protected String make(ST compiledTemplate) {
+
+    if (compiledTemplate == null) {
+      return "";
+    }
+
+    maker.setTemplate(compiledTemplate);
+    return maker.make();
+  }
+
   @Override
   public Message generateAndSendMessage(Model model, Template template)
       throws MessagingException, IOException, AxelorException, ClassNotFoundException,
@@ -21,14 +21,17 @@ import com.axelor.apps.message.db.EmailAccount;
 import com.axelor.apps.message.db.repo.EmailAccountRepository;
 import com.axelor.apps.message.exception.IExceptionMessage;
 import com.axelor.apps.message.service.MailAccountService;
+import com.axelor.apps.message.service.MailOutboxService;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
 import com.axelor.rpc.ActionRequest;
 import com.axelor.rpc.ActionResponse;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.io.IOException;
+import java.util.Map;
 import javax.mail.MessagingException;
 
 @Singleton
@@ -79,6 +82,29 @@ public class MailAccountController {
     response.setFlash(I18n.get(String.format("Total email fetched: %s", totalFetched)));
   }
 
+  public void showOutboxMetrics(ActionRequest request, ActionResponse response) {
+
+    EmailAccount account = request.getContext().asType(EmailAccount.class);
+    Map<String, Object> metrics = Beans.get(MailOutboxService.class).getMetrics(account);
+
+    String queueMetrics =
+        String.format(
+            I18n.get(IExceptionMessage.MAIL_ACCOUNT_6),
+            metrics.get("waiting"),
+            metrics.get("openConnections"),
+            metrics.get("sent"),
+            metrics.get("failed"),
+            metrics.get("retried"));
+    String throughputMetrics =
+        String.format(
+            I18n.get(IExceptionMessage.MAIL_ACCOUNT_7),
+            metrics.get("openedConnections"),
+            metrics.get("messagesPerConnection"),
+            metrics.get("messagesPerSecond"));
+
+    response.setFlash(queueMetrics + "<br/>" + throughputMetrics);
+  }
+
   public void validate(ActionRequest request, ActionResponse response) {
 
     if (request.getContext().get("newPassword") != null)
@@ -0,0 +1,194 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.message.service;
+
+import com.axelor.apps.message.db.EmailAccount;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.AddressException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the outbox without the database nor a mail server: each message takes a few milliseconds to
+ * be processed, and the connections used are recorded.
+ */
+public class MailOutboxServiceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long PROCESS_MILLIS = 2;
+
+  private static final long TIMEOUT_SECONDS = 30;
+
+  private static class TestMailOutboxService extends MailOutboxServiceImpl {
+
+    private final Set<Long> processedIdSet = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger processCount = new AtomicInteger();
+
+    private final Map<Outbox, AtomicInteger> runningCountMap = new ConcurrentHashMap<>();
+
+    private final Map<Outbox, AtomicInteger> maxRunningCountMap = new ConcurrentHashMap<>();
+
+    private final Map<Outbox, Set<OutboxConnection>> connectionMap = new ConcurrentHashMap<>();
+
+    private final CountDownLatch latch;
+
+    private TestMailOutboxService(int messageCount) {
+      super(null, null);
+      this.latch = new CountDownLatch(messageCount);
+    }
+
+    @Override
+    protected void process(Outbox outbox, OutboxEntry entry, OutboxConnection connection) {
+      int runningCount =
+          runningCountMap.computeIfAbsent(outbox, key -> new AtomicInteger()).incrementAndGet();
+      maxRunningCountMap
+          .computeIfAbsent(outbox, key -> new AtomicInteger())
+          .accumulateAndGet(runningCount, Math::max);
+      connectionMap.computeIfAbsent(outbox, key -> ConcurrentHashMap.newKeySet()).add(connection);
+
+      try {
+        Thread.sleep(PROCESS_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      runningCountMap.get(outbox).decrementAndGet();
+      processedIdSet.add(entry.getMessageId());
+      processCount.incrementAndGet();
+      outbox.onSent();
+      latch.countDown();
+    }
+
+    private void await() throws InterruptedException {
+      Assert.assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Sends 1000 messages of an account allowed 3 connections, and checks that they are all sent
+   * once, over at most 3 connections reused from one message to the next.
+   */
+  @Test
+  public void testConnectionsOfAnAccountAreLimited() throws InterruptedException {
+
+    TestMailOutboxService outboxService = new TestMailOutboxService(1000);
+    EmailAccount emailAccount = createEmailAccount(1L, 3);
+
+    long startTime = System.currentTimeMillis();
+    for (long messageId = 1; messageId <= 1000; messageId++) {
+      Assert.assertTrue(outboxService.offer(emailAccount, messageId));
+    }
+    outboxService.await();
+    LOG.info("1000 messages processed in {} ms", System.currentTimeMillis() - startTime);
+
+    Assert.assertEquals(1000, outboxService.processedIdSet.size());
+    Assert.assertEquals(1000, outboxService.processCount.get());
+    for (AtomicInteger maxRunningCount : outboxService.maxRunningCountMap.values()) {
+      Assert.assertTrue(maxRunningCount.get() <= 3);
+    }
+    for (Set<MailOutboxServiceImpl.OutboxConnection> connectionSet :
+        outboxService.connectionMap.values()) {
+      Assert.assertTrue(connectionSet.size() <= 3);
+    }
+    Assert.assertEquals(1000L, outboxService.getMetrics(emailAccount).get("sent"));
+  }
+
+  /** Each account has its own connections, so a slow account doesn't hold the other ones. */
+  @Test
+  public void testAccountsHaveTheirOwnConnections() throws InterruptedException {
+
+    TestMailOutboxService outboxService = new TestMailOutboxService(200);
+    EmailAccount emailAccount = createEmailAccount(1L, 1);
+    EmailAccount otherEmailAccount = createEmailAccount(2L, 2);
+
+    for (long messageId = 1; messageId <= 100; messageId++) {
+      outboxService.offer(emailAccount, messageId);
+      outboxService.offer(otherEmailAccount, messageId + 100);
+    }
+    outboxService.await();
+
+    Assert.assertEquals(2, outboxService.connectionMap.size());
+    Assert.assertEquals(100L, outboxService.getMetrics(emailAccount).get("sent"));
+    Assert.assertEquals(100L, outboxService.getMetrics(otherEmailAccount).get("sent"));
+    int maxRunningCount = 0;
+    for (AtomicInteger runningCount : outboxService.maxRunningCountMap.values()) {
+      maxRunningCount = Math.max(maxRunningCount, runningCount.get());
+    }
+    Assert.assertTrue(maxRunningCount <= 2);
+  }
+
+  /** A message offered again while it is waiting is sent only once. */
+  @Test
+  public void testWaitingMessageIsSentOnce() throws InterruptedException {
+
+    TestMailOutboxService outboxService = new TestMailOutboxService(1);
+    EmailAccount emailAccount = createEmailAccount(1L, 2);
+
+    Assert.assertTrue(outboxService.offer(emailAccount, 1L));
+    Assert.assertFalse(outboxService.offer(emailAccount, 1L));
+    outboxService.await();
+
+    Assert.assertEquals(1, outboxService.processCount.get());
+  }
+
+  @Test
+  public void testRetryDelayDoublesUpToOneHour() {
+
+    MailOutboxServiceImpl outboxService = new MailOutboxServiceImpl(null, null);
+
+    Assert.assertEquals(60, outboxService.getRetryDelay(1));
+    Assert.assertEquals(120, outboxService.getRetryDelay(2));
+    Assert.assertEquals(240, outboxService.getRetryDelay(3));
+    Assert.assertEquals(3600, outboxService.getRetryDelay(7));
+    Assert.assertEquals(3600, outboxService.getRetryDelay(100));
+  }
+
+  /** The failures due to the message itself are not retried, unlike the connection failures. */
+  @Test
+  public void testPermanentFailures() {
+
+    MailOutboxServiceImpl outboxService = new MailOutboxServiceImpl(null, null);
+
+    Assert.assertTrue(outboxService.isPermanentFailure(new SendFailedException("Invalid address")));
+    Assert.assertTrue(outboxService.isPermanentFailure(new AddressException("Illegal address")));
+    Assert.assertTrue(outboxService.isPermanentFailure(new IOException("No attachment")));
+    Assert.assertFalse(
+        outboxService.isPermanentFailure(new MessagingException("Connection refused")));
+  }
+
+  private EmailAccount createEmailAccount(Long id, int maxConnections) {
+    EmailAccount emailAccount = new EmailAccount();
+    emailAccount.setId(id);
+    emailAccount.setMaxConnections(maxConnections);
+    emailAccount.setMaxMessagesPerSecond(0);
+    return emailAccount;
+  }
+}
@@ -18,9 +18,13 @@
 package com.axelor.apps.production.db.repo;
 
 import com.axelor.apps.production.db.BillOfMaterial;
+import com.axelor.apps.production.service.BillOfMaterialGraphService;
+import com.google.inject.Inject;
 
 public class BillOfMaterialManagementRepository extends BillOfMaterialRepository {
 
+  @Inject protected BillOfMaterialGraphService billOfMaterialGraphService;
+
   @Override
   public BillOfMaterial save(BillOfMaterial billOfMaterial) {
 
@@ -31,6 +35,15 @@ public class BillOfMaterialManagementRepository extends BillOfMaterialRepository
       billOfMaterial.setFullName(billOfMaterial.getName());
     }
 
-    return super.save(billOfMaterial);
+    billOfMaterial = super.save(billOfMaterial);
+    billOfMaterialGraphService.invalidate(billOfMaterial.getId());
+    return billOfMaterial;
+  }
+
+  @Override
+  public void remove(BillOfMaterial billOfMaterial) {
+    Long billOfMaterialId = billOfMaterial.getId();
+    super.remove(billOfMaterial);
+    billOfMaterialGraphService.invalidate(billOfMaterialId);
   }
 }
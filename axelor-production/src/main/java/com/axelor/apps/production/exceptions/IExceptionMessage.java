@@ -39,6 +39,10 @@ public interface IExceptionMessage {
   /** Batch Compute work in progress valuation */
   static final String BATCH_COMPUTE_VALUATION = /*$$(*/ "Computed work in progress valuation" /*)*/;
 
+  /** Batch Compute bills of material cost price */
+  static final String BATCH_COMPUTE_BILL_OF_MATERIAL_COST_PRICE = /*$$(*/
+      "Computed bills of material cost price" /*)*/;
+
   static final String IN_OR_OUT_INVALID_ARG = /*$$(*/ "inOrOut is invalid" /*)*/;
 
   /** Bill of Material Service */
@@ -97,6 +101,9 @@ public interface IExceptionMessage {
 
   static final String MAX_DEPTH_REACHED = /*$$(*/ "Max depth reached when copying BOM." /*)*/;
 
+  static final String BOM_COMPONENT_LOOP = /*$$(*/
+      "The bill of material %s is one of its own components." /*)*/;
+
   /** Configurator Controller */
   String BILL_OF_MATERIAL_GENERATED = /*$$(*/ "The bill of material %s has been generated" /*)*/;
 
@@ -0,0 +1,364 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service;
+
+import com.axelor.apps.production.exceptions.IExceptionMessage;
+import com.axelor.apps.tool.TransactionTool;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
+import com.google.common.collect.Lists;
+import com.google.inject.Singleton;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Application wide cache of the bills of material and of their components, as immutable nodes.
+ *
+ * <p>A node is kept with the version of its bill of material. The versions of the nodes of a graph
+ * are checked each time the graph is asked for, with one query per level of components, and the
+ * modified nodes are loaded again. Nodes are also removed from the cache once the saving or the
+ * removal of their bill of material is committed.
+ *
+ * <p>The parents of each bill of material, used by the where-used queries, are loaded all at once
+ * and kept until a bill of material is saved or removed.
+ */
+@Singleton
+public class BillOfMaterialGraphService {
+
+  protected static final int QUERY_PARTITION_SIZE = 1000;
+
+  protected static final int QTY_SCALE = 10;
+
+  private final Map<Long, Node> nodeMap = new ConcurrentHashMap<>();
+
+  private volatile Map<Long, List<Long>> parentIdMap;
+
+  private final AtomicLong version = new AtomicLong();
+
+  /** A bill of material and the ids of its components, ordered by priority. */
+  public static final class Node {
+
+    private final Long id;
+    private final Integer version;
+    private final Long productId;
+    private final BigDecimal qty;
+    private final Long unitId;
+    private final Long prodProcessId;
+    private final boolean defineSubBillOfMaterial;
+    private final List<Long> childIdList;
+
+    Node(Object[] values, List<Long> childIdList) {
+      this.id = (Long) values[0];
+      this.version = (Integer) values[1];
+      this.productId = (Long) values[2];
+      this.qty = values[3] != null ? (BigDecimal) values[3] : BigDecimal.ZERO;
+      this.unitId = (Long) values[4];
+      this.prodProcessId = (Long) values[5];
+      this.defineSubBillOfMaterial = Boolean.TRUE.equals(values[6]);
+      this.childIdList = Collections.unmodifiableList(childIdList);
+    }
+
+    public Long getId() {
+      return id;
+    }
+
+    public Integer getVersion() {
+      return version;
+    }
+
+    public Long getProductId() {
+      return productId;
+    }
+
+    public BigDecimal getQty() {
+      return qty;
+    }
+
+    public Long getUnitId() {
+      return unitId;
+    }
+
+    public Long getProdProcessId() {
+      return prodProcessId;
+    }
+
+    public boolean getDefineSubBillOfMaterial() {
+      return defineSubBillOfMaterial;
+    }
+
+    public List<Long> getChildIdList() {
+      return childIdList;
+    }
+  }
+
+  /**
+   * Get the nodes of a bill of material and of all its components, at any level.
+   *
+   * @param billOfMaterialId the id of the bill of material
+   * @return the up to date nodes, by bill of material id, empty if the bill of material doesn't
+   *     exist
+   */
+  public Map<Long, Node> getGraph(Long billOfMaterialId) {
+
+    Map<Long, Node> graph = new HashMap<>();
+    Set<Long> levelIdSet = Collections.singleton(billOfMaterialId);
+
+    while (!levelIdSet.isEmpty()) {
+      Set<Long> toLoadIdSet = new HashSet<>();
+      List<Long> cachedIdList = new ArrayList<>();
+
+      for (Long id : levelIdSet) {
+        if (nodeMap.containsKey(id)) {
+          cachedIdList.add(id);
+        } else {
+          toLoadIdSet.add(id);
+        }
+      }
+
+      Map<Long, Integer> versionMap = this.loadVersions(cachedIdList);
+      for (Long id : cachedIdList) {
+        Node node = nodeMap.get(id);
+        if (node == null || !Objects.equals(node.getVersion(), versionMap.get(id))) {
+          nodeMap.remove(id);
+          toLoadIdSet.add(id);
+        }
+      }
+
+      for (Node node : this.loadNodes(toLoadIdSet)) {
+        nodeMap.put(node.getId(), node);
+      }
+
+      Set<Long> nextLevelIdSet = new HashSet<>();
+      for (Long id : levelIdSet) {
+        Node node = nodeMap.get(id);
+        if (node == null) {
+          continue;
+        }
+        graph.put(id, node);
+        for (Long childId : node.getChildIdList()) {
+          if (!graph.containsKey(childId) && !levelIdSet.contains(childId)) {
+            nextLevelIdSet.add(childId);
+          }
+        }
+      }
+      levelIdSet = nextLevelIdSet;
+    }
+
+    return graph;
+  }
+
+  /**
+   * Get the ids of the bills of material using the given one as a component.
+   *
+   * @param billOfMaterialId the id of the component
+   * @return the ids of the parent bills of material
+   */
+  public List<Long> getWhereUsed(Long billOfMaterialId) {
+
+    Map<Long, List<Long>> map = parentIdMap;
+
+    if (map == null) {
+      long loadedVersion = version.get();
+      map = this.loadParentIdMap();
+
+      // don't keep the loaded parents if a bill of material was changed in the meantime
+      if (loadedVersion == version.get()) {
+        parentIdMap = map;
+      }
+    }
+
+    return map.getOrDefault(billOfMaterialId, Collections.emptyList());
+  }
+
+  /**
+   * Get the quantities of the components to consume to produce the given quantity of a bill of
+   * material. The components defining a sub bill of material are replaced by their own components,
+   * in proportion of the quantity produced by the sub bill of material.
+   *
+   * @param billOfMaterialId the id of the bill of material
+   * @param qty the quantity to produce
+   * @return the quantities, by product id and unit id
+   * @throws AxelorException if a bill of material is one of its own components
+   */
+  public Map<Pair<Long, Long>, BigDecimal> explode(Long billOfMaterialId, BigDecimal qty)
+      throws AxelorException {
+
+    Map<Long, Node> graph = this.getGraph(billOfMaterialId);
+    Map<Pair<Long, Long>, BigDecimal> qtyMap = new LinkedHashMap<>();
+
+    if (graph.containsKey(billOfMaterialId)) {
+      this.explode(graph, graph.get(billOfMaterialId), qty, qtyMap, new HashSet<>());
+    }
+
+    return qtyMap;
+  }
+
+  protected void explode(
+      Map<Long, Node> graph,
+      Node node,
+      BigDecimal qty,
+      Map<Pair<Long, Long>, BigDecimal> qtyMap,
+      Set<Long> pathIdSet)
+      throws AxelorException {
+
+    if (!pathIdSet.add(node.getId())) {
+      throw new AxelorException(
+          TraceBackRepository.CATEGORY_INCONSISTENCY,
+          I18n.get(IExceptionMessage.BOM_COMPONENT_LOOP),
+          node.getId());
+    }
+
+    for (Long childId : node.getChildIdList()) {
+      Node child = graph.get(childId);
+      if (child == null) {
+        continue;
+      }
+
+      BigDecimal childQty =
+          node.getQty().signum() == 0
+              ? BigDecimal.ZERO
+              : qty.multiply(child.getQty())
+                  .divide(node.getQty(), QTY_SCALE, RoundingMode.HALF_EVEN);
+
+      if (child.getDefineSubBillOfMaterial() && !child.getChildIdList().isEmpty()) {
+        this.explode(graph, child, childQty, qtyMap, pathIdSet);
+      } else {
+        qtyMap.merge(Pair.of(child.getProductId(), child.getUnitId()), childQty, BigDecimal::add);
+      }
+    }
+
+    pathIdSet.remove(node.getId());
+  }
+
+  /**
+   * Remove a bill of material from the cache once the current transaction is completed, it will be
+   * loaded again on next use. The parents of the bills of material are loaded again too.
+   */
+  public void invalidate(Long billOfMaterialId) {
+    TransactionTool.runAfterCompletion(
+        () -> {
+          if (billOfMaterialId != null) {
+            nodeMap.remove(billOfMaterialId);
+          }
+          version.incrementAndGet();
+          parentIdMap = null;
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  protected Map<Long, Integer> loadVersions(Collection<Long> idList) {
+
+    Map<Long, Integer> versionMap = new HashMap<>();
+
+    for (List<Long> idPartition : Lists.partition(new ArrayList<>(idList), QUERY_PARTITION_SIZE)) {
+      List<Object[]> resultList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.version FROM BillOfMaterial self WHERE self.id IN (:ids)")
+              .setParameter("ids", idPartition)
+              .getResultList();
+
+      for (Object[] result : resultList) {
+        versionMap.put((Long) result[0], (Integer) result[1]);
+      }
+    }
+
+    return versionMap;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected List<Node> loadNodes(Collection<Long> idList) {
+
+    List<Node> nodeList = new ArrayList<>();
+
+    for (List<Long> idPartition : Lists.partition(new ArrayList<>(idList), QUERY_PARTITION_SIZE)) {
+      List<Object[]> childResultList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, child.id FROM BillOfMaterial self "
+                      + "JOIN self.billOfMaterialSet child "
+                      + "WHERE self.id IN (:ids) "
+                      + "ORDER BY child.priority, child.id")
+              .setParameter("ids", idPartition)
+              .getResultList();
+
+      Map<Long, List<Long>> childIdMap = new HashMap<>();
+      for (Object[] result : childResultList) {
+        childIdMap
+            .computeIfAbsent((Long) result[0], key -> new ArrayList<>())
+            .add((Long) result[1]);
+      }
+
+      List<Object[]> resultList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.id, self.version, product.id, self.qty, unit.id, prodProcess.id, "
+                      + "self.defineSubBillOfMaterial "
+                      + "FROM BillOfMaterial self "
+                      + "LEFT JOIN self.product product "
+                      + "LEFT JOIN self.unit unit "
+                      + "LEFT JOIN self.prodProcess prodProcess "
+                      + "WHERE self.id IN (:ids)")
+              .setParameter("ids", idPartition)
+              .getResultList();
+
+      for (Object[] result : resultList) {
+        nodeList.add(new Node(result, childIdMap.getOrDefault(result[0], new ArrayList<>())));
+      }
+    }
+
+    return nodeList;
+  }
+
+  @SuppressWarnings("unchecked")
+  protected Map<Long, List<Long>> loadParentIdMap() {
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT child.id, self.id FROM BillOfMaterial self "
+                    + "JOIN self.billOfMaterialSet child "
+                    + "ORDER BY self.id")
+            .getResultList();
+
+    Map<Long, List<Long>> map = new HashMap<>();
+    for (Object[] result : resultList) {
+      map.computeIfAbsent((Long) result[0], key -> new ArrayList<>()).add((Long) result[1]);
+    }
+    for (Map.Entry<Long, List<Long>> entry : map.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+
+    return map;
+  }
+}
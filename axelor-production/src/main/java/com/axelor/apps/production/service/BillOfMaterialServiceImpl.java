@@ -19,18 +19,22 @@ package com.axelor.apps.production.service;
 
 import com.axelor.apps.ReportFactory;
 import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
 import com.axelor.apps.base.db.repo.ProductRepository;
 import com.axelor.apps.base.service.ProductService;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.production.db.BillOfMaterial;
+import com.axelor.apps.production.db.ProdProcess;
 import com.axelor.apps.production.db.TempBomTree;
 import com.axelor.apps.production.db.repo.BillOfMaterialRepository;
 import com.axelor.apps.production.db.repo.TempBomTreeRepository;
 import com.axelor.apps.production.exceptions.IExceptionMessage;
 import com.axelor.apps.production.report.IReport;
+import com.axelor.apps.production.service.BillOfMaterialGraphService.Node;
 import com.axelor.apps.production.service.app.AppProductionService;
 import com.axelor.apps.sale.db.SaleOrderLine;
 import com.axelor.db.JPA;
+import com.axelor.db.Model;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -41,12 +45,16 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,7 +68,7 @@ public class BillOfMaterialServiceImpl implements BillOfMaterialService {
 
   @Inject private ProductRepository productRepo;
 
-  private List<Long> processedBom;
+  @Inject protected BillOfMaterialGraphService billOfMaterialGraphService;
 
   @Override
   public List<BillOfMaterial> getBillOfMaterialSet(Product product) {
@@ -215,86 +223,87 @@ public class BillOfMaterialServiceImpl implements BillOfMaterialService {
   }
 
   @Override
+  @Transactional
   public TempBomTree generateTree(BillOfMaterial billOfMaterial) {
 
-    processedBom = new ArrayList<>();
+    Map<Long, Node> graph = billOfMaterialGraphService.getGraph(billOfMaterial.getId());
+
+    // the existing nodes of the tree, by bill of material and parent bill of material
+    Map<Pair<Long, Long>, TempBomTree> bomTreeMap = new HashMap<>();
+    for (TempBomTree bomTree :
+        tempBomTreeRepo
+            .all()
+            .filter(
+                "(self.bom.id = :bomId AND self.parentBom IS NULL) OR self.parentBom.id IN (:ids)")
+            .bind("bomId", billOfMaterial.getId())
+            .bind("ids", graph.keySet())
+            .fetch()) {
+      bomTreeMap.put(Pair.of(bomTree.getBom().getId(), getId(bomTree.getParentBom())), bomTree);
+    }
 
-    return getBomTree(billOfMaterial, null, null);
+    Set<Long> processedBomIdSet = new HashSet<>();
+    TempBomTree bomTree =
+        getBomTree(graph, billOfMaterial.getId(), null, null, bomTreeMap, processedBomIdSet);
+
+    removeInvalidTree(bomTreeMap.values());
+
+    return bomTree;
   }
 
-  @Transactional
-  public TempBomTree getBomTree(BillOfMaterial bom, BillOfMaterial parentBom, TempBomTree parent) {
+  protected TempBomTree getBomTree(
+      Map<Long, Node> graph,
+      Long bomId,
+      Long parentBomId,
+      TempBomTree parent,
+      Map<Pair<Long, Long>, TempBomTree> bomTreeMap,
+      Set<Long> processedBomIdSet) {
 
-    TempBomTree bomTree;
-    if (parentBom == null) {
-      bomTree =
-          tempBomTreeRepo.all().filter("self.bom = ?1 and self.parentBom = null", bom).fetchOne();
-    } else {
-      bomTree =
-          tempBomTreeRepo
-              .all()
-              .filter("self.bom = ?1 and self.parentBom = ?2", bom, parentBom)
-              .fetchOne();
-    }
+    Node node = graph.get(bomId);
 
+    TempBomTree bomTree = bomTreeMap.remove(Pair.of(bomId, parentBomId));
     if (bomTree == null) {
       bomTree = new TempBomTree();
     }
-    bomTree.setProdProcess(bom.getProdProcess());
-    bomTree.setProduct(bom.getProduct());
-    bomTree.setQty(bom.getQty());
-    bomTree.setUnit(bom.getUnit());
-    bomTree.setParentBom(parentBom);
+    bomTree.setProdProcess(getReference(ProdProcess.class, node.getProdProcessId()));
+    bomTree.setProduct(getReference(Product.class, node.getProductId()));
+    bomTree.setQty(node.getQty());
+    bomTree.setUnit(getReference(Unit.class, node.getUnitId()));
+    bomTree.setParentBom(getReference(BillOfMaterial.class, parentBomId));
     bomTree.setParent(parent);
-    bomTree.setBom(bom);
+    bomTree.setBom(getReference(BillOfMaterial.class, bomId));
     bomTree = tempBomTreeRepo.save(bomTree);
 
-    processedBom.add(bom.getId());
-
-    List<Long> validBomIds = processChildBom(bom, bomTree);
-
-    validBomIds.add(0L);
-
-    removeInvalidTree(validBomIds, bom);
-
-    return bomTree;
-  }
-
-  private List<Long> processChildBom(BillOfMaterial bom, TempBomTree bomTree) {
-
-    List<Long> validBomIds = new ArrayList<Long>();
+    processedBomIdSet.add(bomId);
 
-    for (BillOfMaterial childBom : bom.getBillOfMaterialSet()) {
-      if (!processedBom.contains(childBom.getId())) {
-        getBomTree(childBom, bom, bomTree);
+    for (Long childBomId : node.getChildIdList()) {
+      if (!graph.containsKey(childBomId)) {
+        continue;
+      }
+      if (!processedBomIdSet.contains(childBomId)) {
+        getBomTree(graph, childBomId, bomId, bomTree, bomTreeMap, processedBomIdSet);
       } else {
-        log.debug("Already processed: {}", childBom.getId());
+        log.debug("Already processed: {}", childBomId);
+        bomTreeMap.remove(Pair.of(childBomId, bomId));
       }
-      validBomIds.add(childBom.getId());
     }
 
-    return validBomIds;
+    return bomTree;
   }
 
-  @Transactional
-  public void removeInvalidTree(List<Long> validBomIds, BillOfMaterial bom) {
-
-    List<TempBomTree> invalidBomTrees =
-        tempBomTreeRepo
-            .all()
-            .filter("self.bom.id not in (?1) and self.parentBom = ?2", validBomIds, bom)
-            .fetch();
+  /** Remove the nodes of components which were removed from their bill of material. */
+  protected void removeInvalidTree(Collection<TempBomTree> invalidBomTrees) {
 
     log.debug("Invalid bom trees: {}", invalidBomTrees);
 
-    if (!invalidBomTrees.isEmpty()) {
-      List<TempBomTree> childBomTrees =
-          tempBomTreeRepo.all().filter("self.parent in (?1)", invalidBomTrees).fetch();
+    if (invalidBomTrees.isEmpty()) {
+      return;
+    }
 
-      for (TempBomTree childBomTree : childBomTrees) {
-        childBomTree.setParent(null);
-        tempBomTreeRepo.save(childBomTree);
-      }
+    List<TempBomTree> childBomTrees =
+        tempBomTreeRepo.all().filter("self.parent in (?1)", invalidBomTrees).fetch();
+
+    for (TempBomTree childBomTree : childBomTrees) {
+      childBomTree.setParent(null);
     }
 
     for (TempBomTree invalidBomTree : invalidBomTrees) {
@@ -302,6 +311,14 @@ public class BillOfMaterialServiceImpl implements BillOfMaterialService {
     }
   }
 
+  protected static Long getId(Model model) {
+    return model != null ? model.getId() : null;
+  }
+
+  protected static <T extends Model> T getReference(Class<T> klass, Long id) {
+    return id != null ? JPA.em().getReference(klass, id) : null;
+  }
+
   @Override
   @Transactional
   public void setBillOfMaterialAsDefault(BillOfMaterial billOfMaterial) {
@@ -24,6 +24,7 @@ import com.axelor.apps.production.db.ManufOrder;
 import com.axelor.apps.production.db.OperationOrder;
 import com.axelor.apps.production.db.ProdProduct;
 import com.axelor.apps.production.db.repo.ManufOrderRepository;
+import com.axelor.apps.production.service.BillOfMaterialGraphService.Node;
 import com.axelor.apps.production.service.app.AppProductionService;
 import com.axelor.apps.purchase.db.repo.PurchaseOrderLineRepository;
 import com.axelor.apps.sale.db.repo.SaleOrderLineRepository;
@@ -45,14 +46,16 @@ import com.axelor.apps.supplychain.db.repo.MrpRepository;
 import com.axelor.apps.supplychain.service.MrpLineService;
 import com.axelor.apps.supplychain.service.MrpServiceImpl;
 import com.axelor.apps.tool.StringTool;
-import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +65,14 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
 
   protected ManufOrderRepository manufOrderRepository;
 
+  protected BillOfMaterialGraphService billOfMaterialGraphService;
+
+  /** The nodes of the bills of material used to compute the levels of the products. */
+  protected Map<Long, Node> bomGraph;
+
+  /** The highest level each bill of material was visited with. */
+  protected Map<Long, Integer> bomLevelMap;
+
   @Inject
   public MrpServiceProductionImpl(
       AppProductionService appProductionService,
@@ -77,7 +88,8 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
       MrpLineService mrpLineService,
       MrpForecastRepository mrpForecastRepository,
       ManufOrderRepository manufOrderRepository,
-      StockLocationService stockLocationService) {
+      StockLocationService stockLocationService,
+      BillOfMaterialGraphService billOfMaterialGraphService) {
 
     super(
         appProductionService,
@@ -95,6 +107,7 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
         stockLocationService);
 
     this.manufOrderRepository = manufOrderRepository;
+    this.billOfMaterialGraphService = billOfMaterialGraphService;
   }
 
   @Override
@@ -133,15 +146,15 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
                 today.atStartOfDay())
             .fetch();
 
-    for (ManufOrder manufOrder : manufOrderList) {
-
-      this.createManufOrderMrpLines(
-          mrpRepository.find(mrp.getId()),
-          manufOrderRepository.find(manufOrder.getId()),
-          mrpLineTypeRepository.find(manufOrderMrpLineType.getId()),
-          mrpLineTypeRepository.find(manufOrderNeedMrpLineType.getId()));
-      JPA.clear();
-    }
+    this.createMrpLines(
+        ManufOrder.class,
+        this.getIdList(manufOrderList),
+        (mrp, manufOrder) ->
+            this.createManufOrderMrpLines(
+                mrp,
+                manufOrder,
+                mrpLineTypeRepository.find(manufOrderMrpLineType.getId()),
+                mrpLineTypeRepository.find(manufOrderNeedMrpLineType.getId())));
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -344,6 +357,15 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
     return false;
   }
 
+  @Override
+  protected void assignProductAndLevel(Set<Product> productList) {
+
+    bomGraph = new HashMap<>();
+    bomLevelMap = new HashMap<>();
+
+    super.assignProductAndLevel(productList);
+  }
+
   @Override
   protected void assignProductAndLevel(Product product) {
 
@@ -373,11 +395,35 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
    */
   protected void assignProductLevel(BillOfMaterial billOfMaterial, int level) {
 
-    if (billOfMaterial.getBillOfMaterialSet() == null
-        || billOfMaterial.getBillOfMaterialSet().isEmpty()
-        || level > 100) {
+    if (bomGraph == null) {
+      bomGraph = new HashMap<>();
+      bomLevelMap = new HashMap<>();
+    }
 
-      Product subProduct = billOfMaterial.getProduct();
+    this.assignProductLevel(billOfMaterial.getId(), level);
+  }
+
+  /**
+   * Update the levels from the shared graph of the bills of material. A bill of material already
+   * visited with the same or a higher level is skipped, as it would not raise any level.
+   */
+  protected void assignProductLevel(Long billOfMaterialId, int level) {
+
+    if (!bomGraph.containsKey(billOfMaterialId)) {
+      bomGraph.putAll(billOfMaterialGraphService.getGraph(billOfMaterialId));
+    }
+
+    Node node = bomGraph.get(billOfMaterialId);
+    Integer visitedLevel = bomLevelMap.get(billOfMaterialId);
+
+    if (node == null || (visitedLevel != null && visitedLevel >= level)) {
+      return;
+    }
+    bomLevelMap.put(billOfMaterialId, level);
+
+    if (node.getChildIdList().isEmpty() || level > 100) {
+
+      Product subProduct = productRepository.find(node.getProductId());
 
       log.debug("Add of the sub product : {} for the level : {} ", subProduct.getFullName(), level);
       this.productMap.put(subProduct.getId(), this.getMaxLevel(subProduct, level));
@@ -386,15 +432,20 @@ public class MrpServiceProductionImpl extends MrpServiceImpl {
 
       level = level + 1;
 
-      for (BillOfMaterial subBillOfMaterial : billOfMaterial.getBillOfMaterialSet()) {
+      for (Long subBillOfMaterialId : node.getChildIdList()) {
+
+        Node subNode = bomGraph.get(subBillOfMaterialId);
+        if (subNode == null || subNode.getProductId() == null) {
+          continue;
+        }
 
-        Product subProduct = subBillOfMaterial.getProduct();
+        Product subProduct = productRepository.find(subNode.getProductId());
 
         if (this.isMrpProduct(subProduct)) {
-          this.assignProductLevel(subBillOfMaterial, level);
+          this.assignProductLevel(subBillOfMaterialId, level);
 
           if (subProduct.getDefaultBillOfMaterial() != null) {
-            this.assignProductLevel(subProduct.getDefaultBillOfMaterial(), level);
+            this.assignProductLevel(subProduct.getDefaultBillOfMaterial().getId(), level);
           }
         }
       }
@@ -0,0 +1,269 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.batch;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.repo.ProductRepository;
+import com.axelor.apps.base.service.administration.AbstractBatch;
+import com.axelor.apps.production.db.BillOfMaterial;
+import com.axelor.apps.production.db.CostSheet;
+import com.axelor.apps.production.db.ProductionBatch;
+import com.axelor.apps.production.db.repo.BillOfMaterialRepository;
+import com.axelor.apps.production.exceptions.IExceptionMessage;
+import com.axelor.apps.production.service.BillOfMaterialService;
+import com.axelor.apps.production.service.costsheet.CostSheetLineSnapshot;
+import com.axelor.apps.production.service.costsheet.CostSheetService;
+import com.axelor.db.JPA;
+import com.axelor.exception.service.TraceBackService;
+import com.axelor.i18n.I18n;
+import com.axelor.inject.Beans;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.Query;
+
+/**
+ * Compute the cost sheets of all the bills of material, and the cost price of their products.
+ *
+ * <p>The bills of material are computed by level, from the ones without any sub bill of material.
+ * The lines of each computed sub bill of material are kept in memory and copied in the cost sheets
+ * of the upper levels instead of being computed again, and the cost price of its product is
+ * updated before the upper levels use it. The bills of material of a same level don't depend on
+ * each other, so each level is split in chunks computed in parallel by the batch workers, each one
+ * with its own persistence context.
+ */
+public class BatchComputeBillOfMaterialCostPrice extends AbstractBatch {
+
+  protected BillOfMaterialRepository billOfMaterialRepo;
+
+  /** The bills of material used by each bill of material, whose cost must be computed before. */
+  protected Map<Long, Set<Long>> dependencyMap = new TreeMap<>();
+
+  protected Set<Long> subBillOfMaterialIdSet = new HashSet<>();
+
+  protected Map<Long, CostSheetLineSnapshot> snapshotMap = new ConcurrentHashMap<>();
+
+  @Inject
+  public BatchComputeBillOfMaterialCostPrice(BillOfMaterialRepository billOfMaterialRepo) {
+    this.billOfMaterialRepo = billOfMaterialRepo;
+  }
+
+  @Override
+  protected void process() {
+
+    long startTime = System.currentTimeMillis();
+    ProductionBatch productionBatch = batch.getProductionBatch();
+
+    this.loadDependencies(productionBatch.getCompany());
+    List<List<Long>> levelList = this.getLevelList();
+    addTotal(dependencyMap.size());
+
+    int threadCount = getThreadCount();
+    int fetchLimit = getFetchLimit();
+    Long batchId = batch.getId();
+
+    for (List<Long> billOfMaterialIdList : levelList) {
+      int chunkSize = Math.max(1, (billOfMaterialIdList.size() + threadCount - 1) / threadCount);
+      processInParallel(
+          Lists.partition(billOfMaterialIdList, chunkSize),
+          chunk -> this.compute(chunk, fetchLimit, batchId));
+    }
+
+    LOG.info(
+        "{} bills of material on {} levels computed in {} ms",
+        dependencyMap.size(),
+        levelList.size(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Compute the given bills of material, in their own transactions, clearing the persistence
+   * context after each chunk.
+   */
+  protected void compute(List<Long> billOfMaterialIdList, int fetchLimit, Long batchId) {
+
+    CostSheetService costSheetService = Beans.get(CostSheetService.class);
+    BillOfMaterialService billOfMaterialService = Beans.get(BillOfMaterialService.class);
+    int count = 0;
+
+    try {
+      for (Long billOfMaterialId : billOfMaterialIdList) {
+        try {
+          BillOfMaterial billOfMaterial = billOfMaterialRepo.find(billOfMaterialId);
+          CostSheet costSheet = costSheetService.computeCostPrice(billOfMaterial, snapshotMap);
+
+          if (subBillOfMaterialIdSet.contains(billOfMaterialId)) {
+            // the line of the produced product is the first line of the cost sheet
+            snapshotMap.put(
+                billOfMaterialId,
+                new CostSheetLineSnapshot(costSheet.getCostSheetLineList().get(0)));
+          }
+
+          Product product = billOfMaterial.getProduct();
+          if (billOfMaterial.equals(product.getDefaultBillOfMaterial())
+              && product.getCostTypeSelect() == ProductRepository.COST_TYPE_STANDARD) {
+            billOfMaterialService.updateProductCostPrice(billOfMaterial);
+          }
+          incrementDone();
+        } catch (Exception e) {
+          incrementAnomaly();
+          TraceBackService.trace(
+              e, IExceptionMessage.BATCH_COMPUTE_BILL_OF_MATERIAL_COST_PRICE, batchId);
+          JPA.clear();
+        }
+
+        if (++count % fetchLimit == 0) {
+          JPA.clear();
+        }
+      }
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  /**
+   * Load, with one query, the bills of material having components or a production process, and the
+   * ones they depend on: their sub bills of material, and the default bill of material of their
+   * components.
+   */
+  @SuppressWarnings("unchecked")
+  protected void loadDependencies(Company company) {
+
+    Query query =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, child.id, child.defineSubBillOfMaterial, defaultBillOfMaterial.id "
+                    + "FROM BillOfMaterial self "
+                    + "LEFT JOIN self.billOfMaterialSet child "
+                    + "LEFT JOIN child.product product "
+                    + "LEFT JOIN product.defaultBillOfMaterial defaultBillOfMaterial "
+                    + "WHERE (self.personalized IS NULL OR self.personalized = FALSE) "
+                    + "AND (child.id IS NOT NULL OR self.prodProcess IS NOT NULL)"
+                    + (company != null ? " AND self.company = :company" : ""));
+    if (company != null) {
+      query.setParameter("company", company);
+    }
+    List<Object[]> resultList = query.getResultList();
+
+    for (Object[] result : resultList) {
+      dependencyMap.computeIfAbsent((Long) result[0], key -> new HashSet<>());
+    }
+
+    for (Object[] result : resultList) {
+      Long billOfMaterialId = (Long) result[0];
+      Long childId = (Long) result[1];
+      Long defaultBillOfMaterialId = (Long) result[3];
+
+      // a bill of material with only a production process
+      if (childId == null) {
+        continue;
+      }
+
+      if (Boolean.TRUE.equals(result[2]) && dependencyMap.containsKey(childId)) {
+        this.addDependency(billOfMaterialId, childId);
+        subBillOfMaterialIdSet.add(childId);
+      }
+      if (defaultBillOfMaterialId != null && dependencyMap.containsKey(defaultBillOfMaterialId)) {
+        this.addDependency(billOfMaterialId, defaultBillOfMaterialId);
+      }
+    }
+  }
+
+  protected void addDependency(Long billOfMaterialId, Long dependencyId) {
+    if (!billOfMaterialId.equals(dependencyId)) {
+      dependencyMap.get(billOfMaterialId).add(dependencyId);
+    }
+  }
+
+  /**
+   * Sort the bills of material by level: each level only depends on the previous ones. The bills
+   * of material depending on each other are put on a last level.
+   */
+  protected List<List<Long>> getLevelList() {
+
+    Map<Long, Integer> remainingMap = new HashMap<>();
+    Map<Long, List<Long>> dependentMap = new HashMap<>();
+    List<Long> billOfMaterialIdList = new ArrayList<>();
+
+    for (Map.Entry<Long, Set<Long>> entry : dependencyMap.entrySet()) {
+      remainingMap.put(entry.getKey(), entry.getValue().size());
+      for (Long dependencyId : entry.getValue()) {
+        dependentMap.computeIfAbsent(dependencyId, key -> new ArrayList<>()).add(entry.getKey());
+      }
+      if (entry.getValue().isEmpty()) {
+        billOfMaterialIdList.add(entry.getKey());
+      }
+    }
+
+    List<List<Long>> levelList = new ArrayList<>();
+
+    while (!billOfMaterialIdList.isEmpty()) {
+      levelList.add(billOfMaterialIdList);
+      List<Long> nextBillOfMaterialIdList = new ArrayList<>();
+
+      for (Long billOfMaterialId : billOfMaterialIdList) {
+        remainingMap.remove(billOfMaterialId);
+        for (Long dependentId :
+            dependentMap.getOrDefault(billOfMaterialId, Collections.emptyList())) {
+          if (remainingMap.merge(dependentId, -1, Integer::sum) == 0) {
+            nextBillOfMaterialIdList.add(dependentId);
+          }
+        }
+      }
+
+      Collections.sort(nextBillOfMaterialIdList);
+      billOfMaterialIdList = nextBillOfMaterialIdList;
+    }
+
+    if (!remainingMap.isEmpty()) {
+      List<Long> cycleBillOfMaterialIdList = new ArrayList<>(remainingMap.keySet());
+      Collections.sort(cycleBillOfMaterialIdList);
+      levelList.add(cycleBillOfMaterialIdList);
+    }
+
+    return levelList;
+  }
+
+  @Override
+  protected void stop() {
+
+    String comment =
+        String.format(
+            "\t* %s "
+                + I18n.get(IExceptionMessage.BATCH_COMPUTE_BILL_OF_MATERIAL_COST_PRICE)
+                + "\n",
+            batch.getDone());
+
+    comment +=
+        String.format(
+            "\t" + I18n.get(com.axelor.apps.base.exceptions.IExceptionMessage.ALARM_ENGINE_BATCH_4),
+            batch.getAnomaly());
+
+    addComment(comment);
+    super.stop();
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.costsheet;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.base.db.Unit;
+import com.axelor.apps.production.db.CostSheetGroup;
+import com.axelor.apps.production.db.CostSheetLine;
+import com.axelor.apps.production.db.WorkCenter;
+import com.axelor.db.JPA;
+import com.axelor.db.Model;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The values of a computed cost sheet line and of its sub lines. It doesn't keep any entity, so it
+ * can be used from another persistence context to copy the lines in other cost sheets.
+ */
+public class CostSheetLineSnapshot {
+
+  protected final String code;
+  protected final String name;
+  protected final int bomLevel;
+  protected final BigDecimal consumptionQty;
+  protected final BigDecimal costPrice;
+  protected final int typeSelect;
+  protected final int typeSelectIcon;
+  protected final Long costSheetGroupId;
+  protected final Long productId;
+  protected final Long unitId;
+  protected final Long workCenterId;
+  protected final List<CostSheetLineSnapshot> subLineList;
+
+  public CostSheetLineSnapshot(CostSheetLine costSheetLine) {
+
+    this.code = costSheetLine.getCode();
+    this.name = costSheetLine.getName();
+    this.bomLevel = costSheetLine.getBomLevel();
+    this.consumptionQty = costSheetLine.getConsumptionQty();
+    this.costPrice = costSheetLine.getCostPrice();
+    this.typeSelect = costSheetLine.getTypeSelect();
+    this.typeSelectIcon = costSheetLine.getTypeSelectIcon();
+    this.costSheetGroupId = getId(costSheetLine.getCostSheetGroup());
+    this.productId = getId(costSheetLine.getProduct());
+    this.unitId = getId(costSheetLine.getUnit());
+    this.workCenterId = getId(costSheetLine.getWorkCenter());
+
+    List<CostSheetLineSnapshot> subLineList = new ArrayList<>();
+    if (costSheetLine.getCostSheetLineList() != null) {
+      for (CostSheetLine subLine : costSheetLine.getCostSheetLineList()) {
+        subLineList.add(new CostSheetLineSnapshot(subLine));
+      }
+    }
+    this.subLineList = Collections.unmodifiableList(subLineList);
+  }
+
+  /**
+   * Copy the sub lines of the snapshot under the given line.
+   *
+   * @param parentCostSheetLine the line to add the sub lines to
+   * @param bomLevelOffset added to the level of the copied lines
+   */
+  public void copySubLines(CostSheetLine parentCostSheetLine, int bomLevelOffset) {
+
+    for (CostSheetLineSnapshot subLine : subLineList) {
+      parentCostSheetLine.addCostSheetLineListItem(subLine.copy(bomLevelOffset));
+    }
+  }
+
+  protected CostSheetLine copy(int bomLevelOffset) {
+
+    CostSheetLine costSheetLine = new CostSheetLine(code, name);
+    costSheetLine.setBomLevel(bomLevel + bomLevelOffset);
+    costSheetLine.setConsumptionQty(consumptionQty);
+    costSheetLine.setCostPrice(costPrice);
+    costSheetLine.setTypeSelect(typeSelect);
+    costSheetLine.setTypeSelectIcon(typeSelectIcon);
+    costSheetLine.setCostSheetGroup(getReference(CostSheetGroup.class, costSheetGroupId));
+    costSheetLine.setProduct(getReference(Product.class, productId));
+    costSheetLine.setUnit(getReference(Unit.class, unitId));
+    costSheetLine.setWorkCenter(getReference(WorkCenter.class, workCenterId));
+
+    this.copySubLines(costSheetLine, bomLevelOffset);
+
+    return costSheetLine;
+  }
+
+  protected static Long getId(Model model) {
+    return model != null ? model.getId() : null;
+  }
+
+  protected static <T extends Model> T getReference(Class<T> klass, Long id) {
+    return id != null ? JPA.em().getReference(klass, id) : null;
+  }
+}
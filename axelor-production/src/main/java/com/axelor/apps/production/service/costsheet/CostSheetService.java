@@ -23,12 +23,28 @@ import com.axelor.apps.production.db.ManufOrder;
 import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.time.LocalDate;
+import java.util.Map;
 
 public interface CostSheetService {
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public CostSheet computeCostPrice(BillOfMaterial billOfMaterial) throws AxelorException;
 
+  /**
+   * Compute the cost price of a bill of material. The lines of the sub bills of material found in
+   * the given map are copied from their snapshot instead of being computed again.
+   *
+   * @param billOfMaterial the bill of material to compute
+   * @param subBillOfMaterialSnapshotMap the snapshots of the produced product line of the sub bills
+   *     of material already computed, by bill of material id
+   * @return the computed cost sheet
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public CostSheet computeCostPrice(
+      BillOfMaterial billOfMaterial, Map<Long, CostSheetLineSnapshot> subBillOfMaterialSnapshotMap)
+      throws AxelorException;
+
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public CostSheet computeCostPrice(
       ManufOrder manufOrder, int calculationTypeSelect, LocalDate calculationDate)
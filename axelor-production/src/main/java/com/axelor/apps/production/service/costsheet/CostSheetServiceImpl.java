@@ -39,7 +39,9 @@ import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +60,7 @@ public class CostSheetServiceImpl implements CostSheetService {
   protected Unit cycleUnit;
   protected boolean manageResidualProductOnBom;
   protected CostSheet costSheet;
+  protected Map<Long, CostSheetLineSnapshot> subBillOfMaterialSnapshotMap = Collections.emptyMap();
 
   @Inject
   public CostSheetServiceImpl(
@@ -86,7 +89,17 @@ public class CostSheetServiceImpl implements CostSheetService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public CostSheet computeCostPrice(BillOfMaterial billOfMaterial) throws AxelorException {
 
+    return this.computeCostPrice(billOfMaterial, Collections.emptyMap());
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public CostSheet computeCostPrice(
+      BillOfMaterial billOfMaterial, Map<Long, CostSheetLineSnapshot> subBillOfMaterialSnapshotMap)
+      throws AxelorException {
+
     this.init();
+    this.subBillOfMaterialSnapshotMap = subBillOfMaterialSnapshotMap;
 
     CostSheetLine producedCostSheetLine =
         costSheetLineService.createProducedProductCostSheetLine(
@@ -257,13 +270,33 @@ public class CostSheetServiceImpl implements CostSheetService {
           }
 
           if (billOfMaterialLine.getDefineSubBillOfMaterial()) {
-            this._computeCostPrice(billOfMaterialLine, bomLevel, costSheetLine);
+            this._computeSubBillOfMaterial(billOfMaterialLine, bomLevel, costSheetLine);
           }
         }
       }
     }
   }
 
+  /**
+   * Copy the lines of the sub bill of material from its snapshot if it has one, else compute them.
+   * The lines are computed when the line of the sub bill of material was merged with a previous
+   * line of the same product, so its sub lines are merged too.
+   */
+  protected void _computeSubBillOfMaterial(
+      BillOfMaterial billOfMaterial, int bomLevel, CostSheetLine costSheetLine)
+      throws AxelorException {
+
+    CostSheetLineSnapshot snapshot = subBillOfMaterialSnapshotMap.get(billOfMaterial.getId());
+
+    if (snapshot != null
+        && (costSheetLine.getCostSheetLineList() == null
+            || costSheetLine.getCostSheetLineList().isEmpty())) {
+      snapshot.copySubLines(costSheetLine, bomLevel);
+    } else {
+      this._computeCostPrice(billOfMaterial, bomLevel, costSheetLine);
+    }
+  }
+
   protected void _computeProcess(
       ProdProcess prodProcess,
       BigDecimal producedQty,
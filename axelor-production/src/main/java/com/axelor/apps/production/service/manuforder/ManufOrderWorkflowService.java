@@ -48,6 +48,7 @@ import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -74,50 +75,71 @@ public class ManufOrderWorkflowService {
 
   @Transactional(rollbackOn = {AxelorException.class, RuntimeException.class})
   public ManufOrder plan(ManufOrder manufOrder) throws AxelorException {
+
+    this.plan(Collections.singletonList(manufOrder));
+
+    return manufOrder;
+  }
+
+  /**
+   * Plan manufacturing orders. Their operation orders are planned together, by manufacturing order
+   * priority, so the ones of each manufacturing order take the load of the previous ones into
+   * account.
+   *
+   * @param manufOrderList
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, RuntimeException.class})
+  public void plan(List<ManufOrder> manufOrderList) throws AxelorException {
     ManufOrderService manufOrderService = Beans.get(ManufOrderService.class);
+    List<OperationOrder> operationOrderList = new ArrayList<>();
 
-    if (Beans.get(SequenceService.class)
-        .isEmptyOrDraftSequenceNumber(manufOrder.getManufOrderSeq())) {
-      manufOrder.setManufOrderSeq(manufOrderService.getManufOrderSeq(manufOrder));
-    }
+    for (ManufOrder manufOrder : manufOrderList) {
+      if (Beans.get(SequenceService.class)
+          .isEmptyOrDraftSequenceNumber(manufOrder.getManufOrderSeq())) {
+        manufOrder.setManufOrderSeq(manufOrderService.getManufOrderSeq(manufOrder));
+      }
 
-    if (CollectionUtils.isEmpty(manufOrder.getOperationOrderList())) {
-      manufOrderService.preFillOperations(manufOrder);
-    }
-    if (!manufOrder.getIsConsProOnOperation()
-        && CollectionUtils.isEmpty(manufOrder.getToConsumeProdProductList())) {
-      manufOrderService.createToConsumeProdProductList(manufOrder);
-    }
+      if (CollectionUtils.isEmpty(manufOrder.getOperationOrderList())) {
+        manufOrderService.preFillOperations(manufOrder);
+      }
+      if (!manufOrder.getIsConsProOnOperation()
+          && CollectionUtils.isEmpty(manufOrder.getToConsumeProdProductList())) {
+        manufOrderService.createToConsumeProdProductList(manufOrder);
+      }
 
-    if (CollectionUtils.isEmpty(manufOrder.getToProduceProdProductList())) {
-      manufOrderService.createToProduceProdProductList(manufOrder);
-    }
+      if (CollectionUtils.isEmpty(manufOrder.getToProduceProdProductList())) {
+        manufOrderService.createToProduceProdProductList(manufOrder);
+      }
 
-    if (manufOrder.getPlannedStartDateT() == null) {
-      manufOrder.setPlannedStartDateT(
-          Beans.get(AppProductionService.class).getTodayDateTime().toLocalDateTime());
-    }
+      if (manufOrder.getPlannedStartDateT() == null) {
+        manufOrder.setPlannedStartDateT(
+            Beans.get(AppProductionService.class).getTodayDateTime().toLocalDateTime());
+      }
 
-    for (OperationOrder operationOrder : getSortedOperationOrderList(manufOrder)) {
-      operationOrderWorkflowService.plan(operationOrder);
+      operationOrderList.addAll(getSortedOperationOrderList(manufOrder));
     }
 
-    manufOrder.setPlannedEndDateT(this.computePlannedEndDateT(manufOrder));
+    operationOrderWorkflowService.plan(operationOrderList);
 
-    if (manufOrder.getBillOfMaterial() != null) {
-      manufOrder.setUnit(manufOrder.getBillOfMaterial().getUnit());
-    }
+    for (ManufOrder manufOrder : manufOrderList) {
+      manufOrder.setPlannedEndDateT(this.computePlannedEndDateT(manufOrder));
 
-    if (!manufOrder.getIsConsProOnOperation()) {
-      manufOrderStockMoveService.createToConsumeStockMove(manufOrder);
-    }
+      if (manufOrder.getBillOfMaterial() != null) {
+        manufOrder.setUnit(manufOrder.getBillOfMaterial().getUnit());
+      }
+
+      if (!manufOrder.getIsConsProOnOperation()) {
+        manufOrderStockMoveService.createToConsumeStockMove(manufOrder);
+      }
 
-    manufOrderStockMoveService.createToProduceStockMove(manufOrder);
-    manufOrder.setStatusSelect(ManufOrderRepository.STATUS_PLANNED);
-    manufOrder.setCancelReason(null);
-    manufOrder.setCancelReasonStr(null);
+      manufOrderStockMoveService.createToProduceStockMove(manufOrder);
+      manufOrder.setStatusSelect(ManufOrderRepository.STATUS_PLANNED);
+      manufOrder.setCancelReason(null);
+      manufOrder.setCancelReasonStr(null);
 
-    return manufOrderRepo.save(manufOrder);
+      manufOrderRepo.save(manufOrder);
+    }
   }
 
   @Transactional(rollbackOn = {AxelorException.class, RuntimeException.class})
@@ -360,10 +382,7 @@ public class ManufOrderWorkflowService {
     if (manufOrder.getOperationOrderList() != null) {
       List<OperationOrder> operationOrderList = getSortedOperationOrderList(manufOrder);
       operationOrderWorkflowService.resetPlannedDates(operationOrderList);
-
-      for (OperationOrder operationOrder : operationOrderList) {
-        operationOrderWorkflowService.replan(operationOrder);
-      }
+      operationOrderWorkflowService.replan(operationOrderList);
     }
 
     manufOrder.setPlannedEndDateT(computePlannedEndDateT(manufOrder));
@@ -0,0 +1,45 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.production.db.OperationOrder;
+import com.axelor.exception.AxelorException;
+import java.util.List;
+
+/**
+ * Finite capacity planning of the operation orders: an operation order only starts when its
+ * machine is free from the other operation orders, during the working hours of the machine.
+ */
+public interface OperationOrderPlanningService {
+
+  /**
+   * Compute the planned dates of the operation orders, of one or many manufacturing orders.
+   *
+   * <p>The manufacturing orders are planned by decreasing priority, then by planned date. The
+   * operation orders of a manufacturing order are planned by priority, each one after the previous
+   * priorities. The load already planned on the machines by the other operation orders is taken
+   * into account.
+   *
+   * @param operationOrderList the operation orders to plan
+   * @param backward if true, plan back from the planned end date of the manufacturing orders,
+   *     instead of forward from their planned start date
+   * @throws AxelorException if the duration of an operation order can not be computed
+   */
+  public void plan(List<OperationOrder> operationOrderList, boolean backward)
+      throws AxelorException;
+}
@@ -0,0 +1,601 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.base.db.Company;
+import com.axelor.apps.base.db.DayPlanning;
+import com.axelor.apps.base.db.EventsPlanning;
+import com.axelor.apps.base.db.EventsPlanningLine;
+import com.axelor.apps.base.db.WeeklyPlanning;
+import com.axelor.apps.production.db.ManufOrder;
+import com.axelor.apps.production.db.OperationOrder;
+import com.axelor.apps.production.db.WorkCenter;
+import com.axelor.apps.production.db.repo.OperationOrderRepository;
+import com.axelor.apps.production.service.app.AppProductionService;
+import com.axelor.apps.tool.date.DurationTool;
+import com.axelor.db.JPA;
+import com.axelor.exception.AxelorException;
+import com.google.common.base.MoreObjects;
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+import java.lang.invoke.MethodHandles;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class OperationOrderPlanningServiceImpl implements OperationOrderPlanningService {
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  protected static final int SECONDS_PER_DAY = 86400;
+
+  /** Number of days searched for working hours before giving up on the calendar. */
+  protected static final int MAX_CALENDAR_DAYS = 3660;
+
+  protected static final int JDBC_BATCH_SIZE = 100;
+
+  protected static final List<Integer> LOADING_STATUS_LIST =
+      Arrays.asList(
+          OperationOrderRepository.STATUS_PLANNED,
+          OperationOrderRepository.STATUS_IN_PROGRESS,
+          OperationOrderRepository.STATUS_STANDBY);
+
+  protected OperationOrderWorkflowService operationOrderWorkflowService;
+  protected AppProductionService appProductionService;
+
+  @Inject
+  public OperationOrderPlanningServiceImpl(
+      OperationOrderWorkflowService operationOrderWorkflowService,
+      AppProductionService appProductionService) {
+    this.operationOrderWorkflowService = operationOrderWorkflowService;
+    this.appProductionService = appProductionService;
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void plan(List<OperationOrder> operationOrderList, boolean backward)
+      throws AxelorException {
+
+    long startTime = System.currentTimeMillis();
+
+    Map<ManufOrder, List<OperationOrder>> operationOrderMap = new IdentityHashMap<>();
+    Set<WorkCenter> resourceSet = new HashSet<>();
+    for (OperationOrder operationOrder : operationOrderList) {
+      if (operationOrder.getManufOrder() == null) {
+        continue;
+      }
+      operationOrderMap
+          .computeIfAbsent(operationOrder.getManufOrder(), key -> new ArrayList<>())
+          .add(operationOrder);
+      WorkCenter resource = this.getResource(operationOrder);
+      if (resource != null) {
+        resourceSet.add(resource);
+      }
+    }
+
+    if (operationOrderMap.isEmpty()) {
+      return;
+    }
+
+    JPA.em().unwrap(Session.class).setJdbcBatchSize(JDBC_BATCH_SIZE);
+
+    Set<OperationOrder> toPlanSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    toPlanSet.addAll(operationOrderList);
+    Map<Long, Timeline> timelineMap = this.loadTimelines(resourceSet, toPlanSet);
+    Map<String, WorkCalendar> calendarMap = new HashMap<>();
+
+    List<ManufOrder> manufOrderList = new ArrayList<>(operationOrderMap.keySet());
+    manufOrderList.sort(this.getManufOrderComparator(backward));
+
+    for (ManufOrder manufOrder : manufOrderList) {
+      if (backward && manufOrder.getPlannedEndDateT() != null) {
+        this.planBackward(
+            manufOrder, operationOrderMap.get(manufOrder), toPlanSet, timelineMap, calendarMap);
+      } else {
+        this.planForward(
+            manufOrder, operationOrderMap.get(manufOrder), toPlanSet, timelineMap, calendarMap);
+      }
+    }
+
+    log.info(
+        "{} operation orders of {} manufacturing orders planned in {} ms",
+        operationOrderList.size(),
+        manufOrderList.size(),
+        System.currentTimeMillis() - startTime);
+  }
+
+  /** Manufacturing orders by decreasing priority, then by planned date. */
+  protected Comparator<ManufOrder> getManufOrderComparator(boolean backward) {
+
+    Comparator<ManufOrder> byPriority =
+        Comparator.comparing(
+            manufOrder -> MoreObjects.firstNonNull(manufOrder.getPrioritySelect(), 0));
+    Comparator<ManufOrder> byDate =
+        Comparator.comparing(
+            manufOrder ->
+                backward ? manufOrder.getPlannedEndDateT() : manufOrder.getPlannedStartDateT(),
+            Comparator.nullsLast(Comparator.naturalOrder()));
+    Comparator<ManufOrder> byId =
+        Comparator.comparing(ManufOrder::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    return byPriority.reversed().thenComparing(byDate).thenComparing(byId);
+  }
+
+  /**
+   * Plan each priority of operation orders as soon as the previous priorities are finished and the
+   * machines are free.
+   */
+  protected void planForward(
+      ManufOrder manufOrder,
+      List<OperationOrder> operationOrderList,
+      Set<OperationOrder> toPlanSet,
+      Map<Long, Timeline> timelineMap,
+      Map<String, WorkCalendar> calendarMap)
+      throws AxelorException {
+
+    if (manufOrder.getPlannedStartDateT() == null) {
+      manufOrder.setPlannedStartDateT(appProductionService.getTodayDateTime().toLocalDateTime());
+    }
+
+    NavigableMap<Integer, List<OperationOrder>> priorityMap =
+        this.getPriorityMap(operationOrderList);
+    List<OperationOrder> otherOperationOrderList =
+        this.getOtherOperationOrderList(manufOrder, toPlanSet);
+
+    for (Map.Entry<Integer, List<OperationOrder>> entry : priorityMap.entrySet()) {
+      LocalDateTime earliestStartDateT = manufOrder.getPlannedStartDateT();
+
+      for (OperationOrder otherOperationOrder : otherOperationOrderList) {
+        if (this.getPriority(otherOperationOrder) < entry.getKey()
+            && otherOperationOrder.getPlannedEndDateT().isAfter(earliestStartDateT)) {
+          earliestStartDateT = otherOperationOrder.getPlannedEndDateT();
+        }
+      }
+      for (List<OperationOrder> previousList : priorityMap.headMap(entry.getKey()).values()) {
+        for (OperationOrder previous : previousList) {
+          if (previous.getPlannedEndDateT().isAfter(earliestStartDateT)) {
+            earliestStartDateT = previous.getPlannedEndDateT();
+          }
+        }
+      }
+
+      for (OperationOrder operationOrder : entry.getValue()) {
+        WorkCalendar calendar = this.getCalendar(operationOrder, calendarMap);
+        long duration = this.getDuration(operationOrder);
+        Timeline timeline = this.getTimeline(operationOrder, timelineMap);
+
+        LocalDateTime startDateT = calendar.addWorkingTime(earliestStartDateT, 0);
+        LocalDateTime endDateT = calendar.addWorkingTime(startDateT, duration);
+        if (timeline != null) {
+          LocalDateTime busyEndDateT;
+          while ((busyEndDateT = timeline.getConflictEnd(startDateT, endDateT)) != null) {
+            startDateT = calendar.addWorkingTime(busyEndDateT, 0);
+            endDateT = calendar.addWorkingTime(startDateT, duration);
+          }
+          timeline.reserve(startDateT, endDateT);
+        }
+        this.setPlannedDates(operationOrder, startDateT, endDateT);
+      }
+    }
+  }
+
+  /**
+   * Plan each priority of operation orders, from the last one, so it ends before the next
+   * priorities start and while the machines are free.
+   */
+  protected void planBackward(
+      ManufOrder manufOrder,
+      List<OperationOrder> operationOrderList,
+      Set<OperationOrder> toPlanSet,
+      Map<Long, Timeline> timelineMap,
+      Map<String, WorkCalendar> calendarMap)
+      throws AxelorException {
+
+    NavigableMap<Integer, List<OperationOrder>> priorityMap =
+        this.getPriorityMap(operationOrderList);
+    List<OperationOrder> otherOperationOrderList =
+        this.getOtherOperationOrderList(manufOrder, toPlanSet);
+    LocalDateTime plannedStartDateT = manufOrder.getPlannedEndDateT();
+
+    for (Map.Entry<Integer, List<OperationOrder>> entry : priorityMap.descendingMap().entrySet()) {
+      LocalDateTime latestEndDateT = manufOrder.getPlannedEndDateT();
+
+      for (OperationOrder otherOperationOrder : otherOperationOrderList) {
+        if (this.getPriority(otherOperationOrder) > entry.getKey()
+            && otherOperationOrder.getPlannedStartDateT().isBefore(latestEndDateT)) {
+          latestEndDateT = otherOperationOrder.getPlannedStartDateT();
+        }
+      }
+      for (List<OperationOrder> nextList : priorityMap.tailMap(entry.getKey(), false).values()) {
+        for (OperationOrder next : nextList) {
+          if (next.getPlannedStartDateT().isBefore(latestEndDateT)) {
+            latestEndDateT = next.getPlannedStartDateT();
+          }
+        }
+      }
+
+      for (OperationOrder operationOrder : entry.getValue()) {
+        WorkCalendar calendar = this.getCalendar(operationOrder, calendarMap);
+        long duration = this.getDuration(operationOrder);
+        Timeline timeline = this.getTimeline(operationOrder, timelineMap);
+
+        LocalDateTime endDateT = calendar.subtractWorkingTime(latestEndDateT, 0);
+        LocalDateTime startDateT = calendar.subtractWorkingTime(endDateT, duration);
+        if (timeline != null) {
+          LocalDateTime busyStartDateT;
+          while ((busyStartDateT = timeline.getConflictStart(startDateT, endDateT)) != null) {
+            endDateT = calendar.subtractWorkingTime(busyStartDateT, 0);
+            startDateT = calendar.subtractWorkingTime(endDateT, duration);
+          }
+          timeline.reserve(startDateT, endDateT);
+        }
+        this.setPlannedDates(operationOrder, startDateT, endDateT);
+
+        if (startDateT.isBefore(plannedStartDateT)) {
+          plannedStartDateT = startDateT;
+        }
+      }
+    }
+
+    manufOrder.setPlannedStartDateT(plannedStartDateT);
+  }
+
+  protected void setPlannedDates(
+      OperationOrder operationOrder, LocalDateTime startDateT, LocalDateTime endDateT) {
+
+    operationOrder.setPlannedStartDateT(startDateT);
+    operationOrder.setPlannedEndDateT(endDateT);
+    operationOrder.setPlannedDuration(
+        DurationTool.getSecondsDuration(Duration.between(startDateT, endDateT)));
+  }
+
+  protected NavigableMap<Integer, List<OperationOrder>> getPriorityMap(
+      List<OperationOrder> operationOrderList) {
+
+    NavigableMap<Integer, List<OperationOrder>> priorityMap = new TreeMap<>();
+    for (OperationOrder operationOrder : operationOrderList) {
+      priorityMap
+          .computeIfAbsent(this.getPriority(operationOrder), key -> new ArrayList<>())
+          .add(operationOrder);
+    }
+    return priorityMap;
+  }
+
+  /** The operation orders of the manufacturing order already planned, and not planned again. */
+  protected List<OperationOrder> getOtherOperationOrderList(
+      ManufOrder manufOrder, Set<OperationOrder> toPlanSet) {
+
+    List<OperationOrder> otherOperationOrderList = new ArrayList<>();
+    if (manufOrder.getOperationOrderList() == null) {
+      return otherOperationOrderList;
+    }
+    for (OperationOrder operationOrder : manufOrder.getOperationOrderList()) {
+      if (!toPlanSet.contains(operationOrder)
+          && LOADING_STATUS_LIST.contains(operationOrder.getStatusSelect())
+          && operationOrder.getPlannedStartDateT() != null
+          && operationOrder.getPlannedEndDateT() != null) {
+        otherOperationOrderList.add(operationOrder);
+      }
+    }
+    return otherOperationOrderList;
+  }
+
+  protected int getPriority(OperationOrder operationOrder) {
+    return MoreObjects.firstNonNull(operationOrder.getPriority(), 0);
+  }
+
+  protected long getDuration(OperationOrder operationOrder) throws AxelorException {
+
+    if (operationOrder.getWorkCenter() == null) {
+      return 0;
+    }
+    return operationOrderWorkflowService.computeEntireCycleDuration(
+        operationOrder, operationOrder.getManufOrder().getQty());
+  }
+
+  /**
+   * The work center whose machine runs the operation order, one operation order at a time, or null
+   * if no machine is used and the operation orders of the work center may run at the same time.
+   */
+  protected WorkCenter getResource(OperationOrder operationOrder) {
+    if (operationOrder.getMachineWorkCenter() != null) {
+      return operationOrder.getMachineWorkCenter();
+    }
+    WorkCenter workCenter = operationOrder.getWorkCenter();
+    return workCenter != null && workCenter.getMachine() != null ? workCenter : null;
+  }
+
+  protected Timeline getTimeline(OperationOrder operationOrder, Map<Long, Timeline> timelineMap) {
+
+    WorkCenter resource = this.getResource(operationOrder);
+    if (resource == null) {
+      return null;
+    }
+    if (resource.getId() == null) {
+      return new Timeline();
+    }
+    return timelineMap.computeIfAbsent(resource.getId(), key -> new Timeline());
+  }
+
+  /**
+   * Load the planned dates of the open operation orders of the work centers, with one query, except
+   * the ones to plan.
+   */
+  @SuppressWarnings("unchecked")
+  protected Map<Long, Timeline> loadTimelines(
+      Collection<WorkCenter> resourceSet, Set<OperationOrder> toPlanSet) {
+
+    Map<Long, Timeline> timelineMap = new HashMap<>();
+    Set<Long> resourceIdSet = new HashSet<>();
+    for (WorkCenter resource : resourceSet) {
+      if (resource.getId() != null) {
+        resourceIdSet.add(resource.getId());
+      }
+    }
+    if (resourceIdSet.isEmpty()) {
+      return timelineMap;
+    }
+
+    Set<Long> toPlanIdSet = new HashSet<>();
+    for (OperationOrder operationOrder : toPlanSet) {
+      if (operationOrder.getId() != null) {
+        toPlanIdSet.add(operationOrder.getId());
+      }
+    }
+
+    List<Object[]> resultList =
+        JPA.em()
+            .createQuery(
+                "SELECT self.id, machineWorkCenter.id, workCenter.id, "
+                    + "self.plannedStartDateT, self.plannedEndDateT "
+                    + "FROM OperationOrder self "
+                    + "LEFT JOIN self.machineWorkCenter machineWorkCenter "
+                    + "LEFT JOIN self.workCenter workCenter "
+                    + "WHERE self.statusSelect IN (:statusList) "
+                    + "AND self.plannedStartDateT IS NOT NULL "
+                    + "AND self.plannedEndDateT IS NOT NULL "
+                    + "AND (machineWorkCenter.id IN (:resourceIds) "
+                    + "OR (machineWorkCenter IS NULL AND workCenter.id IN (:resourceIds)))")
+            .setParameter("statusList", LOADING_STATUS_LIST)
+            .setParameter("resourceIds", resourceIdSet)
+            .getResultList();
+
+    for (Object[] result : resultList) {
+      if (toPlanIdSet.contains(result[0])) {
+        continue;
+      }
+      Long resourceId = result[1] != null ? (Long) result[1] : (Long) result[2];
+      timelineMap
+          .computeIfAbsent(resourceId, key -> new Timeline())
+          .reserve((LocalDateTime) result[3], (LocalDateTime) result[4]);
+    }
+
+    return timelineMap;
+  }
+
+  /**
+   * The working hours of the machine of the operation order, or else of the company, without the
+   * public holidays of the company.
+   */
+  protected WorkCalendar getCalendar(
+      OperationOrder operationOrder, Map<String, WorkCalendar> calendarMap) {
+
+    WorkCenter resource = this.getResource(operationOrder);
+    Company company = operationOrder.getManufOrder().getCompany();
+
+    WeeklyPlanning weeklyPlanning = null;
+    if (resource != null && resource.getMachine() != null) {
+      weeklyPlanning = resource.getMachine().getWeeklyPlanning();
+    }
+    if (weeklyPlanning == null && company != null) {
+      weeklyPlanning = company.getWeeklyPlanning();
+    }
+    EventsPlanning publicHolidayPlanning =
+        company != null ? company.getPublicHolidayEventsPlanning() : null;
+
+    String key =
+        (weeklyPlanning != null ? weeklyPlanning.getId() : null)
+            + "-"
+            + (publicHolidayPlanning != null ? publicHolidayPlanning.getId() : null);
+    WorkCalendar calendar = calendarMap.get(key);
+    if (calendar == null) {
+      calendar = new WorkCalendar(weeklyPlanning, publicHolidayPlanning);
+      calendarMap.put(key, calendar);
+    }
+    return calendar;
+  }
+
+  /** The periods of a work center already taken by operation orders, merged when they overlap. */
+  protected static class Timeline {
+
+    protected final NavigableMap<LocalDateTime, LocalDateTime> busyMap = new TreeMap<>();
+
+    protected void reserve(LocalDateTime startDateT, LocalDateTime endDateT) {
+
+      if (!startDateT.isBefore(endDateT)) {
+        return;
+      }
+      Map.Entry<LocalDateTime, LocalDateTime> previous = busyMap.floorEntry(startDateT);
+      if (previous != null && !previous.getValue().isBefore(startDateT)) {
+        startDateT = previous.getKey();
+      }
+      Map.Entry<LocalDateTime, LocalDateTime> next;
+      while ((next = busyMap.ceilingEntry(startDateT)) != null
+          && !next.getKey().isAfter(endDateT)) {
+        if (next.getValue().isAfter(endDateT)) {
+          endDateT = next.getValue();
+        }
+        busyMap.remove(next.getKey());
+      }
+      busyMap.put(startDateT, endDateT);
+    }
+
+    /**
+     * Returns the end of the last busy period overlapping the given one, the earliest date the
+     * operation order may start from, or null if the work center is free.
+     */
+    protected LocalDateTime getConflictEnd(LocalDateTime startDateT, LocalDateTime endDateT) {
+
+      Map.Entry<LocalDateTime, LocalDateTime> conflict = busyMap.lowerEntry(endDateT);
+      if (conflict == null || !conflict.getValue().isAfter(startDateT)) {
+        return null;
+      }
+      return conflict.getValue();
+    }
+
+    /**
+     * Returns the start of the first busy period overlapping the given one, the latest date the
+     * operation order may end at, or null if the work center is free.
+     */
+    protected LocalDateTime getConflictStart(LocalDateTime startDateT, LocalDateTime endDateT) {
+
+      Map.Entry<LocalDateTime, LocalDateTime> conflict = busyMap.floorEntry(startDateT);
+      if (conflict == null || !conflict.getValue().isAfter(startDateT)) {
+        conflict = busyMap.higherEntry(startDateT);
+      }
+      if (conflict == null || !conflict.getKey().isBefore(endDateT)) {
+        return null;
+      }
+      return conflict.getKey();
+    }
+  }
+
+  /**
+   * The working hours of each day of the week, in seconds of the day, and the public holidays.
+   * Without any working hours, every hour is a working one.
+   */
+  protected static class WorkCalendar {
+
+    protected final Map<DayOfWeek, int[][]> dayIntervalMap = new LinkedHashMap<>();
+    protected final Set<LocalDate> holidaySet = new HashSet<>();
+    protected boolean alwaysWorking = true;
+
+    protected WorkCalendar(WeeklyPlanning weeklyPlanning, EventsPlanning publicHolidayPlanning) {
+
+      for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+        dayIntervalMap.put(dayOfWeek, new int[0][]);
+      }
+      if (weeklyPlanning != null && weeklyPlanning.getWeekDays() != null) {
+        for (DayPlanning dayPlanning : weeklyPlanning.getWeekDays()) {
+          List<int[]> intervalList = new ArrayList<>();
+          this.addInterval(intervalList, dayPlanning.getMorningFrom(), dayPlanning.getMorningTo());
+          this.addInterval(
+              intervalList, dayPlanning.getAfternoonFrom(), dayPlanning.getAfternoonTo());
+          intervalList.sort(Comparator.comparingInt(interval -> interval[0]));
+          if (!intervalList.isEmpty() && dayPlanning.getName() != null) {
+            dayIntervalMap.put(
+                DayOfWeek.valueOf(dayPlanning.getName().toUpperCase()),
+                intervalList.toArray(new int[0][]));
+            alwaysWorking = false;
+          }
+        }
+      }
+      if (!alwaysWorking
+          && publicHolidayPlanning != null
+          && publicHolidayPlanning.getEventsPlanningLineList() != null) {
+        for (EventsPlanningLine line : publicHolidayPlanning.getEventsPlanningLineList()) {
+          holidaySet.add(line.getDate());
+        }
+      }
+    }
+
+    protected void addInterval(List<int[]> intervalList, LocalTime from, LocalTime to) {
+      if (from != null && to != null && from.isBefore(to)) {
+        intervalList.add(new int[] {from.toSecondOfDay(), to.toSecondOfDay()});
+      }
+    }
+
+    /** Returns the date reached after working the given seconds from the given date. */
+    protected LocalDateTime addWorkingTime(LocalDateTime fromDateT, long seconds) {
+
+      if (alwaysWorking) {
+        return fromDateT.plusSeconds(seconds);
+      }
+      LocalDate date = fromDateT.toLocalDate();
+      int cursor = fromDateT.toLocalTime().toSecondOfDay();
+      long remaining = seconds;
+
+      for (int i = 0; i < MAX_CALENDAR_DAYS; i++, date = date.plusDays(1), cursor = 0) {
+        if (holidaySet.contains(date)) {
+          continue;
+        }
+        for (int[] interval : dayIntervalMap.get(date.getDayOfWeek())) {
+          if (interval[1] <= cursor) {
+            continue;
+          }
+          int from = Math.max(interval[0], cursor);
+          if (remaining <= interval[1] - from) {
+            return date.atStartOfDay().plusSeconds(from + remaining);
+          }
+          remaining -= interval[1] - from;
+        }
+      }
+      return fromDateT.plusSeconds(seconds);
+    }
+
+    /** Returns the date to start from to work the given seconds until the given date. */
+    protected LocalDateTime subtractWorkingTime(LocalDateTime toDateT, long seconds) {
+
+      if (alwaysWorking) {
+        return toDateT.minusSeconds(seconds);
+      }
+      LocalDate date = toDateT.toLocalDate();
+      int cursor = toDateT.toLocalTime().toSecondOfDay();
+      long remaining = seconds;
+
+      for (int i = 0;
+          i < MAX_CALENDAR_DAYS;
+          i++, date = date.minusDays(1), cursor = SECONDS_PER_DAY) {
+        if (holidaySet.contains(date)) {
+          continue;
+        }
+        int[][] intervals = dayIntervalMap.get(date.getDayOfWeek());
+        for (int j = intervals.length - 1; j >= 0; j--) {
+          if (intervals[j][0] >= cursor) {
+            continue;
+          }
+          int to = Math.min(intervals[j][1], cursor);
+          if (remaining <= to - intervals[j][0]) {
+            return date.atStartOfDay().plusSeconds(to - remaining);
+          }
+          remaining -= to - intervals[j][0];
+        }
+      }
+      return toDateT.minusSeconds(seconds);
+    }
+  }
+}
@@ -47,6 +47,7 @@ import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.apache.commons.collections.CollectionUtils;
 
@@ -69,8 +70,7 @@ public class OperationOrderWorkflowService {
   }
 
   /**
-   * Plan an operation order. For successive calls, must be called by order of operation order
-   * priority.
+   * Plan an operation order.
    *
    * @param operationOrder
    * @return
@@ -79,50 +79,71 @@ public class OperationOrderWorkflowService {
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public OperationOrder plan(OperationOrder operationOrder) throws AxelorException {
 
-    if (CollectionUtils.isEmpty(operationOrder.getToConsumeProdProductList())) {
-      Beans.get(OperationOrderService.class).createToConsumeProdProductList(operationOrder);
-    }
-
-    operationOrder.setPlannedStartDateT(this.getLastOperationOrder(operationOrder));
+    this.plan(Collections.singletonList(operationOrder));
 
-    operationOrder.setPlannedEndDateT(this.computePlannedEndDateT(operationOrder));
+    return operationOrder;
+  }
 
-    operationOrder.setPlannedDuration(
-        DurationTool.getSecondsDuration(
-            Duration.between(
-                operationOrder.getPlannedStartDateT(), operationOrder.getPlannedEndDateT())));
+  /**
+   * Plan operation orders, of one or many manufacturing orders, on the free periods of their
+   * machines.
+   *
+   * @param operationOrderList
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void plan(List<OperationOrder> operationOrderList) throws AxelorException {
 
-    ManufOrder manufOrder = operationOrder.getManufOrder();
-    if (manufOrder == null || manufOrder.getIsConsProOnOperation()) {
-      operationOrderStockMoveService.createToConsumeStockMove(operationOrder);
+    for (OperationOrder operationOrder : operationOrderList) {
+      if (CollectionUtils.isEmpty(operationOrder.getToConsumeProdProductList())) {
+        Beans.get(OperationOrderService.class).createToConsumeProdProductList(operationOrder);
+      }
     }
 
-    operationOrder.setStatusSelect(OperationOrderRepository.STATUS_PLANNED);
+    Beans.get(OperationOrderPlanningService.class).plan(operationOrderList, false);
+
+    for (OperationOrder operationOrder : operationOrderList) {
+      ManufOrder manufOrder = operationOrder.getManufOrder();
+      if (manufOrder == null || manufOrder.getIsConsProOnOperation()) {
+        operationOrderStockMoveService.createToConsumeStockMove(operationOrder);
+      }
+
+      operationOrder.setStatusSelect(OperationOrderRepository.STATUS_PLANNED);
 
-    return operationOrderRepo.save(operationOrder);
+      operationOrderRepo.save(operationOrder);
+    }
   }
 
   /**
-   * Replan an operation order. For successive calls, must reset planned dates first, then call by
-   * order of operation order priority.
+   * Replan an operation order.
    *
    * @param operationOrder
    * @return
    * @throws AxelorException
    */
-  @Transactional
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public OperationOrder replan(OperationOrder operationOrder) throws AxelorException {
 
-    operationOrder.setPlannedStartDateT(this.getLastOperationOrder(operationOrder));
+    this.replan(Collections.singletonList(operationOrder));
 
-    operationOrder.setPlannedEndDateT(this.computePlannedEndDateT(operationOrder));
+    return operationOrder;
+  }
+
+  /**
+   * Replan operation orders, of one or many manufacturing orders, on the free periods of their
+   * machines.
+   *
+   * @param operationOrderList
+   * @throws AxelorException
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void replan(List<OperationOrder> operationOrderList) throws AxelorException {
 
-    operationOrder.setPlannedDuration(
-        DurationTool.getSecondsDuration(
-            Duration.between(
-                operationOrder.getPlannedStartDateT(), operationOrder.getPlannedEndDateT())));
+    Beans.get(OperationOrderPlanningService.class).plan(operationOrderList, false);
 
-    return operationOrderRepo.save(operationOrder);
+    for (OperationOrder operationOrder : operationOrderList) {
+      operationOrderRepo.save(operationOrder);
+    }
   }
 
   /**
@@ -164,9 +164,7 @@ public class ManufOrderController {
                     ManufOrderRepository.STATUS_CANCELED)
                 .fetch();
       }
-      for (ManufOrder manufOrder : manufOrders) {
-        manufOrderWorkflowService.plan(manufOrder);
-      }
+      manufOrderWorkflowService.plan(manufOrders);
       response.setReload(true);
     } catch (Exception e) {
       TraceBackService.trace(response, e);
@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.eclipse.birt.core.exception.BirtException;
@@ -87,8 +88,9 @@ public class OperationOrderController {
       operationOrder = operationOrderRepo.find(operationOrder.getId());
       if (operationOrder != null
           && operationOrder.getStatusSelect() == OperationOrderRepository.STATUS_PLANNED) {
-        operationOrder = operationOrderWorkflowService.replan(operationOrder);
-        List<OperationOrder> operationOrderList =
+        List<OperationOrder> operationOrderList = new ArrayList<>();
+        operationOrderList.add(operationOrder);
+        operationOrderList.addAll(
             operationOrderRepo
                 .all()
                 .filter(
@@ -98,10 +100,8 @@ public class OperationOrderController {
                     operationOrder.getId())
                 .order("priority")
                 .order("plannedEndDateT")
-                .fetch();
-        for (OperationOrder operationOrderIt : operationOrderList) {
-          operationOrderWorkflowService.replan(operationOrderIt);
-        }
+                .fetch());
+        operationOrderWorkflowService.replan(operationOrderList);
         response.setReload(true);
       }
     } catch (Exception e) {
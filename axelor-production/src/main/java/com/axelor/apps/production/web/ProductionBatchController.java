@@ -58,6 +58,15 @@ public class ProductionBatchController {
     response.setReload(true);
   }
 
+  public void computeBillOfMaterialCostPrice(ActionRequest request, ActionResponse response) {
+
+    ProductionBatch productionBatch = request.getContext().asType(ProductionBatch.class);
+    productionBatch = productionBatchRepo.find(productionBatch.getId());
+    Batch batch = productionBatchService.computeBillOfMaterialCostPrice(productionBatch);
+    response.setFlash(batch.getComments());
+    response.setReload(true);
+  }
+
   public void showValuation(ActionRequest request, ActionResponse response) throws AxelorException {
     ProductionBatch productionBatch = request.getContext().asType(ProductionBatch.class);
     productionBatch = productionBatchRepo.find(productionBatch.getId());
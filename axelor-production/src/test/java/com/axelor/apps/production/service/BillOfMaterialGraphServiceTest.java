@@ -0,0 +1,170 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service;
+
+import com.axelor.apps.production.service.BillOfMaterialGraphService.Node;
+import com.axelor.exception.AxelorException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Queries the bill of material graph, without the database, on bills of material kept in memory:
+ * a bike made of 2 wheels and a frame, each wheel being made of 32 spokes and a rim.
+ */
+public class BillOfMaterialGraphServiceTest {
+
+  private static final Long UNIT_ID = 1L;
+
+  private static final Long BIKE = 10L;
+
+  private static final Long WHEEL = 20L;
+
+  private static final Long FRAME = 30L;
+
+  private static final Long SPOKE = 40L;
+
+  private static final Long RIM = 50L;
+
+  private Map<Long, Object[]> valuesMap;
+
+  private Map<Long, List<Long>> childIdMap;
+
+  private int loadedNodeCount;
+
+  private int loadedParentCount;
+
+  private BillOfMaterialGraphService graphService;
+
+  @Before
+  public void setUp() {
+    valuesMap = new HashMap<>();
+    childIdMap = new HashMap<>();
+
+    addBillOfMaterial(BIKE, "1", true, WHEEL, FRAME);
+    addBillOfMaterial(WHEEL, "2", true, SPOKE, RIM);
+    addBillOfMaterial(FRAME, "1", false);
+    addBillOfMaterial(SPOKE, "32", false);
+    addBillOfMaterial(RIM, "1", false);
+
+    graphService =
+        new BillOfMaterialGraphService() {
+
+          @Override
+          protected Map<Long, Integer> loadVersions(Collection<Long> idList) {
+            Map<Long, Integer> versionMap = new HashMap<>();
+            for (Long id : idList) {
+              if (valuesMap.containsKey(id)) {
+                versionMap.put(id, (Integer) valuesMap.get(id)[1]);
+              }
+            }
+            return versionMap;
+          }
+
+          @Override
+          protected List<Node> loadNodes(Collection<Long> idList) {
+            List<Node> nodeList = new ArrayList<>();
+            for (Long id : idList) {
+              if (valuesMap.containsKey(id)) {
+                nodeList.add(new Node(valuesMap.get(id), childIdMap.get(id)));
+                loadedNodeCount++;
+              }
+            }
+            return nodeList;
+          }
+
+          @Override
+          protected Map<Long, List<Long>> loadParentIdMap() {
+            loadedParentCount++;
+            Map<Long, List<Long>> parentIdMap = new HashMap<>();
+            for (Map.Entry<Long, List<Long>> entry : childIdMap.entrySet()) {
+              for (Long childId : entry.getValue()) {
+                parentIdMap.computeIfAbsent(childId, key -> new ArrayList<>()).add(entry.getKey());
+              }
+            }
+            return parentIdMap;
+          }
+        };
+  }
+
+  /** Only the modified bill of material is loaded again when the graph is asked for again. */
+  @Test
+  public void testModifiedNodeIsLoadedAgain() {
+
+    Assert.assertEquals(5, graphService.getGraph(BIKE).size());
+    Assert.assertEquals(5, loadedNodeCount);
+
+    valuesMap.get(RIM)[1] = 1;
+    Map<Long, Node> graph = graphService.getGraph(BIKE);
+
+    Assert.assertEquals(6, loadedNodeCount);
+    Assert.assertEquals(Integer.valueOf(1), graph.get(RIM).getVersion());
+    Assert.assertEquals(Arrays.asList(SPOKE, RIM), graph.get(WHEEL).getChildIdList());
+  }
+
+  /** The parents are loaded once for all the where-used queries. */
+  @Test
+  public void testWhereUsed() {
+
+    Assert.assertEquals(Collections.singletonList(WHEEL), graphService.getWhereUsed(SPOKE));
+    Assert.assertEquals(Collections.singletonList(BIKE), graphService.getWhereUsed(WHEEL));
+    Assert.assertTrue(graphService.getWhereUsed(BIKE).isEmpty());
+    Assert.assertEquals(1, loadedParentCount);
+  }
+
+  /**
+   * 3 bikes need 6 wheels, so 6 * 32 / 2 = 96 spokes and 3 rims, and 3 frames. The wheel, defining
+   * a sub bill of material, is replaced by its components.
+   */
+  @Test
+  public void testExplode() throws AxelorException {
+
+    Map<Pair<Long, Long>, BigDecimal> qtyMap = graphService.explode(BIKE, new BigDecimal(3));
+
+    Assert.assertEquals(3, qtyMap.size());
+    Assert.assertEquals(0, new BigDecimal(96).compareTo(qtyMap.get(Pair.of(SPOKE, UNIT_ID))));
+    Assert.assertEquals(0, new BigDecimal(3).compareTo(qtyMap.get(Pair.of(RIM, UNIT_ID))));
+    Assert.assertEquals(0, new BigDecimal(3).compareTo(qtyMap.get(Pair.of(FRAME, UNIT_ID))));
+  }
+
+  /** A bill of material which is one of its own components can not be exploded. */
+  @Test(expected = AxelorException.class)
+  public void testExplodeLoop() throws AxelorException {
+
+    childIdMap.get(WHEEL).add(BIKE);
+
+    graphService.explode(BIKE, BigDecimal.ONE);
+  }
+
+  private void addBillOfMaterial(
+      Long id, String qty, boolean defineSubBillOfMaterial, Long... childIds) {
+    valuesMap.put(
+        id,
+        new Object[] {id, 0, id, new BigDecimal(qty), UNIT_ID, null, defineSubBillOfMaterial});
+    childIdMap.put(id, new ArrayList<>(Arrays.asList(childIds)));
+  }
+}
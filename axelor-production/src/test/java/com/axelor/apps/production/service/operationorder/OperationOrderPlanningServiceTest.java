@@ -0,0 +1,186 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.production.service.operationorder;
+
+import com.axelor.apps.production.db.Machine;
+import com.axelor.apps.production.db.ManufOrder;
+import com.axelor.apps.production.db.OperationOrder;
+import com.axelor.apps.production.db.WorkCenter;
+import com.axelor.exception.AxelorException;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Plans operation orders in memory, without the database, with one hour long operations. */
+public class OperationOrderPlanningServiceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long DURATION = 3600;
+
+  private static final LocalDateTime START_DATE_T = LocalDateTime.of(2019, 1, 7, 8, 0);
+
+  private OperationOrderPlanningServiceImpl planningService;
+
+  private Map<Long, OperationOrderPlanningServiceImpl.Timeline> timelineMap;
+
+  private Map<String, OperationOrderPlanningServiceImpl.WorkCalendar> calendarMap;
+
+  private Set<OperationOrder> toPlanSet;
+
+  @Before
+  public void setUp() {
+    planningService =
+        new OperationOrderPlanningServiceImpl(null, null) {
+          @Override
+          protected long getDuration(OperationOrder operationOrder) {
+            return DURATION;
+          }
+        };
+    timelineMap = new HashMap<>();
+    calendarMap = new HashMap<>();
+    toPlanSet = Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  @Test
+  public void testMachineWorkCenterRunsOneOperationAtATime() throws AxelorException {
+
+    WorkCenter workCenter = createWorkCenter(1L, true);
+    ManufOrder manufOrder = createManufOrder();
+    List<OperationOrder> operationOrderList = new ArrayList<>();
+    operationOrderList.add(createOperationOrder(manufOrder, workCenter, 10));
+    operationOrderList.add(createOperationOrder(manufOrder, workCenter, 10));
+
+    plan(manufOrder, operationOrderList);
+
+    Assert.assertEquals(START_DATE_T, operationOrderList.get(0).getPlannedStartDateT());
+    Assert.assertEquals(
+        START_DATE_T.plusSeconds(DURATION), operationOrderList.get(1).getPlannedStartDateT());
+  }
+
+  @Test
+  public void testHumanWorkCenterRunsOperationsAtTheSameTime() throws AxelorException {
+
+    WorkCenter workCenter = createWorkCenter(1L, false);
+    ManufOrder manufOrder = createManufOrder();
+    List<OperationOrder> operationOrderList = new ArrayList<>();
+    operationOrderList.add(createOperationOrder(manufOrder, workCenter, 10));
+    operationOrderList.add(createOperationOrder(manufOrder, workCenter, 10));
+
+    plan(manufOrder, operationOrderList);
+
+    Assert.assertEquals(START_DATE_T, operationOrderList.get(0).getPlannedStartDateT());
+    Assert.assertEquals(START_DATE_T, operationOrderList.get(1).getPlannedStartDateT());
+    Assert.assertTrue(timelineMap.isEmpty());
+  }
+
+  /**
+   * Plans 1000 manufacturing orders of 10 operation orders each, shared between 20 machines and 5
+   * human work centers, and checks that no machine runs two operation orders at the same time.
+   */
+  @Test
+  public void testPlan10000OperationOrders() throws AxelorException {
+
+    List<WorkCenter> workCenterList = new ArrayList<>();
+    for (long id = 1; id <= 25; id++) {
+      workCenterList.add(createWorkCenter(id, id <= 20));
+    }
+
+    Map<ManufOrder, List<OperationOrder>> operationOrderMap = new IdentityHashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      ManufOrder manufOrder = createManufOrder();
+      List<OperationOrder> operationOrderList = new ArrayList<>();
+      for (int j = 0; j < 10; j++) {
+        WorkCenter workCenter = workCenterList.get((i + j * 7) % workCenterList.size());
+        operationOrderList.add(createOperationOrder(manufOrder, workCenter, j * 10));
+      }
+      operationOrderMap.put(manufOrder, operationOrderList);
+    }
+
+    long startTime = System.currentTimeMillis();
+    for (Map.Entry<ManufOrder, List<OperationOrder>> entry : operationOrderMap.entrySet()) {
+      plan(entry.getKey(), entry.getValue());
+    }
+    LOG.info("10000 operation orders planned in {} ms", System.currentTimeMillis() - startTime);
+
+    Map<Long, List<OperationOrder>> machineMap = new HashMap<>();
+    for (List<OperationOrder> operationOrderList : operationOrderMap.values()) {
+      for (OperationOrder operationOrder : operationOrderList) {
+        if (operationOrder.getWorkCenter().getMachine() != null) {
+          machineMap
+              .computeIfAbsent(operationOrder.getWorkCenter().getId(), key -> new ArrayList<>())
+              .add(operationOrder);
+        }
+      }
+    }
+
+    for (List<OperationOrder> operationOrderList : machineMap.values()) {
+      operationOrderList.sort(Comparator.comparing(OperationOrder::getPlannedStartDateT));
+      for (int i = 1; i < operationOrderList.size(); i++) {
+        Assert.assertFalse(
+            operationOrderList
+                .get(i)
+                .getPlannedStartDateT()
+                .isBefore(operationOrderList.get(i - 1).getPlannedEndDateT()));
+      }
+    }
+  }
+
+  private void plan(ManufOrder manufOrder, List<OperationOrder> operationOrderList)
+      throws AxelorException {
+    toPlanSet.addAll(operationOrderList);
+    planningService.planForward(
+        manufOrder, operationOrderList, toPlanSet, timelineMap, calendarMap);
+  }
+
+  private WorkCenter createWorkCenter(Long id, boolean withMachine) {
+    WorkCenter workCenter = new WorkCenter();
+    workCenter.setId(id);
+    if (withMachine) {
+      workCenter.setMachine(new Machine());
+    }
+    return workCenter;
+  }
+
+  private ManufOrder createManufOrder() {
+    ManufOrder manufOrder = new ManufOrder();
+    manufOrder.setPlannedStartDateT(START_DATE_T);
+    return manufOrder;
+  }
+
+  private OperationOrder createOperationOrder(
+      ManufOrder manufOrder, WorkCenter workCenter, int priority) {
+    OperationOrder operationOrder = new OperationOrder();
+    operationOrder.setManufOrder(manufOrder);
+    operationOrder.setWorkCenter(workCenter);
+    operationOrder.setPriority(priority);
+    return operationOrder;
+  }
+}
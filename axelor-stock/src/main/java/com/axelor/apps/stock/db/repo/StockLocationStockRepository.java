@@ -20,21 +20,30 @@ package com.axelor.apps.stock.db.repo;
 import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.apps.stock.service.StockLocationSaveService;
 import com.axelor.apps.stock.service.StockLocationService;
+import com.axelor.exception.AxelorException;
 import com.axelor.inject.Beans;
 import java.util.Map;
+import javax.persistence.PersistenceException;
 
 public class StockLocationStockRepository extends StockLocationRepository {
 
   /**
-   * Override to remove incompatible stock locations in partners
+   * Override to remove incompatible stock locations in partners and to update the paths of ids
    *
    * @param entity
    * @return
    */
   @Override
   public StockLocation save(StockLocation entity) {
-    Beans.get(StockLocationSaveService.class).removeForbiddenDefaultStockLocation(entity);
-    return super.save(entity);
+    StockLocationSaveService stockLocationSaveService = Beans.get(StockLocationSaveService.class);
+    stockLocationSaveService.removeForbiddenDefaultStockLocation(entity);
+    entity = super.save(entity);
+    try {
+      stockLocationSaveService.updatePathIds(entity);
+    } catch (AxelorException e) {
+      throw new PersistenceException(e.getLocalizedMessage());
+    }
+    return entity;
   }
 
   @Override
@@ -54,6 +54,10 @@ public interface IExceptionMessage {
   static final String LOCATION_LINE_3 = /*$$(*/
       "Product's stocks %s (%s) exceeds maximum stock rules." /*)*/;
 
+  /** Stock Location Save Service */
+  static final String STOCK_LOCATION_PARENT_LOOP = /*$$(*/
+      "The stock location %s can't be a sub-location of itself." /*)*/;
+
   /** Stock Move Service and Controller */
   static final String STOCK_MOVE_1 = /*$$(*/
       "There's no configured sequence for stock's intern moves for the company %s" /*)*/;
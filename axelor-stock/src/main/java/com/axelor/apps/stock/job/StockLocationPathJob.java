@@ -0,0 +1,42 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.job;
+
+import com.axelor.apps.base.job.ThreadedJob;
+import com.axelor.apps.base.job.UncheckedJobExecutionException;
+import com.axelor.apps.stock.service.StockLocationSaveService;
+import com.axelor.inject.Beans;
+import org.quartz.JobExecutionContext;
+
+/**
+ * Compute the paths of ids of the stock locations which have none, like the ones created by a data
+ * import or the ones saved before the paths were added, and create their index. The paths of the
+ * other stock locations are kept up to date when they are saved.
+ */
+public class StockLocationPathJob extends ThreadedJob {
+  @Override
+  public void executeInThread(JobExecutionContext context) {
+    try {
+      StockLocationSaveService stockLocationSaveService = Beans.get(StockLocationSaveService.class);
+      stockLocationSaveService.createPathIdsIndex();
+      stockLocationSaveService.updateMissingPathIds();
+    } catch (Exception e) {
+      throw new UncheckedJobExecutionException(e);
+    }
+  }
+}
@@ -55,6 +55,8 @@ import com.axelor.apps.stock.service.StockMoveService;
 import com.axelor.apps.stock.service.StockMoveServiceImpl;
 import com.axelor.apps.stock.service.StockMoveToolService;
 import com.axelor.apps.stock.service.StockMoveToolServiceImpl;
+import com.axelor.apps.stock.service.StockProjectionService;
+import com.axelor.apps.stock.service.StockProjectionServiceImpl;
 import com.axelor.apps.stock.service.StockRulesService;
 import com.axelor.apps.stock.service.StockRulesServiceImpl;
 import com.axelor.apps.stock.service.app.AppStockService;
@@ -94,5 +96,6 @@ public class StockModule extends AxelorModule {
     bind(PickingStockMovePrintService.class).to(PickingStockMovePrintServiceimpl.class);
     bind(ConformityCertificatePrintService.class).to(ConformityCertificatePrintServiceImpl.class);
     bind(StockLocationLineRepository.class).to(StockLocationLineStockRepository.class);
+    bind(StockProjectionService.class).to(StockProjectionServiceImpl.class);
   }
 }
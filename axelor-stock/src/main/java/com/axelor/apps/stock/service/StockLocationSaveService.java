@@ -22,13 +22,22 @@ import com.axelor.apps.base.db.Partner;
 import com.axelor.apps.stock.db.PartnerStockSettings;
 import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.apps.stock.db.repo.PartnerStockSettingsRepository;
+import com.axelor.apps.stock.db.repo.StockLocationRepository;
+import com.axelor.apps.stock.exception.IExceptionMessage;
+import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
+import com.axelor.exception.db.repo.TraceBackRepository;
+import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
 import com.google.inject.persist.Transactional;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class StockLocationSaveService {
 
+  public static final String PATH_SEPARATOR = "/";
+
   /**
    * Remove default stock locations in partner that are not linked with this stock location anymore.
    *
@@ -57,4 +66,103 @@ public class StockLocationSaveService {
       partnerToClean.removePartnerStockSettingsListItem(partnerStockSettings);
     }
   }
+
+  /**
+   * Update the path of ids of the stock location, and the ones of its sub-locations if it was moved
+   * to another parent.
+   *
+   * @param stockLocation a saved stock location
+   * @throws AxelorException if the stock location is one of its own parents
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updatePathIds(StockLocation stockLocation) throws AxelorException {
+    String oldPathIds = stockLocation.getPathIds();
+    String pathIds = computePathIds(stockLocation);
+
+    if (pathIds.equals(oldPathIds)) {
+      return;
+    }
+
+    stockLocation.setPathIds(pathIds);
+
+    if (oldPathIds == null) {
+      return;
+    }
+
+    List<StockLocation> subLocationList =
+        Beans.get(StockLocationRepository.class)
+            .all()
+            .filter("self.pathIds LIKE :pathIds AND self.id != :stockLocationId")
+            .bind("pathIds", oldPathIds + "%")
+            .bind("stockLocationId", stockLocation.getId())
+            .fetch();
+
+    for (StockLocation subLocation : subLocationList) {
+      subLocation.setPathIds(pathIds + subLocation.getPathIds().substring(oldPathIds.length()));
+    }
+  }
+
+  /**
+   * Compute the paths of ids of the stock locations which have none, like the ones created by a
+   * data import.
+   *
+   * @throws AxelorException if a stock location is one of its own parents
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateMissingPathIds() throws AxelorException {
+    List<StockLocation> stockLocationList =
+        Beans.get(StockLocationRepository.class).all().filter("self.pathIds IS NULL").fetch();
+
+    for (StockLocation stockLocation : stockLocationList) {
+      stockLocation.setPathIds(computePathIds(stockLocation));
+    }
+  }
+
+  /**
+   * Create the index of the paths of ids used by the prefix queries of the sub-locations. A plain
+   * index only serves them with the C collation, so the pattern operator class is used.
+   */
+  @Transactional
+  public void createPathIdsIndex() {
+    JPA.em()
+        .createNativeQuery(
+            "CREATE INDEX IF NOT EXISTS stock_stock_location_path_ids_idx "
+                + "ON stock_stock_location (path_ids varchar_pattern_ops)")
+        .executeUpdate();
+  }
+
+  /**
+   * Compute the ids of the parent stock locations and of the stock location, from the root, each
+   * one followed by {@link #PATH_SEPARATOR}.
+   *
+   * @param stockLocation
+   * @return the path of ids
+   * @throws AxelorException if the stock location is one of its own parents
+   */
+  protected String computePathIds(StockLocation stockLocation) throws AxelorException {
+    String pathIds = stockLocation.getId() + PATH_SEPARATOR;
+    Set<String> idSet = new HashSet<>();
+    idSet.add(stockLocation.getId().toString());
+    StockLocation parent = stockLocation.getParentStockLocation();
+
+    while (parent != null) {
+      String parentPathIds =
+          parent.getPathIds() != null ? parent.getPathIds() : parent.getId() + PATH_SEPARATOR;
+
+      for (String id : parentPathIds.split(PATH_SEPARATOR)) {
+        if (!idSet.add(id)) {
+          throw new AxelorException(
+              stockLocation,
+              TraceBackRepository.CATEGORY_INCONSISTENCY,
+              I18n.get(IExceptionMessage.STOCK_LOCATION_PARENT_LOOP),
+              stockLocation.getName());
+        }
+      }
+
+      pathIds = parentPathIds + pathIds;
+      parent = parent.getPathIds() != null ? null : parent.getParentStockLocation();
+    }
+
+    return pathIds;
+  }
 }
@@ -23,7 +23,9 @@ import com.axelor.apps.stock.db.StockLocation;
 import com.axelor.exception.AxelorException;
 import com.google.inject.persist.Transactional;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface StockLocationService {
@@ -52,9 +54,61 @@ public interface StockLocationService {
 
   public BigDecimal getFutureQty(Long productId, Long locationId) throws AxelorException;
 
+  /**
+   * Get the quantities of the products summed over the stock locations, in the unit of each
+   * product. Nothing is created, the products without stock location line are missing from the map.
+   *
+   * @param productIdList the ids of the products
+   * @param locationIdList the ids of the stock locations, or null for all the non virtual ones
+   * @param qtyType "real" for the current quantities, "future" for the future ones
+   * @return the quantities by product id
+   * @throws AxelorException if a unit conversion fails
+   */
+  public Map<Long, BigDecimal> getQtyMap(
+      Collection<Long> productIdList, Collection<Long> locationIdList, String qtyType)
+      throws AxelorException;
+
+  /**
+   * Get the quantities of the products in each stock location, in the unit of each product.
+   * Nothing is created, the missing stock location lines are missing from the map.
+   *
+   * @param productIdList the ids of the products
+   * @param locationIdList the ids of the stock locations, or null for all the non virtual ones
+   * @param qtyType "real" for the current quantities, "future" for the future ones
+   * @return the quantities by product id, then by stock location id
+   * @throws AxelorException if a unit conversion fails
+   */
+  public Map<Long, Map<Long, BigDecimal>> getQtyMapByLocation(
+      Collection<Long> productIdList, Collection<Long> locationIdList, String qtyType)
+      throws AxelorException;
+
+  /**
+   * Compute the running sums of the product from its stock location lines, then its average price.
+   *
+   * @param product
+   */
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void computeAvgPriceForProduct(Product product);
 
+  /**
+   * Apply the changes of its stock location lines to the running sums of the product, then update
+   * its average price.
+   *
+   * @param product
+   * @param qtyDelta the change of the sum of the current quantities
+   * @param valueDelta the change of the sum of the current quantities multiplied by the average
+   *     prices
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateAvgPriceForProduct(Product product, BigDecimal qtyDelta, BigDecimal valueDelta);
+
+  /**
+   * Compute again the running sums and the average prices of all the storable products.
+   *
+   * @return the number of products whose running sums were wrong
+   */
+  public int computeAvgPriceForAllProducts();
+
   public List<Long> getBadStockLocationLineId();
 
   public Set<Long> getContentStockLocationIds(StockLocation stockLocation);
@@ -26,24 +26,29 @@ import com.axelor.apps.base.service.UnitConversionService;
 import com.axelor.apps.base.service.app.AppBaseService;
 import com.axelor.apps.stock.db.StockConfig;
 import com.axelor.apps.stock.db.StockLocation;
-import com.axelor.apps.stock.db.StockLocationLine;
-import com.axelor.apps.stock.db.StockRules;
-import com.axelor.apps.stock.db.repo.StockLocationLineRepository;
 import com.axelor.apps.stock.db.repo.StockLocationRepository;
-import com.axelor.apps.stock.db.repo.StockRulesRepository;
 import com.axelor.apps.stock.service.config.StockConfigService;
 import com.axelor.db.JPA;
 import com.axelor.exception.AxelorException;
 import com.axelor.inject.Beans;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 import com.google.inject.servlet.RequestScoped;
+import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.persistence.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @RequestScoped
 public class StockLocationServiceImpl implements StockLocationService {
@@ -56,6 +61,12 @@ public class StockLocationServiceImpl implements StockLocationService {
 
   protected Set<Long> locationIdSet = new HashSet<>();
 
+  protected static final int QTY_QUERY_CHUNK_SIZE = 1000;
+
+  protected static final int AVG_PRICE_CHUNK_SIZE = 100;
+
+  private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
   @Inject
   public StockLocationServiceImpl(
       StockLocationRepository stockLocationRepo,
@@ -97,62 +108,122 @@ public class StockLocationServiceImpl implements StockLocationService {
 
   @Override
   public BigDecimal getQty(Long productId, Long locationId, String qtyType) throws AxelorException {
-    if (productId != null) {
-      Product product = productRepo.find(productId);
-      Unit productUnit = product.getUnit();
-      UnitConversionService unitConversionService = Beans.get(UnitConversionService.class);
-
-      if (locationId == null) {
-        List<StockLocation> stockLocations = getNonVirtualStockLocations();
-        if (!stockLocations.isEmpty()) {
-          BigDecimal qty = BigDecimal.ZERO;
-          for (StockLocation stockLocation : stockLocations) {
-            StockLocationLine stockLocationLine =
-                stockLocationLineService.getOrCreateStockLocationLine(
-                    stockLocationRepo.find(stockLocation.getId()), productRepo.find(productId));
-
-            if (stockLocationLine != null) {
-              Unit stockLocationLineUnit = stockLocationLine.getUnit();
-              qty =
-                  qty.add(
-                      qtyType.equals("real")
-                          ? stockLocationLine.getCurrentQty()
-                          : stockLocationLine.getFutureQty());
-
-              if (productUnit != null && !productUnit.equals(stockLocationLineUnit)) {
-                qty =
-                    unitConversionService.convert(
-                        stockLocationLineUnit, productUnit, qty, qty.scale(), product);
-              }
-            }
-          }
-          return qty;
-        }
+    if (productId == null) {
+      return null;
+    }
+
+    return getQtyMap(
+            Collections.singletonList(productId),
+            locationId != null ? Collections.singletonList(locationId) : null,
+            qtyType)
+        .getOrDefault(productId, BigDecimal.ZERO);
+  }
+
+  @Override
+  public Map<Long, BigDecimal> getQtyMap(
+      Collection<Long> productIdList, Collection<Long> locationIdList, String qtyType)
+      throws AxelorException {
+
+    Map<Long, BigDecimal> qtyMap = new HashMap<>();
+
+    for (Object[] result : fetchQty(productIdList, locationIdList, qtyType, false)) {
+      qtyMap.merge((Long) result[0], convertQty(result), BigDecimal::add);
+    }
+
+    return qtyMap;
+  }
+
+  @Override
+  public Map<Long, Map<Long, BigDecimal>> getQtyMapByLocation(
+      Collection<Long> productIdList, Collection<Long> locationIdList, String qtyType)
+      throws AxelorException {
+
+    Map<Long, Map<Long, BigDecimal>> qtyMap = new HashMap<>();
+
+    for (Object[] result : fetchQty(productIdList, locationIdList, qtyType, true)) {
+      qtyMap
+          .computeIfAbsent((Long) result[0], productId -> new HashMap<>())
+          .merge((Long) result[4], convertQty(result), BigDecimal::add);
+    }
+
+    return qtyMap;
+  }
+
+  /**
+   * Sum the quantities of the stock location lines by product and unit, and by stock location if
+   * asked.
+   *
+   * @return rows of product id, line unit id, product unit id, quantity, and stock location id if
+   *     asked
+   */
+  @SuppressWarnings("unchecked")
+  protected List<Object[]> fetchQty(
+      Collection<Long> productIdList,
+      Collection<Long> locationIdList,
+      String qtyType,
+      boolean byLocation) {
+
+    List<Object[]> resultList = new ArrayList<>();
+
+    if (productIdList == null
+        || productIdList.isEmpty()
+        || (locationIdList != null && locationIdList.isEmpty())) {
+      return resultList;
+    }
+
+    String qtyField = qtyType.equals("real") ? "self.currentQty" : "self.futureQty";
+    String locationField = byLocation ? ", self.stockLocation.id" : "";
+
+    String query =
+        "SELECT product.id, unit.id, productUnit.id, SUM("
+            + qtyField
+            + ")"
+            + locationField
+            + " FROM StockLocationLine self "
+            + "JOIN self.product product "
+            + "LEFT JOIN self.unit unit "
+            + "LEFT JOIN product.unit productUnit "
+            + "WHERE product.id IN (:productIds) "
+            + (locationIdList != null
+                ? "AND self.stockLocation.id IN (:locationIds) "
+                : "AND self.stockLocation.typeSelect != :virtual ")
+            + "GROUP BY product.id, unit.id, productUnit.id"
+            + locationField;
+
+    for (List<Long> productIdChunk :
+        Lists.partition(new ArrayList<>(productIdList), QTY_QUERY_CHUNK_SIZE)) {
+
+      Query qtyQuery =
+          JPA.em().createQuery(query).setParameter("productIds", productIdChunk);
+      if (locationIdList != null) {
+        qtyQuery.setParameter("locationIds", locationIdList);
       } else {
-        StockLocationLine stockLocationLine =
-            stockLocationLineService.getOrCreateStockLocationLine(
-                stockLocationRepo.find(locationId), productRepo.find(productId));
-
-        if (stockLocationLine != null) {
-          Unit stockLocationLineUnit = stockLocationLine.getUnit();
-          BigDecimal qty = BigDecimal.ZERO;
-
-          qty =
-              qtyType.equals("real")
-                  ? stockLocationLine.getCurrentQty()
-                  : stockLocationLine.getFutureQty();
-
-          if (productUnit != null && !productUnit.equals(stockLocationLineUnit)) {
-            qty =
-                unitConversionService.convert(
-                    stockLocationLineUnit, productUnit, qty, qty.scale(), product);
-          }
-          return qty;
-        }
+        qtyQuery.setParameter("virtual", StockLocationRepository.TYPE_VIRTUAL);
       }
+
+      resultList.addAll(qtyQuery.getResultList());
+    }
+
+    return resultList;
+  }
+
+  /** Convert a quantity returned by {@link #fetchQty} into the unit of the product. */
+  protected BigDecimal convertQty(Object[] result) throws AxelorException {
+    Long unitId = (Long) result[1];
+    Long productUnitId = (Long) result[2];
+    BigDecimal qty = result[3] != null ? (BigDecimal) result[3] : BigDecimal.ZERO;
+
+    if (unitId == null || productUnitId == null || unitId.equals(productUnitId)) {
+      return qty;
     }
 
-    return null;
+    return Beans.get(UnitConversionService.class)
+        .convert(
+            JPA.em().find(Unit.class, unitId),
+            JPA.em().find(Unit.class, productUnitId),
+            qty,
+            qty.scale(),
+            productRepo.find((Long) result[0]));
   }
 
   @Override
@@ -168,30 +239,94 @@ public class StockLocationServiceImpl implements StockLocationService {
   @Override
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   public void computeAvgPriceForProduct(Product product) {
-    Long productId = product.getId();
-    String query =
-        "SELECT new list(self.id, self.avgPrice, self.currentQty) FROM StockLocationLine as self "
-            + "WHERE self.product.id = "
-            + productId
-            + " AND self.stockLocation.typeSelect != "
-            + StockLocationRepository.TYPE_VIRTUAL;
-    int scale = Beans.get(AppBaseService.class).getNbDecimalDigitForUnitPrice();
-    BigDecimal productAvgPrice = BigDecimal.ZERO;
-    BigDecimal qtyTot = BigDecimal.ZERO;
-    List<List<Object>> results = JPA.em().createQuery(query).getResultList();
-    if (results.isEmpty()) {
+    Object[] sums =
+        JPA.em()
+            .createQuery(
+                "SELECT SUM(self.currentQty), SUM(self.avgPrice * self.currentQty) "
+                    + "FROM StockLocationLine self "
+                    + "WHERE self.product.id = :productId "
+                    + "AND self.stockLocation.typeSelect != :virtual",
+                Object[].class)
+            .setParameter("productId", product.getId())
+            .setParameter("virtual", StockLocationRepository.TYPE_VIRTUAL)
+            .getSingleResult();
+
+    product.setAvgPriceQtySum(sums[0] != null ? (BigDecimal) sums[0] : BigDecimal.ZERO);
+    product.setAvgPriceValueSum(sums[1] != null ? (BigDecimal) sums[1] : BigDecimal.ZERO);
+
+    this.updateAvgPriceFromSums(product);
+  }
+
+  @Override
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  public void updateAvgPriceForProduct(
+      Product product, BigDecimal qtyDelta, BigDecimal valueDelta) {
+    if (product.getAvgPriceQtySum() == null || product.getAvgPriceValueSum() == null) {
+      // the sums have never been computed
+      this.computeAvgPriceForProduct(product);
       return;
     }
-    for (List<Object> result : results) {
-      BigDecimal avgPrice = (BigDecimal) result.get(1);
-      BigDecimal qty = (BigDecimal) result.get(2);
-      productAvgPrice = productAvgPrice.add(avgPrice.multiply(qty));
-      qtyTot = qtyTot.add(qty);
-    }
+
+    product.setAvgPriceQtySum(product.getAvgPriceQtySum().add(qtyDelta));
+    product.setAvgPriceValueSum(product.getAvgPriceValueSum().add(valueDelta));
+
+    this.updateAvgPriceFromSums(product);
+  }
+
+  @Override
+  public int computeAvgPriceForAllProducts() {
+    int wrongSumCount = 0;
+    long lastId = 0L;
+    List<Product> productList;
+
+    do {
+      productList =
+          productRepo
+              .all()
+              .filter("self.productTypeSelect = :storable AND self.id > :lastId")
+              .bind("storable", ProductRepository.PRODUCT_TYPE_STORABLE)
+              .bind("lastId", lastId)
+              .order("id")
+              .fetch(AVG_PRICE_CHUNK_SIZE);
+
+      for (Product product : productList) {
+        BigDecimal qtySum = product.getAvgPriceQtySum();
+        BigDecimal valueSum = product.getAvgPriceValueSum();
+
+        Beans.get(StockLocationService.class).computeAvgPriceForProduct(product);
+
+        // products whose sums have never been computed are not wrong
+        if (qtySum != null
+            && valueSum != null
+            && (qtySum.compareTo(product.getAvgPriceQtySum()) != 0
+                || valueSum.compareTo(product.getAvgPriceValueSum()) != 0)) {
+          log.warn(
+              "Wrong average price sums of {}: qty {} instead of {}, value {} instead of {}",
+              product.getCode(),
+              qtySum,
+              product.getAvgPriceQtySum(),
+              valueSum,
+              product.getAvgPriceValueSum());
+          wrongSumCount++;
+        }
+        lastId = product.getId();
+      }
+
+      JPA.clear();
+    } while (!productList.isEmpty());
+
+    return wrongSumCount;
+  }
+
+  /** Update the average price of the product from its running sums. */
+  protected void updateAvgPriceFromSums(Product product) {
+    BigDecimal qtyTot = product.getAvgPriceQtySum();
     if (qtyTot.compareTo(BigDecimal.ZERO) == 0) {
       return;
     }
-    productAvgPrice = productAvgPrice.divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP);
+    int scale = Beans.get(AppBaseService.class).getNbDecimalDigitForUnitPrice();
+    BigDecimal productAvgPrice =
+        product.getAvgPriceValueSum().divide(qtyTot, scale, BigDecimal.ROUND_HALF_UP);
     product.setAvgPrice(productAvgPrice);
     if (product.getCostTypeSelect() == ProductRepository.COST_TYPE_AVERAGE_PRICE) {
       product.setCostPrice(productAvgPrice);
@@ -204,32 +339,21 @@ public class StockLocationServiceImpl implements StockLocationService {
 
   public List<Long> getBadStockLocationLineId() {
 
-    List<StockLocationLine> stockLocationLineList =
-        Beans.get(StockLocationLineRepository.class)
-            .all()
-            .filter("self.stockLocation.typeSelect = 1 OR self.stockLocation.typeSelect = 2")
-            .fetch();
-
-    List<Long> idList = new ArrayList<>();
-
-    StockRulesRepository stockRulesRepository = Beans.get(StockRulesRepository.class);
-
-    for (StockLocationLine stockLocationLine : stockLocationLineList) {
-      StockRules stockRules =
-          stockRulesRepository
-              .all()
-              .filter(
-                  "self.stockLocation = ?1 AND self.product = ?2",
-                  stockLocationLine.getStockLocation(),
-                  stockLocationLine.getProduct())
-              .fetchOne();
-      if (stockRules != null
-          && stockLocationLine.getFutureQty().compareTo(stockRules.getMinQty()) < 0) {
-        idList.add(stockLocationLine.getId());
-      }
-    }
+    List<Long> idList =
+        JPA.em()
+            .createQuery(
+                "SELECT DISTINCT self.id FROM StockLocationLine self, StockRules stockRules "
+                    + "WHERE stockRules.stockLocation = self.stockLocation "
+                    + "AND stockRules.product = self.product "
+                    + "AND self.stockLocation.typeSelect IN (:internal, :external) "
+                    + "AND self.futureQty < stockRules.minQty",
+                Long.class)
+            .setParameter("internal", StockLocationRepository.TYPE_INTERNAL)
+            .setParameter("external", StockLocationRepository.TYPE_EXTERNAL)
+            .getResultList();
 
     if (idList.isEmpty()) {
+      idList = new ArrayList<>();
       idList.add(0L);
     }
 
@@ -254,6 +378,52 @@ public class StockLocationServiceImpl implements StockLocationService {
   public List<StockLocation> getAllLocationAndSubLocation(
       StockLocation stockLocation, boolean isVirtualInclude) {
 
+    String pathIds = stockLocation.getPathIds();
+
+    // the paths of the imported stock locations are computed by StockLocationPathJob, until then
+    // the sub-locations are fetched one level at a time
+    if (pathIds == null || stockLocationRepo.all().filter("self.pathIds IS NULL").count() > 0) {
+      return getAllLocationAndSubLocationByParent(stockLocation, isVirtualInclude);
+    }
+
+    List<StockLocation> subLocationList =
+        stockLocationRepo
+            .all()
+            .filter("self.pathIds LIKE :pathIds AND self.id != :stockLocationId")
+            .bind("pathIds", pathIds + "%")
+            .bind("stockLocationId", stockLocation.getId())
+            .fetch();
+
+    List<StockLocation> resultList = new ArrayList<>();
+
+    if (isVirtualInclude) {
+      resultList.addAll(subLocationList);
+    } else {
+      // the sub-locations of a virtual one are excluded too
+      Set<String> virtualIdSet = new HashSet<>();
+      for (StockLocation subLocation : subLocationList) {
+        if (subLocation.getTypeSelect() == StockLocationRepository.TYPE_VIRTUAL) {
+          virtualIdSet.add(subLocation.getId().toString());
+        }
+      }
+
+      for (StockLocation subLocation : subLocationList) {
+        String subPathIds = subLocation.getPathIds().substring(pathIds.length());
+        if (Collections.disjoint(
+            virtualIdSet,
+            Arrays.asList(subPathIds.split(StockLocationSaveService.PATH_SEPARATOR)))) {
+          resultList.add(subLocation);
+        }
+      }
+    }
+    resultList.add(stockLocation);
+
+    return resultList;
+  }
+
+  protected List<StockLocation> getAllLocationAndSubLocationByParent(
+      StockLocation stockLocation, boolean isVirtualInclude) {
+
     List<StockLocation> resultList = new ArrayList<>();
 
     if (isVirtualInclude) {
@@ -264,7 +434,7 @@ public class StockLocationServiceImpl implements StockLocationService {
               .bind("stockLocationId", stockLocation.getId())
               .fetch()) {
 
-        resultList.addAll(this.getAllLocationAndSubLocation(subLocation, isVirtualInclude));
+        resultList.addAll(this.getAllLocationAndSubLocationByParent(subLocation, isVirtualInclude));
       }
     } else {
       for (StockLocation subLocation :
@@ -276,7 +446,7 @@ public class StockLocationServiceImpl implements StockLocationService {
               .bind("virtual", StockLocationRepository.TYPE_VIRTUAL)
               .fetch()) {
 
-        resultList.addAll(this.getAllLocationAndSubLocation(subLocation, isVirtualInclude));
+        resultList.addAll(this.getAllLocationAndSubLocationByParent(subLocation, isVirtualInclude));
       }
     }
     resultList.add(stockLocation);
@@ -55,11 +55,14 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -449,6 +452,9 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
           qty = stockMoveLine.getQty();
         }
 
+        Pair<BigDecimal, BigDecimal> oldSums =
+            this.getAvgPriceSums(product, fromStockLocation, toStockLocation);
+
         if (toStockLocation.getTypeSelect() != StockLocationRepository.TYPE_VIRTUAL) {
           this.updateAveragePriceLocationLine(toStockLocation, stockMoveLine, fromStatus, toStatus);
         }
@@ -463,9 +469,43 @@ public class StockMoveLineServiceImpl implements StockMoveLineService {
             lastFutureStockMoveDate,
             stockMoveLine.getTrackingNumber(),
             BigDecimal.ZERO);
-        stockLocationServiceImpl.computeAvgPriceForProduct(stockMoveLine.getProduct());
+
+        Pair<BigDecimal, BigDecimal> newSums =
+            this.getAvgPriceSums(product, fromStockLocation, toStockLocation);
+        stockLocationServiceImpl.updateAvgPriceForProduct(
+            product,
+            newSums.getLeft().subtract(oldSums.getLeft()),
+            newSums.getRight().subtract(oldSums.getRight()));
+      }
+    }
+  }
+
+  /**
+   * Sum the current quantities, and the current quantities multiplied by the average prices, of the
+   * stock location lines of the product in the given stock locations which are not virtual.
+   *
+   * @return the sum of the quantities and the sum of the values
+   */
+  protected Pair<BigDecimal, BigDecimal> getAvgPriceSums(
+      Product product, StockLocation... stockLocations) {
+    BigDecimal qtySum = BigDecimal.ZERO;
+    BigDecimal valueSum = BigDecimal.ZERO;
+
+    for (StockLocation stockLocation : new LinkedHashSet<>(Arrays.asList(stockLocations))) {
+      if (stockLocation.getTypeSelect() == StockLocationRepository.TYPE_VIRTUAL) {
+        continue;
+      }
+      StockLocationLine stockLocationLine =
+          stockLocationLineService.getStockLocationLine(stockLocation, product);
+      if (stockLocationLine != null) {
+        qtySum = qtySum.add(stockLocationLine.getCurrentQty());
+        valueSum =
+            valueSum.add(
+                stockLocationLine.getAvgPrice().multiply(stockLocationLine.getCurrentQty()));
       }
     }
+
+    return Pair.of(qtySum, valueSum);
   }
 
   @Override
@@ -62,9 +62,9 @@ import com.google.inject.persist.Transactional;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -906,53 +906,8 @@ public class StockMoveServiceImpl implements StockMoveService {
   public List<Map<String, Object>> getStockPerDate(
       Long locationId, Long productId, LocalDate fromDate, LocalDate toDate) {
 
-    List<Map<String, Object>> stock = new ArrayList<>();
-
-    while (!fromDate.isAfter(toDate)) {
-      Double qty = getStock(locationId, productId, fromDate);
-      Map<String, Object> dateStock = new HashMap<>();
-      dateStock.put("$date", fromDate);
-      dateStock.put("$qty", new BigDecimal(qty));
-      stock.add(dateStock);
-      fromDate = fromDate.plusDays(1);
-    }
-
-    return stock;
-  }
-
-  private Double getStock(Long locationId, Long productId, LocalDate date) {
-
-    List<StockMoveLine> inLines =
-        stockMoveLineRepo
-            .all()
-            .filter(
-                "self.product.id = ?1 AND self.stockMove.toStockLocation.id = ?2 AND self.stockMove.statusSelect != ?3 AND (self.stockMove.estimatedDate <= ?4 OR self.stockMove.realDate <= ?4)",
-                productId,
-                locationId,
-                StockMoveRepository.STATUS_CANCELED,
-                date)
-            .fetch();
-
-    List<StockMoveLine> outLines =
-        stockMoveLineRepo
-            .all()
-            .filter(
-                "self.product.id = ?1 AND self.stockMove.fromStockLocation.id = ?2 AND self.stockMove.statusSelect != ?3 AND (self.stockMove.estimatedDate <= ?4 OR self.stockMove.realDate <= ?4)",
-                productId,
-                locationId,
-                StockMoveRepository.STATUS_CANCELED,
-                date)
-            .fetch();
-
-    Double inQty =
-        inLines.stream().mapToDouble(inl -> Double.parseDouble(inl.getQty().toString())).sum();
-
-    Double outQty =
-        outLines.stream().mapToDouble(out -> Double.parseDouble(out.getQty().toString())).sum();
-
-    Double qty = inQty - outQty;
-
-    return qty;
+    return Beans.get(StockProjectionService.class)
+        .getStockPerDate(locationId, productId, fromDate, toDate, ChronoUnit.DAYS);
   }
 
   @Override
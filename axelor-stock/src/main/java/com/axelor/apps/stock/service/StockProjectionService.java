@@ -0,0 +1,62 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import org.apache.commons.lang3.tuple.Pair;
+
+public interface StockProjectionService {
+
+  /**
+   * Compute the stock of products in stock locations at regular dates, from the stock moves which
+   * are not canceled. A stock move line is taken into account from the earliest of its estimated
+   * and real dates.
+   *
+   * @param productIds the ids of the products
+   * @param locationIds the ids of the stock locations
+   * @param fromDate the first date
+   * @param toDate the last date
+   * @param periodUnit the period between two dates, days, weeks or months
+   * @return the stock by date, for each product id and stock location id
+   */
+  Map<Pair<Long, Long>, NavigableMap<LocalDate, BigDecimal>> getStockPerPeriod(
+      Collection<Long> productIds,
+      Collection<Long> locationIds,
+      LocalDate fromDate,
+      LocalDate toDate,
+      ChronoUnit periodUnit);
+
+  /**
+   * Compute the stock of a product in a stock location at regular dates.
+   *
+   * @param locationId
+   * @param productId
+   * @param fromDate the first date
+   * @param toDate the last date
+   * @param periodUnit the period between two dates, days, weeks or months
+   * @return a list of maps with the date in {@code $date} and the stock in {@code $qty}
+   */
+  List<Map<String, Object>> getStockPerDate(
+      Long locationId, Long productId, LocalDate fromDate, LocalDate toDate, ChronoUnit periodUnit);
+}
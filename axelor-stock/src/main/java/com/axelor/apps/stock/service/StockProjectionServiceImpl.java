@@ -0,0 +1,204 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.stock.service;
+
+import com.axelor.apps.stock.db.repo.StockMoveRepository;
+import com.axelor.db.JPA;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.commons.lang3.tuple.Pair;
+
+public class StockProjectionServiceImpl implements StockProjectionService {
+
+  protected static final int PRODUCT_QUERY_CHUNK_SIZE = 1000;
+
+  @Override
+  public Map<Pair<Long, Long>, NavigableMap<LocalDate, BigDecimal>> getStockPerPeriod(
+      Collection<Long> productIds,
+      Collection<Long> locationIds,
+      LocalDate fromDate,
+      LocalDate toDate,
+      ChronoUnit periodUnit) {
+
+    Preconditions.checkArgument(
+        periodUnit == ChronoUnit.DAYS
+            || periodUnit == ChronoUnit.WEEKS
+            || periodUnit == ChronoUnit.MONTHS,
+        "The period must be days, weeks or months.");
+
+    Map<Pair<Long, Long>, NavigableMap<LocalDate, BigDecimal>> stockMap = new LinkedHashMap<>();
+
+    if (productIds.isEmpty() || locationIds.isEmpty()) {
+      return stockMap;
+    }
+
+    Map<Pair<Long, Long>, NavigableMap<LocalDate, BigDecimal>> moveQtyMap =
+        this.getMoveQtyMap(productIds, locationIds, toDate);
+
+    for (Long productId : productIds) {
+      for (Long locationId : locationIds) {
+        Pair<Long, Long> key = Pair.of(productId, locationId);
+        stockMap.put(
+            key,
+            this.getRunningSum(
+                moveQtyMap.getOrDefault(key, new TreeMap<>()), fromDate, toDate, periodUnit));
+      }
+    }
+
+    return stockMap;
+  }
+
+  @Override
+  public List<Map<String, Object>> getStockPerDate(
+      Long locationId,
+      Long productId,
+      LocalDate fromDate,
+      LocalDate toDate,
+      ChronoUnit periodUnit) {
+
+    NavigableMap<LocalDate, BigDecimal> stockPerDate =
+        this.getStockPerPeriod(
+                Lists.newArrayList(productId),
+                Lists.newArrayList(locationId),
+                fromDate,
+                toDate,
+                periodUnit)
+            .get(Pair.of(productId, locationId));
+
+    List<Map<String, Object>> stock = new ArrayList<>();
+
+    for (Map.Entry<LocalDate, BigDecimal> entry : stockPerDate.entrySet()) {
+      Map<String, Object> dateStock = new HashMap<>();
+      dateStock.put("$date", entry.getKey());
+      dateStock.put("$qty", entry.getValue());
+      stock.add(dateStock);
+    }
+
+    return stock;
+  }
+
+  /**
+   * Get the quantity moved in or out of the stock locations for each product and each date, with
+   * one grouped query for each chunk of products.
+   */
+  @SuppressWarnings("unchecked")
+  protected Map<Pair<Long, Long>, NavigableMap<LocalDate, BigDecimal>> getMoveQtyMap(
+      Collection<Long> productIds, Collection<Long> locationIds, LocalDate toDate) {
+
+    Set<Long> locationIdSet = new HashSet<>(locationIds);
+    Map<Pair<Long, Long>, NavigableMap<LocalDate, BigDecimal>> moveQtyMap = new HashMap<>();
+
+    for (List<Long> productIdChunk :
+        Lists.partition(new ArrayList<>(productIds), PRODUCT_QUERY_CHUNK_SIZE)) {
+
+      List<Object[]> resultList =
+          JPA.em()
+              .createQuery(
+                  "SELECT self.product.id, stockMove.fromStockLocation.id, "
+                      + "stockMove.toStockLocation.id, stockMove.estimatedDate, "
+                      + "stockMove.realDate, SUM(self.qty) "
+                      + "FROM StockMoveLine self JOIN self.stockMove stockMove "
+                      + "WHERE self.product.id IN (:productIds) "
+                      + "AND (stockMove.fromStockLocation.id IN (:locationIds) "
+                      + "OR stockMove.toStockLocation.id IN (:locationIds)) "
+                      + "AND stockMove.statusSelect != :statusCanceled "
+                      + "AND (stockMove.estimatedDate <= :toDate OR stockMove.realDate <= :toDate) "
+                      + "GROUP BY self.product.id, stockMove.fromStockLocation.id, "
+                      + "stockMove.toStockLocation.id, stockMove.estimatedDate, stockMove.realDate")
+              .setParameter("productIds", productIdChunk)
+              .setParameter("locationIds", locationIdSet)
+              .setParameter("statusCanceled", StockMoveRepository.STATUS_CANCELED)
+              .setParameter("toDate", toDate)
+              .getResultList();
+
+      for (Object[] result : resultList) {
+        Long productId = (Long) result[0];
+        Long fromLocationId = (Long) result[1];
+        Long toLocationId = (Long) result[2];
+        LocalDate date = this.getEarliestDate((LocalDate) result[3], (LocalDate) result[4]);
+        BigDecimal qty = (BigDecimal) result[5];
+
+        if (toLocationId != null && locationIdSet.contains(toLocationId)) {
+          moveQtyMap
+              .computeIfAbsent(Pair.of(productId, toLocationId), key -> new TreeMap<>())
+              .merge(date, qty, BigDecimal::add);
+        }
+        if (fromLocationId != null && locationIdSet.contains(fromLocationId)) {
+          moveQtyMap
+              .computeIfAbsent(Pair.of(productId, fromLocationId), key -> new TreeMap<>())
+              .merge(date, qty.negate(), BigDecimal::add);
+        }
+      }
+    }
+
+    return moveQtyMap;
+  }
+
+  protected LocalDate getEarliestDate(LocalDate estimatedDate, LocalDate realDate) {
+    if (estimatedDate == null) {
+      return realDate;
+    }
+    if (realDate == null) {
+      return estimatedDate;
+    }
+    return realDate.isBefore(estimatedDate) ? realDate : estimatedDate;
+  }
+
+  /** Sum the quantities moved up to each date of the period. */
+  protected NavigableMap<LocalDate, BigDecimal> getRunningSum(
+      NavigableMap<LocalDate, BigDecimal> moveQtyPerDate,
+      LocalDate fromDate,
+      LocalDate toDate,
+      ChronoUnit periodUnit) {
+
+    NavigableMap<LocalDate, BigDecimal> stockPerDate = new TreeMap<>();
+    Iterator<Map.Entry<LocalDate, BigDecimal>> moveQtyIterator =
+        moveQtyPerDate.entrySet().iterator();
+    Map.Entry<LocalDate, BigDecimal> moveQty =
+        moveQtyIterator.hasNext() ? moveQtyIterator.next() : null;
+    BigDecimal stock = BigDecimal.ZERO;
+
+    for (LocalDate date = fromDate;
+        !date.isAfter(toDate);
+        date = fromDate.plus(stockPerDate.size(), periodUnit)) {
+
+      while (moveQty != null && !moveQty.getKey().isAfter(date)) {
+        stock = stock.add(moveQty.getValue());
+        moveQty = moveQtyIterator.hasNext() ? moveQtyIterator.next() : null;
+      }
+
+      stockPerDate.put(date, stock);
+    }
+
+    return stockPerDate;
+  }
+}
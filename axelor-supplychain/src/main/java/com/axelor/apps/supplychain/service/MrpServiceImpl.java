@@ -51,9 +51,11 @@ import com.axelor.apps.supplychain.db.repo.MrpLineRepository;
 import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
 import com.axelor.apps.supplychain.db.repo.MrpRepository;
 import com.axelor.apps.supplychain.exception.IExceptionMessage;
+import com.axelor.apps.supplychain.service.app.AppSupplychainService;
 import com.axelor.apps.tool.StringTool;
 import com.axelor.db.JPA;
 import com.axelor.db.Model;
+import com.axelor.db.Query;
 import com.axelor.exception.AxelorException;
 import com.axelor.exception.db.repo.TraceBackRepository;
 import com.axelor.i18n.I18n;
@@ -63,14 +65,24 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
+import com.google.inject.servlet.RequestScoper;
+import com.google.inject.servlet.ServletScopes;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,6 +111,62 @@ public class MrpServiceImpl implements MrpService {
   protected Mrp mrp;
   protected LocalDate today;
 
+  /** Lines of the mrp per product id, kept in memory during the calculation. */
+  protected Map<Long, List<MrpLine>> mrpLineMap;
+
+  protected List<MrpLine> createdMrpLineList;
+
+  /** Current quantities of the products loaded on the mrp, by product id then stock location id. */
+  protected Map<Long, Map<Long, BigDecimal>> availableQtyMap;
+
+  protected Set<Long> availableQtyLocationIdSet;
+
+  protected static final int SAVE_CHUNK_SIZE = 100;
+
+  /** Products computed by this instance when the calculation is done by several threads. */
+  protected Set<Long> computedProductIdSet;
+
+  protected List<DeferredProposal> deferredProposalList;
+
+  /**
+   * A proposal for a product computed by another thread, kept with ids only so that it can be
+   * created outside of the persistence context of the thread.
+   */
+  protected static class DeferredProposal {
+
+    protected final Long productId;
+    protected final Long mrpLineTypeId;
+    protected final BigDecimal reorderQty;
+    protected final Long stockLocationId;
+    protected final LocalDate maturityDate;
+    protected final List<Pair<String, Long>> originList = new ArrayList<>();
+    protected final String relatedToSelectName;
+
+    protected DeferredProposal(
+        Product product,
+        MrpLineType mrpLineType,
+        BigDecimal reorderQty,
+        StockLocation stockLocation,
+        LocalDate maturityDate,
+        List<MrpLineOrigin> mrpLineOriginList,
+        String relatedToSelectName) {
+
+      this.productId = product.getId();
+      this.mrpLineTypeId = mrpLineType.getId();
+      this.reorderQty = reorderQty;
+      this.stockLocationId = stockLocation.getId();
+      this.maturityDate = maturityDate;
+      this.relatedToSelectName = relatedToSelectName;
+
+      if (mrpLineOriginList != null) {
+        for (MrpLineOrigin mrpLineOrigin : mrpLineOriginList) {
+          this.originList.add(
+              Pair.of(mrpLineOrigin.getRelatedToSelect(), mrpLineOrigin.getRelatedToSelectId()));
+        }
+      }
+    }
+  }
+
   @Inject
   public MrpServiceImpl(
       AppBaseService appBaseService,
@@ -194,7 +262,20 @@ public class MrpServiceImpl implements MrpService {
 
     this.mrp = mrp;
 
-    this.checkInsufficientCumulativeQty();
+    int threadCount = this.getThreadCount();
+
+    if (threadCount > 1) {
+
+      this.checkInsufficientCumulativeQtyInParallel(threadCount);
+
+    } else {
+
+      this.loadMrpLines(null);
+
+      this.checkInsufficientCumulativeQty();
+
+      this.saveMrpLines();
+    }
 
     //		this.consolidateMrp(mrp);
 
@@ -220,6 +301,184 @@ public class MrpServiceImpl implements MrpService {
     }
   }
 
+  protected int getThreadCount() {
+
+    Integer mrpThreadCount =
+        Beans.get(AppSupplychainService.class).getAppSupplychain().getMrpThreadCount();
+
+    return mrpThreadCount != null ? mrpThreadCount : 1;
+  }
+
+  /**
+   * Products of a same level only depend on the products of the previous levels, so each level is
+   * split in chunks computed by a pool of threads, each one with its own persistence context. The
+   * proposals created by a thread for products it doesn't compute (components of a manufacturing
+   * proposal) are created once all the threads of the level are done, in the same order as in a
+   * sequential calculation.
+   *
+   * @param threadCount
+   * @throws AxelorException
+   */
+  protected void checkInsufficientCumulativeQtyInParallel(int threadCount)
+      throws AxelorException {
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    try {
+      for (int level = 0; level <= this.getMaxLevel(); level++) {
+
+        List<Long> productIdList = this.getProductIdList(level);
+
+        if (productIdList.isEmpty()) {
+          continue;
+        }
+
+        int chunkSize = Math.max(1, (productIdList.size() + threadCount - 1) / threadCount);
+
+        List<Future<List<DeferredProposal>>> futureList = new ArrayList<>();
+
+        for (List<Long> productIdChunk : Lists.partition(productIdList, chunkSize)) {
+
+          futureList.add(executor.submit(() -> this.calculateInThread(productIdChunk)));
+        }
+
+        List<DeferredProposal> deferredProposalList = new ArrayList<>();
+
+        for (Future<List<DeferredProposal>> future : futureList) {
+          deferredProposalList.addAll(this.getResult(future));
+        }
+
+        this.createDeferredProposalMrpLines(deferredProposalList);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  protected List<DeferredProposal> calculateInThread(List<Long> productIdList) throws Exception {
+
+    RequestScoper scope = ServletScopes.scopeRequest(Collections.emptyMap());
+
+    try (RequestScoper.CloseableScope ignored = scope.open()) {
+
+      return Beans.get(MrpServiceImpl.class)
+          .calculate(mrp.getId(), productMap, today, productIdList);
+
+    } finally {
+      JPA.clear();
+    }
+  }
+
+  /**
+   * Compute the given products of the mrp. Called on a worker instance, in its own thread.
+   *
+   * @return the proposals to create for products that are not part of the given list
+   */
+  protected List<DeferredProposal> calculate(
+      Long mrpId, Map<Long, Integer> productMap, LocalDate today, List<Long> productIdList)
+      throws AxelorException {
+
+    this.mrp = mrpRepository.find(mrpId);
+    this.productMap = productMap;
+    this.today = today;
+    this.computedProductIdSet = new HashSet<>(productIdList);
+    this.deferredProposalList = new ArrayList<>();
+
+    this.loadMrpLines(productIdList);
+
+    for (Long productId : productIdList) {
+
+      this.checkInsufficientCumulativeQty(productRepository.find(productId), true);
+    }
+
+    this.saveMrpLines();
+
+    return this.deferredProposalList;
+  }
+
+  protected List<DeferredProposal> getResult(Future<List<DeferredProposal>> future)
+      throws AxelorException {
+
+    try {
+      return future.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AxelorException(e, TraceBackRepository.CATEGORY_INCONSISTENCY);
+
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AxelorException) {
+        throw (AxelorException) e.getCause();
+      }
+      throw new AxelorException(e.getCause(), TraceBackRepository.CATEGORY_INCONSISTENCY);
+    }
+  }
+
+  protected void createDeferredProposalMrpLines(List<DeferredProposal> deferredProposalList)
+      throws AxelorException {
+
+    if (deferredProposalList.isEmpty()) {
+      return;
+    }
+
+    Set<Long> productIdSet = Sets.newHashSet();
+
+    for (DeferredProposal deferredProposal : deferredProposalList) {
+      productIdSet.add(deferredProposal.productId);
+    }
+
+    this.loadMrpLines(productIdSet);
+
+    Mrp mrp = mrpRepository.find(this.mrp.getId());
+
+    for (DeferredProposal deferredProposal : deferredProposalList) {
+
+      List<MrpLineOrigin> mrpLineOriginList = new ArrayList<>();
+
+      for (Pair<String, Long> origin : deferredProposal.originList) {
+
+        MrpLineOrigin mrpLineOrigin = new MrpLineOrigin();
+        mrpLineOrigin.setRelatedToSelect(origin.getLeft());
+        mrpLineOrigin.setRelatedToSelectId(origin.getRight());
+        mrpLineOriginList.add(mrpLineOrigin);
+      }
+
+      this.createProposalMrpLine(
+          mrp,
+          productRepository.find(deferredProposal.productId),
+          mrpLineTypeRepository.find(deferredProposal.mrpLineTypeId),
+          deferredProposal.reorderQty,
+          stockLocationRepository.find(deferredProposal.stockLocationId),
+          deferredProposal.maturityDate,
+          mrpLineOriginList,
+          deferredProposal.relatedToSelectName);
+    }
+
+    this.saveMrpLines();
+
+    JPA.clear();
+  }
+
+  /**
+   * Get the list of product ids for a level, in the order used by {@link #getProductList(int)}
+   *
+   * @param level
+   * @return
+   */
+  protected List<Long> getProductIdList(int level) {
+
+    List<Long> productIdList = Lists.newArrayList();
+
+    for (Long productId : this.productMap.keySet()) {
+
+      if (this.productMap.get(productId) == level) {
+        productIdList.add(productId);
+      }
+    }
+
+    return productIdList;
+  }
+
   /**
    * Get the list of product for a level
    *
@@ -257,42 +516,28 @@ public class MrpServiceImpl implements MrpService {
   protected void checkInsufficientCumulativeQty(Product product, boolean firstPass)
       throws AxelorException {
 
-    boolean doASecondPass = false;
+    List<MrpLine> mrpLineList = this.getMrpLineList(product);
 
-    this.computeCumulativeQty(productRepository.find(product.getId()));
+    boolean doASecondPass;
 
-    JPA.clear();
+    do {
+      doASecondPass = false;
 
-    List<MrpLine> mrpLineList =
-        mrpLineRepository
-            .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
-            .order("maturityDate")
-            .order("mrpLineType.typeSelect")
-            .order("mrpLineType.sequence")
-            .order("id")
-            .fetch();
+      this.computeCumulativeQty(mrpLineList);
 
-    for (MrpLine mrpLine : mrpLineList) {
+      for (MrpLine mrpLine : mrpLineList) {
 
-      doASecondPass =
-          this.checkInsufficientCumulativeQty(
-              mrpLineRepository.find(mrpLine.getId()),
-              productRepository.find(product.getId()),
-              firstPass);
-      JPA.clear();
-      if (doASecondPass) {
-        break;
+        if (this.checkInsufficientCumulativeQty(mrpLine, product, firstPass)) {
+          doASecondPass = true;
+          break;
+        }
       }
-    }
 
-    if (doASecondPass) {
+      firstPass = false;
 
-      this.checkInsufficientCumulativeQty(product, false);
-    }
+    } while (doASecondPass);
   }
 
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected boolean checkInsufficientCumulativeQty(
       MrpLine mrpLine, Product product, boolean firstPass) throws AxelorException {
 
@@ -370,20 +615,21 @@ public class MrpServiceImpl implements MrpService {
       startPeriodDate = maturityDate.minusDays(mrpFamily.getDayNb());
     }
 
-    return mrpLineRepository
-        .all()
-        .filter(
-            "self.mrp.id = ?1 AND self.product = ?2 AND self.mrpLineType = ?3 AND self.stockLocation = ?4 AND self.maturityDate > ?5 AND self.maturityDate <= ?6",
-            mrp.getId(),
-            product,
-            mrpLineType,
-            stockLocation,
-            startPeriodDate,
-            maturityDate)
-        .fetchOne();
+    for (MrpLine mrpLine : this.getMrpLineList(product)) {
+
+      if (mrpLine.getMrpLineType().getId().equals(mrpLineType.getId())
+          && mrpLine.getStockLocation().getId().equals(stockLocation.getId())
+          && mrpLine.getMaturityDate() != null
+          && mrpLine.getMaturityDate().isAfter(startPeriodDate)
+          && !mrpLine.getMaturityDate().isAfter(maturityDate)) {
+
+        return mrpLine;
+      }
+    }
+
+    return null;
   }
 
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
   protected void createProposalMrpLine(
       Mrp mrp,
       Product product,
@@ -395,6 +641,20 @@ public class MrpServiceImpl implements MrpService {
       String relatedToSelectName)
       throws AxelorException {
 
+    if (this.computedProductIdSet != null
+        && !this.computedProductIdSet.contains(product.getId())) {
+      this.deferredProposalList.add(
+          new DeferredProposal(
+              product,
+              mrpLineType,
+              reorderQty,
+              stockLocation,
+              maturityDate,
+              mrpLineOriginList,
+              relatedToSelectName));
+      return;
+    }
+
     if (mrpLineType.getElementSelect() == MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL) {
       maturityDate = maturityDate.minusDays(product.getSupplierDeliveryTime());
       reorderQty = reorderQty.max(this.getSupplierCatalogMinQty(product));
@@ -426,7 +686,7 @@ public class MrpServiceImpl implements MrpService {
               stockLocation,
               null);
       if (createdmrpLine != null) {
-        mrpLine = mrpLineRepository.save(createdmrpLine);
+        mrpLine = this.addMrpLine(createdmrpLine);
       }
       mrpLine.setRelatedToSelectName(relatedToSelectName);
     }
@@ -510,24 +770,21 @@ public class MrpServiceImpl implements MrpService {
 
   protected void computeCumulativeQty() {
 
-    for (Long productId : this.productMap.keySet()) {
+    for (List<MrpLine> mrpLineList : this.mrpLineMap.values()) {
 
-      this.computeCumulativeQty(productRepository.find(productId));
+      this.computeCumulativeQty(mrpLineList);
     }
   }
 
-  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
-  protected void computeCumulativeQty(Product product) {
+  /**
+   * Sort the mrp lines of a product in the order of the calculation and compute the cumulative qty
+   * of each line.
+   *
+   * @param mrpLineList the mrp lines of a single product
+   */
+  protected void computeCumulativeQty(List<MrpLine> mrpLineList) {
 
-    List<MrpLine> mrpLineList =
-        mrpLineRepository
-            .all()
-            .filter("self.mrp.id = ?1 AND self.product.id = ?2", mrp.getId(), product.getId())
-            .order("maturityDate")
-            .order("mrpLineType.typeSelect")
-            .order("mrpLineType.sequence")
-            .order("id")
-            .fetch();
+    mrpLineList.sort(this.getMrpLineComparator());
 
     BigDecimal previousCumulativeQty = BigDecimal.ZERO;
 
@@ -553,6 +810,102 @@ public class MrpServiceImpl implements MrpService {
     }
   }
 
+  /**
+   * Same order as the calculation query used to have : maturity date, type, sequence of the type,
+   * then creation order (lines created during the calculation come after the persisted ones).
+   */
+  protected Comparator<MrpLine> getMrpLineComparator() {
+
+    return Comparator.comparing(
+            MrpLine::getMaturityDate, Comparator.nullsLast(Comparator.naturalOrder()))
+        .thenComparing(
+            mrpLine -> mrpLine.getMrpLineType().getTypeSelect(),
+            Comparator.nullsLast(Comparator.naturalOrder()))
+        .thenComparing(
+            mrpLine -> mrpLine.getMrpLineType().getSequence(),
+            Comparator.nullsLast(Comparator.naturalOrder()))
+        .thenComparing(MrpLine::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+  }
+
+  /**
+   * Load the lines of the mrp in a single query, grouped by product, so that the calculation can be
+   * done in memory.
+   *
+   * @param productIds the products to load, or null to load the lines of all the products
+   */
+  protected void loadMrpLines(Collection<Long> productIds) {
+
+    this.mrpLineMap = new HashMap<>();
+    this.createdMrpLineList = new ArrayList<>();
+
+    Query<MrpLine> query =
+        productIds == null
+            ? mrpLineRepository.all().filter("self.mrp.id = ?1", mrp.getId())
+            : mrpLineRepository
+                .all()
+                .filter("self.mrp.id = ?1 AND self.product.id IN (?2)", mrp.getId(), productIds);
+
+    List<MrpLine> mrpLineList =
+        query
+            .order("maturityDate")
+            .order("mrpLineType.typeSelect")
+            .order("mrpLineType.sequence")
+            .order("id")
+            .fetch();
+
+    for (MrpLine mrpLine : mrpLineList) {
+
+      this.mrpLineMap
+          .computeIfAbsent(mrpLine.getProduct().getId(), productId -> new ArrayList<>())
+          .add(mrpLine);
+    }
+  }
+
+  protected List<MrpLine> getMrpLineList(Product product) {
+
+    return this.mrpLineMap.computeIfAbsent(product.getId(), productId -> new ArrayList<>());
+  }
+
+  /**
+   * Add a line created during the calculation. It will be taken into account by the next pass on
+   * its product and inserted with {@link #saveMrpLines()}.
+   *
+   * @param mrpLine
+   * @return the added mrp line
+   */
+  protected MrpLine addMrpLine(MrpLine mrpLine) {
+
+    this.getMrpLineList(mrpLine.getProduct()).add(mrpLine);
+    this.createdMrpLineList.add(mrpLine);
+
+    return mrpLine;
+  }
+
+  /**
+   * Persist the result of the calculation : the cumulative qty of the loaded lines is flushed, then
+   * the created lines are inserted by chunks.
+   */
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected void saveMrpLines() {
+
+    JPA.flush();
+
+    int count = 0;
+
+    for (MrpLine mrpLine : this.createdMrpLineList) {
+
+      mrpLineRepository.save(mrpLine);
+
+      if (++count % SAVE_CHUNK_SIZE == 0) {
+        JPA.flush();
+        JPA.clear();
+      }
+    }
+
+    this.mrpLineMap = null;
+    this.createdMrpLineList = null;
+  }
+
   protected void createPurchaseMrpLines() throws AxelorException {
 
     MrpLineType purchaseOrderMrpLineType =
@@ -577,14 +930,14 @@ public class MrpServiceImpl implements MrpService {
                 statusList)
             .fetch();
 
-    for (PurchaseOrderLine purchaseOrderLine : purchaseOrderLineList) {
-
-      this.createPurchaseMrpLines(
-          mrpRepository.find(mrp.getId()),
-          purchaseOrderLineRepository.find(purchaseOrderLine.getId()),
-          mrpLineTypeRepository.find(purchaseOrderMrpLineType.getId()));
-      JPA.clear();
-    }
+    this.createMrpLines(
+        PurchaseOrderLine.class,
+        this.getIdList(purchaseOrderLineList),
+        (mrp, purchaseOrderLine) ->
+            this.createPurchaseMrpLines(
+                mrp,
+                purchaseOrderLine,
+                mrpLineTypeRepository.find(purchaseOrderMrpLineType.getId())));
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -661,15 +1014,15 @@ public class MrpServiceImpl implements MrpService {
       saleOrderLineList.addAll(mrp.getSaleOrderLineSet());
     }
 
-    for (SaleOrderLine saleOrderLine : saleOrderLineList) {
-
-      this.createSaleOrderMrpLines(
-          mrpRepository.find(mrp.getId()),
-          saleOrderLineRepository.find(saleOrderLine.getId()),
-          mrpLineTypeRepository.find(saleOrderMrpLineType.getId()),
-          statusList);
-      JPA.clear();
-    }
+    this.createMrpLines(
+        SaleOrderLine.class,
+        this.getIdList(saleOrderLineList),
+        (mrp, saleOrderLine) ->
+            this.createSaleOrderMrpLines(
+                mrp,
+                saleOrderLine,
+                mrpLineTypeRepository.find(saleOrderMrpLineType.getId()),
+                statusList));
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -755,14 +1108,12 @@ public class MrpServiceImpl implements MrpService {
       mrpForecastList.addAll(mrp.getMrpForecastSet());
     }
 
-    for (MrpForecast mrpForecast : mrpForecastList) {
-
-      this.createSaleForecastMrpLines(
-          mrpRepository.find(mrp.getId()),
-          mrpForecastRepository.find(mrpForecast.getId()),
-          mrpLineTypeRepository.find(saleForecastMrpLineType.getId()));
-      JPA.clear();
-    }
+    this.createMrpLines(
+        MrpForecast.class,
+        this.getIdList(mrpForecastList),
+        (mrp, mrpForecast) ->
+            this.createSaleForecastMrpLines(
+                mrp, mrpForecast, mrpLineTypeRepository.find(saleForecastMrpLineType.getId())));
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -798,6 +1149,70 @@ public class MrpServiceImpl implements MrpService {
     }
   }
 
+  /** Creates the mrp lines of a record of the mrp, in the transaction of its chunk. */
+  @FunctionalInterface
+  protected interface MrpLineCreator<T extends Model> {
+
+    void create(Mrp mrp, T record) throws AxelorException;
+  }
+
+  /**
+   * Create the mrp lines of the given records by chunks of {@link #SAVE_CHUNK_SIZE} records : the
+   * records of a chunk are loaded with a single query and their lines are saved in a single
+   * transaction, then the persistence context is cleared. The records are processed in the order
+   * of the given ids, so the lines are created in the same order as record by record.
+   *
+   * @param klass
+   * @param idList
+   * @param creator
+   * @throws AxelorException
+   */
+  protected <T extends Model> void createMrpLines(
+      Class<T> klass, List<Long> idList, MrpLineCreator<T> creator) throws AxelorException {
+
+    JPA.clear();
+
+    for (List<Long> idChunk : Lists.partition(idList, SAVE_CHUNK_SIZE)) {
+
+      this.createMrpLinesInChunk(klass, idChunk, creator);
+
+      JPA.clear();
+    }
+  }
+
+  @Transactional(rollbackOn = {AxelorException.class, Exception.class})
+  protected <T extends Model> void createMrpLinesInChunk(
+      Class<T> klass, List<Long> idChunk, MrpLineCreator<T> creator) throws AxelorException {
+
+    Mrp mrp = mrpRepository.find(this.mrp.getId());
+
+    Map<Long, T> recordMap = new HashMap<>();
+
+    for (T record : JPA.all(klass).filter("self.id IN (?1)", idChunk).fetch()) {
+      recordMap.put(record.getId(), record);
+    }
+
+    for (Long id : idChunk) {
+
+      T record = recordMap.get(id);
+
+      if (record != null) {
+        creator.create(mrp, record);
+      }
+    }
+  }
+
+  protected List<Long> getIdList(Collection<? extends Model> recordList) {
+
+    List<Long> idList = new ArrayList<>();
+
+    for (Model record : recordList) {
+      idList.add(record.getId());
+    }
+
+    return idList;
+  }
+
   protected LocalDate computeMaturityDate(LocalDate maturityDate, MrpLineType mrpLineType) {
     if ((maturityDate != null && maturityDate.isBefore(today))
         || (maturityDate == null && mrpLineType.getIncludeElementWithoutDate())) {
@@ -822,19 +1237,31 @@ public class MrpServiceImpl implements MrpService {
     MrpLineType availableStockMrpLineType =
         this.getMrpLineType(MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK);
 
-    for (Long productId : this.productMap.keySet()) {
-
-      for (StockLocation stockLocation : this.stockLocationList) {
-
-        this.createAvailableStockMrpLine(
-            mrpRepository.find(mrp.getId()),
-            productRepository.find(productId),
-            stockLocationRepository.find(stockLocation.getId()),
-            mrpLineTypeRepository.find(availableStockMrpLineType.getId()));
+    this.availableQtyLocationIdSet = new HashSet<>();
+    for (StockLocation stockLocation : this.stockLocationList) {
+      availableQtyLocationIdSet.add(stockLocation.getId());
+    }
 
-        JPA.clear();
-      }
+    this.availableQtyMap =
+        stockLocationService.getQtyMapByLocation(
+            this.productMap.keySet(), availableQtyLocationIdSet, "real");
+    for (Long productId : this.productMap.keySet()) {
+      availableQtyMap.putIfAbsent(productId, new HashMap<>());
     }
+
+    this.createMrpLines(
+        Product.class,
+        new ArrayList<>(this.productMap.keySet()),
+        (mrp, product) -> {
+          for (StockLocation stockLocation : this.stockLocationList) {
+
+            this.createAvailableStockMrpLine(
+                mrp,
+                product,
+                stockLocationRepository.find(stockLocation.getId()),
+                mrpLineTypeRepository.find(availableStockMrpLineType.getId()));
+          }
+        });
   }
 
   @Transactional(rollbackOn = {AxelorException.class, Exception.class})
@@ -842,16 +1269,10 @@ public class MrpServiceImpl implements MrpService {
       Mrp mrp,
       Product product,
       StockLocation stockLocation,
-      MrpLineType availableStockMrpLineType) {
-
-    BigDecimal qty = BigDecimal.ZERO;
-
-    StockLocationLine stockLocationLine = this.getStockLocationLine(product, stockLocation);
-
-    if (stockLocationLine != null) {
+      MrpLineType availableStockMrpLineType)
+      throws AxelorException {
 
-      qty = stockLocationLine.getCurrentQty();
-    }
+    BigDecimal qty = this.getAvailableQty(product, stockLocation);
 
     return mrpLineRepository.save(
         this.createMrpLine(
@@ -876,6 +1297,24 @@ public class MrpServiceImpl implements MrpService {
 
   }
 
+  /**
+   * Get the current quantity of the product in the stock location, in the unit of the product,
+   * from the quantities loaded at once for the products and stock locations of the mrp.
+   */
+  protected BigDecimal getAvailableQty(Product product, StockLocation stockLocation)
+      throws AxelorException {
+
+    if (availableQtyMap != null
+        && availableQtyMap.containsKey(product.getId())
+        && availableQtyLocationIdSet.contains(stockLocation.getId())) {
+      return availableQtyMap
+          .get(product.getId())
+          .getOrDefault(stockLocation.getId(), BigDecimal.ZERO);
+    }
+
+    return stockLocationService.getRealQty(product.getId(), stockLocation.getId());
+  }
+
   protected StockLocationLine getStockLocationLine(Product product, StockLocation stockLocation) {
 
     return stockLocationLineRepository
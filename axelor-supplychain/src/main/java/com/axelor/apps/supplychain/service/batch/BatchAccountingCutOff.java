@@ -40,8 +40,6 @@ public class BatchAccountingCutOff extends BatchStrategy {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  protected static final int FETCH_LIMIT = 1;
-
   protected AccountingCutOffService cutOffService;
   protected StockMoveRepository stockMoveRepository;
 
@@ -77,7 +75,7 @@ public class BatchAccountingCutOff extends BatchStrategy {
 
     while (!(stockMoveList =
             cutOffService.getStockMoves(
-                company, accountingCutOffTypeSelect, moveDate, FETCH_LIMIT, offset))
+                company, accountingCutOffTypeSelect, moveDate, getFetchLimit(), offset))
         .isEmpty()) {
 
       findBatch();
@@ -47,7 +47,7 @@ public class BatchInvoicing extends BatchStrategy {
   @Override
   protected void process() {
 
-    List<SaleOrder> saleOrders = subscriptionInvoiceService.getSubscriptionOrders(FETCH_LIMIT);
+    List<SaleOrder> saleOrders = subscriptionInvoiceService.getSubscriptionOrders(getFetchLimit());
 
     while (!saleOrders.isEmpty()) {
       for (SaleOrder saleOrder : saleOrders) {
@@ -73,7 +73,7 @@ public class BatchInvoicing extends BatchStrategy {
         }
       }
       JPA.clear();
-      saleOrders = subscriptionInvoiceService.getSubscriptionOrders(FETCH_LIMIT);
+      saleOrders = subscriptionInvoiceService.getSubscriptionOrders(getFetchLimit());
     }
   }
 
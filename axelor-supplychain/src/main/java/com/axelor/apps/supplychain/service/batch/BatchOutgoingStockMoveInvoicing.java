@@ -27,15 +27,11 @@ import com.axelor.apps.stock.db.repo.StockMoveRepository;
 import com.axelor.apps.supplychain.db.SupplychainBatch;
 import com.axelor.apps.supplychain.exception.IExceptionMessage;
 import com.axelor.apps.supplychain.service.StockMoveInvoiceService;
-import com.axelor.db.JPA;
 import com.axelor.exception.db.IException;
 import com.axelor.exception.service.TraceBackService;
 import com.axelor.i18n.I18n;
 import com.axelor.inject.Beans;
-import com.google.common.collect.Lists;
 import com.google.inject.Inject;
-import java.util.List;
-import javax.persistence.TypedQuery;
 
 public class BatchOutgoingStockMoveInvoicing extends AbstractBatch {
 
@@ -49,49 +45,32 @@ public class BatchOutgoingStockMoveInvoicing extends AbstractBatch {
   @Override
   protected void process() {
     SupplychainBatch supplychainBatch = batch.getSupplychainBatch();
-    List<Long> anomalyList = Lists.newArrayList(0L);
     SaleOrderRepository saleRepo = Beans.get(SaleOrderRepository.class);
 
-    int start = 0;
-    TypedQuery<StockMove> query =
-        JPA.em()
-            .createQuery(
-                "SELECT self FROM StockMove self "
-                    + "LEFT JOIN self.invoice invoice "
-                    + "WHERE self.statusSelect = :statusSelect "
-                    + "AND self.originTypeSelect LIKE :typeSaleOrder "
-                    + "AND (invoice IS NULL OR self.invoice.statusSelect = :invoiceStatusSelect)"
-                    + "AND self.id NOT IN (:anomalyList) "
-                    + "AND self.partner.id NOT IN ("
-                    + Beans.get(BlockingService.class)
-                        .listOfBlockedPartner(
-                            supplychainBatch.getCompany(), BlockingRepository.INVOICING_BLOCKING)
-                    + ")",
-                StockMove.class)
-            .setParameter("statusSelect", StockMoveRepository.STATUS_REALIZED)
-            .setParameter("typeSaleOrder", StockMoveRepository.ORIGIN_SALE_ORDER)
-            .setParameter("invoiceStatusSelect", InvoiceRepository.STATUS_CANCELED)
-            .setParameter("anomalyList", anomalyList)
-            .setMaxResults(FETCH_LIMIT);
-
-    for (List<StockMove> stockMoveList;
-        !(stockMoveList = query.getResultList()).isEmpty();
-        JPA.clear(), start += FETCH_LIMIT, query.setFirstResult(start)) {
-      for (StockMove stockMove : stockMoveList) {
-        try {
-          stockMoveInvoiceService.createInvoiceFromSaleOrder(
-              stockMove, saleRepo.find(stockMove.getOriginId()));
-          incrementDone();
-        } catch (Exception e) {
-          incrementAnomaly();
-          anomalyList.add(stockMove.getId());
-          query.setParameter("anomalyList", anomalyList);
-          TraceBackService.trace(e, IException.INVOICE_ORIGIN, batch.getId());
-          e.printStackTrace();
-          break;
-        }
-      }
-    }
+    processByChunk(
+        StockMove.class,
+        stockMove -> {
+          try {
+            stockMoveInvoiceService.createInvoiceFromSaleOrder(
+                stockMove, saleRepo.find(stockMove.getOriginId()));
+            incrementDone();
+          } catch (Exception e) {
+            incrementAnomaly();
+            TraceBackService.trace(e, IException.INVOICE_ORIGIN, batch.getId());
+            e.printStackTrace();
+          }
+        },
+        "self.statusSelect = ?1 "
+            + "AND self.originTypeSelect LIKE ?2 "
+            + "AND (self.invoice IS NULL OR self.invoice.statusSelect = ?3) "
+            + "AND self.partner.id NOT IN ("
+            + Beans.get(BlockingService.class)
+                .listOfBlockedPartner(
+                    supplychainBatch.getCompany(), BlockingRepository.INVOICING_BLOCKING)
+            + ")",
+        StockMoveRepository.STATUS_REALIZED,
+        StockMoveRepository.ORIGIN_SALE_ORDER,
+        InvoiceRepository.STATUS_CANCELED);
   }
 
   @Override
@@ -0,0 +1,505 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.supplychain.service;
+
+import com.axelor.apps.base.db.Product;
+import com.axelor.apps.stock.db.StockLocation;
+import com.axelor.apps.stock.db.StockRules;
+import com.axelor.apps.stock.service.StockRulesServiceImpl;
+import com.axelor.apps.supplychain.db.Mrp;
+import com.axelor.apps.supplychain.db.MrpFamily;
+import com.axelor.apps.supplychain.db.MrpLine;
+import com.axelor.apps.supplychain.db.MrpLineOrigin;
+import com.axelor.apps.supplychain.db.MrpLineType;
+import com.axelor.apps.supplychain.db.repo.MrpLineTypeRepository;
+import com.axelor.db.Model;
+import com.axelor.exception.AxelorException;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the netting of the mrp in memory, without the database, with the lines of each product
+ * already loaded and without stock rules.
+ */
+public class MrpServiceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final LocalDate TODAY = LocalDate.of(2019, 1, 7);
+
+  private MrpServiceImpl mrpService;
+
+  private MrpLineType availableStockType;
+
+  private MrpLineType saleOrderType;
+
+  private MrpLineType purchaseProposalType;
+
+  private MrpLineType purchaseOrderType;
+
+  private StockLocation stockLocation;
+
+  private Mrp mrp;
+
+  private long nextId;
+
+  @Before
+  public void setUp() {
+    availableStockType =
+        createMrpLineType(
+            1L, MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK, MrpLineTypeRepository.TYPE_IN, 1);
+    saleOrderType =
+        createMrpLineType(
+            2L, MrpLineTypeRepository.ELEMENT_SALE_ORDER, MrpLineTypeRepository.TYPE_OUT, 2);
+    purchaseProposalType =
+        createMrpLineType(
+            3L, MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL, MrpLineTypeRepository.TYPE_IN, 3);
+    purchaseOrderType =
+        createMrpLineType(
+            4L, MrpLineTypeRepository.ELEMENT_PURCHASE_ORDER, MrpLineTypeRepository.TYPE_IN, 4);
+
+    stockLocation = new StockLocation();
+    stockLocation.setId(1L);
+    mrp = new Mrp();
+    nextId = 1;
+
+    mrpService =
+        new MrpServiceImpl(
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            new StockRulesServiceImpl(null) {
+              @Override
+              public StockRules getStockRules(
+                  Product product, StockLocation stockLocation, int type, int useCase) {
+                return null;
+              }
+            },
+            null,
+            null,
+            null) {
+
+          @Override
+          protected MrpLineType getMrpLineTypeForProposal(StockRules stockRules, Product product) {
+            return purchaseProposalType;
+          }
+
+          @Override
+          protected MrpLine createMrpLine(
+              Mrp mrp,
+              Product product,
+              MrpLineType mrpLineType,
+              BigDecimal qty,
+              LocalDate maturityDate,
+              BigDecimal cumulativeQty,
+              StockLocation stockLocation,
+              Model model) {
+            return MrpServiceTest.this.createMrpLine(product, mrpLineType, qty, maturityDate, null);
+          }
+
+          @Override
+          protected void copyMrpLineOrigins(
+              MrpLine mrpLine, List<MrpLineOrigin> mrpLineOriginList) {}
+        };
+    mrpService.mrp = mrp;
+    mrpService.today = TODAY;
+    mrpService.mrpLineMap = new HashMap<>();
+    mrpService.createdMrpLineList = new ArrayList<>();
+  }
+
+  /**
+   * 10 in stock, then 30 and 20 sold: a proposal of 20 covers the first sale, then another one of
+   * 20 covers the second sale.
+   */
+  @Test
+  public void testProposalsCoverTheShortages() throws AxelorException {
+
+    Product product = createProduct(1L);
+    load(createMrpLine(product, availableStockType, new BigDecimal(10), TODAY, 1L));
+    load(createMrpLine(product, saleOrderType, new BigDecimal(-30), TODAY.plusDays(5), 2L));
+    load(createMrpLine(product, saleOrderType, new BigDecimal(-20), TODAY.plusDays(10), 3L));
+
+    mrpService.checkInsufficientCumulativeQty(product, true);
+
+    List<MrpLine> proposalList = mrpService.createdMrpLineList;
+    Assert.assertEquals(2, proposalList.size());
+    Assert.assertEquals(TODAY.plusDays(5), proposalList.get(0).getMaturityDate());
+    Assert.assertEquals(0, new BigDecimal(20).compareTo(proposalList.get(0).getQty()));
+    Assert.assertEquals(TODAY.plusDays(10), proposalList.get(1).getMaturityDate());
+    Assert.assertEquals(0, new BigDecimal(20).compareTo(proposalList.get(1).getQty()));
+
+    for (MrpLine mrpLine : mrpService.getMrpLineList(product)) {
+      Assert.assertTrue(mrpLine.getCumulativeQty().signum() >= 0);
+    }
+  }
+
+  /** The lines created during the calculation come after the persisted lines of the same day. */
+  @Test
+  public void testCreatedLinesComeAfterPersistedLines() {
+
+    Product product = createProduct(1L);
+    MrpLine createdMrpLine = createMrpLine(product, saleOrderType, new BigDecimal(-1), TODAY, null);
+    MrpLine persistedMrpLine = createMrpLine(product, saleOrderType, new BigDecimal(-2), TODAY, 5L);
+    MrpLine stockMrpLine = createMrpLine(product, availableStockType, new BigDecimal(3), TODAY, 9L);
+
+    List<MrpLine> mrpLineList = new ArrayList<>();
+    mrpLineList.add(createdMrpLine);
+    mrpLineList.add(persistedMrpLine);
+    mrpLineList.add(stockMrpLine);
+
+    mrpService.computeCumulativeQty(mrpLineList);
+
+    Assert.assertSame(stockMrpLine, mrpLineList.get(0));
+    Assert.assertSame(persistedMrpLine, mrpLineList.get(1));
+    Assert.assertSame(createdMrpLine, mrpLineList.get(2));
+    Assert.assertEquals(0, createdMrpLine.getCumulativeQty().signum());
+  }
+
+  /**
+   * Nets 1000 products of 50 sale order lines each, and checks that no cumulative qty is left
+   * negative.
+   */
+  @Test
+  public void testNetting50000MrpLines() throws AxelorException {
+
+    List<Product> productList = new ArrayList<>();
+    for (long productId = 1; productId <= 1000; productId++) {
+      Product product = createProduct(productId);
+      productList.add(product);
+      load(createMrpLine(product, availableStockType, new BigDecimal(100), TODAY, nextId++));
+      for (int i = 0; i < 50; i++) {
+        load(
+            createMrpLine(
+                product,
+                saleOrderType,
+                new BigDecimal(-(i % 7 + 1) * 10),
+                TODAY.plusDays(i),
+                nextId++));
+      }
+    }
+
+    long startTime = System.currentTimeMillis();
+    for (Product product : productList) {
+      mrpService.checkInsufficientCumulativeQty(product, true);
+    }
+    LOG.info(
+        "50000 mrp lines netted in {} ms, {} proposals",
+        System.currentTimeMillis() - startTime,
+        mrpService.createdMrpLineList.size());
+
+    Assert.assertFalse(mrpService.createdMrpLineList.isEmpty());
+    for (Product product : productList) {
+      for (MrpLine mrpLine : mrpService.getMrpLineList(product)) {
+        Assert.assertTrue(mrpLine.getCumulativeQty().signum() >= 0);
+      }
+    }
+  }
+
+  /**
+   * Nets 40 products of random stocks, sale orders and purchase orders, half of them grouping their
+   * proposals by mrp family, with the in memory calculation and with the calculation record by
+   * record, and checks that both give the same lines.
+   */
+  @Test
+  public void testSameLinesAsCalculationRecordByRecord() throws AxelorException {
+
+    Random random = new Random(42);
+    PerRecordCalculation perRecordCalculation = new PerRecordCalculation();
+    List<Product> productList = new ArrayList<>();
+    List<MrpLine> mrpLineList = new ArrayList<>();
+
+    for (long productId = 1; productId <= 40; productId++) {
+      Product product = createProduct(productId);
+      product.setSupplierDeliveryTime(random.nextInt(6));
+      if (productId % 2 == 0) {
+        MrpFamily mrpFamily = new MrpFamily();
+        mrpFamily.setDayNb(7);
+        product.setMrpFamily(mrpFamily);
+      }
+      productList.add(product);
+
+      mrpLineList.add(
+          createMrpLine(
+              product, availableStockType, new BigDecimal(random.nextInt(30)), TODAY, null));
+      for (int i = 0; i < 15; i++) {
+        mrpLineList.add(
+            createMrpLine(
+                product,
+                saleOrderType,
+                new BigDecimal(-1 - random.nextInt(20)),
+                TODAY.plusDays(random.nextInt(30)),
+                null));
+      }
+      for (int i = 0; i < 3; i++) {
+        mrpLineList.add(
+            createMrpLine(
+                product,
+                purchaseOrderType,
+                new BigDecimal(5 + random.nextInt(25)),
+                TODAY.plusDays(random.nextInt(30)),
+                null));
+      }
+    }
+
+    List<Long> idList = new ArrayList<>();
+    for (long id = 1; id <= mrpLineList.size(); id++) {
+      idList.add(id);
+    }
+    Collections.shuffle(idList, random);
+
+    for (int i = 0; i < mrpLineList.size(); i++) {
+      MrpLine mrpLine = mrpLineList.get(i);
+      mrpLine.setId(idList.get(i));
+      mrpLine.setMinQty(new BigDecimal(random.nextInt(3) == 0 ? 5 : 0));
+      if (mrpLine.getMrpLineType() == saleOrderType) {
+        mrpLine.setRelatedToSelectName("SO" + mrpLine.getId());
+      }
+      load(mrpLine);
+      perRecordCalculation.insert(copy(mrpLine));
+    }
+    perRecordCalculation.nextId = mrpLineList.size() + 1;
+
+    for (Product product : productList) {
+      mrpService.checkInsufficientCumulativeQty(product, true);
+      perRecordCalculation.checkInsufficientCumulativeQty(product, true);
+    }
+
+    Assert.assertFalse(mrpService.createdMrpLineList.isEmpty());
+    Assert.assertEquals(
+        perRecordCalculation.table.size(),
+        mrpLineList.size() + mrpService.createdMrpLineList.size());
+    for (Product product : productList) {
+      Assert.assertEquals(
+          describe(perRecordCalculation.getMrpLineList(product)),
+          describe(mrpService.getMrpLineList(product)));
+    }
+  }
+
+  /**
+   * The calculation as it was done record by record: the lines of the product are read again from
+   * the table at each pass, and a proposal is inserted at once with the next id.
+   */
+  private class PerRecordCalculation {
+
+    private final List<MrpLine> table = new ArrayList<>();
+
+    private long nextId;
+
+    private void insert(MrpLine mrpLine) {
+      table.add(mrpLine);
+    }
+
+    private List<MrpLine> getMrpLineList(Product product) {
+      List<MrpLine> mrpLineList = new ArrayList<>();
+      for (MrpLine mrpLine : table) {
+        if (mrpLine.getProduct().getId().equals(product.getId())) {
+          mrpLineList.add(mrpLine);
+        }
+      }
+      mrpLineList.sort(
+          (mrpLine, otherMrpLine) -> {
+            int result = mrpLine.getMaturityDate().compareTo(otherMrpLine.getMaturityDate());
+            if (result == 0) {
+              result =
+                  Integer.compare(
+                      mrpLine.getMrpLineType().getTypeSelect(),
+                      otherMrpLine.getMrpLineType().getTypeSelect());
+            }
+            if (result == 0) {
+              result =
+                  Integer.compare(
+                      mrpLine.getMrpLineType().getSequence(),
+                      otherMrpLine.getMrpLineType().getSequence());
+            }
+            return result != 0 ? result : mrpLine.getId().compareTo(otherMrpLine.getId());
+          });
+
+      BigDecimal previousCumulativeQty = BigDecimal.ZERO;
+      for (MrpLine mrpLine : mrpLineList) {
+        if (mrpLine.getMrpLineType().getElementSelect()
+            == MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK) {
+          mrpLine.setCumulativeQty(mrpLine.getQty());
+        } else {
+          mrpLine.setCumulativeQty(previousCumulativeQty.add(mrpLine.getQty()));
+        }
+        previousCumulativeQty = mrpLine.getCumulativeQty();
+      }
+      return mrpLineList;
+    }
+
+    private void checkInsufficientCumulativeQty(Product product, boolean firstPass) {
+      boolean doASecondPass = false;
+
+      for (MrpLine mrpLine : getMrpLineList(product)) {
+        doASecondPass = checkInsufficientCumulativeQty(mrpLine, product, firstPass);
+        if (doASecondPass) {
+          break;
+        }
+      }
+
+      if (doASecondPass) {
+        checkInsufficientCumulativeQty(product, false);
+      }
+    }
+
+    private boolean checkInsufficientCumulativeQty(
+        MrpLine mrpLine, Product product, boolean firstPass) {
+      MrpLineType mrpLineType = mrpLine.getMrpLineType();
+      boolean isAvailableStock =
+          mrpLineType.getElementSelect() == MrpLineTypeRepository.ELEMENT_AVAILABLE_STOCK;
+      boolean isProposalElement =
+          mrpLineType.getElementSelect() == MrpLineTypeRepository.ELEMENT_PURCHASE_PROPOSAL;
+
+      if (((!isAvailableStock
+                  && (!isProposalElement
+                      || mrpLineType.getTypeSelect() == MrpLineTypeRepository.TYPE_OUT))
+              || (isAvailableStock && firstPass))
+          && mrpLine.getCumulativeQty().compareTo(mrpLine.getMinQty()) < 0) {
+
+        createProposalMrpLine(
+            product,
+            mrpLine.getMinQty().subtract(mrpLine.getCumulativeQty()),
+            mrpLine.getMaturityDate(),
+            mrpLine.getRelatedToSelectName());
+        return true;
+      }
+      return false;
+    }
+
+    private void createProposalMrpLine(
+        Product product,
+        BigDecimal reorderQty,
+        LocalDate maturityDate,
+        String relatedToSelectName) {
+      maturityDate = maturityDate.minusDays(product.getSupplierDeliveryTime());
+      if (maturityDate.isBefore(TODAY)) {
+        maturityDate = TODAY;
+      }
+
+      MrpLine previousMrpLine = null;
+      MrpFamily mrpFamily = product.getMrpFamily();
+      if (mrpFamily == null || mrpFamily.getDayNb() != 0) {
+        LocalDate startPeriodDate =
+            mrpFamily == null ? maturityDate : maturityDate.minusDays(mrpFamily.getDayNb());
+        for (MrpLine mrpLine : table) {
+          if (mrpLine.getProduct().getId().equals(product.getId())
+              && mrpLine.getMrpLineType() == purchaseProposalType
+              && mrpLine.getMaturityDate().isAfter(startPeriodDate)
+              && !mrpLine.getMaturityDate().isAfter(maturityDate)
+              && (previousMrpLine == null || mrpLine.getId() < previousMrpLine.getId())) {
+            previousMrpLine = mrpLine;
+          }
+        }
+      }
+
+      if (previousMrpLine != null) {
+        previousMrpLine.setQty(previousMrpLine.getQty().add(reorderQty));
+        previousMrpLine.setRelatedToSelectName(null);
+      } else {
+        MrpLine mrpLine =
+            createMrpLine(product, purchaseProposalType, reorderQty, maturityDate, nextId++);
+        mrpLine.setRelatedToSelectName(relatedToSelectName);
+        insert(mrpLine);
+      }
+    }
+  }
+
+  private List<String> describe(List<MrpLine> mrpLineList) {
+    List<String> descriptionList = new ArrayList<>();
+    for (MrpLine mrpLine : mrpLineList) {
+      descriptionList.add(
+          mrpLine.getMrpLineType().getId()
+              + " "
+              + mrpLine.getMaturityDate()
+              + " "
+              + mrpLine.getQty().stripTrailingZeros().toPlainString()
+              + " "
+              + mrpLine.getCumulativeQty().stripTrailingZeros().toPlainString()
+              + " "
+              + mrpLine.getMinQty().stripTrailingZeros().toPlainString()
+              + " "
+              + mrpLine.getRelatedToSelectName());
+    }
+    return descriptionList;
+  }
+
+  private MrpLine copy(MrpLine mrpLine) {
+    MrpLine copy =
+        createMrpLine(
+            mrpLine.getProduct(),
+            mrpLine.getMrpLineType(),
+            mrpLine.getQty(),
+            mrpLine.getMaturityDate(),
+            mrpLine.getId());
+    copy.setMinQty(mrpLine.getMinQty());
+    copy.setRelatedToSelectName(mrpLine.getRelatedToSelectName());
+    return copy;
+  }
+
+  private void load(MrpLine mrpLine) {
+    mrpService.getMrpLineList(mrpLine.getProduct()).add(mrpLine);
+  }
+
+  private Product createProduct(Long id) {
+    Product product = new Product();
+    product.setId(id);
+    product.setSupplierDeliveryTime(0);
+    return product;
+  }
+
+  private MrpLineType createMrpLineType(Long id, int elementSelect, int typeSelect, int sequence) {
+    MrpLineType mrpLineType = new MrpLineType();
+    mrpLineType.setId(id);
+    mrpLineType.setElementSelect(elementSelect);
+    mrpLineType.setTypeSelect(typeSelect);
+    mrpLineType.setSequence(sequence);
+    return mrpLineType;
+  }
+
+  private MrpLine createMrpLine(
+      Product product, MrpLineType mrpLineType, BigDecimal qty, LocalDate maturityDate, Long id) {
+    MrpLine mrpLine = new MrpLine();
+    mrpLine.setId(id);
+    mrpLine.setMrp(mrp);
+    mrpLine.setProduct(product);
+    mrpLine.setMrpLineType(mrpLineType);
+    mrpLine.setQty(qty);
+    mrpLine.setMinQty(BigDecimal.ZERO);
+    mrpLine.setCumulativeQty(BigDecimal.ZERO);
+    mrpLine.setMaturityDate(maturityDate);
+    mrpLine.setStockLocation(stockLocation);
+    return mrpLine;
+  }
+}
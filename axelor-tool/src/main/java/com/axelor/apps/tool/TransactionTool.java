@@ -0,0 +1,56 @@
+/*
+ * Axelor Business Solutions
+ *
+ * Copyright (C) 2019 Axelor (<http://axelor.com>).
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.axelor.apps.tool;
+
+import com.axelor.db.JPA;
+import javax.transaction.Synchronization;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+public final class TransactionTool {
+
+  private TransactionTool() {}
+
+  /**
+   * Run an action once the current transaction is committed or rolled back, or right away if there
+   * is no active transaction. Used to clear application caches only once the changes can be read
+   * by the other transactions.
+   *
+   * @param action the action to run
+   */
+  public static void runAfterCompletion(Runnable action) {
+
+    Transaction transaction = JPA.em().unwrap(Session.class).getTransaction();
+
+    if (!transaction.isActive()) {
+      action.run();
+      return;
+    }
+
+    transaction.registerSynchronization(
+        new Synchronization() {
+          @Override
+          public void beforeCompletion() {}
+
+          @Override
+          public void afterCompletion(int status) {
+            action.run();
+          }
+        });
+  }
+}
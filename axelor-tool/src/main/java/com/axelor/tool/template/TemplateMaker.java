@@ -59,6 +59,7 @@ public class TemplateMaker {
   private Map<String, Object> localContext;
 
   private String template;
+  private ST compiledTemplate;
   private STGroup stGroup;
   private Locale locale;
 
@@ -112,6 +113,25 @@ public class TemplateMaker {
 
   public void setTemplate(String text) {
     this.template = text;
+    this.compiledTemplate = null;
+  }
+
+  /**
+   * Set a template compiled by {@link #compile(String)}, so that it is not parsed again on each
+   * {@link #make()}. The compiled template is never modified and can be shared between makers.
+   */
+  public void setTemplate(ST compiledTemplate) {
+    Preconditions.checkNotNull(compiledTemplate);
+    this.template = null;
+    this.compiledTemplate = compiledTemplate;
+  }
+
+  public ST compile(String text) {
+    if (Strings.isNullOrEmpty(text)) {
+      throw new IllegalArgumentException(I18n.get(IExceptionMessage.TEMPLATE_MAKER_2));
+    }
+
+    return new ST(stGroup, text);
   }
 
   public void setTemplate(File file) throws FileNotFoundException {
@@ -149,11 +169,7 @@ public class TemplateMaker {
   }
 
   public String make() {
-    if (Strings.isNullOrEmpty(this.template)) {
-      throw new IllegalArgumentException(I18n.get(IExceptionMessage.TEMPLATE_MAKER_2));
-    }
-
-    ST st = new ST(stGroup, template);
+    ST st = compiledTemplate != null ? copy(compiledTemplate) : this.compile(template);
 
     Map<String, Object> _map = Maps.newHashMap();
     if (localContext != null && !localContext.isEmpty()) {
@@ -180,6 +196,21 @@ public class TemplateMaker {
     return _make(st);
   }
 
+  /**
+   * Copy a compiled template to render it. The copy gets its own clone of the compiled template,
+   * as the attributes added to a template are defined on its compiled template: shared, they would
+   * be seen by the next copies as already set.
+   */
+  private ST copy(ST compiledTemplate) {
+    ST st = new ST(compiledTemplate);
+    try {
+      st.impl = compiledTemplate.impl.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+    return st;
+  }
+
   private String _make(ST st) {
     return st.render(locale);
   }
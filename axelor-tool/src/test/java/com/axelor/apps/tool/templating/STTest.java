@@ -31,6 +31,7 @@ import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.stringtemplate.v4.ST;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class STTest {
@@ -154,6 +155,20 @@ public class STTest {
     Assert.assertTrue(((System.currentTimeMillis() - start) / 1000) < 10);
   }
 
+  @Test
+  public void test2Compiled() {
+    TemplateMaker maker = new TemplateMaker(new Locale("fr"), '$', '$');
+    ST compiledTemplate = maker.compile(content);
+
+    for (int i = 0; i < 3; i++) {
+      TemplateMaker recordMaker = new TemplateMaker(new Locale("fr"), '$', '$');
+      recordMaker.setTemplate(compiledTemplate);
+      recordMaker.setContext(contact, map, "contact");
+
+      Assert.assertEquals(contentFinal, recordMaker.make());
+    }
+  }
+
   @Test
   public void test3() {
     for (int i = 0; i < 10; i++) {